@@ -0,0 +1,131 @@
+package com.example.aidemo;
+
+import com.example.aidemo.service.ingest.ElogEntry;
+import com.example.aidemo.service.ingest.ElogEntryReader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Inputs of the benchmarks, taken from the eLog exports bundled under
+ * {@code all_data/days/partitioned_logs}, and stand-ins for the model so they run offline.
+ */
+public final class Fixtures {
+    public static final String DAYS = "all_data/days/partitioned_logs/";
+    // the largest export, 367 entries, and a typical one, 151 entries
+    public static final String LARGE_DAY = "elogs.entry.2022-03-15.json";
+    public static final String TYPICAL_DAY = "elogs.entry.2022-02-20.json";
+    private static final List<String> RETRIEVAL_DAYS = List.of(LARGE_DAY, "elogs.entry.2022-01-19.json", TYPICAL_DAY,
+            "elogs.entry.2022-01-14.json", "elogs.entry.2022-03-03.json");
+    private static final int DIMENSIONS = 1024;
+
+    private Fixtures() {
+    }
+
+    public static byte[] export(String day) {
+        try (InputStream in = Fixtures.class.getClassLoader().getResourceAsStream(DAYS + day)) {
+            if (in == null) {
+                throw new IllegalArgumentException("No fixture " + DAYS + day);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static List<ElogEntry> entries(ObjectMapper objectMapper, String day) {
+        List<ElogEntry> entries = new ArrayList<>();
+        try (ElogEntryReader reader = new ElogEntryReader(objectMapper.getFactory().createParser(export(day)))) {
+            ElogEntry entry;
+            while ((entry = reader.next()) != null) {
+                entries.add(entry);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return entries;
+    }
+
+    /**
+     * {@code count} entries shaped like retrieval results, with the metadata ingestion stores and
+     * a distance growing with the rank.
+     */
+    public static List<Document> retrievedDocuments(ObjectMapper objectMapper, int count) {
+        List<Document> documents = new ArrayList<>();
+        for (String day : RETRIEVAL_DAYS) {
+            for (ElogEntry entry : entries(objectMapper, day)) {
+                if (documents.size() == count) {
+                    return documents;
+                }
+                String content = "{\"title\":%s,\"content\":%s,\"eventDate\":\"%s\"}".formatted(
+                        quote(entry.title()), quote(entry.text()), entry.eventAt());
+                documents.add(new Document(content, Map.of(
+                        "mongoDbId", entry.id(),
+                        "eventDate", entry.eventAt(),
+                        "chunkId", "1",
+                        "distance", 0.2 + 0.3 * documents.size() / count)));
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * An embedding model returning a random unit vector per text, seeded by the text.
+     */
+    public static EmbeddingModel embeddingModel() {
+        return new EmbeddingModel() {
+            @Override
+            public EmbeddingResponse call(EmbeddingRequest request) {
+                List<Embedding> embeddings = new ArrayList<>();
+                for (String text : request.getInstructions()) {
+                    embeddings.add(new Embedding(vector(text), embeddings.size()));
+                }
+                return new EmbeddingResponse(embeddings);
+            }
+
+            @Override
+            public float[] embed(Document document) {
+                return vector(document.getContent());
+            }
+
+            @Override
+            public int dimensions() {
+                return DIMENSIONS;
+            }
+        };
+    }
+
+    private static float[] vector(String text) {
+        Random random = new Random(text.hashCode());
+        float[] vector = new float[DIMENSIONS];
+        double norm = 0;
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private static String quote(String text) {
+        try {
+            return new ObjectMapper().writeValueAsString(text == null ? "" : text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
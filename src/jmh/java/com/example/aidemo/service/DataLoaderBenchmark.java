@@ -0,0 +1,181 @@
+package com.example.aidemo.service;
+
+import com.example.aidemo.Fixtures;
+import com.example.aidemo.service.ingest.ChunkBatch;
+import com.example.aidemo.service.ingest.ChunkRegistry;
+import com.example.aidemo.service.ingest.ElogEntry;
+import com.example.aidemo.service.ingest.ElogEntryReader;
+import com.example.aidemo.service.ingest.IngestionManifest;
+import com.example.aidemo.service.ingest.IngestionPipeline;
+import com.example.aidemo.service.ingest.IngestionReport;
+import com.example.aidemo.service.ingest.SourceUnit;
+import com.example.aidemo.service.ingest.VectorWriter;
+import com.example.aidemo.service.lexical.LexicalIndex;
+import com.example.aidemo.service.text.TextChunker;
+import com.example.aidemo.service.text.TokenCounter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.ai.document.Document;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * The parse, chunk and document steps of {@link DataLoaderService} over one day of eLog entries,
+ * each step alone and all of them through {@link IngestionPipeline#run}. Embeddings come from
+ * {@link Fixtures#embeddingModel()} and vectors are discarded, so {@code ingest} measures
+ * everything ingestion does besides the model and the database, including the chunk registry,
+ * the manifest and the lexical index, which write to a temporary directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DataLoaderBenchmark {
+    private static final VectorWriter DISCARDING_WRITER = new VectorWriter() {
+        @Override
+        public void write(List<Document> documents) {
+        }
+
+        @Override
+        public void delete(List<String> ids) {
+        }
+    };
+
+    private static final TextChunker CHUNKER = new TextChunker(new TokenCounter(), 350, 40, true);
+
+    @Param({Fixtures.LARGE_DAY, Fixtures.TYPICAL_DAY})
+    public String day;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] export;
+    private List<ElogEntry> entries;
+    private Path emptyStateDir;
+    private ChunkRegistry emptyRegistry;
+    private DataLoaderService loader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        export = Fixtures.export(day);
+        entries = Fixtures.entries(objectMapper, day);
+        // nothing is ever committed, every chunk is new
+        emptyStateDir = Files.createTempDirectory("aidemo-bench");
+        emptyRegistry = new ChunkRegistry(emptyStateDir.toString(), "pgvector");
+        loader = loader(emptyRegistry, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        emptyRegistry.close();
+        FileSystemUtils.deleteRecursively(emptyStateDir);
+    }
+
+    @Benchmark
+    public int parse() throws IOException {
+        int count = 0;
+        try (ElogEntryReader reader = new ElogEntryReader(objectMapper.getFactory().createParser(export))) {
+            while (reader.next() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public void split(Blackhole blackhole) {
+        for (ElogEntry entry : entries) {
+            blackhole.consume(CHUNKER.split(entry.text()));
+        }
+    }
+
+    @Benchmark
+    public void createDocument(Blackhole blackhole) {
+        for (ElogEntry entry : entries) {
+            blackhole.consume(loader.createDocument(entry.id(), entry.id(), entry.originId(), entry.eventAt(), entry.text(), 1));
+        }
+    }
+
+    /**
+     * Parse, chunk and document steps together, the input of the embedding stage.
+     */
+    @Benchmark
+    public int processEntries() throws IOException {
+        ChunkBatch batch = new ChunkBatch();
+        try (ElogEntryReader reader = new ElogEntryReader(objectMapper.getFactory().createParser(export))) {
+            ElogEntry entry;
+            while ((entry = reader.next()) != null) {
+                loader.processMongoDBJsonDocument(entry, batch);
+            }
+        }
+        return batch.size();
+    }
+
+    @Benchmark
+    public IngestionReport ingest(LoadState state) {
+        return state.pipeline.run(List.of(state.export), state::parse, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Fresh ingestion state for every load, otherwise all chunks but the first load's are skipped.
+     */
+    @State(Scope.Thread)
+    public static class LoadState {
+        private Path stateDir;
+        private Path export;
+        private ChunkRegistry chunkRegistry;
+        private LexicalIndex lexicalIndex;
+        private IngestionPipeline pipeline;
+        private DataLoaderService loader;
+
+        @Setup(Level.Invocation)
+        public void setUp(DataLoaderBenchmark benchmark) throws IOException {
+            ObjectMapper objectMapper = new ObjectMapper();
+            stateDir = Files.createTempDirectory("aidemo-bench");
+            export = Files.write(stateDir.resolve(benchmark.day), benchmark.export);
+            chunkRegistry = new ChunkRegistry(stateDir.toString(), "pgvector");
+            lexicalIndex = new LexicalIndex(objectMapper, stateDir.toString(), "pgvector", 20000);
+            pipeline = new IngestionPipeline(Fixtures.embeddingModel(), DISCARDING_WRITER, chunkRegistry,
+                    lexicalIndex, new IngestionManifest(stateDir.toString(), "pgvector"), event -> {}, new SimpleMeterRegistry(), 64, 64, 1, 8);
+            loader = loader(chunkRegistry, pipeline);
+        }
+
+        private void parse(Path file, Predicate<SourceUnit> sink) throws IOException {
+            try (InputStream in = Files.newInputStream(file)) {
+                loader.parseJson(file, in, sink);
+            }
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws IOException {
+            lexicalIndex.close();
+            chunkRegistry.close();
+            FileSystemUtils.deleteRecursively(stateDir);
+        }
+    }
+
+    private static DataLoaderService loader(ChunkRegistry chunkRegistry, IngestionPipeline pipeline) {
+        DataLoaderService loader = new DataLoaderService();
+        ReflectionTestUtils.setField(loader, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(loader, "chunkRegistry", chunkRegistry);
+        ReflectionTestUtils.setField(loader, "ingestionPipeline", pipeline);
+        ReflectionTestUtils.setField(loader, "textChunker", CHUNKER);
+        return loader;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.aidemo.service.rag;
+
+import com.example.aidemo.Fixtures;
+import com.example.aidemo.service.text.TokenCounter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.document.Document;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prompt building of {@link RagPipeline} for a streamed answer: grouping the retrieved documents into
+ * prompt-sized chunks and rendering one prompt per chunk. Document counts span a single
+ * similarity search ({@code aidemo.retrieval.top-k}) up to the candidates of both hybrid searches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PromptBenchmark {
+    private static final String QUESTION = "What happened to the Coh2 Vitara laser and the RF lock in March 2022?";
+
+    @Param({"60", "200", "400"})
+    public int documentCount;
+
+    private RagPipeline pipeline;
+    private List<Document> documents;
+    private List<List<Document>> chunks;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ChatClient.Builder builder = ChatClient.builder(prompt -> {
+            throw new UnsupportedOperationException("the benchmarks never call the model");
+        });
+        pipeline = new RagPipeline(builder, null, Fixtures.embeddingModel(), null, null, new ContextPacker(new TokenCounter(), 3000),
+                null, null, null, false, Duration.ofMinutes(5));
+        documents = Fixtures.retrievedDocuments(new ObjectMapper(), documentCount);
+        chunks = pipeline.chunkDocuments(QUESTION, documents);
+    }
+
+    @Benchmark
+    public List<List<Document>> chunkDocuments() {
+        return pipeline.chunkDocuments(QUESTION, documents);
+    }
+
+    @Benchmark
+    public void createPrompt(Blackhole blackhole) {
+        for (List<Document> chunk : chunks) {
+            blackhole.consume(pipeline.createPrompt(QUESTION, chunk));
+        }
+    }
+
+    /**
+     * Everything between retrieval and the first model call.
+     */
+    @Benchmark
+    public void chunkAndCreatePrompts(Blackhole blackhole) {
+        for (List<Document> chunk : pipeline.chunkDocuments(QUESTION, documents)) {
+            blackhole.consume(pipeline.createPrompt(QUESTION, chunk));
+        }
+    }
+}
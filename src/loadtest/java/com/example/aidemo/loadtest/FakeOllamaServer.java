@@ -0,0 +1,242 @@
+package com.example.aidemo.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stand-in for the Ollama HTTP API, serving {@code /api/chat} and {@code /api/embed} on a local
+ * port so the application runs without a model server.
+ * <p>
+ * Answers are deterministic: the words of a chat answer are drawn from a generator seeded by the
+ * messages, and an embedding is the normalized sum of one random vector per word, so texts
+ * sharing words are close. Timing follows a GPU server: at most {@code parallel} chat calls and
+ * as many embedding calls are served at once, the others wait for a slot; a chat call then spends
+ * {@code first-token} plus its prompt tokens at {@code prompt-tokens-per-second} before its first
+ * token and streams {@code output-tokens} at {@code tokens-per-second}; an embedding call takes
+ * {@code embed-latency} per text. The date filter prompt, the one mentioning {@code NO_INDEX}, is
+ * answered {@code NO_INDEX}, so questions are retrieved without a period.
+ */
+public class FakeOllamaServer implements AutoCloseable {
+    private static final String[] WORDS = ("the beam was tuned and the klystron tripped again during the shift operators reset "
+            + "the interlock while the vacuum in sector two recovered after the valve closed injector laser timing drifted "
+            + "so the feedback was enabled and orbit corrections were applied to the undulator line magnets power supply "
+            + "fault cleared by the control room after a restart of the ioc and the photon rate returned to nominal").split(" ");
+
+    public record Settings(
+            int parallel,
+            Duration firstToken,
+            double promptTokensPerSecond,
+            double tokensPerSecond,
+            int outputTokens,
+            Duration embedLatency,
+            int dimensions
+    ) {}
+
+    private final Settings settings;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Semaphore chatSlots;
+    private final Semaphore embedSlots;
+    private final Map<String, float[]> wordVectors = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpServer server;
+
+    public FakeOllamaServer(Settings settings) throws IOException {
+        this.settings = settings;
+        this.chatSlots = new Semaphore(settings.parallel(), true);
+        this.embedSlots = new Semaphore(settings.parallel(), true);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/chat", exchange -> handle(exchange, this::chat));
+        server.createContext("/api/embed", exchange -> handle(exchange, this::embed));
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange, JsonNode request) throws IOException, InterruptedException;
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            handler.handle(exchange, objectMapper.readTree(exchange.getRequestBody()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // the client went away, which is how the application cancels a streamed call
+        }
+    }
+
+    private void chat(HttpExchange exchange, JsonNode request) throws IOException, InterruptedException {
+        String model = request.path("model").asText();
+        StringBuilder prompt = new StringBuilder();
+        for (JsonNode message : request.path("messages")) {
+            prompt.append(message.path("content").asText()).append('\n');
+        }
+        // Ollama streams unless told otherwise
+        boolean stream = request.path("stream").asBoolean(true);
+        int promptTokens = prompt.length() / 4;
+        String[] tokens = answer(prompt.toString());
+        long start = System.nanoTime();
+
+        chatSlots.acquire();
+        try {
+            long promptNanos = settings.firstToken().toNanos() + (long) (promptTokens * 1e9 / settings.promptTokensPerSecond());
+            long tokenNanos = (long) (1e9 / settings.tokensPerSecond());
+            LockSupport.parkNanos(promptNanos);
+            if (!stream) {
+                LockSupport.parkNanos(tokenNanos * tokens.length);
+                send(exchange, "application/json", done(chatChunk(model, String.join("", tokens)), promptTokens, tokens.length, start, promptNanos));
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream body = exchange.getResponseBody();
+            for (String token : tokens) {
+                writeLine(body, chatChunk(model, token));
+                LockSupport.parkNanos(tokenNanos);
+            }
+            writeLine(body, done(chatChunk(model, ""), promptTokens, tokens.length, start, promptNanos));
+        } finally {
+            chatSlots.release();
+        }
+    }
+
+    private String[] answer(String prompt) {
+        if (prompt.contains("NO_INDEX")) {
+            return new String[]{"NO_INDEX"};
+        }
+        Random random = new Random(prompt.hashCode());
+        String[] tokens = new String[settings.outputTokens()];
+        for (int i = 0; i < tokens.length; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            tokens[i] = i == 0 ? word : " " + word;
+        }
+        return tokens;
+    }
+
+    private ObjectNode chatChunk(String model, String content) {
+        ObjectNode chunk = objectMapper.createObjectNode()
+                .put("model", model)
+                .put("created_at", Instant.now().toString());
+        chunk.putObject("message").put("role", "assistant").put("content", content);
+        return chunk.put("done", false);
+    }
+
+    /**
+     * The last response of a call, with the counts and durations, in nanoseconds, Ollama reports.
+     */
+    private static ObjectNode done(ObjectNode chunk, int promptTokens, int outputTokens, long start, long promptNanos) {
+        long total = System.nanoTime() - start;
+        return chunk.put("done_reason", "stop")
+                .put("done", true)
+                .put("total_duration", total)
+                .put("load_duration", 0)
+                .put("prompt_eval_count", promptTokens)
+                .put("prompt_eval_duration", promptNanos)
+                .put("eval_count", outputTokens)
+                .put("eval_duration", Math.max(0, total - promptNanos));
+    }
+
+    private void embed(HttpExchange exchange, JsonNode request) throws IOException, InterruptedException {
+        JsonNode input = request.path("input");
+        ObjectNode response = objectMapper.createObjectNode().put("model", request.path("model").asText());
+        ArrayNode embeddings = response.putArray("embeddings");
+        embedSlots.acquire();
+        try {
+            LockSupport.parkNanos(settings.embedLatency().toNanos() * Math.max(1, input.size()));
+            if (input.isArray()) {
+                for (JsonNode text : input) {
+                    addVector(embeddings.addArray(), text.asText());
+                }
+            } else {
+                addVector(embeddings.addArray(), input.asText());
+            }
+        } finally {
+            embedSlots.release();
+        }
+        send(exchange, "application/json", response);
+    }
+
+    private void addVector(ArrayNode target, String text) {
+        float[] sum = new float[settings.dimensions()];
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                float[] vector = wordVectors.computeIfAbsent(word, this::randomVector);
+                for (int i = 0; i < sum.length; i++) {
+                    sum[i] += vector[i];
+                }
+            }
+        }
+        double norm = 0;
+        for (float value : sum) {
+            norm += value * value;
+        }
+        // a text without words gets the vector of the empty word rather than zeros
+        float[] vector = norm == 0 ? wordVectors.computeIfAbsent("", this::randomVector) : sum;
+        float scale = norm == 0 ? 1 : (float) (1 / Math.sqrt(norm));
+        for (float value : vector) {
+            target.add(value * scale);
+        }
+    }
+
+    private float[] randomVector(String word) {
+        Random random = new Random(word.hashCode());
+        float[] vector = new float[settings.dimensions()];
+        double norm = 0;
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private void send(HttpExchange exchange, String contentType, JsonNode response) throws IOException {
+        byte[] body = objectMapper.writeValueAsBytes(response);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private void writeLine(OutputStream body, JsonNode line) throws IOException {
+        body.write(objectMapper.writeValueAsBytes(line));
+        body.write('\n');
+        body.flush();
+    }
+}
@@ -0,0 +1,325 @@
+package com.example.aidemo.loadtest;
+
+import com.example.aidemo.AiDemoApplication;
+import com.example.aidemo.service.ingest.ElogEntry;
+import com.example.aidemo.service.ingest.ElogEntryReader;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end load test that runs offline: the application starts with the {@code embedded}
+ * profile, so vectors stay in its own store under a temporary state directory, against a
+ * {@link FakeOllamaServer} in place of Ollama.
+ * <p>
+ * The eLog exports under {@code data} are ingested once through {@code /api/docs/load}, up to
+ * {@code ingestDocuments} chunks each, by default all of them. Then a mix of questions about
+ * their titles and days is sent in turn to {@code /question-prompt}, {@code /streamed} and
+ * {@code /chat} by {@code concurrency} clients at a time, each level of concurrency for
+ * {@code requests} requests. Latency percentiles, the time to the first event of
+ * the streamed endpoints and the throughput of each level are printed and written as JSON to
+ * {@code results}.
+ * <p>
+ * Settings are system properties prefixed with {@code loadtest.} (see {@code ./gradlew loadtest}),
+ * the arguments are passed on to the application, e.g. {@code --aidemo.model.max-concurrent=8}.
+ */
+public class LoadTest {
+    private static final List<String> ENDPOINTS = List.of("question-prompt", "streamed", "chat");
+    private static final List<String> TITLE_QUESTIONS = List.of(
+            "What happened with %s?",
+            "Summarize the entries about %s",
+            "Was there any follow-up on %s?");
+    private static final List<String> DAY_QUESTIONS = List.of(
+            "What happened on %s?",
+            "What problems were logged on %s?");
+
+    public record Settings(
+            List<Integer> concurrency,
+            int requests,
+            int ingestDocuments,
+            boolean answerCache,
+            Duration requestTimeout,
+            Path results,
+            FakeOllamaServer.Settings ollama
+    ) {
+        static Settings fromSystemProperties() {
+            return new Settings(
+                    Arrays.stream(property("concurrency", "1,2,4,8,16").split(",")).map(String::strip).map(Integer::valueOf).toList(),
+                    Integer.parseInt(property("requests", "48")),
+                    Integer.parseInt(property("ingest-documents", "1000")),
+                    Boolean.parseBoolean(property("answer-cache", "false")),
+                    Duration.parse(property("request-timeout", "PT5M")),
+                    Path.of(property("results", "build/results/loadtest/results.json")),
+                    new FakeOllamaServer.Settings(
+                            Integer.parseInt(property("ollama.parallel", "4")),
+                            Duration.parse(property("ollama.first-token", "PT0.15S")),
+                            Double.parseDouble(property("ollama.prompt-tokens-per-second", "2000")),
+                            Double.parseDouble(property("ollama.tokens-per-second", "40")),
+                            Integer.parseInt(property("ollama.output-tokens", "60")),
+                            Duration.parse(property("ollama.embed-latency", "PT0.01S")),
+                            Integer.parseInt(property("ollama.dimensions", "1024"))));
+        }
+
+        private static String property(String name, String defaultValue) {
+            return System.getProperty("loadtest." + name, defaultValue);
+        }
+    }
+
+    /**
+     * One request: its HTTP status, 0 when it failed without one, the time until the whole
+     * response was read and, for streamed endpoints, until its first event.
+     */
+    private record Sample(String endpoint, int status, long latencyNanos, long firstEventNanos) {
+        boolean ok() {
+            return status == 200;
+        }
+    }
+
+    /**
+     * Latencies in milliseconds, {@code firstEvent*} of the streamed endpoints only.
+     */
+    public record EndpointResult(
+            String endpoint,
+            int concurrency,
+            int requests,
+            int errors,
+            int rejected,
+            double p50,
+            double p95,
+            double p99,
+            Double firstEventP50,
+            Double firstEventP95,
+            Double firstEventP99,
+            double requestsPerSecond
+    ) {}
+
+    public record IngestionResult(int status, double elapsedSeconds, JsonNode report) {}
+
+    public record Report(Settings settings, IngestionResult ingestion, List<EndpointResult> results) {}
+
+    private final Settings settings;
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DURATIONS_AS_TIMESTAMPS);
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final String baseUrl;
+
+    public LoadTest(Settings settings, String baseUrl) {
+        this.settings = settings;
+        this.baseUrl = baseUrl;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = Settings.fromSystemProperties();
+        Path stateDirectory = Files.createTempDirectory("aidemo-loadtest");
+        try (FakeOllamaServer ollama = new FakeOllamaServer(settings.ollama())) {
+            // system properties take precedence over application.yaml, the arguments over both
+            Map.of(
+                    "server.port", "0",
+                    "spring.ai.ollama.base-url", ollama.baseUrl(),
+                    "spring.ai.vectorstore.pgvector.dimensions", String.valueOf(settings.ollama().dimensions()),
+                    "aidemo.ingest.state-dir", stateDirectory.toString(),
+                    "aidemo.answer-cache.enabled", String.valueOf(settings.answerCache()),
+                    "aidemo.answer.timeout", settings.requestTimeout().toString()
+            ).forEach(System::setProperty);
+            try (ConfigurableApplicationContext application = new SpringApplicationBuilder(AiDemoApplication.class)
+                    .profiles("embedded")
+                    .run(args)) {
+                LoadTest loadTest = new LoadTest(settings, "http://localhost:" + application.getEnvironment().getProperty("local.server.port"));
+                Report report = loadTest.run();
+                Files.createDirectories(settings.results().toAbsolutePath().getParent());
+                loadTest.objectMapper.writerWithDefaultPrettyPrinter().writeValue(settings.results().toFile(), report);
+                System.out.println("Results written to " + settings.results().toAbsolutePath());
+            }
+        } finally {
+            FileSystemUtils.deleteRecursively(stateDirectory);
+        }
+    }
+
+    public Report run() throws Exception {
+        IngestionResult ingestion = ingest();
+        System.out.printf("Ingestion: HTTP %d in %.1f s%n", ingestion.status(), ingestion.elapsedSeconds());
+
+        List<String> questions = questions();
+        List<EndpointResult> results = new ArrayList<>();
+        System.out.printf("%-16s %5s %6s %6s %6s %9s %9s %9s %9s %9s %9s %8s%n", "endpoint", "conc", "reqs", "errors", "429",
+                "p50 ms", "p95 ms", "p99 ms", "1st p50", "1st p95", "1st p99", "req/s");
+        for (int concurrency : settings.concurrency()) {
+            long start = System.nanoTime();
+            List<Sample> samples = runLevel(concurrency, questions);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            for (String endpoint : Stream.concat(ENDPOINTS.stream(), Stream.of("all")).toList()) {
+                List<Sample> endpointSamples = samples.stream().filter(sample -> endpoint.equals("all") || sample.endpoint().equals(endpoint)).toList();
+                EndpointResult result = summarize(endpoint, concurrency, endpointSamples, seconds);
+                results.add(result);
+                print(result);
+            }
+        }
+        return new Report(settings, ingestion, results);
+    }
+
+    private IngestionResult ingest() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<String> response = httpClient.send(
+                HttpRequest.newBuilder(URI.create(baseUrl + "/api/docs/load?maxDocuments=" + settings.ingestDocuments())).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        JsonNode report = response.statusCode() == 200 ? objectMapper.readTree(response.body()) : null;
+        return new IngestionResult(response.statusCode(), elapsed, report);
+    }
+
+    /**
+     * Questions about the titles and days of the ingested exports, shuffled with a fixed seed so
+     * every run sends the same sequence. Only the first {@code ingestDocuments} entries of each
+     * export are asked about, ingestion stops at that many chunks per file.
+     */
+    private List<String> questions() throws IOException {
+        List<String> questions = new ArrayList<>();
+        Resource[] exports = new PathMatchingResourcePatternResolver().getResources("classpath:data/*.json");
+        for (Resource export : exports) {
+            try (InputStream in = export.getInputStream();
+                 ElogEntryReader reader = new ElogEntryReader(objectMapper.getFactory().createParser(in))) {
+                ElogEntry entry;
+                int entries = 0;
+                while (entries++ < settings.ingestDocuments() && (entry = reader.next()) != null) {
+                    if (entry.title() != null && !entry.title().isBlank()) {
+                        questions.add(TITLE_QUESTIONS.get(questions.size() % TITLE_QUESTIONS.size()).formatted(entry.title().strip()));
+                    }
+                    if (entry.eventAt() != null && entry.eventAt().length() >= 10) {
+                        questions.add(DAY_QUESTIONS.get(questions.size() % DAY_QUESTIONS.size()).formatted(entry.eventAt().substring(0, 10)));
+                    }
+                }
+            }
+        }
+        if (questions.isEmpty()) {
+            throw new IllegalStateException("No eLog entries under classpath:data to ask about");
+        }
+        Collections.shuffle(questions, new Random(42));
+        return questions;
+    }
+
+    /**
+     * Sends {@code requests} requests from {@code concurrency} clients, each sending its next
+     * request once the previous one has been read to the end.
+     */
+    private List<Sample> runLevel(int concurrency, List<String> questions) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        List<Sample> samples = Collections.synchronizedList(new ArrayList<>());
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int client = 0; client < concurrency; client++) {
+                String clientId = "loadtest-" + client;
+                clients.submit(() -> {
+                    int index;
+                    while ((index = next.getAndIncrement()) < settings.requests()) {
+                        String endpoint = ENDPOINTS.get(index % ENDPOINTS.size());
+                        samples.add(send(endpoint, questions.get(index % questions.size()), clientId));
+                    }
+                });
+            }
+        }
+        return samples;
+    }
+
+    private Sample send(String endpoint, String question, String clientId) {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .timeout(settings.requestTimeout())
+                .header("X-Client-Id", clientId);
+        String message = URLEncoder.encode(question, StandardCharsets.UTF_8);
+        switch (endpoint) {
+            case "question-prompt" -> request.uri(URI.create(baseUrl + "/question-prompt?message=" + message)).GET();
+            case "streamed" -> request.uri(URI.create(baseUrl + "/streamed?message=" + message)).GET();
+            default -> request.uri(URI.create(baseUrl + "/chat"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.createObjectNode()
+                            .put("model", "llama3.1:latest")
+                            .put("message", question)
+                            .toString()));
+        }
+        long start = System.nanoTime();
+        try {
+            HttpResponse<Stream<String>> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofLines());
+            long firstEvent = -1;
+            try (Stream<String> lines = response.body()) {
+                for (String line : (Iterable<String>) lines::iterator) {
+                    if (firstEvent < 0 && line.startsWith("data:")) {
+                        firstEvent = System.nanoTime() - start;
+                    }
+                }
+            }
+            return new Sample(endpoint, response.statusCode(), System.nanoTime() - start, firstEvent);
+        } catch (IOException e) {
+            return new Sample(endpoint, 0, System.nanoTime() - start, -1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Sample(endpoint, 0, System.nanoTime() - start, -1);
+        }
+    }
+
+    /**
+     * Percentiles are taken over the successful requests, throughput counts them against the
+     * wall clock of the whole level.
+     */
+    private static EndpointResult summarize(String endpoint, int concurrency, List<Sample> samples, double seconds) {
+        List<Sample> ok = samples.stream().filter(Sample::ok).toList();
+        long[] latencies = ok.stream().mapToLong(Sample::latencyNanos).sorted().toArray();
+        long[] firstEvents = ok.stream().mapToLong(Sample::firstEventNanos).filter(nanos -> nanos >= 0).sorted().toArray();
+        int rejected = (int) samples.stream().filter(sample -> sample.status() == 429).count();
+        boolean streamed = firstEvents.length > 0;
+        return new EndpointResult(endpoint, concurrency, samples.size(), samples.size() - ok.size() - rejected, rejected,
+                percentile(latencies, 50), percentile(latencies, 95), percentile(latencies, 99),
+                streamed ? percentile(firstEvents, 50) : null,
+                streamed ? percentile(firstEvents, 95) : null,
+                streamed ? percentile(firstEvents, 99) : null,
+                seconds == 0 ? 0 : ok.size() / seconds);
+    }
+
+    /**
+     * Nearest-rank percentile of sorted nanoseconds, in milliseconds.
+     */
+    private static double percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    private static void print(EndpointResult result) {
+        System.out.printf("%-16s %5d %6d %6d %6d %9.1f %9.1f %9.1f %9s %9s %9s %8.2f%n", result.endpoint(), result.concurrency(),
+                result.requests(), result.errors(), result.rejected(), result.p50(), result.p95(), result.p99(),
+                format(result.firstEventP50()), format(result.firstEventP95()), format(result.firstEventP99()), result.requestsPerSecond());
+    }
+
+    private static String format(Double millis) {
+        return millis == null ? "-" : "%.1f".formatted(millis);
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.aidemo.controller;
+
+import java.util.List;
+
+/**
+ * Title and tags generated for an eLog entry, or the reason there are none in {@code error}.
+ */
+public record ClassifiedEntryDTO(
+        String id,
+        String title,
+        List<String> tags,
+        String error
+) {}
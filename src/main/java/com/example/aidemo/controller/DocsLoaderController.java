@@ -1,23 +1,169 @@
 package com.example.aidemo.controller;
 
-import com.example.aidemo.service.DataLoaderService;
+import com.example.aidemo.service.embedding.CachingEmbeddingModel;
+import com.example.aidemo.service.embedding.EmbeddingCacheStats;
+import com.example.aidemo.service.ingest.IngestionReport;
+import com.example.aidemo.service.job.LoadJobService;
+import com.example.aidemo.service.job.LoadJobStatus;
+import com.example.aidemo.service.lexical.LexicalIndexRebuilder;
+import com.example.aidemo.service.vectorstore.PartitionedPgVectorStore;
+import com.example.aidemo.service.vectorstore.QuantizationReport;
+import com.example.aidemo.service.vectorstore.QuantizationReporter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/docs")
 public class DocsLoaderController {
     @Autowired
-    private DataLoaderService docsLoaderService;
+    private LoadJobService loadJobService;
+    @Autowired
+    private CachingEmbeddingModel embeddingModel;
+    @Autowired(required = false)
+    private PartitionedPgVectorStore partitionedVectorStore;
+    @Autowired
+    private QuantizationReporter quantizationReporter;
+    @Autowired
+    private LexicalIndexRebuilder lexicalIndexRebuilder;
 
+    /**
+     * Loads the documents as a job and waits for it, prefer the job endpoints for anything but small loads.
+     */
     @GetMapping("/load")
-    public String loadDocuments(
+    public IngestionReport loadDocuments(
             @RequestParam(defaultValue = "10") int maxDocuments
     ) {
-        docsLoaderService.load(maxDocuments);
-        return "Documents loaded successfully";
+        LoadJobStatus status;
+        try {
+            status = loadJobService.submitAndWait(maxDocuments);
+        } catch (RejectedExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many load jobs waiting");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Load interrupted");
+        }
+        return switch (status.state()) {
+            case SUCCEEDED -> status.report();
+            case CANCELLED -> throw new ResponseStatusException(HttpStatus.CONFLICT, "Load job " + status.id() + " was cancelled");
+            default -> throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+                    "Load job " + status.id() + " failed: " + status.error());
+        };
+    }
+
+    @PostMapping("/jobs")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public LoadJobStatus submitLoadJob(
+            @RequestParam(defaultValue = "10") int maxDocuments
+    ) {
+        try {
+            return loadJobService.submit(maxDocuments);
+        } catch (RejectedExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many load jobs waiting");
+        }
+    }
+
+    @GetMapping("/jobs")
+    public List<LoadJobStatus> loadJobs() {
+        return loadJobService.list();
+    }
+
+    @GetMapping("/jobs/{id}")
+    public LoadJobStatus loadJob(@PathVariable String id) {
+        return loadJobService.status(id).orElseThrow(() -> jobNotFound(id));
+    }
+
+    /**
+     * Streams the status of a job every second until it has finished.
+     */
+    @GetMapping(value = "/jobs/{id}/progress", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<LoadJobStatus> loadJobProgress(@PathVariable String id) {
+        loadJob(id);
+        return Flux.interval(Duration.ZERO, Duration.ofSeconds(1))
+                .map(tick -> loadJobService.status(id).orElseThrow(() -> jobNotFound(id)))
+                .takeUntil(status -> status.state().isFinished());
+    }
+
+    @DeleteMapping("/jobs/{id}")
+    public LoadJobStatus cancelLoadJob(@PathVariable String id) {
+        return loadJobService.cancel(id).orElseThrow(() -> jobNotFound(id));
+    }
+
+    @GetMapping("/embedding-cache")
+    public EmbeddingCacheStats embeddingCacheStats() {
+        return embeddingModel.stats();
+    }
+
+    /**
+     * Indexes every document of the vector store again in the lexical index, returns how many.
+     */
+    @PostMapping("/lexical-index/rebuild")
+    public int rebuildLexicalIndex() {
+        return lexicalIndexRebuilder.rebuild();
+    }
+
+    @GetMapping("/partitions")
+    public List<PartitionedPgVectorStore.Partition> partitions() {
+        return partitionedVectorStore().partitions();
+    }
+
+    /**
+     * Drops the vectors of every partition ending on or before {@code before}.
+     */
+    @DeleteMapping("/partitions")
+    public List<String> dropPartitions(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate before
+    ) {
+        return partitionedVectorStore().dropBefore(before);
+    }
+
+    /**
+     * Merges the daily partitions of every month ending on or before {@code before} into monthly ones.
+     */
+    @PostMapping("/partitions/compact")
+    public List<String> compactPartitions(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate before
+    ) {
+        return partitionedVectorStore().compact(before);
+    }
+
+    /**
+     * Recall and size of every quantization on up to {@code sample} stored vectors, {@code queries}
+     * of which are searched for their {@code topK} nearest neighbours.
+     */
+    @GetMapping("/quantization-report")
+    public QuantizationReport quantizationReport(
+            @RequestParam(defaultValue = "5000") int sample,
+            @RequestParam(defaultValue = "100") int queries,
+            @RequestParam(defaultValue = "10") int topK
+    ) {
+        return quantizationReporter.measure(sample, queries, topK);
+    }
+
+    private PartitionedPgVectorStore partitionedVectorStore() {
+        if (partitionedVectorStore == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "The vector store is not partitioned");
+        }
+        return partitionedVectorStore;
+    }
+
+    private static ResponseStatusException jobNotFound(String id) {
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, "No load job " + id);
     }
-}
\ No newline at end of file
+}
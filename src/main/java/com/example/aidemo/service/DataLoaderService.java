@@ -1,15 +1,23 @@
 package com.example.aidemo.service;
 
+import com.example.aidemo.service.ingest.ChunkBatch;
+import com.example.aidemo.service.ingest.ChunkKey;
+import com.example.aidemo.service.ingest.ChunkRegistry;
+import com.example.aidemo.service.ingest.ElogEntry;
+import com.example.aidemo.service.ingest.ElogEntryReader;
+import com.example.aidemo.service.ingest.IngestionPipeline;
+import com.example.aidemo.service.ingest.IngestionReport;
+import com.example.aidemo.service.ingest.IngestionStats;
+import com.example.aidemo.service.ingest.SourceUnit;
+import com.example.aidemo.service.text.TextChunker;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.james.mime4j.dom.datetime.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
 import org.springframework.ai.reader.tika.TikaDocumentReader;
-import org.springframework.ai.transformer.splitter.TokenTextSplitter;
-import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.ai.vectorstore.VectorStore;
-import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
@@ -21,178 +29,161 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
 
 @Service
 public class DataLoaderService {
+    private static final Logger log = LoggerFactory.getLogger(DataLoaderService.class);
+    /**
+     * Tokens of the JSON keys and punctuation around the fields of an {@link EntryChunk}.
+     */
+    private static final int ENVELOPE_TOKENS = 16;
+
+    /**
+     * Content of an eLog chunk: every chunk of an entry carries its title and date.
+     */
+    record EntryChunk(String title, String eventDate, String content) {}
+
     @Value("classpath:/data")
     private Resource pdfResource;
     private DateTimeFormatter formatter =  DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
     @Autowired
-    private VectorStore vectorStore;
-    @Autowired
     private ObjectMapper objectMapper;
+    @Autowired
+    private ChunkRegistry chunkRegistry;
+    @Autowired
+    private IngestionPipeline ingestionPipeline;
+    @Autowired
+    private TextChunker textChunker;
 
-    public void load(int maxDocuments) {
+    public IngestionReport load(int maxDocuments) {
+        return load(maxDocuments, new IngestionStats(), () -> false);
+    }
+
+    /**
+     * Loads every file of the data folder, reporting progress into {@code stats} and stopping
+     * with a {@link java.util.concurrent.CancellationException} once {@code cancelled} is true.
+     */
+    public IngestionReport load(int maxDocuments, IngestionStats stats, BooleanSupplier cancelled) {
         try {
             Path folderPath = Paths.get(pdfResource.getURI());
-            var allDocuments = Files.list(folderPath)
-                    .filter(Files::isRegularFile)
-                    .toList();
-            // scan all documents
-            for (Path path : allDocuments) {
-                List<Document> toStore = new ArrayList<>();
-                String resourcePath = "data/" + path.getFileName().toString();
-                if (resourcePath.endsWith(".pdf")) {
-                    ClassPathResource res = new ClassPathResource(resourcePath);
-                    // create the resource from path
-                    var pagePdfDocumentReader = new PagePdfDocumentReader(res);
-                    var extractedDocument = pagePdfDocumentReader.read()
-                            .stream()
-                            .filter(doc -> {
-                                        FilterExpressionBuilder b = new FilterExpressionBuilder();
-                                        // check if document is already present in vector store
-                                        var foundDoc = vectorStore.similaritySearch(SearchRequest.defaults()
-                                                .withQuery(doc.getContent())
-                                                .withFilterExpression(b.eq("file_name", path.getFileName().toString()).build()));
-                                        return foundDoc.isEmpty();
-                                    }
-                            )
-                            .toList();
-                    if (!extractedDocument.isEmpty()) {
-                        toStore.addAll(extractedDocument);
-                    }
-                }
-                if (resourcePath.endsWith(".json")) {
-                    ClassPathResource res = new ClassPathResource(resourcePath);
-                    // create the resource from path
-                    loadJson(res.getInputStream(), maxDocuments);
-                } else {
-                    ClassPathResource res = new ClassPathResource(resourcePath);
-                    TikaDocumentReader tikaDocumentReader = new TikaDocumentReader(res);
-                    var extractedDocument = tikaDocumentReader.read()
-                            .stream()
-                            .filter(doc -> {
-                                        FilterExpressionBuilder b = new FilterExpressionBuilder();
-                                        // check if document is already present in vector store
-                                        var foundDoc = vectorStore.similaritySearch(SearchRequest.defaults()
-                                                .withQuery(doc.getContent())
-                                                .withFilterExpression(b.eq("file_name", path.getFileName().toString()).build()));
-                                        return foundDoc.isEmpty();
-                                    }
-                            )
-                            .toList();
-                    toStore.addAll(extractedDocument);
-                }
-                var tokenTextSplitter = new TokenTextSplitter();
-                var tokens = tokenTextSplitter.split(toStore);
-                this.vectorStore.accept(tokens);
+            List<Path> allDocuments;
+            try (var files = Files.list(folderPath)) {
+                allDocuments = files
+                        .filter(Files::isRegularFile)
+                        .sorted()
+                        .toList();
             }
+            // scan all documents, parsing of the next file overlaps with embedding of the current one
+            return ingestionPipeline.run(allDocuments, this::parse, maxDocuments, stats, cancelled);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public void loadJson(InputStream inputStream, int maxDocuments) {
-        int curDocuments = 0;
-        try {
-            int docProcessingBatchSize = Math.min(100, maxDocuments);
-            // Parse the entire InputStream into an Object
-            Object jsonElement = objectMapper.readValue(inputStream, Object.class);
-            List<Document> documents = new ArrayList<>();
-            if (jsonElement instanceof List) {
-                for (Map<String, Object> jsonDoc : (List<Map<String, Object>>) jsonElement) {
-                    processMongoDBJsonDocument(jsonDoc, documents);
-                    if (documents.size() >= docProcessingBatchSize) {
-                        curDocuments += documents.size();
-                        System.out.println("Adding 100 documents to the vector store");
-                        vectorStore.add(documents);
-                        documents.clear();
-                        if(curDocuments >= maxDocuments) {
-                            break;
-                        }
-                    }
+    /**
+     * Parse stage of the ingestion pipeline: eLog exports are streamed entry by entry, any other
+     * file is extracted as a whole.
+     */
+    private void parse(Path path, Predicate<SourceUnit> sink) throws IOException {
+        String fileName = path.getFileName().toString();
+        String resourcePath = "data/" + fileName;
+        ClassPathResource res = new ClassPathResource(resourcePath);
+        if (resourcePath.endsWith(".json")) {
+            parseJson(path, res.getInputStream(), sink);
+        } else {
+            List<Document> extracted = resourcePath.endsWith(".pdf")
+                    ? new PagePdfDocumentReader(res).read()
+                    : new TikaDocumentReader(res).read();
+            sink.test(new SourceUnit(path, 0, fileName, Files.size(path), batch -> addFileDocuments(fileName, extracted, batch)));
+        }
+    }
+
+    /**
+     * Streams the entries of an eLog export, one unit per entry.
+     */
+    void parseJson(Path path, InputStream inputStream, Predicate<SourceUnit> sink) throws IOException {
+        try (ElogEntryReader reader = new ElogEntryReader(objectMapper.getFactory().createParser(inputStream))) {
+            long ordinal = 0;
+            ElogEntry entry;
+            while ((entry = reader.next()) != null) {
+                ElogEntry current = entry;
+                if (!sink.test(new SourceUnit(path, ordinal++, entry.id(), reader.position(), batch -> processMongoDBJsonDocument(current, batch)))) {
+                    break;
                 }
-            } else if (jsonElement instanceof Map) {
-                // If it's a single JSON object
-                Map<String, Object> jsonDoc = (Map<String, Object>) jsonElement;
-                processMongoDBJsonDocument(jsonDoc, documents);
             }
+        }
+    }
 
-            // Add remaining documents to the vector store
-            if (!documents.isEmpty()) {
-                vectorStore.add(documents);
+    /**
+     * Splits the pages extracted from a pdf or office file and adds the chunks that are not
+     * already in the vector store. Chunks are keyed by file name and position in the file.
+     */
+    private void addFileDocuments(String fileName, List<Document> extracted, ChunkBatch batch) {
+        int currentChunkId = 0;
+        for (Document page : extracted) {
+            for (String chunk : textChunker.split(page.getContent())) {
+                currentChunkId++;
+                ChunkKey key = ChunkKey.of(fileName, Integer.toString(currentChunkId), chunk);
+                if (chunkRegistry.isCurrent(key)) {
+                    continue;
+                }
+                Map<String, Object> metadata = new HashMap<>(page.getMetadata());
+                metadata.putIfAbsent("file_name", fileName);
+                metadata.put("chunkId", Integer.toString(currentChunkId));
+                batch.add(new Document(key.documentId(), chunk, metadata), key, chunkRegistry.supersededDocumentId(key));
             }
-        } catch (Exception e) {
-            throw new RuntimeException(e);
         }
+        removeLeftoverChunks(fileName, currentChunkId, batch);
     }
 
-    private void processMongoDBJsonDocument(Map<String, Object> jsonDoc, List<Document> documents) throws JsonProcessingException, ParseException {
-        Map<String, Object> mongoDbId = (Map<String, Object>) jsonDoc.get("_id");
-        Map<String, Object> eventAtField = (Map<String, Object>) jsonDoc.get("eventAt");
-        String eventAtDate = eventAtField.get("$date").toString();
-        // create a separate has table with title and text fields
-        Map<String, String> titleAndText = new HashMap<>();
-        titleAndText.putIfAbsent("title", (String) jsonDoc.getOrDefault("title", ""));
-        titleAndText.putIfAbsent("content", (String) jsonDoc.getOrDefault("text", ""));
-        titleAndText.putIfAbsent("eventDate", eventAtDate);
-        // write map to jsons string
+    void processMongoDBJsonDocument(ElogEntry entry, ChunkBatch batch) throws JsonProcessingException {
+        String eventAtDate = entry.eventAt();
+        // the text is split on its own, title and date are repeated around every chunk and taken off its budget
+        int envelope = textChunker.count(entry.title()) + textChunker.count(eventAtDate) + ENVELOPE_TOKENS;
+        List<String> texts = textChunker.split(entry.text(), Math.max(textChunker.maxTokens() / 4, textChunker.maxTokens() - envelope));
+        if (texts.isEmpty()) {
+            texts = List.of("");
+        }
         int currentChunkId = 0;
-        List<String> chunks = splitIntoChunks(new ObjectMapper().writeValueAsString(titleAndText), 1000);
-        for (String chunk : chunks) {
+        for (String text : texts) {
             currentChunkId++;
-
-            Document document = createDocument(mongoDbId.get("$oid").toString(), eventAtDate, chunk, currentChunkId);
-            FilterExpressionBuilder b = new FilterExpressionBuilder();
-            // check if document is already present in vector store
-            var foundDoc = vectorStore.similaritySearch(SearchRequest.defaults()
-                    .withQuery(document.getContent())
-                    .withFilterExpression(
-                            b.and(
-                                    b.eq("mongoDbId", mongoDbId.get("$oid")),
-                                    b.eq("chunkId", Integer.toString(currentChunkId))
-                            ).build())
-            );
-            if (foundDoc.isEmpty()) {
-                documents.add(document);
+            String chunk = objectMapper.writeValueAsString(new EntryChunk(entry.title(), eventAtDate, text));
+            // skip the chunk when the same content is already stored, replace it when it changed
+            ChunkKey key = ChunkKey.of(entry.id(), Integer.toString(currentChunkId), chunk);
+            if (chunkRegistry.isCurrent(key)) {
+                continue;
             }
-
+            Document document = createDocument(key.documentId(), entry.id(), entry.originId(), eventAtDate, chunk, currentChunkId);
+            batch.add(document, key, chunkRegistry.supersededDocumentId(key));
         }
+        removeLeftoverChunks(entry.id(), currentChunkId, batch);
     }
 
-    private Document createDocument(String mongoDbId,  String eventAtDate, String content, int chunkId) {
-        Map<String, Object> metadata = new HashMap<>();
-        metadata.putIfAbsent("mongoDbId", mongoDbId);
-        metadata.putIfAbsent("eventDate", eventAtDate);
-        metadata.putIfAbsent("chunkId", Integer.toString(chunkId));
-        return new Document(content, metadata);
+    /**
+     * Deletes the chunks a source was stored with past its last chunk, when it now splits into
+     * fewer chunks than before.
+     */
+    private void removeLeftoverChunks(String sourceId, int lastChunkId, ChunkBatch batch) {
+        for (ChunkKey stored : chunkRegistry.storedAfter(sourceId, lastChunkId)) {
+            batch.remove(stored);
+        }
     }
 
-    private List<String> splitIntoChunks(String content, int maxTokens) {
-        List<String> chunks = new ArrayList<>();
-        String[] words = content.split("\\s+");
-        StringBuilder chunk = new StringBuilder();
-        int tokenCount = 0;
-        for (String word : words) {
-            // Estimate token count for the word (approximated by character length for simplicity)
-            int wordTokens = word.length() / 4;  // Rough estimate: 1 token = ~4 characters
-            if (tokenCount + wordTokens > maxTokens) {
-                chunks.add(chunk.toString());
-                chunk.setLength(0); // Clear the buffer
-                tokenCount = 0;
-            }
-            chunk.append(word).append(" ");
-            tokenCount += wordTokens;
-        }
-        if (chunk.length() > 0) {
-            chunks.add(chunk.toString());
+    Document createDocument(String documentId, String mongoDbId, String originId, String eventAtDate, String content, int chunkId) {
+        Map<String, Object> metadata = HashMap.newHashMap(4);
+        metadata.put("mongoDbId", mongoDbId);
+        if (originId != null) {
+            metadata.put("originId", originId);
         }
-        return chunks;
+        metadata.put("eventDate", eventAtDate);
+        metadata.put("chunkId", Integer.toString(chunkId));
+        return new Document(documentId, content, metadata);
     }
 }
@@ -0,0 +1,22 @@
+package com.example.aidemo.service.classify;
+
+/**
+ * Progress and throughput of a classification run.
+ * <p>
+ * {@code skipped} counts entries classified by an earlier request of the same run,
+ * {@code failed} entries still without a valid title and tags after every retry, which the
+ * next request of the run tries again. {@code retriedPrompts} counts the prompts sent again for
+ * the entries of an invalid answer.
+ */
+public record ClassificationReport(
+        String run,
+        boolean finished,
+        double elapsedSeconds,
+        long entries,
+        long skipped,
+        long classified,
+        long failed,
+        long prompts,
+        long retriedPrompts,
+        double entriesPerSecond
+) {}
@@ -0,0 +1,191 @@
+package com.example.aidemo.service.classify;
+
+import com.example.aidemo.controller.ClassifiedEntryDTO;
+import com.example.aidemo.service.ingest.ElogEntry;
+import com.example.aidemo.service.ingest.ElogEntryReader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Classifies eLog exports in bulk, resumably.
+ * <p>
+ * Every run has an id and a checkpoint, {@code state-dir/classifications/<run>.jsonl}, holding a
+ * line per entry classified so far. Sending an export again under the same run id skips the
+ * entries already in the checkpoint, so an interrupted backfill carries on where it stopped and
+ * only the entries that failed are tried again. The report of a run is kept while the
+ * application runs.
+ */
+@Service
+public class ClassificationRunService {
+    private static final Logger log = LoggerFactory.getLogger(ClassificationRunService.class);
+    private static final Pattern RUN_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+    private static final int RETAINED_FINISHED_RUNS = 100;
+
+    private final TitleTagsClassifier classifier;
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final Map<String, ClassificationStats> runs = new ConcurrentHashMap<>();
+
+    public ClassificationRunService(
+            TitleTagsClassifier classifier,
+            ObjectMapper objectMapper,
+            @Value("${aidemo.ingest.state-dir:.aidemo}") String stateDirectory) {
+        this.classifier = classifier;
+        this.objectMapper = objectMapper;
+        this.directory = Path.of(stateDirectory, "classifications");
+    }
+
+    /**
+     * Classifies the entries of {@code export}, a top-level array of entries or one entry per
+     * line, skipping those the run has already classified. The export is read as the results are
+     * consumed and closed once they end.
+     *
+     * @throws IllegalArgumentException when {@code run} is not a valid run id
+     * @throws IllegalStateException when the run is already in progress
+     */
+    public Flux<ClassifiedEntryDTO> classify(String run, InputStream export) {
+        if (!RUN_ID.matcher(run).matches()) {
+            throw new IllegalArgumentException("A run id is 1 to 64 letters, digits, '.', '_' or '-'");
+        }
+        evictFinishedRuns();
+        ClassificationStats stats = new ClassificationStats(run);
+        ClassificationStats previous = runs.compute(run, (id, existing) -> existing == null || existing.isFinished() ? stats : existing);
+        if (previous != stats) {
+            throw new IllegalStateException("Run " + run + " is in progress");
+        }
+        Path checkpoint = directory.resolve(run + ".jsonl");
+        return Flux.using(
+                        () -> new Checkpoint(checkpoint),
+                        done -> classifier.classify(entries(export)
+                                        .doOnNext(entry -> stats.entry())
+                                        .filter(entry -> {
+                                            if (done.contains(entry.id())) {
+                                                stats.skipped();
+                                                return false;
+                                            }
+                                            return true;
+                                        }), stats)
+                                .doOnNext(done::add),
+                        Checkpoint::close)
+                .subscribeOn(Schedulers.boundedElastic())
+                .doFinally(signal -> {
+                    stats.finish();
+                    log.info("Classification run {} {}: {}", run, signal, stats.report());
+                });
+    }
+
+    public Optional<ClassificationReport> report(String run) {
+        return Optional.ofNullable(runs.get(run)).map(ClassificationStats::report);
+    }
+
+    private void evictFinishedRuns() {
+        List<ClassificationStats> finished = runs.values().stream()
+                .filter(ClassificationStats::isFinished)
+                .sorted(Comparator.comparingLong(ClassificationStats::finishNanos))
+                .toList();
+        for (int i = 0; i < finished.size() - RETAINED_FINISHED_RUNS; i++) {
+            runs.remove(finished.get(i).run());
+        }
+    }
+
+    /**
+     * Reads the export on the bounded elastic scheduler, one entry per request.
+     */
+    private Flux<ElogEntry> entries(InputStream export) {
+        return Flux.<ElogEntry, ElogEntryReader>using(
+                        () -> new ElogEntryReader(objectMapper.getFactory().createParser(export)),
+                        reader -> Flux.generate(sink -> {
+                            try {
+                                ElogEntry entry = reader.next();
+                                if (entry == null) {
+                                    sink.complete();
+                                } else {
+                                    sink.next(entry);
+                                }
+                            } catch (IOException e) {
+                                sink.error(e);
+                            }
+                        }),
+                        reader -> {
+                            try {
+                                reader.close();
+                            } catch (IOException e) {
+                                log.warn("Could not close the export", e);
+                            }
+                        })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * The ids of the entries a run has classified, and the file they are appended to.
+     */
+    private final class Checkpoint {
+        private final Set<String> ids = ConcurrentHashMap.newKeySet();
+        private final BufferedWriter writer;
+
+        Checkpoint(Path file) throws IOException {
+            Files.createDirectories(file.getParent());
+            if (Files.exists(file)) {
+                try (BufferedReader reader = Files.newBufferedReader(file)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (!line.isBlank()) {
+                            ids.add(objectMapper.readValue(line, ClassifiedEntryDTO.class).id());
+                        }
+                    }
+                }
+            }
+            writer = Files.newBufferedWriter(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+
+        boolean contains(String id) {
+            return ids.contains(id);
+        }
+
+        /**
+         * Records a classified entry, failed ones are left for the next request of the run.
+         */
+        synchronized void add(ClassifiedEntryDTO entry) {
+            if (entry.error() != null) {
+                return;
+            }
+            try {
+                writer.write(objectMapper.writeValueAsString(entry));
+                writer.newLine();
+                writer.flush();
+                ids.add(entry.id());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void close() {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.warn("Could not close the classification checkpoint", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.aidemo.service.classify;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a classification run, updated live as entries are read and classified.
+ */
+public class ClassificationStats {
+    private final String run;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong entries = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong classified = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong prompts = new AtomicLong();
+    private final AtomicLong retriedPrompts = new AtomicLong();
+    private volatile long finishNanos;
+
+    public ClassificationStats(String run) {
+        this.run = run;
+    }
+
+    void entry() {
+        entries.incrementAndGet();
+    }
+
+    void skipped() {
+        skipped.incrementAndGet();
+    }
+
+    void classified() {
+        classified.incrementAndGet();
+    }
+
+    void failed() {
+        failed.incrementAndGet();
+    }
+
+    void prompt(boolean retry) {
+        prompts.incrementAndGet();
+        if (retry) {
+            retriedPrompts.incrementAndGet();
+        }
+    }
+
+    void finish() {
+        finishNanos = System.nanoTime();
+    }
+
+    String run() {
+        return run;
+    }
+
+    long finishNanos() {
+        return finishNanos;
+    }
+
+    public boolean isFinished() {
+        return finishNanos != 0;
+    }
+
+    public ClassificationReport report() {
+        long end = isFinished() ? finishNanos : System.nanoTime();
+        double elapsed = (end - startNanos) / 1_000_000_000.0;
+        long done = classified.get() + failed.get();
+        return new ClassificationReport(run, isFinished(), elapsed, entries.get(), skipped.get(), classified.get(), failed.get(),
+                prompts.get(), retriedPrompts.get(), elapsed > 0 ? done / elapsed : 0);
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.aidemo.service.classify;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Recovers the JSON document from chat model output that is almost JSON: wrapped in a markdown
+ * code fence or in prose, written with typographic quotes, with trailing commas, or cut short by
+ * the output limit.
+ */
+final class JsonRepair {
+    private JsonRepair() {
+    }
+
+    /**
+     * The JSON object or array in {@code output}, repaired, or {@code output} itself when it holds
+     * none.
+     */
+    static String repair(String output) {
+        // typographic quotes are only taken for delimiters when there are no others
+        String text = output.indexOf('"') < 0 ? output.replace('“', '"').replace('”', '"') : output;
+        int start = firstOf(text, '{', '[');
+        if (start < 0) {
+            return output;
+        }
+        StringBuilder json = new StringBuilder(text.length() - start + 4);
+        Deque<Character> closers = new ArrayDeque<>();
+        boolean inString = false;
+        boolean escaped = false;
+        for (int i = start; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (inString) {
+                json.append(c);
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            switch (c) {
+                case '"' -> {
+                    inString = true;
+                    json.append(c);
+                }
+                case '{' -> {
+                    closers.push('}');
+                    json.append(c);
+                }
+                case '[' -> {
+                    closers.push(']');
+                    json.append(c);
+                }
+                case '}', ']' -> {
+                    if (closers.isEmpty() || closers.peek() != c) {
+                        // a stray closer, the document ended before it
+                        return close(json, closers, false);
+                    }
+                    dropTrailingComma(json);
+                    json.append(closers.pop());
+                    if (closers.isEmpty()) {
+                        // anything after the document is prose
+                        return json.toString();
+                    }
+                }
+                default -> json.append(c);
+            }
+        }
+        return close(json, closers, inString);
+    }
+
+    /**
+     * Closes what a truncated document left open.
+     */
+    private static String close(StringBuilder json, Deque<Character> closers, boolean inString) {
+        if (inString) {
+            json.append('"');
+        }
+        while (!closers.isEmpty()) {
+            dropTrailingComma(json);
+            json.append(closers.pop());
+        }
+        return json.toString();
+    }
+
+    private static void dropTrailingComma(StringBuilder json) {
+        int end = json.length();
+        while (end > 0 && Character.isWhitespace(json.charAt(end - 1))) {
+            end--;
+        }
+        if (end > 0 && json.charAt(end - 1) == ',') {
+            json.setLength(end - 1);
+        }
+    }
+
+    private static int firstOf(String text, char a, char b) {
+        int first = text.indexOf(a);
+        int second = text.indexOf(b);
+        return first < 0 ? second : second < 0 ? first : Math.min(first, second);
+    }
+}
@@ -0,0 +1,298 @@
+package com.example.aidemo.service.classify;
+
+import com.example.aidemo.controller.ClassifiedEntryDTO;
+import com.example.aidemo.controller.TitleAndTagsDTO;
+import com.example.aidemo.service.ingest.ElogEntry;
+import com.example.aidemo.service.rag.RagMetrics;
+import com.example.aidemo.service.text.TokenCounter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Generates titles and tags for eLog posts with the chat model.
+ * <p>
+ * The model output is repaired into JSON when it is almost JSON ({@link JsonRepair}) and
+ * validated: a non-blank title and at least one of the known tags, unknown tags dropped. An
+ * invalid answer is retried up to {@code max-retries} times, telling the model what was wrong
+ * with it.
+ * <p>
+ * In bulk, entries are packed several per prompt, up to {@code max-entries-per-prompt} and
+ * {@code prompt-token-budget} tokens of entries, each truncated to {@code max-entry-tokens}, and
+ * {@code parallelism} prompts run at a time. The model answers with one numbered object per
+ * entry; only the entries whose object is missing or invalid are sent again.
+ */
+@Service
+public class TitleTagsClassifier {
+    private static final Logger log = LoggerFactory.getLogger(TitleTagsClassifier.class);
+    private static final Map<String, String> TAGS = new LinkedHashMap<>();
+
+    static {
+        TAGS.put("NONE", "for normal logbook entries");
+        TAGS.put("FATAL", "for failures that prevent from operation of the machine for more than one hour");
+        TAGS.put("ERROR", "for errors in a device/subsystem/program etc.");
+        TAGS.put("FIXED", "error that has been fixed");
+        TAGS.put("WARN", "for warnings to other users or operators (don't forget, check this...)");
+        TAGS.put("INFO", "for hints to other users or operators");
+        TAGS.put("MEASURE", "message about a measurement (beam parameter, radiation ..)");
+        TAGS.put("IDEA", "extra ideas and communication (\"would be nice to have\" ..)");
+        TAGS.put("DOCU", "documentation of some subsystem");
+        TAGS.put("TODO", "work to be done");
+        TAGS.put("DONE", "work that has been done");
+        TAGS.put("DELETE", "marks an entry as deleted: the item is then no more visible in the eLogBook");
+    }
+
+    private static final String TITLE_TAGS_PROMPT = """
+            You are to generate a JSON document based on the following user text.
+            Your task is to create a JSON document with the following structure:
+            {
+                "title": "<Generated Title>",
+                "tags": ["<tag1>", "<tag2>", ...]
+            }
+            
+            - The "title" should be a concise and informative title summarizing the main topic of the user text.
+            - You are to choose from among the following tags, using the descriptions to determine which tags are the most relevant:
+            %s
+            
+            Please output *only* the JSON document and nothing else.
+            """.formatted(tagDescriptions());
+    private static final String BATCH_PROMPT = """
+            You are to generate a title and tags for each of the numbered eLog entries in the user text.
+            Your task is to create a JSON array with one object per entry, in the same order, with the following structure:
+            [
+                {"entry": <entry number>, "title": "<Generated Title>", "tags": ["<tag1>", "<tag2>", ...]}
+            ]
+            
+            - The "title" should be a concise and informative title summarizing the main topic of the entry.
+            - You are to choose from among the following tags, using the descriptions to determine which tags are the most relevant:
+            %s
+            
+            Please output *only* the JSON array and nothing else.
+            """.formatted(tagDescriptions());
+
+    /**
+     * An entry as sent to the model, its text truncated, and the tokens it takes in a prompt.
+     */
+    record PreparedEntry(String id, String text, int tokens) {}
+
+    /**
+     * The entries of a prompt answered validly, and those still to classify with why.
+     */
+    record PackResult(List<ClassifiedEntryDTO> classified, List<PreparedEntry> invalid, String reason) {}
+
+    private final ChatClient chatClient;
+    private final TokenCounter tokenCounter;
+    private final RagMetrics ragMetrics;
+    private final ObjectMapper objectMapper;
+    private final int maxRetries;
+    private final int maxEntriesPerPrompt;
+    private final int promptTokenBudget;
+    private final int maxEntryTokens;
+    private final int parallelism;
+
+    public TitleTagsClassifier(
+            ChatClient.Builder builder,
+            TokenCounter tokenCounter,
+            RagMetrics ragMetrics,
+            ObjectMapper objectMapper,
+            @Value("${aidemo.classify.max-retries:2}") int maxRetries,
+            @Value("${aidemo.classify.max-entries-per-prompt:8}") int maxEntriesPerPrompt,
+            @Value("${aidemo.classify.prompt-token-budget:2000}") int promptTokenBudget,
+            @Value("${aidemo.classify.max-entry-tokens:400}") int maxEntryTokens,
+            @Value("${aidemo.classify.parallelism:2}") int parallelism) {
+        this.chatClient = builder.build();
+        this.tokenCounter = tokenCounter;
+        this.ragMetrics = ragMetrics;
+        this.objectMapper = objectMapper;
+        this.maxRetries = maxRetries;
+        this.maxEntriesPerPrompt = maxEntriesPerPrompt;
+        this.promptTokenBudget = promptTokenBudget;
+        this.maxEntryTokens = maxEntryTokens;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Title and tags for a single post.
+     *
+     * @throws IllegalStateException when the model gave no valid answer after every retry
+     */
+    public TitleAndTagsDTO classify(String message) {
+        List<Message> messages = new ArrayList<>(List.of(new SystemMessage(TITLE_TAGS_PROMPT), new UserMessage(message)));
+        for (int attempt = 0; ; attempt++) {
+            String output = RagMetrics.content(ragMetrics.chatCall("title-tags",
+                    () -> chatClient.prompt(new Prompt(messages)).call().chatResponse()));
+            String reason;
+            try {
+                return validate(objectMapper.readTree(JsonRepair.repair(output)));
+            } catch (JsonProcessingException e) {
+                reason = "it is not a JSON document";
+            } catch (IllegalArgumentException e) {
+                reason = e.getMessage();
+            }
+            if (attempt == maxRetries) {
+                throw new IllegalStateException("The model gave no valid title and tags: " + reason);
+            }
+            log.debug("Retrying title and tags, {}", reason);
+            messages.add(new AssistantMessage(output));
+            messages.add(new UserMessage("That answer is not valid: " + reason + ". Output only the corrected JSON document."));
+        }
+    }
+
+    /**
+     * Titles and tags for {@code entries}, in the order they are ready, one per entry.
+     */
+    public Flux<ClassifiedEntryDTO> classify(Flux<ElogEntry> entries, ClassificationStats stats) {
+        return Flux.defer(() -> {
+            // the prompt being filled, entries starting a new one are cut before
+            int[] pack = new int[2];
+            return entries
+                    .map(this::prepare)
+                    .bufferUntil(entry -> {
+                        if (pack[0] > 0 && (pack[0] == maxEntriesPerPrompt || pack[1] + entry.tokens() > promptTokenBudget)) {
+                            pack[0] = 1;
+                            pack[1] = entry.tokens();
+                            return true;
+                        }
+                        pack[0]++;
+                        pack[1] += entry.tokens();
+                        return false;
+                    }, true)
+                    .flatMap(prepared -> classifyPack(prepared, 0, null, stats), parallelism)
+                    .doOnNext(entry -> {
+                        if (entry.error() == null) {
+                            stats.classified();
+                        } else {
+                            stats.failed();
+                        }
+                    });
+        });
+    }
+
+    private PreparedEntry prepare(ElogEntry entry) {
+        String text = tokenCounter.truncate(entry.title() + System.lineSeparator() + entry.text(), maxEntryTokens);
+        return new PreparedEntry(entry.id(), text, tokenCounter.count(text));
+    }
+
+    private Flux<ClassifiedEntryDTO> classifyPack(List<PreparedEntry> pack, int attempt, String feedback, ClassificationStats stats) {
+        StringBuilder user = new StringBuilder();
+        for (int i = 0; i < pack.size(); i++) {
+            user.append("ENTRY ").append(i + 1).append(':').append(System.lineSeparator())
+                    .append(pack.get(i).text()).append(System.lineSeparator()).append(System.lineSeparator());
+        }
+        if (feedback != null) {
+            user.append("Your previous answer for these entries was not valid: ").append(feedback).append('.');
+        }
+        stats.prompt(attempt > 0);
+        return ragMetrics.chatStream("title-tags-batch",
+                        chatClient.prompt(new Prompt(List.of(new SystemMessage(BATCH_PROMPT), new UserMessage(user.toString())))).stream().chatResponse())
+                .map(RagMetrics::content)
+                .collect(Collectors.joining())
+                .map(output -> parsePack(objectMapper, output, pack))
+                .onErrorResume(e -> Mono.just(new PackResult(List.of(), pack, "the model call failed: " + e.getMessage())))
+                .flatMapMany(result -> {
+                    Flux<ClassifiedEntryDTO> classified = Flux.fromIterable(result.classified());
+                    if (result.invalid().isEmpty()) {
+                        return classified;
+                    }
+                    if (attempt < maxRetries) {
+                        return classified.concatWith(classifyPack(result.invalid(), attempt + 1, result.reason(), stats));
+                    }
+                    log.warn("No valid title and tags for {} entries: {}", result.invalid().size(), result.reason());
+                    return classified.concatWith(Flux.fromIterable(result.invalid())
+                            .map(entry -> new ClassifiedEntryDTO(entry.id(), null, List.of(), result.reason())));
+                });
+    }
+
+    /**
+     * Matches the objects of the model's answer to the entries of {@code pack} by their number.
+     */
+    static PackResult parsePack(ObjectMapper objectMapper, String output, List<PreparedEntry> pack) {
+        JsonNode answer;
+        try {
+            answer = objectMapper.readTree(JsonRepair.repair(output));
+        } catch (JsonProcessingException e) {
+            return new PackResult(List.of(), pack, "it is not a JSON array");
+        }
+        if (answer.isObject()) {
+            answer = objectMapper.createArrayNode().add(answer);
+        }
+        Map<Integer, ClassifiedEntryDTO> classified = new LinkedHashMap<>();
+        Set<String> reasons = new LinkedHashSet<>();
+        for (JsonNode node : answer) {
+            // a single entry is matched even without its number
+            int number = pack.size() == 1 && !node.has("entry") ? 1 : node.path("entry").asInt(0);
+            if (number < 1 || number > pack.size()) {
+                reasons.add("every object needs the \"entry\" number it answers");
+                continue;
+            }
+            try {
+                TitleAndTagsDTO titleAndTags = validate(node);
+                classified.putIfAbsent(number, new ClassifiedEntryDTO(pack.get(number - 1).id(), titleAndTags.title(), titleAndTags.tags(), null));
+            } catch (IllegalArgumentException e) {
+                reasons.add(e.getMessage());
+            }
+        }
+        List<PreparedEntry> invalid = new ArrayList<>();
+        for (int i = 0; i < pack.size(); i++) {
+            if (!classified.containsKey(i + 1)) {
+                invalid.add(pack.get(i));
+            }
+        }
+        if (reasons.isEmpty() && !invalid.isEmpty()) {
+            reasons.add("it has no object for " + invalid.size() + " of the entries");
+        }
+        return new PackResult(List.copyOf(classified.values()), invalid, String.join("; ", reasons));
+    }
+
+    /**
+     * Checks a title and tags answer, keeping the known tags.
+     *
+     * @throws IllegalArgumentException with what is wrong with it
+     */
+    static TitleAndTagsDTO validate(JsonNode node) {
+        if (!node.isObject()) {
+            throw new IllegalArgumentException("it is not a JSON object");
+        }
+        String title = node.path("title").asText("").strip();
+        if (title.isEmpty()) {
+            throw new IllegalArgumentException("the \"title\" is missing");
+        }
+        List<String> tags = new ArrayList<>();
+        for (JsonNode tag : node.path("tags")) {
+            String name = tag.asText("").strip().toUpperCase();
+            if (TAGS.containsKey(name) && !tags.contains(name)) {
+                tags.add(name);
+            }
+        }
+        if (tags.isEmpty()) {
+            throw new IllegalArgumentException("\"tags\" must list at least one of " + String.join(", ", TAGS.keySet()));
+        }
+        return new TitleAndTagsDTO(title, tags);
+    }
+
+    private static String tagDescriptions() {
+        return TAGS.entrySet().stream()
+                .map(tag -> "  \"" + tag.getKey() + "\": \"" + tag.getValue() + "\"")
+                .collect(Collectors.joining("," + System.lineSeparator(), "{" + System.lineSeparator(), System.lineSeparator() + "}"));
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.aidemo.service.embedding;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link EmbeddingModel} decorator that embeds every distinct text only once.
+ * <p>
+ * Embeddings are addressed by the model name and a hash of the normalized text and looked up in
+ * two tiers: an LRU map on the heap and an optional memory-mapped {@link EmbeddingDiskCache} that
+ * survives restarts. Only the texts missing from both tiers are sent to the delegate, in a single
+ * request, so batched ingestion calls stay batched.
+ */
+public class CachingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+    private final EmbeddingModel delegate;
+    private final String model;
+    private final Map<EmbeddingKey, float[]> memory;
+    private final EmbeddingDiskCache disk;
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder modelCalls = new LongAdder();
+
+    /**
+     * @param diskDirectory directory of the persistent tier, {@code null} to keep the cache in memory only
+     * @param diskEntries    embeddings kept by the persistent tier, the oldest segments are deleted beyond
+     */
+    public CachingEmbeddingModel(EmbeddingModel delegate, String model, int memoryEntries, Path diskDirectory,
+                                 int recordsPerSegment, long diskEntries) {
+        this.delegate = delegate;
+        this.model = model;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<EmbeddingKey, float[]> eldest) {
+                if (size() > memoryEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.disk = diskDirectory == null ? null : new EmbeddingDiskCache(diskDirectory, recordsPerSegment, diskEntries);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        List<EmbeddingKey> keys = new ArrayList<>(texts.size());
+        float[][] vectors = new float[texts.size()][];
+        List<String> missingTexts = new ArrayList<>();
+        List<Integer> missingIndexes = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            EmbeddingKey key = EmbeddingKey.of(model, texts.get(i));
+            keys.add(key);
+            vectors[i] = lookup(key);
+            if (vectors[i] == null) {
+                missingTexts.add(texts.get(i));
+                missingIndexes.add(i);
+            }
+        }
+
+        if (!missingTexts.isEmpty()) {
+            modelCalls.increment();
+            misses.add(missingTexts.size());
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(missingTexts, request.getOptions()));
+            List<Embedding> results = response.getResults();
+            for (int i = 0; i < results.size(); i++) {
+                int index = missingIndexes.get(results.get(i).getIndex());
+                vectors[index] = results.get(i).getOutput();
+                store(keys.get(index), vectors[index]);
+            }
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(vectors.length);
+        for (int i = 0; i < vectors.length; i++) {
+            embeddings.add(new Embedding(vectors[i], i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getContent());
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    public EmbeddingCacheStats stats() {
+        int memoryEntries;
+        synchronized (memory) {
+            memoryEntries = memory.size();
+        }
+        return new EmbeddingCacheStats(
+                model,
+                memoryHits.sum(),
+                diskHits.sum(),
+                misses.sum(),
+                evictions.sum(),
+                modelCalls.sum(),
+                memoryEntries,
+                disk == null ? 0 : disk.size()
+        );
+    }
+
+    @Override
+    public void close() {
+        if (disk != null) {
+            disk.close();
+        }
+    }
+
+    private float[] lookup(EmbeddingKey key) {
+        float[] vector;
+        synchronized (memory) {
+            vector = memory.get(key);
+        }
+        if (vector != null) {
+            memoryHits.increment();
+            return vector;
+        }
+        if (disk != null && (vector = disk.get(key)) != null) {
+            diskHits.increment();
+            synchronized (memory) {
+                memory.put(key, vector);
+            }
+        }
+        return vector;
+    }
+
+    private void store(EmbeddingKey key, float[] vector) {
+        synchronized (memory) {
+            memory.put(key, vector);
+        }
+        if (disk != null) {
+            disk.put(key, vector);
+        }
+    }
+}
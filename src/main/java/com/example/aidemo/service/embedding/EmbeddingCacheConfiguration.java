@@ -0,0 +1,34 @@
+package com.example.aidemo.service.embedding;
+
+import org.springframework.ai.ollama.OllamaEmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.nio.file.Path;
+
+/**
+ * Puts the {@link CachingEmbeddingModel} in front of the Ollama embedding model. Being the primary
+ * {@code EmbeddingModel}, it is what the ingestion pipeline and the pgvector store (and so every
+ * similarity search) get injected.
+ */
+@Configuration
+public class EmbeddingCacheConfiguration {
+    private static final int RECORDS_PER_SEGMENT = 16384;
+
+    @Bean
+    @Primary
+    public CachingEmbeddingModel cachingEmbeddingModel(
+            OllamaEmbeddingModel ollamaEmbeddingModel,
+            @Value("${spring.ai.ollama.embedding.options.model:mxbai-embed-large}") String model,
+            @Value("${aidemo.embedding-cache.memory-entries:10000}") int memoryEntries,
+            @Value("${aidemo.embedding-cache.persistent:true}") boolean persistent,
+            @Value("${aidemo.embedding-cache.max-disk-entries:1000000}") long maxDiskEntries,
+            @Value("${aidemo.ingest.state-dir:.aidemo}") String stateDirectory) {
+        Path diskDirectory = persistent
+                ? Path.of(stateDirectory, "embeddings", model.replaceAll("[^A-Za-z0-9._-]", "_"))
+                : null;
+        return new CachingEmbeddingModel(ollamaEmbeddingModel, model, memoryEntries, diskDirectory, RECORDS_PER_SEGMENT, maxDiskEntries);
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.aidemo.service.embedding;
+
+/**
+ * Counters of the {@link CachingEmbeddingModel}. {@code modelCalls} is the number of requests
+ * that actually reached the model, {@code misses} the number of texts embedded by it.
+ */
+public record EmbeddingCacheStats(
+        String model,
+        long memoryHits,
+        long diskHits,
+        long misses,
+        long evictions,
+        long modelCalls,
+        int memoryEntries,
+        int diskEntries
+) {}
@@ -0,0 +1,220 @@
+package com.example.aidemo.service.embedding;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Persistent embedding tier backed by memory-mapped segment files.
+ * <p>
+ * Each segment holds a fixed number of records {@code [key high, key low, float x dimensions]}
+ * behind a small header. Vectors live in the mapped files, off the Java heap; only the key to
+ * slot index is kept on heap and rebuilt at startup by scanning the record keys. A record's key
+ * is written after its vector, so a slot whose key is set is always complete.
+ * <p>
+ * The cache holds at most {@code maxEntries} embeddings, rounded up to whole segments. Segments
+ * are numbered in the order they are filled; once the cache is full, the oldest segment is
+ * deleted with all its embeddings before a new one is started, so the files stay bounded and
+ * never need compacting.
+ */
+class EmbeddingDiskCache implements AutoCloseable {
+    private static final int MAGIC = 0x454d4243;
+    private static final int HEADER_BYTES = 64;
+    private static final int KEY_BYTES = 2 * Long.BYTES;
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final int maxSegments;
+    private final Map<Integer, MappedByteBuffer> segments = new ConcurrentHashMap<>();
+    private final Map<EmbeddingKey, Integer> slots = new ConcurrentHashMap<>();
+    private int dimensions;
+    private int firstSegment;
+    private int nextSlot;
+
+    EmbeddingDiskCache(Path directory, int recordsPerSegment, long maxEntries) {
+        this.directory = directory;
+        this.recordsPerSegment = recordsPerSegment;
+        this.maxSegments = (int) Math.max(1, Math.min(Integer.MAX_VALUE / recordsPerSegment,
+                (maxEntries + recordsPerSegment - 1) / recordsPerSegment));
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> list = Files.list(directory)) {
+                files = list.filter(p -> p.getFileName().toString().startsWith("segment-"))
+                        .sorted(Comparator.comparingInt(EmbeddingDiskCache::segmentIndex))
+                        .toList();
+            }
+            for (Path file : files) {
+                MappedByteBuffer segment = map(file);
+                if (segment.getInt(0) != MAGIC || segment.getInt(12) != recordsPerSegment
+                        || (dimensions != 0 && segment.getInt(8) != dimensions)) {
+                    // written with another layout, the cache is rebuilt from scratch
+                    reset(files);
+                    break;
+                }
+                int index = segmentIndex(file);
+                if (segments.isEmpty()) {
+                    firstSegment = index;
+                }
+                dimensions = segment.getInt(8);
+                segments.put(index, segment);
+                scan(segment, index);
+            }
+            // max-entries may have been lowered since the segments were written
+            while (segments.size() > maxSegments) {
+                evictOldestSegment();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open embedding cache " + directory, e);
+        }
+    }
+
+    float[] get(EmbeddingKey key) {
+        Integer slot = slots.get(key);
+        if (slot == null) {
+            return null;
+        }
+        MappedByteBuffer segment = segments.get(slot / recordsPerSegment);
+        if (segment == null) {
+            // evicted since the slot was looked up
+            return null;
+        }
+        float[] vector = new float[dimensions];
+        segment.slice(offset(slot % recordsPerSegment) + KEY_BYTES, dimensions * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asFloatBuffer()
+                .get(vector);
+        return vector;
+    }
+
+    synchronized void put(EmbeddingKey key, float[] vector) {
+        if (slots.containsKey(key)) {
+            return;
+        }
+        if (dimensions == 0) {
+            dimensions = vector.length;
+        }
+        if (vector.length != dimensions) {
+            return;
+        }
+        int segmentIndex = nextSlot / recordsPerSegment;
+        if (!segments.containsKey(segmentIndex)) {
+            if (segments.size() >= maxSegments) {
+                evictOldestSegment();
+            }
+            segments.put(segmentIndex, createSegment(segmentIndex));
+        }
+        MappedByteBuffer segment = segments.get(segmentIndex);
+        int offset = offset(nextSlot % recordsPerSegment);
+        segment.slice(offset + KEY_BYTES, dimensions * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asFloatBuffer()
+                .put(vector);
+        segment.putLong(offset + Long.BYTES, key.low());
+        segment.putLong(offset, key.high());
+        slots.put(key, nextSlot++);
+    }
+
+    int size() {
+        return slots.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        segments.values().forEach(MappedByteBuffer::force);
+    }
+
+    private void evictOldestSegment() {
+        int index = firstSegment++;
+        MappedByteBuffer segment = segments.remove(index);
+        if (segment == null) {
+            return;
+        }
+        for (int i = 0; i < recordsPerSegment; i++) {
+            int offset = offset(i);
+            long high = segment.getLong(offset);
+            long low = segment.getLong(offset + Long.BYTES);
+            if (high == 0 && low == 0) {
+                break;
+            }
+            slots.remove(new EmbeddingKey(high, low), index * recordsPerSegment + i);
+        }
+        try {
+            // the mapping stays readable until it is collected, lookups already past slots finish on it
+            Files.deleteIfExists(segmentFile(index));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot evict embedding cache segment " + index + " in " + directory, e);
+        }
+    }
+
+    private void scan(MappedByteBuffer segment, int segmentIndex) {
+        for (int i = 0; i < recordsPerSegment; i++) {
+            int offset = offset(i);
+            long high = segment.getLong(offset);
+            long low = segment.getLong(offset + Long.BYTES);
+            if (high == 0 && low == 0) {
+                return;
+            }
+            nextSlot = segmentIndex * recordsPerSegment + i + 1;
+            slots.putIfAbsent(new EmbeddingKey(high, low), nextSlot - 1);
+        }
+    }
+
+    private void reset(List<Path> files) throws IOException {
+        segments.clear();
+        slots.clear();
+        dimensions = 0;
+        firstSegment = 0;
+        nextSlot = 0;
+        for (Path file : files) {
+            Files.delete(file);
+        }
+    }
+
+    private MappedByteBuffer createSegment(int index) {
+        try {
+            MappedByteBuffer segment = map(segmentFile(index));
+            segment.putInt(8, dimensions);
+            segment.putInt(12, recordsPerSegment);
+            segment.putInt(0, MAGIC);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create embedding cache segment in " + directory, e);
+        }
+    }
+
+    private Path segmentFile(int index) {
+        return directory.resolve("segment-%05d.bin".formatted(index));
+    }
+
+    private static int segmentIndex(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring("segment-".length(), name.length() - ".bin".length()));
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE)) {
+            long size = HEADER_BYTES + (long) recordsPerSegment * recordBytes();
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+        }
+    }
+
+    private int offset(int record) {
+        return HEADER_BYTES + record * recordBytes();
+    }
+
+    private int recordBytes() {
+        return KEY_BYTES + dimensions * Float.BYTES;
+    }
+}
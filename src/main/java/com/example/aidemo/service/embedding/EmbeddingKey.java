@@ -0,0 +1,49 @@
+package com.example.aidemo.service.embedding;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 128-bit content address of an embedding: a hash of the model name and the normalized text.
+ */
+record EmbeddingKey(long high, long low) {
+
+    static EmbeddingKey of(String model, String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            ByteBuffer hash = ByteBuffer.wrap(digest.digest(normalize(text).getBytes(StandardCharsets.UTF_8)));
+            long high = hash.getLong();
+            long low = hash.getLong();
+            // an all zero key marks an empty slot on disk
+            return new EmbeddingKey(high == 0 && low == 0 ? 1 : high, low);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Trims the text and collapses every run of whitespace into a single space, so texts that
+     * only differ in layout share an embedding.
+     */
+    static String normalize(String text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = normalized.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    normalized.append(' ');
+                    pendingSpace = false;
+                }
+                normalized.append(c);
+            }
+        }
+        return normalized.toString();
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.aidemo.service.ingest;
+
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Documents waiting to be written together with their registry keys and the ids of the
+ * previous versions they replace, the stored chunks their sources no longer have, and the
+ * source units they were cut from.
+ */
+public class ChunkBatch {
+    private final List<Document> documents = new ArrayList<>();
+    private final List<ChunkKey> keys = new ArrayList<>();
+    private final List<String> supersededIds = new ArrayList<>();
+    private final List<ChunkKey> removedKeys = new ArrayList<>();
+    private final List<SourceUnit> units = new ArrayList<>();
+
+    public void add(Document document, ChunkKey key, String supersededId) {
+        documents.add(document);
+        keys.add(key);
+        if (supersededId != null) {
+            supersededIds.add(supersededId);
+        }
+    }
+
+    /**
+     * Deletes a stored chunk that its source no longer splits into, {@code stored} carrying the
+     * content it was stored with.
+     */
+    public void remove(ChunkKey stored) {
+        supersededIds.add(stored.documentId());
+        removedKeys.add(stored);
+    }
+
+    /**
+     * Records a unit whose chunks have all been added, including units without any chunk left
+     * to store.
+     */
+    public void addUnit(SourceUnit unit) {
+        units.add(unit);
+    }
+
+    /**
+     * Moves the content of {@code other} into this batch, to write both together.
+     */
+    public void addAll(ChunkBatch other) {
+        documents.addAll(other.documents);
+        keys.addAll(other.keys);
+        supersededIds.addAll(other.supersededIds);
+        removedKeys.addAll(other.removedKeys);
+        units.addAll(other.units);
+        other.clear();
+    }
+
+    public List<Document> documents() {
+        return documents;
+    }
+
+    public List<ChunkKey> keys() {
+        return keys;
+    }
+
+    public List<String> supersededIds() {
+        return supersededIds;
+    }
+
+    public List<ChunkKey> removedKeys() {
+        return removedKeys;
+    }
+
+    public List<SourceUnit> units() {
+        return units;
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    public boolean isEmpty() {
+        return documents.isEmpty();
+    }
+
+    public void clear() {
+        documents.clear();
+        keys.clear();
+        supersededIds.clear();
+        removedKeys.clear();
+        units.clear();
+    }
+}
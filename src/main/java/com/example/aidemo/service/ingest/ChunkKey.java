@@ -0,0 +1,52 @@
+package com.example.aidemo.service.ingest;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Identity of a single stored chunk.
+ * <p>
+ * {@code keyHash} identifies the slot (source + chunk position) and {@code contentHash} the text
+ * stored in it. The vector store document id is derived from all three parts, so re-ingesting the
+ * same content always yields the same id and changed content yields a new one.
+ */
+public record ChunkKey(String sourceId, String chunkId, long keyHash, long contentHash) {
+
+    public static ChunkKey of(String sourceId, String chunkId, String content) {
+        return new ChunkKey(sourceId, chunkId, keyHash(sourceId, chunkId), hash(content));
+    }
+
+    static long keyHash(String sourceId, String chunkId) {
+        long keyHash = hash(sourceId + '\u0000' + chunkId);
+        // zero marks an empty slot in the registry table
+        return keyHash == 0 ? 1 : keyHash;
+    }
+
+    /**
+     * The deterministic vector store id of this chunk.
+     */
+    public String documentId() {
+        return documentId(contentHash);
+    }
+
+    /**
+     * The id this chunk had when it was stored with {@code contentHash}.
+     */
+    public String documentId(long contentHash) {
+        String name = sourceId + '/' + chunkId + '/' + HexFormat.of().toHexDigits(contentHash);
+        return UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.aidemo.service.ingest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Local record of every chunk that has been written to the vector store.
+ * <p>
+ * Answers "is this chunk already ingested?" from the chunk key and content hash alone, without
+ * embedding the chunk or querying the vector store. The registry is kept in memory as a primitive
+ * hash table and persisted as a log of {@code (keyHash, contentHash)} pairs, 16 bytes per chunk,
+ * a content hash of zero recording that the chunk was deleted. On startup the log is replayed
+ * (later records win) and rewritten as a sorted snapshot once it has grown to twice the number
+ * of live chunks. The log is kept in the {@link IngestionState}
+ * directory of the configured vector store.
+ */
+@Component
+public class ChunkRegistry implements AutoCloseable {
+    private static final int RECORD_SIZE = 2 * Long.BYTES;
+    private final Path file;
+    private LongHashTable chunks;
+    private final FileChannel log;
+
+    public ChunkRegistry(
+            @Value("${aidemo.ingest.state-dir:.aidemo}") String stateDirectory,
+            @Value("${aidemo.vectorstore.type:pgvector}") String vectorStoreType) {
+        Path stateDir = IngestionState.directory(stateDirectory, vectorStoreType);
+        this.file = stateDir.resolve("chunks.bin");
+        try {
+            Files.createDirectories(stateDir);
+            long records = Files.exists(file) ? Files.size(file) / RECORD_SIZE : 0;
+            this.chunks = new LongHashTable((int) Math.min(records, Integer.MAX_VALUE / 4));
+            replay();
+            if (records > 2L * chunks.size()) {
+                compact();
+            }
+            this.log = FileChannel.open(file, CREATE, WRITE, APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open chunk registry " + file, e);
+        }
+    }
+
+    /**
+     * True when the chunk has already been stored with exactly this content.
+     */
+    public synchronized boolean isCurrent(ChunkKey key) {
+        return chunks.get(key.keyHash(), 0) == key.contentHash();
+    }
+
+    /**
+     * Returns the id of the previously stored version of this chunk when its content has changed
+     * since, {@code null} when the chunk is new or unchanged.
+     */
+    public synchronized String supersededDocumentId(ChunkKey key) {
+        long stored = chunks.get(key.keyHash(), 0);
+        return stored == 0 || stored == key.contentHash() ? null : key.documentId(stored);
+    }
+
+    /**
+     * The chunks of {@code sourceId} stored after chunk {@code lastChunkId}, with the content they
+     * were stored with: chunk ids run from 1 without gaps, so these are what is left over when
+     * the source now splits into fewer chunks.
+     */
+    public synchronized List<ChunkKey> storedAfter(String sourceId, int lastChunkId) {
+        List<ChunkKey> stored = new ArrayList<>();
+        for (int chunkId = lastChunkId + 1; ; chunkId++) {
+            long keyHash = ChunkKey.keyHash(sourceId, Integer.toString(chunkId));
+            long contentHash = chunks.get(keyHash, 0);
+            if (contentHash == 0) {
+                return stored;
+            }
+            stored.add(new ChunkKey(sourceId, Integer.toString(chunkId), keyHash, contentHash));
+        }
+    }
+
+    public void commit(Collection<ChunkKey> keys) {
+        commit(keys, List.of());
+    }
+
+    /**
+     * Records chunks as stored and {@code removed} as deleted. Must only be called once the
+     * vector store write has succeeded.
+     */
+    public synchronized void commit(Collection<ChunkKey> keys, Collection<ChunkKey> removed) {
+        if (keys.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((keys.size() + removed.size()) * RECORD_SIZE);
+        for (ChunkKey key : removed) {
+            chunks.remove(key.keyHash());
+            buffer.putLong(key.keyHash()).putLong(0);
+        }
+        for (ChunkKey key : keys) {
+            chunks.put(key.keyHash(), key.contentHash());
+            buffer.putLong(key.keyHash()).putLong(key.contentHash());
+        }
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                log.write(buffer);
+            }
+            log.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot update chunk registry " + file, e);
+        }
+    }
+
+    public synchronized int size() {
+        return chunks.size();
+    }
+
+    /**
+     * Forgets every chunk, for when the vector store turns out not to hold them.
+     */
+    public synchronized void clear() {
+        chunks = new LongHashTable(0);
+        try {
+            log.truncate(0);
+            log.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot clear chunk registry " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            log.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close chunk registry " + file, e);
+        }
+    }
+
+    private void replay() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 4096);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    long keyHash = buffer.getLong();
+                    long contentHash = buffer.getLong();
+                    if (contentHash == 0) {
+                        chunks.remove(keyHash);
+                    } else {
+                        chunks.put(keyHash, contentHash);
+                    }
+                }
+                buffer.compact();
+            }
+        }
+    }
+
+    private void compact() throws IOException {
+        long[] pairs = chunks.toSortedPairs();
+        Path snapshot = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(snapshot, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 4096);
+            for (long value : pairs) {
+                if (!buffer.hasRemaining()) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                buffer.putLong(value);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(snapshot, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
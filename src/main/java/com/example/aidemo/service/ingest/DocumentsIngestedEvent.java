@@ -0,0 +1,16 @@
+package com.example.aidemo.service.ingest;
+
+/**
+ * Published after a batch of documents has been written to the vector store.
+ *
+ * @param documents      number of documents written
+ * @param firstEventDate earliest {@code eventDate} among them, {@code null} when some document
+ *                       has no {@code eventDate} and the batch may therefore touch any period
+ * @param lastEventDate  latest {@code eventDate} among them, {@code null} like {@code firstEventDate}
+ */
+public record DocumentsIngestedEvent(int documents, String firstEventDate, String lastEventDate) {
+
+    public boolean isDated() {
+        return firstEventDate != null && lastEventDate != null;
+    }
+}
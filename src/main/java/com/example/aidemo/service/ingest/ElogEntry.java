@@ -0,0 +1,16 @@
+package com.example.aidemo.service.ingest;
+
+import java.util.List;
+
+/**
+ * The subset of an eLog export entry that ingestion cares about.
+ */
+public record ElogEntry(
+        String id,
+        String originId,
+        String title,
+        String text,
+        String eventAt,
+        List<String> logbooks,
+        List<String> tags
+) {}
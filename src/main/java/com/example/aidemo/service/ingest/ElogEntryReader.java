@@ -0,0 +1,137 @@
+package com.example.aidemo.service.ingest;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pull reader over a MongoDB eLog export.
+ * <p>
+ * The export is either a top-level array of entries or a sequence of entry objects, such as a
+ * single entry or one entry per line. Entries are
+ * decoded one at a time straight from the token stream, so only the entry being read is ever
+ * held in memory regardless of the size of the file.
+ */
+public class ElogEntryReader implements Closeable {
+    private final JsonParser parser;
+    private boolean started = false;
+    private boolean finished = false;
+
+    public ElogEntryReader(JsonParser parser) {
+        this.parser = parser;
+    }
+
+    /**
+     * Returns the next entry of the export or {@code null} once the export is exhausted.
+     */
+    public ElogEntry next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        JsonToken token = parser.nextToken();
+        if (!started) {
+            started = true;
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
+            }
+        }
+        if (token == null || token == JsonToken.END_ARRAY) {
+            finished = true;
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new IOException("Expected an eLog entry object but found %s at %s".formatted(token, parser.currentLocation()));
+        }
+        return readEntry();
+    }
+
+    /**
+     * Number of bytes consumed from the underlying stream so far.
+     */
+    public long position() {
+        return parser.currentLocation().getByteOffset();
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    private ElogEntry readEntry() throws IOException {
+        String id = null;
+        String originId = null;
+        String title = "";
+        String text = "";
+        String eventAt = null;
+        List<String> logbooks = List.of();
+        List<String> tags = List.of();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "_id" -> id = readWrapped("$oid");
+                case "originId" -> originId = value == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+                case "title" -> title = value == JsonToken.VALUE_NULL ? "" : parser.getValueAsString("");
+                case "text" -> text = value == JsonToken.VALUE_NULL ? "" : parser.getValueAsString("");
+                case "eventAt" -> eventAt = readWrapped("$date");
+                case "logbooks" -> logbooks = readStrings();
+                case "tags" -> tags = readStrings();
+                default -> parser.skipChildren();
+            }
+        }
+        return new ElogEntry(id, originId, title, text, eventAt, logbooks, tags);
+    }
+
+    /**
+     * Reads an extended JSON wrapper like {@code {"$oid": "..."}} or {@code {"$date": "..."}}.
+     * Dates exported in canonical mode ({@code {"$date": {"$numberLong": "..."}}}) are converted
+     * to the ISO-8601 form used by the relaxed exports.
+     */
+    private String readWrapped(String wrapperField) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token.isScalarValue()) {
+            return parser.getValueAsString();
+        }
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String result = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (wrapperField.equals(field) && value.isScalarValue()) {
+                result = parser.getValueAsString();
+            } else if (wrapperField.equals(field) && value == JsonToken.START_OBJECT) {
+                String epochMillis = readWrapped("$numberLong");
+                if (epochMillis != null) {
+                    result = Instant.ofEpochMilli(Long.parseLong(epochMillis)).toString();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return result;
+    }
+
+    private List<String> readStrings() throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return List.of();
+        }
+        List<String> values = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken().isScalarValue()) {
+                values.add(parser.getValueAsString());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return values;
+    }
+}
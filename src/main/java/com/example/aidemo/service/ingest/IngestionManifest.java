@@ -0,0 +1,217 @@
+package com.example.aidemo.service.ingest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+
+/**
+ * Per-file record of what has been ingested, used to skip unchanged files and to resume files
+ * whose ingestion was interrupted.
+ * <p>
+ * Every source file is tracked by path with its size, modification time and content hash, plus a
+ * checkpoint: the number of leading entries whose chunks have all been committed and the
+ * {@code $oid} of the last of them. Entries are embedded out of order, so the checkpoint only
+ * advances over a contiguous prefix. The manifest is updated after the chunk registry, so a crash
+ * in between leaves it behind rather than ahead and the registry deduplicates whatever is
+ * replayed. It is persisted as {@code manifest.json} in the {@link IngestionState} directory of
+ * the configured vector store, replaced atomically on every update.
+ */
+@Component
+public class IngestionManifest {
+    public enum Status { PARTIAL, COMPLETE }
+
+    /**
+     * @param committedEntries number of leading entries of the file that are fully stored
+     * @param lastEntryId      identifier of the last of those entries
+     */
+    public record FileState(
+            long size,
+            long modifiedMillis,
+            String contentHash,
+            Status status,
+            long committedEntries,
+            String lastEntryId
+    ) {
+        FileState withCheckpoint(Status status, long committedEntries, String lastEntryId) {
+            return new FileState(size, modifiedMillis, contentHash, status, committedEntries, lastEntryId);
+        }
+    }
+
+    /**
+     * Entries of a file in flight: the contiguous committed prefix, the entries committed
+     * beyond it and the entry count once the whole file has been parsed.
+     */
+    private static class Progress {
+        long watermark;
+        String lastEntryId;
+        long total = -1;
+        final Map<Long, String> ahead = new HashMap<>();
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path file;
+    private final Map<String, FileState> files;
+    private final Map<String, Progress> inFlight = new HashMap<>();
+
+    public IngestionManifest(
+            @Value("${aidemo.ingest.state-dir:.aidemo}") String stateDirectory,
+            @Value("${aidemo.vectorstore.type:pgvector}") String vectorStoreType) {
+        this.file = IngestionState.directory(stateDirectory, vectorStoreType).resolve("manifest.json");
+        try {
+            Files.createDirectories(file.getParent());
+            this.files = Files.exists(file)
+                    ? objectMapper.readValue(file.toFile(), new TypeReference<TreeMap<String, FileState>>() {})
+                    : new TreeMap<>();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read ingestion manifest " + file, e);
+        }
+    }
+
+    /**
+     * Starts ingesting {@code source}. Returns the ordinal of the first entry still to be
+     * ingested, or an empty result when the file is unchanged and already fully ingested. The
+     * content is only hashed when the size or modification time differ from the manifest.
+     * <p>
+     * Runs over the same file share its progress: a run starting while another one is ingesting
+     * the file resumes from their common checkpoint instead of resetting it, and the entries
+     * either of them commits advance it.
+     */
+    public synchronized OptionalLong start(Path source) throws IOException {
+        String path = key(source);
+        long size = Files.size(source);
+        long modified = Files.getLastModifiedTime(source).toMillis();
+        FileState state = files.get(path);
+        if (state == null || state.size() != size || state.modifiedMillis() != modified) {
+            String hash = hash(source);
+            if (state != null && hash.equals(state.contentHash())) {
+                state = new FileState(size, modified, hash, state.status(), state.committedEntries(), state.lastEntryId());
+            } else {
+                state = new FileState(size, modified, hash, Status.PARTIAL, 0, null);
+                // the entries committed so far belong to the previous content
+                inFlight.remove(path);
+            }
+            files.put(path, state);
+            save();
+        }
+        if (state.status() == Status.COMPLETE) {
+            return OptionalLong.empty();
+        }
+        FileState current = state;
+        Progress progress = inFlight.computeIfAbsent(path, p -> {
+            Progress started = new Progress();
+            started.watermark = current.committedEntries();
+            started.lastEntryId = current.lastEntryId();
+            return started;
+        });
+        return OptionalLong.of(progress.watermark);
+    }
+
+    /**
+     * Forgets every file, so that the next run ingests them all again.
+     */
+    public synchronized void clear() {
+        files.clear();
+        inFlight.clear();
+        save();
+    }
+
+    /**
+     * Records that {@code source} has been parsed to its end and holds {@code entries} entries.
+     */
+    public synchronized void parsed(Path source, long entries) {
+        String path = key(source);
+        Progress progress = inFlight.get(path);
+        if (progress != null) {
+            progress.total = entries;
+            if (update(path, progress)) {
+                save();
+            }
+        }
+    }
+
+    /**
+     * Records units whose chunks have all been written and committed to the chunk registry.
+     */
+    public synchronized void committed(List<SourceUnit> units) {
+        boolean changed = false;
+        for (SourceUnit unit : units) {
+            String path = key(unit.file());
+            Progress progress = inFlight.get(path);
+            if (progress == null || unit.ordinal() < progress.watermark) {
+                continue;
+            }
+            progress.ahead.put(unit.ordinal(), unit.sourceId());
+            changed |= update(path, progress);
+        }
+        if (changed) {
+            save();
+        }
+    }
+
+    /**
+     * Advances the checkpoint of a file over the entries committed right after it and marks the
+     * file complete once every entry is. Returns true when the file state changed.
+     */
+    private boolean update(String path, Progress progress) {
+        long before = progress.watermark;
+        String id;
+        while ((id = progress.ahead.remove(progress.watermark)) != null) {
+            progress.lastEntryId = id;
+            progress.watermark++;
+        }
+        boolean complete = progress.total >= 0 && progress.watermark >= progress.total;
+        if (progress.watermark == before && !complete) {
+            return false;
+        }
+        if (complete) {
+            inFlight.remove(path);
+        }
+        files.computeIfPresent(path, (p, state) -> state.withCheckpoint(
+                complete ? Status.COMPLETE : Status.PARTIAL, progress.watermark, progress.lastEntryId));
+        return true;
+    }
+
+    private void save() {
+        Path snapshot = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(snapshot.toFile(), files);
+            Files.move(snapshot, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot update ingestion manifest " + file, e);
+        }
+    }
+
+    private static String key(Path source) {
+        return source.toAbsolutePath().normalize().toString();
+    }
+
+    private static String hash(Path source) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream in = new DigestInputStream(Files.newInputStream(source), digest)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package com.example.aidemo.service.ingest;
+
+import com.example.aidemo.service.ingest.IngestionStats.Stage;
+import com.example.aidemo.service.lexical.LexicalIndex;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.stream.LongStream;
+
+/**
+ * Staged bulk ingestion: parse, chunk, batch-embed and batch-write.
+ * <p>
+ * Every stage runs on its own virtual threads and hands its output to the next one through a
+ * bounded queue, so the parser reads ahead into the next file while the current one is still
+ * being embedded and memory stays bounded by the queue capacities. Embedding is the bottleneck
+ * against an Ollama instance and runs on {@code embedding-workers} threads, each sending whole
+ * batches of {@code batch-size} chunks in a single call. The write stage groups embedded batches
+ * into writes of at least {@code write-batch-size} chunks, each written and committed as a whole.
+ * <p>
+ * Files that the {@link IngestionManifest} reports as unchanged and complete are not even
+ * opened; interrupted files are parsed again but only the entries after their checkpoint are
+ * chunked. When the vector store turns out empty while the chunk registry is not, as after the
+ * table was dropped or recreated, the registry, the manifest and the lexical index are cleared
+ * first so that everything is ingested again.
+ * <p>
+ * Every stage also counts its items in {@code aidemo.ingest.items} and times its batches in
+ * {@code aidemo.ingest.stage}, both tagged with the stage, so ingestion rates can be followed in
+ * Prometheus across runs.
+ */
+@Component
+public class IngestionPipeline {
+    private static final Logger log = LoggerFactory.getLogger(IngestionPipeline.class);
+    private static final SourceUnit END_OF_UNITS = new SourceUnit(null, -1, null, 0, null);
+    private static final ChunkBatch END_OF_BATCHES = new ChunkBatch();
+    private static final long POLL_MILLIS = 100;
+
+    private final EmbeddingModel embeddingModel;
+    private final VectorWriter vectorWriter;
+    private final ChunkRegistry chunkRegistry;
+    private final LexicalIndex lexicalIndex;
+    private final IngestionManifest manifest;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Map<Stage, Counter> itemCounters = new EnumMap<>(Stage.class);
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final int batchSize;
+    private final int writeBatchSize;
+    private final int embeddingWorkers;
+    private final int queueCapacity;
+
+    public IngestionPipeline(
+            EmbeddingModel embeddingModel,
+            VectorWriter vectorWriter,
+            ChunkRegistry chunkRegistry,
+            LexicalIndex lexicalIndex,
+            IngestionManifest manifest,
+            ApplicationEventPublisher eventPublisher,
+            MeterRegistry meterRegistry,
+            @Value("${aidemo.ingest.batch-size:64}") int batchSize,
+            @Value("${aidemo.ingest.write-batch-size:64}") int writeBatchSize,
+            @Value("${aidemo.ingest.embedding-workers:4}") int embeddingWorkers,
+            @Value("${aidemo.ingest.queue-capacity:8}") int queueCapacity) {
+        this.embeddingModel = embeddingModel;
+        this.vectorWriter = vectorWriter;
+        this.chunkRegistry = chunkRegistry;
+        this.lexicalIndex = lexicalIndex;
+        this.manifest = manifest;
+        this.eventPublisher = eventPublisher;
+        for (Stage stage : Stage.values()) {
+            String name = stage.name().toLowerCase(Locale.ROOT);
+            itemCounters.put(stage, Counter.builder("aidemo.ingest.items")
+                    .description("Items processed by an ingestion stage")
+                    .baseUnit(stage.unit())
+                    .tag("stage", name)
+                    .register(meterRegistry));
+            stageTimers.put(stage, Timer.builder("aidemo.ingest.stage")
+                    .description("Busy time of an ingestion stage per entry or batch")
+                    .tag("stage", name)
+                    .register(meterRegistry));
+        }
+        this.batchSize = batchSize;
+        this.writeBatchSize = writeBatchSize;
+        this.embeddingWorkers = embeddingWorkers;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Ingests {@code files}, storing at most about {@code maxDocumentsPerFile} new chunks per file.
+     */
+    public IngestionReport run(List<Path> files, SourceParser parser, int maxDocumentsPerFile) {
+        return run(files, parser, maxDocumentsPerFile, new IngestionStats(), () -> false);
+    }
+
+    /**
+     * Ingests {@code files} recording progress into {@code stats} as it goes. The run stops at its
+     * next queue operation once {@code cancelled} returns true and throws a
+     * {@link CancellationException}; everything written until then stays checkpointed in the
+     * {@link IngestionManifest}.
+     */
+    public IngestionReport run(List<Path> files, SourceParser parser, int maxDocumentsPerFile,
+                               IngestionStats stats, BooleanSupplier cancelled) {
+        Run run = new Run(maxDocumentsPerFile, stats, cancelled);
+        if (chunkRegistry.size() > 0 && vectorWriter.isEmpty()) {
+            log.warn("The vector store is empty but {} chunks are registered as stored, ingesting everything again", chunkRegistry.size());
+            chunkRegistry.clear();
+            manifest.clear();
+            lexicalIndex.clear();
+        }
+        if (chunkRegistry.size() == 0) {
+            int deleted = vectorWriter.deleteUnkeyedDocuments();
+            if (deleted > 0) {
+                // they may have been indexed by a rebuild, everything is indexed again as it is written
+                log.warn("Deleted {} documents whose id is not derived from their chunk, ingesting everything again", deleted);
+                manifest.clear();
+                lexicalIndex.clear();
+            }
+        }
+        vectorWriter.beginLoad();
+        try (ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ingest-", 0).factory())) {
+            run.submit(executor, () -> run.parse(files, parser));
+            run.submit(executor, run::chunk);
+            for (int i = 0; i < embeddingWorkers; i++) {
+                run.submit(executor, run::embed);
+            }
+            run.submit(executor, run::write);
+        } finally {
+            vectorWriter.endLoad();
+        }
+
+        IngestionReport report = stats.report();
+        if (run.failure.get() instanceof CancellationException cancellation) {
+            log.info("Ingestion cancelled: {}", report);
+            throw cancellation;
+        }
+        if (run.failure.get() != null) {
+            throw new IllegalStateException("Ingestion failed after %d documents".formatted(stats.items(Stage.WRITE)), run.failure.get());
+        }
+        log.info("Ingested {} files: {}", files.size(), report);
+        return report;
+    }
+
+    /**
+     * Computes the embeddings of all documents of the batch in a single model call.
+     */
+    public void embed(ChunkBatch batch) {
+        List<Document> documents = batch.documents();
+        if (documents.isEmpty()) {
+            return;
+        }
+        List<float[]> embeddings = embeddingModel.embed(documents.stream().map(Document::getContent).toList());
+        for (int i = 0; i < documents.size(); i++) {
+            documents.get(i).setEmbedding(embeddings.get(i));
+        }
+    }
+
+    /**
+     * Writes an embedded batch to the vector store and the lexical index, drops the versions it
+     * replaces and the chunks it removes, and records it in the chunk registry. New versions are written before the old ones are deleted so a failure in between
+     * never leaves a chunk missing; the registry is only updated once both succeeded. A
+     * {@link DocumentsIngestedEvent} then tells caches which period the batch touched.
+     */
+    public void write(ChunkBatch batch) {
+        if (batch.isEmpty() && batch.removedKeys().isEmpty()) {
+            return;
+        }
+        if (!batch.isEmpty()) {
+            vectorWriter.write(batch.documents());
+            lexicalIndex.add(batch.documents());
+        }
+        if (!batch.supersededIds().isEmpty()) {
+            vectorWriter.delete(batch.supersededIds());
+            lexicalIndex.delete(batch.supersededIds());
+        }
+        chunkRegistry.commit(batch.keys(), batch.removedKeys());
+        eventPublisher.publishEvent(ingestedEvent(batch.documents()));
+        batch.clear();
+    }
+
+    private static DocumentsIngestedEvent ingestedEvent(List<Document> documents) {
+        String first = null;
+        String last = null;
+        for (Document document : documents) {
+            if (!(document.getMetadata().get("eventDate") instanceof String eventDate)) {
+                return new DocumentsIngestedEvent(documents.size(), null, null);
+            }
+            first = first == null || eventDate.compareTo(first) < 0 ? eventDate : first;
+            last = last == null || eventDate.compareTo(last) > 0 ? eventDate : last;
+        }
+        return new DocumentsIngestedEvent(documents.size(), first, last);
+    }
+
+    @FunctionalInterface
+    private interface StageTask {
+        void run() throws Exception;
+    }
+
+    /**
+     * State of a single pipeline run shared by its stages.
+     */
+    private class Run {
+        final IngestionStats stats;
+        final BooleanSupplier cancelled;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final BlockingQueue<SourceUnit> units = new ArrayBlockingQueue<>(queueCapacity * batchSize);
+        final BlockingQueue<ChunkBatch> toEmbed = new ArrayBlockingQueue<>(queueCapacity);
+        final BlockingQueue<ChunkBatch> toWrite = new ArrayBlockingQueue<>(queueCapacity);
+        final Map<Path, Integer> chunksPerFile = new ConcurrentHashMap<>();
+        final int maxDocumentsPerFile;
+
+        Run(int maxDocumentsPerFile, IngestionStats stats, BooleanSupplier cancelled) {
+            this.maxDocumentsPerFile = maxDocumentsPerFile;
+            this.stats = stats;
+            this.cancelled = cancelled;
+            stats.threads(Stage.PARSE, 1);
+            stats.threads(Stage.CHUNK, 1);
+            stats.threads(Stage.EMBED, embeddingWorkers);
+            stats.threads(Stage.WRITE, 1);
+        }
+
+        void parse(List<Path> files, SourceParser parser) throws Exception {
+            try {
+                long[] sizes = new long[files.size()];
+                for (int i = 0; i < files.size(); i++) {
+                    sizes[i] = Files.size(files.get(i));
+                }
+                stats.sources(files.size(), LongStream.of(sizes).sum());
+                long finishedBytes = 0;
+                for (int i = 0; i < files.size(); i++) {
+                    Path file = files.get(i);
+                    OptionalLong resumeFrom = manifest.start(file);
+                    if (resumeFrom.isEmpty()) {
+                        finishedBytes += sizes[i];
+                        stats.fileSkipped(sizes[i]);
+                        continue;
+                    }
+                    if (resumeFrom.getAsLong() > 0) {
+                        stats.fileResumed();
+                    }
+                    long offset = finishedBytes;
+                    long[] resumed = {System.nanoTime()};
+                    long[] entries = {0};
+                    boolean[] stopped = {false};
+                    parser.parse(file, unit -> {
+                        long parsed = System.nanoTime();
+                        entries[0] = unit.ordinal() + 1;
+                        stats.bytesParsed(offset + unit.position());
+                        if (unit.ordinal() < resumeFrom.getAsLong()) {
+                            // committed before the interruption
+                            return true;
+                        }
+                        if (isFull(file) || isAborted() || !offer(units, unit)) {
+                            stopped[0] = true;
+                            return false;
+                        }
+                        record(Stage.PARSE, 1, parsed - resumed[0]);
+                        resumed[0] = System.nanoTime();
+                        return true;
+                    });
+                    checkAborted();
+                    if (!stopped[0]) {
+                        manifest.parsed(file, entries[0]);
+                    }
+                    finishedBytes += sizes[i];
+                    stats.fileParsed(finishedBytes);
+                }
+            } finally {
+                offer(units, END_OF_UNITS);
+            }
+        }
+
+        void chunk() throws Exception {
+            ChunkBatch batch = new ChunkBatch();
+            try {
+                SourceUnit unit;
+                while ((unit = take(units)) != END_OF_UNITS) {
+                    if (isFull(unit.file())) {
+                        continue;
+                    }
+                    long start = System.nanoTime();
+                    int before = batch.size();
+                    unit.chunker().chunk(batch);
+                    batch.addUnit(unit);
+                    chunksPerFile.merge(unit.file(), batch.size() - before, Integer::sum);
+                    record(Stage.CHUNK, batch.size() - before, System.nanoTime() - start);
+                    // unchanged entries add no chunks but still travel to the write stage to be checkpointed
+                    if (batch.size() >= batchSize || batch.units().size() >= batchSize) {
+                        put(toEmbed, batch);
+                        batch = new ChunkBatch();
+                    }
+                }
+                if (!batch.units().isEmpty()) {
+                    put(toEmbed, batch);
+                }
+            } finally {
+                for (int i = 0; i < embeddingWorkers; i++) {
+                    offer(toEmbed, END_OF_BATCHES);
+                }
+            }
+        }
+
+        void embed() throws Exception {
+            try {
+                ChunkBatch batch;
+                while ((batch = take(toEmbed)) != END_OF_BATCHES) {
+                    long start = System.nanoTime();
+                    IngestionPipeline.this.embed(batch);
+                    record(Stage.EMBED, batch.size(), System.nanoTime() - start);
+                    put(toWrite, batch);
+                }
+            } finally {
+                offer(toWrite, END_OF_BATCHES);
+            }
+        }
+
+        void write() throws Exception {
+            int finishedWorkers = 0;
+            ChunkBatch pending = new ChunkBatch();
+            while (finishedWorkers < embeddingWorkers) {
+                ChunkBatch batch = take(toWrite);
+                if (batch == END_OF_BATCHES) {
+                    finishedWorkers++;
+                    continue;
+                }
+                pending.addAll(batch);
+                if (pending.size() >= writeBatchSize || pending.units().size() >= writeBatchSize) {
+                    write(pending);
+                }
+            }
+            if (!pending.units().isEmpty()) {
+                write(pending);
+            }
+        }
+
+        void write(ChunkBatch batch) {
+            long start = System.nanoTime();
+            int size = batch.size();
+            List<SourceUnit> written = List.copyOf(batch.units());
+            IngestionPipeline.this.write(batch);
+            manifest.committed(written);
+            // a batch without documents is not cleared by the write
+            batch.clear();
+            record(Stage.WRITE, size, System.nanoTime() - start);
+        }
+
+        void record(Stage stage, long count, long nanos) {
+            stats.record(stage, count, nanos);
+            itemCounters.get(stage).increment(count);
+            stageTimers.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Runs a stage; the first stage to fail records the failure, which makes every other
+         * stage give up at its next queue operation.
+         */
+        void submit(ExecutorService executor, StageTask task) {
+            executor.submit(() -> {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    if (!failure.compareAndSet(null, t) && !(t instanceof CancellationException)) {
+                        failure.get().addSuppressed(t);
+                    }
+                    executor.shutdownNow();
+                }
+            });
+        }
+
+        boolean isFull(Path file) {
+            return chunksPerFile.getOrDefault(file, 0) >= maxDocumentsPerFile;
+        }
+
+        /**
+         * True once a stage failed or the run was cancelled; a cancellation is recorded as the
+         * failure of the run so that every stage sees it the same way.
+         */
+        boolean isAborted() {
+            if (failure.get() == null && cancelled.getAsBoolean()) {
+                failure.compareAndSet(null, new CancellationException("Ingestion cancelled"));
+            }
+            return failure.get() != null;
+        }
+
+        void checkAborted() {
+            if (isAborted()) {
+                throw new CancellationException("Ingestion aborted");
+            }
+        }
+
+        /**
+         * Queue operations poll so that a stage blocked on a full or empty queue notices an
+         * aborted run even when its neighbour is stuck in a call that ignores interrupts.
+         */
+        <T> void put(BlockingQueue<T> queue, T element) throws InterruptedException {
+            while (!queue.offer(element, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkAborted();
+            }
+        }
+
+        <T> T take(BlockingQueue<T> queue) throws InterruptedException {
+            checkAborted();
+            T element;
+            while ((element = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                checkAborted();
+            }
+            return element;
+        }
+
+        /**
+         * Like {@link #put} but for places that cannot throw, the parser callback and the end
+         * markers sent from {@code finally} blocks. Returns false once the run is aborted.
+         */
+        <T> boolean offer(BlockingQueue<T> queue, T element) {
+            try {
+                put(queue, element);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (CancellationException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.aidemo.service.ingest;
+
+import java.util.List;
+
+/**
+ * Throughput of an ingestion run.
+ * <p>
+ * {@code perSecond} is measured against the wall clock of the whole run, {@code perBusySecond}
+ * against the time the stage's threads actually spent working. An embed stage whose
+ * {@code perBusySecond} times the number of workers is well above its {@code perSecond} is
+ * waiting on the model server rather than on its input.
+ * <p>
+ * {@code filesSkipped} counts files left out because they were unchanged and already ingested,
+ * {@code filesResumed} files picked up from the checkpoint of an interrupted run.
+ */
+public record IngestionReport(
+        double elapsedSeconds,
+        int filesSkipped,
+        int filesResumed,
+        List<StageReport> stages
+) {
+    public record StageReport(
+            String stage,
+            int threads,
+            long items,
+            double perSecond,
+            double busySeconds,
+            double perBusySecond
+    ) {}
+}
@@ -0,0 +1,25 @@
+package com.example.aidemo.service.ingest;
+
+import java.nio.file.Path;
+
+/**
+ * Location of the ingestion state that describes what one vector store holds: the
+ * {@link ChunkRegistry}, the {@link IngestionManifest} and the lexical index.
+ * <p>
+ * That state is only true of the store it was written along with, so every store type keeps its
+ * own under {@code state-dir/stores/<type>} and switching {@code aidemo.vectorstore.type} starts
+ * the new store from an empty state. The pgvector store keeps its state directly under
+ * {@code state-dir}, where it was before there were other stores. Embeddings and classification
+ * runs do not depend on the store and stay in {@code state-dir}.
+ */
+public final class IngestionState {
+    private static final String DEFAULT_STORE = "pgvector";
+
+    private IngestionState() {
+    }
+
+    public static Path directory(String stateDirectory, String vectorStoreType) {
+        Path stateDir = Path.of(stateDirectory);
+        return DEFAULT_STORE.equals(vectorStoreType) ? stateDir : stateDir.resolve("stores").resolve(vectorStoreType);
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.aidemo.service.ingest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Item counters and busy time per stage of an ingestion run, and the number of files skipped
+ * or resumed thanks to the {@link IngestionManifest}.
+ * <p>
+ * Counters are updated live by the stages, so a run can be observed while it is in progress.
+ * Bytes count the position of the parse stage in the source files, skipped files included.
+ */
+public class IngestionStats {
+    public enum Stage {
+        PARSE("entries"), CHUNK("chunks"), EMBED("embeddings"), WRITE("documents");
+
+        private final String unit;
+
+        Stage(String unit) {
+            this.unit = unit;
+        }
+
+        public String unit() {
+            return unit;
+        }
+    }
+
+    private final long startNanos = System.nanoTime();
+    private final AtomicLongArray items = new AtomicLongArray(Stage.values().length);
+    private final AtomicLongArray busyNanos = new AtomicLongArray(Stage.values().length);
+    private final int[] threads = new int[Stage.values().length];
+    private final AtomicInteger filesSkipped = new AtomicInteger();
+    private final AtomicInteger filesResumed = new AtomicInteger();
+    private final AtomicInteger filesParsed = new AtomicInteger();
+    private volatile int filesTotal;
+    private volatile long bytesTotal;
+    private final AtomicLong bytesParsed = new AtomicLong();
+    private final AtomicLong bytesSkipped = new AtomicLong();
+
+    void threads(Stage stage, int count) {
+        threads[stage.ordinal()] = count;
+    }
+
+    void record(Stage stage, long count, long nanos) {
+        items.addAndGet(stage.ordinal(), count);
+        busyNanos.addAndGet(stage.ordinal(), nanos);
+    }
+
+    void sources(int files, long bytes) {
+        filesTotal = files;
+        bytesTotal = bytes;
+    }
+
+    void fileSkipped(long bytes) {
+        filesSkipped.incrementAndGet();
+        filesParsed.incrementAndGet();
+        bytesSkipped.addAndGet(bytes);
+        bytesParsed.addAndGet(bytes);
+    }
+
+    void fileParsed(long position) {
+        filesParsed.incrementAndGet();
+        bytesParsed(position);
+    }
+
+    void bytesParsed(long position) {
+        bytesParsed.accumulateAndGet(position, Math::max);
+    }
+
+    void fileResumed() {
+        filesResumed.incrementAndGet();
+    }
+
+    public long items(Stage stage) {
+        return items.get(stage.ordinal());
+    }
+
+    public int filesTotal() {
+        return filesTotal;
+    }
+
+    public int filesParsed() {
+        return filesParsed.get();
+    }
+
+    public int filesSkipped() {
+        return filesSkipped.get();
+    }
+
+    public long bytesTotal() {
+        return bytesTotal;
+    }
+
+    public long bytesParsed() {
+        return bytesParsed.get();
+    }
+
+    /**
+     * Estimated seconds left, extrapolated from the rate at which the parse stage has advanced
+     * through the files that were actually ingested. Negative while there is no estimate yet.
+     */
+    public double etaSeconds() {
+        long ingested = bytesParsed.get() - bytesSkipped.get();
+        long remaining = bytesTotal - bytesParsed.get();
+        if (remaining <= 0) {
+            return 0;
+        }
+        return ingested > 0 ? seconds(System.nanoTime() - startNanos) * remaining / ingested : -1;
+    }
+
+    public IngestionReport report() {
+        double elapsed = seconds(System.nanoTime() - startNanos);
+        List<IngestionReport.StageReport> stages = new ArrayList<>();
+        for (Stage stage : Stage.values()) {
+            long count = items.get(stage.ordinal());
+            double busy = seconds(busyNanos.get(stage.ordinal()));
+            stages.add(new IngestionReport.StageReport(
+                    stage.name().toLowerCase() + " (" + stage.unit() + ")",
+                    threads[stage.ordinal()],
+                    count,
+                    elapsed > 0 ? count / elapsed : 0,
+                    busy,
+                    busy > 0 ? count / busy : 0));
+        }
+        return new IngestionReport(elapsed, filesSkipped.get(), filesResumed.get(), stages);
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1_000_000_000.0;
+    }
+}
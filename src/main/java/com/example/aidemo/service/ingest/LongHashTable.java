@@ -0,0 +1,112 @@
+package com.example.aidemo.service.ingest;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing long to long map without boxing. Key {@code 0} is reserved for empty slots.
+ */
+class LongHashTable {
+    private long[] keys;
+    private long[] values;
+    private int size;
+
+    LongHashTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+        keys = new long[capacity];
+        values = new long[capacity];
+    }
+
+    long get(long key, long defaultValue) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            if (keys[i] == 0) {
+                return defaultValue;
+            }
+        }
+    }
+
+    void put(long key, long value) {
+        if ((size + 1) * 4 > keys.length * 3) {
+            resize();
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != 0 && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == 0) {
+            size++;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    /**
+     * Removes the key, moving back the keys probed after it so lookups never stop at the hole.
+     */
+    void remove(long key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != key) {
+            if (keys[i] == 0) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            // the key at j may fill the hole unless its home slot lies after the hole
+            if (((j - slot(keys[j], mask)) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        keys[i] = 0;
+        values[i] = 0;
+        size--;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the keys and values as a flat {@code [key, value, key, value, ...]} array sorted by key.
+     */
+    long[] toSortedPairs() {
+        long[] sortedKeys = new long[size];
+        int n = 0;
+        for (long key : keys) {
+            if (key != 0) {
+                sortedKeys[n++] = key;
+            }
+        }
+        Arrays.sort(sortedKeys);
+        long[] pairs = new long[size * 2];
+        for (int i = 0; i < size; i++) {
+            pairs[i * 2] = sortedKeys[i];
+            pairs[i * 2 + 1] = get(sortedKeys[i], 0);
+        }
+        return pairs;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new long[oldValues.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.aidemo.service.ingest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Bulk variant of {@link PgVectorWriter}, selected with {@code aidemo.ingest.write-mode: copy}.
+ * <p>
+ * Each batch is streamed with {@code COPY ... FROM STDIN (FORMAT binary)} into a temporary table
+ * of the session, which has no index and is not WAL-logged, then merged into the store with a
+ * single {@code INSERT ... SELECT ... ON CONFLICT}, so the upsert semantic of the row-by-row
+ * writer is kept while the rows cross the wire in their binary form and the HNSW index is
+ * updated by one statement per batch. The ingestion pipeline groups batches into
+ * {@code write-batch-size} documents per write, which is the commit frequency.
+ * <p>
+ * With {@code copy.rebuild-index} the HNSW indexes of the table are dropped when a load starts
+ * and built again once the last running load has finished, with {@code maintenance_work_mem} set
+ * to {@code copy.maintenance-work-mem}. That is the fastest way to backfill a large share of the
+ * table, but searches run without the index in the meantime. Should the application stop before
+ * the rebuild, the pgvector store creates the index again on its next start.
+ */
+@Component
+@ConditionalOnExpression("'${aidemo.vectorstore.type:pgvector}' == 'pgvector' and '${aidemo.ingest.write-mode:upsert}' == 'copy'")
+public class PgCopyVectorWriter implements VectorWriter {
+    private static final Logger log = LoggerFactory.getLogger(PgCopyVectorWriter.class);
+    private static final byte[] SIGNATURE = "PGCOPY\n\377\r\n\0".getBytes(StandardCharsets.ISO_8859_1);
+    private static final int COPY_BUFFER_BYTES = 1 << 16;
+    private static final int FIELDS = 4;
+    private static final int JSONB_VERSION = 1;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final String schema;
+    private final String tableName;
+    private final String table;
+    private final String staging;
+    private final boolean rebuildIndex;
+    private final String maintenanceWorkMem;
+    private final List<String> droppedIndexes = new ArrayList<>();
+    private int runningLoads;
+
+    public PgCopyVectorWriter(
+            JdbcTemplate jdbcTemplate,
+            ObjectMapper objectMapper,
+            @Value("${spring.ai.vectorstore.pgvector.schema-name:public}") String schema,
+            @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String table,
+            @Value("${aidemo.ingest.copy.rebuild-index:false}") boolean rebuildIndex,
+            @Value("${aidemo.ingest.copy.maintenance-work-mem:1GB}") String maintenanceWorkMem) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.schema = schema;
+        this.tableName = table;
+        this.table = schema + "." + table;
+        this.staging = "pg_temp." + tableName + "_copy";
+        this.rebuildIndex = rebuildIndex;
+        this.maintenanceWorkMem = maintenanceWorkMem;
+    }
+
+    @Override
+    public void write(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> inTransaction(connection, () -> {
+            try (Statement statement = connection.createStatement()) {
+                // per session, emptied by every commit; the metadata column of the store may be json or jsonb, both are assigned from jsonb
+                statement.execute("CREATE TEMP TABLE IF NOT EXISTS " + staging
+                        + " (id uuid, content text, metadata jsonb, embedding vector) ON COMMIT DELETE ROWS");
+            }
+            copy(connection, documents);
+            try (Statement statement = connection.createStatement()) {
+                // a document written twice in the batch keeps its last version, as with row by row upserts
+                statement.executeUpdate("INSERT INTO " + table + " (id, content, metadata, embedding) "
+                        + "SELECT DISTINCT ON (id) id, content, metadata, embedding FROM " + staging + " ORDER BY id, ctid DESC "
+                        + "ON CONFLICT (id) DO UPDATE SET content = EXCLUDED.content, metadata = EXCLUDED.metadata, embedding = EXCLUDED.embedding");
+            }
+        }));
+    }
+
+    @Override
+    public void delete(List<String> ids) {
+        jdbcTemplate.batchUpdate("DELETE FROM " + table + " WHERE id = ?", new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setObject(1, UUID.fromString(ids.get(i)));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return ids.size();
+            }
+        });
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return !jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " + table + ")", Boolean.class);
+    }
+
+    @Override
+    public int deleteUnkeyedDocuments() {
+        return PgVectorWriter.deleteUnkeyedDocuments(jdbcTemplate, table);
+    }
+
+    @Override
+    public void scan(int batchSize, Consumer<List<Document>> action) {
+        PgVectorWriter.scan(jdbcTemplate, objectMapper, table, batchSize, action);
+    }
+
+    @Override
+    public synchronized void beginLoad() {
+        if (!rebuildIndex || runningLoads++ > 0) {
+            return;
+        }
+        List<String[]> indexes = jdbcTemplate.query(
+                "SELECT indexname, indexdef FROM pg_indexes WHERE schemaname = ? AND tablename = ? AND indexdef ILIKE '% USING hnsw %'",
+                (rs, n) -> new String[]{rs.getString(1), rs.getString(2)}, schema, tableName);
+        for (String[] index : indexes) {
+            jdbcTemplate.execute("DROP INDEX IF EXISTS " + schema + "." + index[0]);
+            droppedIndexes.add(index[1]);
+        }
+        log.info("Dropped {} HNSW index(es) of {} for the load", droppedIndexes.size(), table);
+    }
+
+    @Override
+    public synchronized void endLoad() {
+        if (!rebuildIndex || --runningLoads > 0) {
+            return;
+        }
+        for (String index : droppedIndexes) {
+            long start = System.nanoTime();
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("SET maintenance_work_mem = '" + maintenanceWorkMem.replace("'", "") + "'");
+                    try {
+                        statement.execute(index);
+                    } finally {
+                        statement.execute("RESET maintenance_work_mem");
+                    }
+                }
+                return null;
+            });
+            log.info("Built {} in {} s", index, (System.nanoTime() - start) / 1_000_000_000);
+        }
+        droppedIndexes.clear();
+    }
+
+    /**
+     * Streams the documents into the staging table in the binary copy format: a header, then per
+     * row the field count and each field as its length and its binary representation.
+     */
+    private void copy(Connection connection, List<Document> documents) throws SQLException {
+        CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI()
+                .copyIn("COPY " + staging + " (id, content, metadata, embedding) FROM STDIN (FORMAT binary)");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CopyInStream(copyIn), COPY_BUFFER_BYTES));
+            out.write(SIGNATURE);
+            out.writeInt(0);
+            out.writeInt(0);
+            for (Document document : documents) {
+                writeRow(out, document);
+            }
+            out.writeShort(-1);
+            out.flush();
+            copyIn.endCopy();
+        } catch (IOException | RuntimeException e) {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+            throw e instanceof IOException io ? new UncheckedIOException(io) : (RuntimeException) e;
+        }
+    }
+
+    private void writeRow(DataOutputStream out, Document document) throws IOException {
+        out.writeShort(FIELDS);
+
+        UUID id = UUID.fromString(document.getId());
+        out.writeInt(16);
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+
+        writeText(out, document.getContent());
+
+        byte[] metadata = toJson(document);
+        out.writeInt(metadata.length + 1);
+        out.writeByte(JSONB_VERSION);
+        out.write(metadata);
+
+        // pgvector's binary form: dimensions, an unused short, then the floats
+        float[] embedding = document.getEmbedding();
+        out.writeInt(4 + 4 * embedding.length);
+        out.writeShort(embedding.length);
+        out.writeShort(0);
+        for (float value : embedding) {
+            out.writeFloat(value);
+        }
+    }
+
+    private static void writeText(DataOutputStream out, String text) throws IOException {
+        if (text == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private byte[] toJson(Document document) {
+        try {
+            return objectMapper.writeValueAsBytes(document.getMetadata());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize metadata of document " + document.getId(), e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlWork {
+        void run() throws SQLException;
+    }
+
+    private static Void inTransaction(Connection connection, SqlWork work) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            work.run();
+            connection.commit();
+            return null;
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Hands the buffered bytes over to the copy in progress.
+     */
+    private static final class CopyInStream extends OutputStream {
+        private final CopyIn copyIn;
+
+        CopyInStream(CopyIn copyIn) {
+            this.copyIn = copyIn;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                copyIn.writeToCopy(b, off, len);
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.aidemo.service.ingest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Writes pre-embedded documents into the table managed by the pgvector store, using the same
+ * layout and upsert semantic as {@link org.springframework.ai.vectorstore.PgVectorStore}. Bulk
+ * loads can use the {@link PgCopyVectorWriter} instead.
+ */
+@Component
+@ConditionalOnExpression("'${aidemo.vectorstore.type:pgvector}' == 'pgvector' and '${aidemo.ingest.write-mode:upsert}' == 'upsert'")
+public class PgVectorWriter implements VectorWriter {
+    private static final TypeReference<Map<String, Object>> METADATA = new TypeReference<>() {};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final String table;
+
+    public PgVectorWriter(
+            JdbcTemplate jdbcTemplate,
+            ObjectMapper objectMapper,
+            @Value("${spring.ai.vectorstore.pgvector.schema-name:public}") String schema,
+            @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String table) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.table = schema + "." + table;
+    }
+
+    @Override
+    public void write(List<Document> documents) {
+        String sql = "INSERT INTO " + table + " (id, content, metadata, embedding) VALUES (?, ?, ?::jsonb, ?) "
+                + "ON CONFLICT (id) DO UPDATE SET content = ?, metadata = ?::jsonb, embedding = ?";
+        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Document document = documents.get(i);
+                String metadata = toJson(document);
+                PGvector embedding = new PGvector(document.getEmbedding());
+                ps.setObject(1, UUID.fromString(document.getId()));
+                ps.setString(2, document.getContent());
+                ps.setString(3, metadata);
+                ps.setObject(4, embedding);
+                ps.setString(5, document.getContent());
+                ps.setString(6, metadata);
+                ps.setObject(7, embedding);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return documents.size();
+            }
+        });
+    }
+
+    @Override
+    public void delete(List<String> ids) {
+        jdbcTemplate.batchUpdate("DELETE FROM " + table + " WHERE id = ?", new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setObject(1, UUID.fromString(ids.get(i)));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return ids.size();
+            }
+        });
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return !jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " + table + ")", Boolean.class);
+    }
+
+    @Override
+    public int deleteUnkeyedDocuments() {
+        return deleteUnkeyedDocuments(jdbcTemplate, table);
+    }
+
+    /**
+     * Deletes the rows whose id is not a version 3, name-based, UUID.
+     */
+    static int deleteUnkeyedDocuments(JdbcTemplate jdbcTemplate, String table) {
+        return jdbcTemplate.update("DELETE FROM " + table + " WHERE substr(id::text, 15, 1) <> '3'");
+    }
+
+    @Override
+    public void scan(int batchSize, Consumer<List<Document>> action) {
+        scan(jdbcTemplate, objectMapper, table, batchSize, action);
+    }
+
+    /**
+     * Pages through {@code table} in id order, each page starting after the last id of the previous one.
+     */
+    static void scan(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, String table, int batchSize,
+                     Consumer<List<Document>> action) {
+        String select = "SELECT id, content, metadata::text FROM " + table;
+        RowMapper<Document> toDocument = (rs, n) -> toDocument(objectMapper, rs.getString(1), rs.getString(2), rs.getString(3));
+        List<Document> batch = jdbcTemplate.query(select + " ORDER BY id LIMIT ?", toDocument, batchSize);
+        while (!batch.isEmpty()) {
+            action.accept(batch);
+            if (batch.size() < batchSize) {
+                return;
+            }
+            UUID last = UUID.fromString(batch.get(batch.size() - 1).getId());
+            batch = jdbcTemplate.query(select + " WHERE id > ? ORDER BY id LIMIT ?", toDocument, last, batchSize);
+        }
+    }
+
+    private static Document toDocument(ObjectMapper objectMapper, String id, String content, String metadata) throws SQLException {
+        try {
+            return new Document(id, content, metadata == null ? new HashMap<>() : new HashMap<>(objectMapper.readValue(metadata, METADATA)));
+        } catch (JsonProcessingException e) {
+            throw new SQLException("Invalid metadata of document " + id, e);
+        }
+    }
+
+    private String toJson(Document document) {
+        try {
+            return objectMapper.writeValueAsString(document.getMetadata());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize metadata of document " + document.getId(), e);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.aidemo.service.ingest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Predicate;
+
+/**
+ * Parse stage of the {@link IngestionPipeline}.
+ */
+@FunctionalInterface
+public interface SourceParser {
+
+    /**
+     * Streams the units of {@code file} into {@code sink}. Parsing of the file stops as soon as
+     * the sink returns {@code false}.
+     */
+    void parse(Path file, Predicate<SourceUnit> sink) throws IOException;
+}
@@ -0,0 +1,22 @@
+package com.example.aidemo.service.ingest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * One parsed unit of a source file, an eLog entry or a whole extracted document, that the
+ * chunk stage of the {@link IngestionPipeline} turns into chunks.
+ *
+ * @param file    the file the unit was read from
+ * @param ordinal position of the unit in the file
+ * @param sourceId identifier of the unit, the entry {@code $oid} or the file name
+ * @param position byte offset in the file right after the unit, used to report progress
+ * @param chunker appends the chunks of the unit that still need to be stored to a batch
+ */
+public record SourceUnit(Path file, long ordinal, String sourceId, long position, Chunker chunker) {
+
+    @FunctionalInterface
+    public interface Chunker {
+        void chunk(ChunkBatch batch) throws IOException;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.aidemo.service.ingest;
+
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Persists documents whose embeddings have already been computed.
+ * <p>
+ * {@link org.springframework.ai.vectorstore.VectorStore#add} always embeds what it is given, so the
+ * ingestion pipeline, which embeds in its own batched stage, writes through this instead.
+ */
+public interface VectorWriter {
+
+    /**
+     * Inserts or replaces the documents, every document must carry its embedding.
+     */
+    void write(List<Document> documents);
+
+    void delete(List<String> ids);
+
+    /**
+     * True when the store holds no document at all, which tells that the ingestion state was not
+     * written along with it. Writers that cannot tell answer false.
+     */
+    default boolean isEmpty() {
+        return false;
+    }
+
+    /**
+     * Deletes the documents whose id is not derived from a {@link ChunkKey}, a name-based UUID,
+     * and returns how many. Loaders before the chunk registry stored chunks under random UUIDs,
+     * which would never be replaced and stay besides the chunks ingested again. Only tables that
+     * such loaders wrote to can hold them, other writers delete nothing.
+     */
+    default int deleteUnkeyedDocuments() {
+        return 0;
+    }
+
+    /**
+     * Hands every stored document to {@code action}, without its embedding, in batches of up to
+     * {@code batchSize}, to rebuild what is derived from the store. Writers that cannot list the
+     * store hand nothing.
+     */
+    default void scan(int batchSize, Consumer<List<Document>> action) {
+    }
+
+    /**
+     * Called before an ingestion run writes its first batch, runs may overlap.
+     */
+    default void beginLoad() {
+    }
+
+    /**
+     * Called once an ingestion run has written its last batch, also when it failed.
+     */
+    default void endLoad() {
+    }
+}
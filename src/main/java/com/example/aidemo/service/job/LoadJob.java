@@ -0,0 +1,120 @@
+package com.example.aidemo.service.job;
+
+import com.example.aidemo.service.ingest.IngestionReport;
+import com.example.aidemo.service.ingest.IngestionStats;
+import com.example.aidemo.service.ingest.IngestionStats.Stage;
+import com.example.aidemo.service.job.LoadJobStatus.LoadJobState;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A load submitted to the {@link LoadJobService}, with the live statistics of its run.
+ */
+class LoadJob {
+    private static final long RATE_WINDOW_NANOS = 10_000_000_000L;
+
+    private final String id;
+    private final int maxDocuments;
+    private final Instant submittedAt = Instant.now();
+    private volatile LoadJobState state = LoadJobState.QUEUED;
+    private volatile boolean cancelRequested;
+    private volatile IngestionStats stats;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+    private volatile IngestionReport report;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    /**
+     * Recent {@code (nanos, chunks written)} samples the current rate is computed from.
+     */
+    private final Deque<long[]> samples = new ArrayDeque<>();
+
+    LoadJob(String id, int maxDocuments) {
+        this.id = id;
+        this.maxDocuments = maxDocuments;
+    }
+
+    String id() {
+        return id;
+    }
+
+    int maxDocuments() {
+        return maxDocuments;
+    }
+
+    boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    void requestCancel() {
+        cancelRequested = true;
+    }
+
+    synchronized IngestionStats start() {
+        samples.addLast(new long[]{System.nanoTime(), 0});
+        stats = new IngestionStats();
+        startedAt = Instant.now();
+        state = LoadJobState.RUNNING;
+        return stats;
+    }
+
+    void finish(LoadJobState state, IngestionReport report, String error) {
+        this.report = report;
+        this.error = error;
+        this.finishedAt = Instant.now();
+        this.state = state;
+        finished.countDown();
+    }
+
+    void awaitFinish() throws InterruptedException {
+        finished.await();
+    }
+
+    boolean isFinished() {
+        return state.isFinished();
+    }
+
+    Instant finishedAt() {
+        return finishedAt;
+    }
+
+    synchronized LoadJobStatus status() {
+        IngestionStats current = stats;
+        if (current == null) {
+            return new LoadJobStatus(id, state, maxDocuments, submittedAt, null, finishedAt,
+                    0, 0, 0, 0, 0, 0, 0, -1, error, report);
+        }
+        long written = current.items(Stage.WRITE);
+        return new LoadJobStatus(
+                id,
+                state,
+                maxDocuments,
+                submittedAt,
+                startedAt,
+                finishedAt,
+                current.filesTotal(),
+                current.filesParsed(),
+                current.filesSkipped(),
+                current.items(Stage.PARSE),
+                current.items(Stage.EMBED),
+                written,
+                state == LoadJobState.RUNNING ? rate(written) : 0,
+                state == LoadJobState.RUNNING ? current.etaSeconds() : 0,
+                error,
+                report
+        );
+    }
+
+    private double rate(long written) {
+        long now = System.nanoTime();
+        samples.addLast(new long[]{now, written});
+        while (samples.size() > 2 && now - samples.peekFirst()[0] > RATE_WINDOW_NANOS) {
+            samples.removeFirst();
+        }
+        long[] oldest = samples.peekFirst();
+        return now > oldest[0] ? (written - oldest[1]) * 1_000_000_000.0 / (now - oldest[0]) : 0;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.aidemo.service.job;
+
+import com.example.aidemo.service.DataLoaderService;
+import com.example.aidemo.service.ingest.IngestionReport;
+import com.example.aidemo.service.ingest.IngestionStats;
+import com.example.aidemo.service.job.LoadJobStatus.LoadJobState;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs loads of the data folder in the background.
+ * <p>
+ * At most {@code max-concurrent-jobs} loads run at once; further submissions wait in a queue of
+ * {@code max-queued-jobs} and are rejected beyond that. A cancelled job stops at the next hand-off
+ * between two pipeline stages, and since everything written until then is checkpointed in the
+ * ingestion manifest, the next load continues where it stopped.
+ */
+@Service
+public class LoadJobService {
+    private static final Logger log = LoggerFactory.getLogger(LoadJobService.class);
+    private static final int RETAINED_FINISHED_JOBS = 100;
+
+    private final DataLoaderService dataLoaderService;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, LoadJob> jobs = new ConcurrentHashMap<>();
+
+    public LoadJobService(
+            DataLoaderService dataLoaderService,
+            @Value("${aidemo.ingest.max-concurrent-jobs:1}") int maxConcurrentJobs,
+            @Value("${aidemo.ingest.max-queued-jobs:8}") int maxQueuedJobs) {
+        this.dataLoaderService = dataLoaderService;
+        this.executor = new ThreadPoolExecutor(
+                maxConcurrentJobs, maxConcurrentJobs, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueuedJobs),
+                Thread.ofPlatform().name("load-job-", 0).factory());
+    }
+
+    /**
+     * Queues a load of the data folder and returns its initial status.
+     *
+     * @throws RejectedExecutionException when the queue of waiting jobs is full
+     */
+    public LoadJobStatus submit(int maxDocuments) {
+        evictFinishedJobs();
+        LoadJob job = new LoadJob(UUID.randomUUID().toString(), maxDocuments);
+        jobs.put(job.id(), job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id());
+            throw e;
+        }
+        return job.status();
+    }
+
+    /**
+     * Queues a load like {@link #submit} and waits until it has finished, so that a synchronous
+     * load never runs beside the jobs. The load is cancelled when the waiting thread is interrupted.
+     *
+     * @throws RejectedExecutionException when the queue of waiting jobs is full
+     */
+    public LoadJobStatus submitAndWait(int maxDocuments) throws InterruptedException {
+        LoadJobStatus submitted = submit(maxDocuments);
+        LoadJob job = jobs.get(submitted.id());
+        try {
+            job.awaitFinish();
+        } catch (InterruptedException e) {
+            job.requestCancel();
+            throw e;
+        }
+        return job.status();
+    }
+
+    public Optional<LoadJobStatus> status(String id) {
+        return Optional.ofNullable(jobs.get(id)).map(LoadJob::status);
+    }
+
+    public List<LoadJobStatus> list() {
+        return jobs.values().stream()
+                .map(LoadJob::status)
+                .sorted(Comparator.comparing(LoadJobStatus::submittedAt))
+                .toList();
+    }
+
+    /**
+     * Asks a job to stop. A queued job never starts, a running one stops at its next stage
+     * hand-off; the returned status may therefore still show it running.
+     */
+    public Optional<LoadJobStatus> cancel(String id) {
+        LoadJob job = jobs.get(id);
+        if (job == null) {
+            return Optional.empty();
+        }
+        job.requestCancel();
+        return Optional.of(job.status());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobs.values().forEach(LoadJob::requestCancel);
+        executor.shutdown();
+    }
+
+    private void run(LoadJob job) {
+        if (job.isCancelRequested()) {
+            job.finish(LoadJobState.CANCELLED, null, null);
+            return;
+        }
+        IngestionStats stats = job.start();
+        try {
+            IngestionReport report = dataLoaderService.load(job.maxDocuments(), stats, job::isCancelRequested);
+            job.finish(LoadJobState.SUCCEEDED, report, null);
+        } catch (CancellationException e) {
+            job.finish(LoadJobState.CANCELLED, stats.report(), null);
+        } catch (RuntimeException e) {
+            log.error("Load job {} failed", job.id(), e);
+            job.finish(LoadJobState.FAILED, stats.report(), e.getMessage());
+        }
+    }
+
+    private void evictFinishedJobs() {
+        List<LoadJob> finished = jobs.values().stream()
+                .filter(LoadJob::isFinished)
+                .sorted(Comparator.comparing(LoadJob::finishedAt))
+                .toList();
+        for (int i = 0; i < finished.size() - RETAINED_FINISHED_JOBS; i++) {
+            jobs.remove(finished.get(i).id());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.aidemo.service.job;
+
+import com.example.aidemo.service.ingest.IngestionReport;
+
+import java.time.Instant;
+
+/**
+ * Snapshot of a load job.
+ *
+ * @param chunksPerSecond chunks written per second over the last few seconds
+ * @param etaSeconds      estimated seconds left, negative while there is no estimate yet
+ * @param report          per-stage throughput, once the job has stopped
+ */
+public record LoadJobStatus(
+        String id,
+        LoadJobState state,
+        int maxDocuments,
+        Instant submittedAt,
+        Instant startedAt,
+        Instant finishedAt,
+        int filesTotal,
+        int filesDone,
+        int filesSkipped,
+        long entriesParsed,
+        long chunksEmbedded,
+        long chunksWritten,
+        double chunksPerSecond,
+        double etaSeconds,
+        String error,
+        IngestionReport report
+) {
+    public enum LoadJobState {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED;
+
+        public boolean isFinished() {
+            return this != QUEUED && this != RUNNING;
+        }
+    }
+}
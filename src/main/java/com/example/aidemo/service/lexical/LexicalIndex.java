@@ -0,0 +1,392 @@
+package com.example.aidemo.service.lexical;
+
+import com.example.aidemo.service.ingest.IngestionState;
+import com.example.aidemo.service.vectorstore.DocumentLog;
+import com.example.aidemo.service.vectorstore.MetadataFilter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * BM25 inverted index over the ingested chunks, for the exact identifiers that embeddings blur.
+ * <p>
+ * The chunk text, which holds the eLog title and text, and the {@code originId} metadata are
+ * indexed as they are written by the ingestion pipeline. Chunks are kept in a {@link DocumentLog}
+ * under {@code lexical} in the {@link IngestionState} directory of the vector store; the
+ * postings, compressed per term, live on heap and are saved to {@code postings.bin} every
+ * {@code snapshot-interval} chunks and at shutdown. At startup the snapshot is loaded and only
+ * the chunks logged after it are indexed again. Replaced and deleted chunks stay in the postings,
+ * never returned, until they outnumber the live ones: the log is then rewritten with the live
+ * chunks only and indexed again.
+ */
+@Component
+public class LexicalIndex implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(LexicalIndex.class);
+    private static final int MAGIC = 0x424d3235;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final String SCORE = "bm25";
+    // below this many dead slots rewriting the log is not worth it
+    private static final int MIN_DEAD_SLOTS = 1024;
+
+    private record Hit(int slot, float score) {}
+
+    private final ObjectMapper objectMapper;
+    private final Path documentsFile;
+    // replaced by compact, which holds the write lock
+    private DocumentLog documents;
+    private final Path snapshotFile;
+    private final int snapshotInterval;
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int[] lengths = new int[1024];
+    private long totalLength;
+    private int indexedSlots;
+    private int savedSlots;
+    // ids deleted while a rebuild runs, its scan of the store may have read them before
+    private Set<String> deletedDuringRebuild;
+
+    public LexicalIndex(
+            ObjectMapper objectMapper,
+            @Value("${aidemo.ingest.state-dir:.aidemo}") String stateDirectory,
+            @Value("${aidemo.vectorstore.type:pgvector}") String vectorStoreType,
+            @Value("${aidemo.retrieval.lexical.snapshot-interval:20000}") int snapshotInterval) {
+        Path directory = IngestionState.directory(stateDirectory, vectorStoreType).resolve("lexical");
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create " + directory, e);
+        }
+        this.objectMapper = objectMapper;
+        this.documentsFile = directory.resolve("documents.log");
+        this.documents = new DocumentLog(documentsFile, objectMapper);
+        this.snapshotFile = directory.resolve("postings.bin");
+        this.snapshotInterval = snapshotInterval;
+        load();
+        if (indexedSlots < documents.slots()) {
+            log.info("Indexing {} chunks logged after the last lexical snapshot", documents.slots() - indexedSlots);
+            for (int slot = indexedSlots; slot < documents.slots(); slot++) {
+                index(slot, documents.isLive(slot) ? text(documents.content(slot), documents.metadata(slot)) : "");
+            }
+            save();
+        }
+        compactIfWasteful();
+    }
+
+    /**
+     * Indexes chunks, replacing the chunks with the same id.
+     */
+    public void add(List<Document> chunks) {
+        lock.writeLock().lock();
+        try {
+            for (Document chunk : chunks) {
+                if (deletedDuringRebuild != null) {
+                    deletedDuringRebuild.remove(chunk.getId());
+                }
+                int slot = documents.slots();
+                documents.put(slot, chunk.getId(), chunk.getMetadata(), chunk.getContent());
+                index(slot, text(chunk.getContent(), chunk.getMetadata()));
+            }
+            documents.force();
+            if (indexedSlots - savedSlots >= snapshotInterval) {
+                save();
+            }
+            compactIfWasteful();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void delete(List<String> ids) {
+        lock.writeLock().lock();
+        try {
+            ids.forEach(documents::delete);
+            if (deletedDuringRebuild != null) {
+                deletedDuringRebuild.addAll(ids);
+            }
+            documents.force();
+            compactIfWasteful();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Empties the index for a rebuild from the vector store, which loads may write to meanwhile.
+     * Until {@link #endRebuild()} the ids they delete are remembered, so that
+     * {@link #addRebuilt} does not index again a chunk the scan read before it was deleted.
+     */
+    public void beginRebuild() {
+        lock.writeLock().lock();
+        try {
+            clear();
+            deletedDuringRebuild = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes chunks read from the vector store by a rebuild, skipping those deleted since it
+     * began and those a load has indexed already.
+     */
+    public void addRebuilt(List<Document> chunks) {
+        lock.writeLock().lock();
+        try {
+            add(chunks.stream()
+                    .filter(chunk -> !deletedDuringRebuild.contains(chunk.getId()) && documents.slotOf(chunk.getId()) == null)
+                    .toList());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void endRebuild() {
+        lock.writeLock().lock();
+        try {
+            deletedDuringRebuild = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the {@code topK} chunks with the best BM25 score for {@code query} among those
+     * matching {@code filter}, best first, with the score in the {@code bm25} metadata.
+     */
+    public List<Document> search(String query, int topK, Optional<Filter.Expression> filter) {
+        Set<String> terms = new LinkedHashSet<>(Tokenizer.terms(query));
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            int liveDocuments = documents.liveCount();
+            double averageLength = (double) totalLength / Math.max(1, indexedSlots);
+            List<PostingList> lists = new ArrayList<>(terms.size());
+            int postingCount = 0;
+            for (String term : terms) {
+                PostingList list = postings.get(term);
+                if (list != null) {
+                    lists.add(list);
+                    postingCount += list.documents();
+                }
+            }
+            ScoreAccumulator scores = new ScoreAccumulator(postingCount);
+            for (PostingList list : lists) {
+                // replaced chunks still count in the frequencies until the log is compacted, which can make them exceed the live documents
+                double idf = Math.max(0, Math.log(1 + (liveDocuments - list.documents() + 0.5) / (list.documents() + 0.5)));
+                list.forEach((slot, frequency) -> scores.add(slot, (float) (idf * frequency * (K1 + 1)
+                        / (frequency + K1 * (1 - B + B * lengths[slot] / averageLength)))));
+            }
+
+            PriorityQueue<Hit> best = new PriorityQueue<>(Comparator.comparingDouble(Hit::score));
+            scores.forEach((slot, score) -> {
+                if (score <= 0 || !documents.isLive(slot)
+                        || (best.size() == topK && score <= best.peek().score())
+                        || (filter.isPresent() && !MetadataFilter.matches(filter.get(), documents.metadata(slot)))) {
+                    return;
+                }
+                best.add(new Hit(slot, score));
+                if (best.size() > topK) {
+                    best.poll();
+                }
+            });
+            List<Hit> hits = new ArrayList<>(best);
+            hits.sort(Comparator.comparingDouble(Hit::score).reversed());
+            List<Document> results = new ArrayList<>(hits.size());
+            for (Hit hit : hits) {
+                Map<String, Object> metadata = new HashMap<>(documents.metadata(hit.slot()));
+                metadata.put(SCORE, hit.score());
+                results.add(new Document(documents.id(hit.slot()), documents.content(hit.slot()), metadata));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.liveCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Drops every chunk and the saved postings.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            documents.clear();
+            postings.clear();
+            lengths = new int[1024];
+            totalLength = 0;
+            indexedSlots = 0;
+            savedSlots = 0;
+            Files.deleteIfExists(snapshotFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot delete " + snapshotFile, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (indexedSlots > savedSlots) {
+                save();
+            }
+            documents.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void compactIfWasteful() {
+        int dead = documents.slots() - documents.liveCount();
+        if (dead >= MIN_DEAD_SLOTS && dead > documents.liveCount()) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the chunk log with the live chunks only and indexes it again. The snapshot is
+     * deleted first, as its slots no longer match the rewritten log.
+     */
+    private void compact() {
+        log.info("Compacting the lexical index: keeping {} of {} chunks", documents.liveCount(), documents.slots());
+        Path compacted = documentsFile.resolveSibling(documentsFile.getFileName() + ".compacting");
+        try {
+            Files.deleteIfExists(compacted);
+            try (DocumentLog copy = new DocumentLog(compacted, objectMapper)) {
+                BitSet live = documents.live();
+                for (int slot = live.nextSetBit(0); slot >= 0; slot = live.nextSetBit(slot + 1)) {
+                    copy.put(copy.slots(), documents.id(slot), documents.metadata(slot), documents.content(slot));
+                }
+            }
+            documents.close();
+            Files.deleteIfExists(snapshotFile);
+            Files.move(compacted, documentsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot compact " + documentsFile, e);
+        }
+        documents = new DocumentLog(documentsFile, objectMapper);
+        postings.clear();
+        lengths = new int[Math.max(1024, documents.slots())];
+        totalLength = 0;
+        indexedSlots = 0;
+        for (int slot = 0; slot < documents.slots(); slot++) {
+            index(slot, text(documents.content(slot), documents.metadata(slot)));
+        }
+        save();
+    }
+
+    private static String text(String content, Map<String, Object> metadata) {
+        Object originId = metadata.get("originId");
+        return originId == null ? content : content + " " + originId;
+    }
+
+    private void index(int slot, String text) {
+        List<String> terms = Tokenizer.terms(text);
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String term : terms) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+        frequencies.forEach((term, frequency) -> postings.computeIfAbsent(term, t -> new PostingList()).add(slot, frequency));
+        if (slot >= lengths.length) {
+            lengths = Arrays.copyOf(lengths, Math.max(slot + 1, lengths.length * 2));
+        }
+        lengths[slot] = terms.size();
+        totalLength += terms.size();
+        indexedSlots = slot + 1;
+    }
+
+    private void load() {
+        if (!Files.exists(snapshotFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile), 1 << 16))) {
+            int slots;
+            if (in.readInt() != MAGIC || (slots = in.readInt()) > documents.slots()) {
+                log.warn("Ignoring lexical snapshot {} that does not match the chunk log", snapshotFile);
+                return;
+            }
+            long length = in.readLong();
+            int[] slotLengths = new int[Math.max(slots, 1024)];
+            for (int i = 0; i < slots; i++) {
+                slotLengths[i] = in.readInt();
+            }
+            int termCount = in.readInt();
+            Map<String, PostingList> loaded = new HashMap<>(termCount * 2);
+            for (int i = 0; i < termCount; i++) {
+                loaded.put(in.readUTF(), PostingList.read(in));
+            }
+            postings.putAll(loaded);
+            lengths = slotLengths;
+            totalLength = length;
+            indexedSlots = slots;
+            savedSlots = slots;
+        } catch (IOException e) {
+            log.warn("Cannot read lexical snapshot {}, rebuilding it", snapshotFile, e);
+        }
+    }
+
+    private void save() {
+        Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(indexedSlots);
+            out.writeLong(totalLength);
+            for (int i = 0; i < indexedSlots; i++) {
+                out.writeInt(lengths[i]);
+            }
+            out.writeInt(postings.size());
+            for (Map.Entry<String, PostingList> entry : postings.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().write(out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write " + tmp, e);
+        }
+        try {
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot replace " + snapshotFile, e);
+        }
+        savedSlots = indexedSlots;
+    }
+}
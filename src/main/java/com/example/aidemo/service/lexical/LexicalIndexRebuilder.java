@@ -0,0 +1,72 @@
+package com.example.aidemo.service.lexical;
+
+import com.example.aidemo.service.ingest.VectorWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills the {@link LexicalIndex} from the documents of the vector store.
+ * <p>
+ * The ingestion pipeline only indexes the chunks it writes, so a store loaded before the lexical
+ * index existed, or whose index was lost, would leave hybrid retrieval to the vectors alone. At
+ * startup, when the index is empty but the store is not, the index is rebuilt in the background;
+ * searches return fewer lexical hits until it has finished. Chunks written by a load running
+ * meanwhile are indexed by the load itself, and those it deletes are not indexed again from an
+ * earlier read of the store.
+ */
+@Component
+public class LexicalIndexRebuilder {
+    private static final Logger log = LoggerFactory.getLogger(LexicalIndexRebuilder.class);
+    private static final int BATCH_SIZE = 1000;
+
+    private final LexicalIndex lexicalIndex;
+    private final VectorWriter vectorWriter;
+    private final boolean enabled;
+
+    public LexicalIndexRebuilder(
+            LexicalIndex lexicalIndex,
+            VectorWriter vectorWriter,
+            @Value("${aidemo.retrieval.lexical.enabled:true}") boolean enabled) {
+        this.lexicalIndex = lexicalIndex;
+        this.vectorWriter = vectorWriter;
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        if (!enabled || lexicalIndex.size() > 0 || vectorWriter.isEmpty()) {
+            return;
+        }
+        log.info("Lexical index is empty while the vector store is not, rebuilding it");
+        Thread.ofVirtual().name("lexical-index-rebuild").start(() -> {
+            try {
+                rebuild();
+            } catch (RuntimeException e) {
+                log.error("Lexical index rebuild failed", e);
+            }
+        });
+    }
+
+    /**
+     * Empties the index and indexes every document of the vector store again, returns how many.
+     */
+    public synchronized int rebuild() {
+        long start = System.nanoTime();
+        lexicalIndex.beginRebuild();
+        int[] indexed = {0};
+        try {
+            vectorWriter.scan(BATCH_SIZE, batch -> {
+                lexicalIndex.addRebuilt(batch);
+                indexed[0] += batch.size();
+            });
+        } finally {
+            lexicalIndex.endRebuild();
+        }
+        log.info("Lexical index rebuilt with {} documents in {} ms", indexed[0], (System.nanoTime() - start) / 1_000_000);
+        return indexed[0];
+    }
+}
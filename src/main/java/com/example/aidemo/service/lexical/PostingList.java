@@ -0,0 +1,89 @@
+package com.example.aidemo.service.lexical;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Documents containing a term, with the term frequency in each, as variable-length encoded
+ * {@code [slot delta, frequency]} pairs. Slots are appended in increasing order, so deltas are
+ * small and most pairs take two bytes.
+ */
+final class PostingList {
+    /**
+     * Receives the postings of a list in slot order.
+     */
+    interface Visitor {
+        void posting(int slot, int frequency);
+    }
+
+    private byte[] data = new byte[8];
+    private int length;
+    private int documents;
+    private int lastSlot;
+
+    int documents() {
+        return documents;
+    }
+
+    void add(int slot, int frequency) {
+        writeVarInt(slot - lastSlot);
+        writeVarInt(frequency);
+        lastSlot = slot;
+        documents++;
+    }
+
+    void forEach(Visitor visitor) {
+        int position = 0;
+        int slot = 0;
+        int[] value = new int[1];
+        while (position < length) {
+            position = readVarInt(position, value);
+            slot += value[0];
+            position = readVarInt(position, value);
+            visitor.posting(slot, value[0]);
+        }
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(documents);
+        out.writeInt(lastSlot);
+        out.writeInt(length);
+        out.write(data, 0, length);
+    }
+
+    static PostingList read(DataInput in) throws IOException {
+        PostingList list = new PostingList();
+        list.documents = in.readInt();
+        list.lastSlot = in.readInt();
+        list.length = in.readInt();
+        list.data = new byte[Math.max(8, list.length)];
+        in.readFully(list.data, 0, list.length);
+        return list;
+    }
+
+    private void writeVarInt(int value) {
+        if (length + 5 > data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        while ((value & ~0x7F) != 0) {
+            data[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+
+    private int readVarInt(int position, int[] value) {
+        int result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[position++];
+            result |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        value[0] = result;
+        return position;
+    }
+}
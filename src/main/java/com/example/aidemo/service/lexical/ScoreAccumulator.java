@@ -0,0 +1,47 @@
+package com.example.aidemo.service.lexical;
+
+/**
+ * Scores summed per slot over the posting lists of a query, in an open addressing table sized
+ * for the postings visited rather than for every slot of the index.
+ */
+final class ScoreAccumulator {
+    /**
+     * Receives the slots with their summed score, in no particular order.
+     */
+    interface Visitor {
+        void score(int slot, float score);
+    }
+
+    // slot + 1, 0 marks an empty entry
+    private final int[] keys;
+    private final float[] scores;
+    private final int mask;
+
+    /**
+     * @param postings the number of postings that will be added, at most
+     */
+    ScoreAccumulator(int postings) {
+        int capacity = Integer.highestOneBit(Math.max(16, postings * 2) - 1) << 1;
+        keys = new int[capacity];
+        scores = new float[capacity];
+        mask = capacity - 1;
+    }
+
+    void add(int slot, float score) {
+        int key = slot + 1;
+        int i = (key * 0x9E3779B9) >>> 1 & mask;
+        while (keys[i] != 0 && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        scores[i] += score;
+    }
+
+    void forEach(Visitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                visitor.score(keys[i] - 1, scores[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.aidemo.service.lexical;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits text into lower-case terms for the lexical index and the lexical scoring of reranking.
+ * <p>
+ * eLog identifiers are kept whole: a run of letters and digits joined by {@code - _ . /} is one
+ * term, and its parts are terms as well, so {@code "MCC_1117757"} matches both the full id and
+ * {@code 1117757}, and {@code "Sector 19-8"} matches {@code 19-8}. Common English words carry no
+ * information and are dropped.
+ */
+public final class Tokenizer {
+    private static final Pattern TERM = Pattern.compile("[\\p{L}\\p{N}]+(?:[-_./][\\p{L}\\p{N}]+)*");
+    private static final Pattern SEPARATOR = Pattern.compile("[-_./]");
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "but", "by", "for", "from", "has", "have", "in", "is", "it",
+            "its", "of", "on", "or", "that", "the", "this", "to", "was", "were", "what", "when", "which", "who",
+            "will", "with");
+
+    private Tokenizer() {
+    }
+
+    public static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        Matcher matcher = TERM.matcher(text.toLowerCase(Locale.ROOT));
+        while (matcher.find()) {
+            String term = matcher.group();
+            add(terms, term);
+            if (SEPARATOR.matcher(term).find()) {
+                for (String part : SEPARATOR.split(term)) {
+                    add(terms, part);
+                }
+            }
+        }
+        return terms;
+    }
+
+    private static void add(List<String> terms, String term) {
+        if (!STOP_WORDS.contains(term)) {
+            terms.add(term);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.aidemo.service.model;
+
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.function.Supplier;
+
+/**
+ * Who a chat model call is made for and how urgent it is, which the {@link ModelScheduler} queues
+ * by. Set by the endpoints: in the Reactor context of the answers they return, and around blocking
+ * calls with {@link #run}; calls made for nobody in particular are {@link #DEFAULT}.
+ */
+public record ModelRequest(Priority priority, String client) {
+    public static final ModelRequest DEFAULT = new ModelRequest(Priority.STANDARD, "anonymous");
+    public static final String KEY = "aidemo.model.request";
+
+    private static final ThreadLocal<ModelRequest> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Queued first to last: someone is reading along, someone is waiting for a single answer,
+     * nobody is waiting.
+     */
+    public enum Priority { INTERACTIVE, STANDARD, BATCH }
+
+    public Context asContext() {
+        return Context.of(KEY, this);
+    }
+
+    /**
+     * Runs blocking {@code work} whose model calls are made for this request.
+     */
+    public <T> T run(Supplier<T> work) {
+        ModelRequest previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * The request in {@code context}, else the one {@link #run} is running for.
+     */
+    public static ModelRequest current(ContextView context) {
+        return context.<ModelRequest>getOrEmpty(KEY).orElseGet(ModelRequest::current);
+    }
+
+    static ModelRequest current() {
+        ModelRequest request = CURRENT.get();
+        return request == null ? DEFAULT : request;
+    }
+}
@@ -0,0 +1,279 @@
+package com.example.aidemo.service.model;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control and fair queuing of the calls to the chat model server.
+ * <p>
+ * At most {@code max-concurrent} calls run at once; the others wait in one queue per
+ * {@link ModelRequest.Priority}, served strictly in priority order, and within a priority round
+ * robin across clients, so a client with many calls in the queue (one question answered from
+ * hundreds of documents) takes turns with the others instead of going first. Endpoints
+ * {@link #admit} their request before doing any work: it is rejected with a
+ * {@link ModelBusyException} when {@code max-queued} calls are already waiting, or when the
+ * oldest call it would queue behind has been waiting longer than {@code max-queue-wait}. Admitted
+ * requests are never rejected halfway through their calls.
+ * <p>
+ * The queues are exposed as {@code aidemo.model.queue.depth} and {@code aidemo.model.queue.wait}
+ * per priority, along with the running calls in {@code aidemo.model.active} and the rejected
+ * requests in {@code aidemo.model.rejected}.
+ */
+@Component
+public class ModelScheduler {
+    private static final Logger log = LoggerFactory.getLogger(ModelScheduler.class);
+    private static final String PRIORITY = "priority";
+    /**
+     * Weight of the last call in the running average of the call duration.
+     */
+    private static final double DURATION_WEIGHT = 0.2;
+
+    /**
+     * A running call on the model server, to be closed once the call is over.
+     */
+    public final class Permit implements AutoCloseable {
+        private final long grantedAt = System.nanoTime();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Permit() {
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                release(System.nanoTime() - grantedAt);
+            }
+        }
+    }
+
+    private static final class Ticket {
+        private final ModelRequest request;
+        private final MonoSink<Permit> sink;
+        private final long enqueuedAt = System.nanoTime();
+        private Permit permit;
+
+        private Ticket(ModelRequest request, MonoSink<Permit> sink) {
+            this.request = request;
+            this.sink = sink;
+        }
+    }
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final Duration maxQueueWait;
+    private final Map<ModelRequest.Priority, LinkedHashMap<String, ArrayDeque<Ticket>>> queues = new EnumMap<>(ModelRequest.Priority.class);
+    private final Map<ModelRequest.Priority, AtomicInteger> depths = new EnumMap<>(ModelRequest.Priority.class);
+    private final Map<ModelRequest.Priority, Timer> waits = new EnumMap<>(ModelRequest.Priority.class);
+    private final Map<ModelRequest.Priority, Counter> rejections = new EnumMap<>(ModelRequest.Priority.class);
+    private final AtomicInteger active = new AtomicInteger();
+    private int queued;
+    private double callNanos;
+
+    public ModelScheduler(
+            MeterRegistry meterRegistry,
+            @Value("${aidemo.model.max-concurrent:4}") int maxConcurrent,
+            @Value("${aidemo.model.max-queued:64}") int maxQueued,
+            @Value("${aidemo.model.max-queue-wait:30s}") Duration maxQueueWait) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxQueueWait = maxQueueWait;
+        for (ModelRequest.Priority priority : ModelRequest.Priority.values()) {
+            String tag = priority.name().toLowerCase();
+            queues.put(priority, new LinkedHashMap<>());
+            AtomicInteger depth = new AtomicInteger();
+            depths.put(priority, depth);
+            Gauge.builder("aidemo.model.queue.depth", depth, AtomicInteger::get)
+                    .description("Chat model calls waiting for the model server")
+                    .tag(PRIORITY, tag)
+                    .register(meterRegistry);
+            waits.put(priority, Timer.builder("aidemo.model.queue.wait")
+                    .description("Time a chat model call waited for the model server")
+                    .tag(PRIORITY, tag)
+                    .register(meterRegistry));
+            rejections.put(priority, Counter.builder("aidemo.model.rejected")
+                    .description("Requests rejected because the model server was too busy")
+                    .tag(PRIORITY, tag)
+                    .register(meterRegistry));
+        }
+        Gauge.builder("aidemo.model.active", active, AtomicInteger::get)
+                .description("Chat model calls running on the model server")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Checks that {@code request} can be served in reasonable time.
+     *
+     * @throws ModelBusyException if the queue is full or the calls ahead have waited too long
+     */
+    public void admit(ModelRequest request) {
+        String reason;
+        Duration retryAfter;
+        synchronized (this) {
+            if (queued >= maxQueued) {
+                reason = "Too many questions are waiting for the model server";
+            } else if (oldestWaitNanos(request.priority()) > maxQueueWait.toNanos()) {
+                reason = "The model server is too busy to answer in time";
+            } else {
+                return;
+            }
+            retryAfter = estimatedWait(queuedAhead(request.priority()));
+        }
+        rejections.get(request.priority()).increment();
+        log.warn("Rejected {} request of {}: {}, retry after {}", request.priority(), request.client(), reason, retryAfter);
+        throw new ModelBusyException(reason, retryAfter);
+    }
+
+    /**
+     * Waits for a turn of {@code request} on the model server. The permit must be closed once
+     * the call is over; cancelling the wait leaves the queue.
+     */
+    public Mono<Permit> acquire(ModelRequest request) {
+        return Mono.create(sink -> {
+            Ticket ticket = new Ticket(request, sink);
+            sink.onCancel(() -> cancel(ticket));
+            synchronized (this) {
+                if (queued == 0 && active.get() < maxConcurrent) {
+                    active.incrementAndGet();
+                    ticket.permit = new Permit();
+                } else {
+                    queues.get(request.priority()).computeIfAbsent(request.client(), client -> new ArrayDeque<>()).add(ticket);
+                    depths.get(request.priority()).incrementAndGet();
+                    queued++;
+                    return;
+                }
+            }
+            grant(List.of(ticket));
+        });
+    }
+
+    private void release(long durationNanos) {
+        List<Ticket> granted;
+        synchronized (this) {
+            active.decrementAndGet();
+            callNanos = callNanos == 0 ? durationNanos : DURATION_WEIGHT * durationNanos + (1 - DURATION_WEIGHT) * callNanos;
+            granted = dequeue();
+        }
+        grant(granted);
+    }
+
+    private void cancel(Ticket ticket) {
+        Permit granted;
+        List<Ticket> next = List.of();
+        synchronized (this) {
+            granted = ticket.permit;
+            if (granted == null) {
+                Map<String, ArrayDeque<Ticket>> clients = queues.get(ticket.request.priority());
+                ArrayDeque<Ticket> tickets = clients.get(ticket.request.client());
+                if (tickets != null && tickets.remove(ticket)) {
+                    if (tickets.isEmpty()) {
+                        clients.remove(ticket.request.client());
+                    }
+                    depths.get(ticket.request.priority()).decrementAndGet();
+                    queued--;
+                }
+            }
+        }
+        // granted while being cancelled, the turn goes to the next call
+        if (granted != null) {
+            granted.close();
+        }
+    }
+
+    /**
+     * Takes calls off the queues while there is room on the model server, holding the lock.
+     */
+    private List<Ticket> dequeue() {
+        List<Ticket> granted = new ArrayList<>();
+        while (queued > 0 && active.get() < maxConcurrent) {
+            Ticket ticket = next();
+            active.incrementAndGet();
+            ticket.permit = new Permit();
+            granted.add(ticket);
+        }
+        return granted;
+    }
+
+    /**
+     * The first call of the first client of the most urgent queue, the client moving to the end
+     * of its queue.
+     */
+    private Ticket next() {
+        for (ModelRequest.Priority priority : ModelRequest.Priority.values()) {
+            Iterator<Map.Entry<String, ArrayDeque<Ticket>>> clients = queues.get(priority).entrySet().iterator();
+            if (clients.hasNext()) {
+                Map.Entry<String, ArrayDeque<Ticket>> first = clients.next();
+                Ticket ticket = first.getValue().poll();
+                clients.remove();
+                if (!first.getValue().isEmpty()) {
+                    queues.get(priority).put(first.getKey(), first.getValue());
+                }
+                depths.get(priority).decrementAndGet();
+                queued--;
+                return ticket;
+            }
+        }
+        throw new IllegalStateException("No call queued");
+    }
+
+    private void grant(List<Ticket> tickets) {
+        for (Ticket ticket : tickets) {
+            waits.get(ticket.request.priority()).record(Duration.ofNanos(System.nanoTime() - ticket.enqueuedAt));
+            ticket.sink.success(ticket.permit);
+        }
+    }
+
+    /**
+     * How long the oldest call served before or with those of {@code priority} has been waiting.
+     */
+    private long oldestWaitNanos(ModelRequest.Priority priority) {
+        long now = System.nanoTime();
+        long oldest = 0;
+        for (ModelRequest.Priority ahead : ModelRequest.Priority.values()) {
+            if (ahead.compareTo(priority) > 0) {
+                break;
+            }
+            for (ArrayDeque<Ticket> tickets : queues.get(ahead).values()) {
+                oldest = Math.max(oldest, now - tickets.getFirst().enqueuedAt);
+            }
+        }
+        return oldest;
+    }
+
+    private int queuedAhead(ModelRequest.Priority priority) {
+        int ahead = 0;
+        for (ModelRequest.Priority other : ModelRequest.Priority.values()) {
+            if (other.compareTo(priority) <= 0) {
+                ahead += depths.get(other).get();
+            }
+        }
+        return ahead;
+    }
+
+    /**
+     * Time for the model server to get through {@code ahead} queued calls and one more, from the
+     * average call duration.
+     */
+    private Duration estimatedWait(int ahead) {
+        double perCall = callNanos == 0 ? Duration.ofSeconds(1).toNanos() : callNanos;
+        return Duration.ofNanos((long) (perCall * (ahead + 1) / maxConcurrent));
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.aidemo.service.model;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.ollama.OllamaChatModel;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Puts the {@link ScheduledChatModel} in front of the Ollama chat model. Being the primary
+ * {@code ChatModel}, it is what every {@code ChatClient.Builder} is built on.
+ */
+@Configuration
+public class ModelSchedulerConfiguration {
+    @Bean
+    @Primary
+    public ScheduledChatModel scheduledChatModel(OllamaChatModel ollamaChatModel, ModelScheduler modelScheduler, MeterRegistry meterRegistry) {
+        return new ScheduledChatModel(ollamaChatModel, modelScheduler, meterRegistry);
+    }
+}
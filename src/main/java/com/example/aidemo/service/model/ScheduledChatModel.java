@@ -0,0 +1,102 @@
+package com.example.aidemo.service.model;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * {@link ChatModel} decorator that runs every call through the {@link ModelScheduler}, for the
+ * {@link ModelRequest} of the caller.
+ * <p>
+ * Identical prompts in flight at the same time, same messages and same options, are sent to the
+ * model server once: later callers share the response of the first, streamed responses from their
+ * first token (counted in {@code aidemo.model.coalesced}). A shared stream is cancelled when the
+ * last of its subscribers cancels.
+ */
+public class ScheduledChatModel implements ChatModel {
+    private record PromptKey(List<String> messages, List<Object> options) {}
+
+    private final ChatModel delegate;
+    private final ModelScheduler scheduler;
+    private final Counter coalesced;
+    private final Map<PromptKey, Mono<ChatResponse>> calls = new ConcurrentHashMap<>();
+    private final Map<PromptKey, Flux<ChatResponse>> streams = new ConcurrentHashMap<>();
+
+    public ScheduledChatModel(ChatModel delegate, ModelScheduler scheduler, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+        this.coalesced = Counter.builder("aidemo.model.coalesced")
+                .description("Chat model calls answered by an identical call in flight")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        ModelRequest request = ModelRequest.current();
+        return coalesce(calls, key(prompt), done -> Mono.usingWhen(scheduler.acquire(request),
+                        permit -> Mono.fromCallable(() -> delegate.call(prompt)),
+                        permit -> Mono.fromRunnable(permit::close))
+                .doFinally(signal -> done.run())
+                .cache()
+        ).block();
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.deferContextual(context -> {
+            ModelRequest request = ModelRequest.current(context);
+            return coalesce(streams, key(prompt), done -> Flux.usingWhen(scheduler.acquire(request),
+                            permit -> delegate.stream(prompt),
+                            permit -> Mono.fromRunnable(permit::close))
+                    .doFinally(signal -> done.run())
+                    .replay()
+                    .refCount());
+        });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate.getDefaultOptions();
+    }
+
+    /**
+     * The call in flight for {@code key}, else the one {@code start} creates, which runs the
+     * callback it is given once it is over.
+     */
+    private <T> T coalesce(Map<PromptKey, T> inFlight, PromptKey key, Function<Runnable, T> start) {
+        T running = inFlight.get(key);
+        if (running == null) {
+            AtomicReference<T> started = new AtomicReference<>();
+            started.set(start.apply(() -> inFlight.remove(key, started.get())));
+            running = inFlight.putIfAbsent(key, started.get());
+            if (running == null) {
+                return started.get();
+            }
+        }
+        coalesced.increment();
+        return running;
+    }
+
+    private static PromptKey key(Prompt prompt) {
+        List<String> messages = prompt.getInstructions().stream()
+                .map(message -> message.getMessageType() + ":" + message.getContent())
+                .toList();
+        ChatOptions options = prompt.getOptions();
+        List<Object> values = options == null ? List.of() : Arrays.asList(
+                options.getModel(), options.getTemperature(), options.getTopP(), options.getTopK(),
+                options.getMaxTokens(), options.getFrequencyPenalty(), options.getPresencePenalty(), options.getStopSequences());
+        return new PromptKey(messages, values);
+    }
+}
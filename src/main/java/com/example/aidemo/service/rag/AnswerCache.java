@@ -0,0 +1,128 @@
+package com.example.aidemo.service.rag;
+
+import com.example.aidemo.controller.AnswerDTO;
+import com.example.aidemo.service.ingest.DocumentsIngestedEvent;
+import com.example.aidemo.service.vectorstore.EventDateBounds;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Semantic cache of answers, so repeated and reworded questions are not answered again.
+ * <p>
+ * An answer is stored with the embedding of its question, the {@code eventDate} filter it was
+ * searched with and the endpoint that produced it, and is returned for a later question of the
+ * same endpoint with the same filter whose embedding has a cosine similarity of at least
+ * {@code min-similarity}. Answers are the events of an endpoint, one for a plain answer and
+ * several for a streamed one, so they can be replayed as they were sent. When documents are
+ * ingested every answer whose filter covers their dates is dropped, answers without a filter
+ * cover every date.
+ */
+@Component
+public class AnswerCache {
+    private static final Logger log = LoggerFactory.getLogger(AnswerCache.class);
+
+    private record Entry(String endpoint, float[] embedding, String filter, EventDateBounds period, List<AnswerDTO> answers, long expiresAtNanos) {}
+
+    private final boolean enabled;
+    private final double minSimilarity;
+    private final int maxEntries;
+    private final Duration ttl;
+    private final List<Entry> entries = new ArrayList<>();
+
+    public AnswerCache(
+            @Value("${aidemo.answer-cache.enabled:true}") boolean enabled,
+            @Value("${aidemo.answer-cache.min-similarity:0.97}") double minSimilarity,
+            @Value("${aidemo.answer-cache.max-entries:1000}") int maxEntries,
+            @Value("${aidemo.answer-cache.ttl:1h}") Duration ttl) {
+        this.enabled = enabled;
+        this.minSimilarity = minSimilarity;
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Returns the answer of the most similar cached question, if it is similar enough.
+     */
+    public Optional<List<AnswerDTO>> get(String endpoint, float[] questionEmbedding, Optional<Filter.Expression> filter) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        float[] embedding = normalize(questionEmbedding);
+        String filterKey = filter.map(Filter.Expression::toString).orElse("");
+        long now = System.nanoTime();
+        Entry best = null;
+        double bestSimilarity = minSimilarity;
+        synchronized (entries) {
+            entries.removeIf(entry -> now - entry.expiresAtNanos() >= 0);
+            for (Entry entry : entries) {
+                if (entry.endpoint().equals(endpoint) && entry.filter().equals(filterKey)) {
+                    double similarity = dot(entry.embedding(), embedding);
+                    if (similarity >= bestSimilarity) {
+                        best = entry;
+                        bestSimilarity = similarity;
+                    }
+                }
+            }
+        }
+        if (best != null) {
+            log.debug("Answer cache hit for {} with similarity {}", endpoint, bestSimilarity);
+        }
+        return Optional.ofNullable(best).map(Entry::answers);
+    }
+
+    public void put(String endpoint, float[] questionEmbedding, Optional<Filter.Expression> filter, List<AnswerDTO> answers) {
+        if (!enabled) {
+            return;
+        }
+        Entry entry = new Entry(
+                endpoint,
+                normalize(questionEmbedding),
+                filter.map(Filter.Expression::toString).orElse(""),
+                filter.map(EventDateBounds::of).orElse(EventDateBounds.ALL),
+                List.copyOf(answers),
+                System.nanoTime() + ttl.toNanos());
+        synchronized (entries) {
+            if (entries.size() >= maxEntries) {
+                // entries are kept in insertion order, the oldest goes first
+                entries.remove(0);
+            }
+            entries.add(entry);
+        }
+    }
+
+    @EventListener
+    public void onDocumentsIngested(DocumentsIngestedEvent event) {
+        synchronized (entries) {
+            entries.removeIf(entry -> !event.isDated() || entry.period().overlaps(event.firstEventDate(), event.lastEventDate()));
+        }
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = Math.sqrt(dot(vector, vector));
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = norm == 0 ? 0 : (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
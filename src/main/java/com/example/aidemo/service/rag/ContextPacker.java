@@ -0,0 +1,75 @@
+package com.example.aidemo.service.rag;
+
+import com.example.aidemo.service.text.TokenCounter;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Groups retrieved documents into prompts that fill, but never exceed, a token budget.
+ * <p>
+ * Documents are taken in the order retrieval ranked them, duplicates (same text up to case and
+ * whitespace) are dropped, and the rest is packed first-fit: each document goes into the first
+ * prompt that still has room for it, so the most relevant documents end up in the first prompts
+ * and short entries fill the gaps left by long ones. The room of a prompt is
+ * {@code prompt-token-budget} minus the system template and the question. A document larger than
+ * that on its own is truncated.
+ */
+@Component
+public class ContextPacker {
+    // separators between documents and the template rendering
+    private static final int OVERHEAD_TOKENS = 16;
+
+    private final TokenCounter tokenCounter;
+    private final int promptTokenBudget;
+
+    public ContextPacker(
+            TokenCounter tokenCounter,
+            @Value("${aidemo.context.prompt-token-budget:3000}") int promptTokenBudget) {
+        this.tokenCounter = tokenCounter;
+        this.promptTokenBudget = promptTokenBudget;
+    }
+
+    /**
+     * Packs {@code documents} into groups, each of which fits into one prompt made of
+     * {@code systemTemplate}, the group and {@code question}.
+     */
+    public List<List<Document>> pack(String systemTemplate, String question, List<Document> documents) {
+        int room = Math.max(1, promptTokenBudget - tokenCounter.count(systemTemplate) - tokenCounter.count(question) - OVERHEAD_TOKENS);
+
+        List<List<Document>> bins = new ArrayList<>();
+        List<Integer> free = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (Document document : documents) {
+            if (!seen.add(normalize(document.getContent()))) {
+                continue;
+            }
+            int tokens = tokenCounter.count(document.getContent()) + 1;
+            if (tokens > room) {
+                document = new Document(document.getId(), tokenCounter.truncate(document.getContent(), room - 1), document.getMetadata());
+                tokens = room;
+            }
+            int bin = 0;
+            while (bin < bins.size() && free.get(bin) < tokens) {
+                bin++;
+            }
+            if (bin == bins.size()) {
+                bins.add(new ArrayList<>());
+                free.add(room);
+            }
+            bins.get(bin).add(document);
+            free.set(bin, free.get(bin) - tokens);
+        }
+        return bins;
+    }
+
+    private static String normalize(String text) {
+        return String.join(" ", text.toLowerCase(Locale.ROOT).strip().split("\\s+"));
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.aidemo.service.rag;
+
+import com.example.aidemo.service.rag.TemporalExpressionRecognizer.Outcome;
+import com.example.aidemo.service.rag.TemporalExpressionRecognizer.Recognition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.chat.prompt.SystemPromptTemplate;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionTextParser;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Turns the date wording of a question into a filter on the {@code eventDate} metadata.
+ * <p>
+ * Common expressions are recognized locally by the {@link TemporalExpressionRecognizer}; only
+ * questions it finds ambiguous are sent to the model. Filters produced by the model are cached by
+ * normalized question for {@code cache-ttl} and only used after they parsed into an expression
+ * that compares {@code eventDate} against dates, anything else is treated as "no filter".
+ */
+@Service
+public class EventDateFilterService {
+    private static final Logger log = LoggerFactory.getLogger(EventDateFilterService.class);
+    private static final Pattern DATE_VALUE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}(T[0-9:.]+Z?)?");
+    private static final String LLM_PROMPT = """
+            You are an advanced language model assisting with queries for a Spring AI Vector Index.
+            Your task is to construct a simple filter expression for the `eventDate` field based on the user's request.
+            Today's date is {today}.
+
+            Context:
+            1. The metadata contains a field named `eventDate` that stores dates in the general format `YYYY-MM-DD`.
+            2. If the user's request implies filtering by `eventDate`, return the filter expression in the format:
+               `<field-name> <operator> "<value>"`
+               Examples of valid expressions:
+               - eventDate == "2024-11-14"
+               - eventDate >= "2024-11-01"
+               - eventDate >= "2024-11-14" && eventDate < "2024-11-15"
+            3. If the request implies filtering for a specific date without a time, treat the date as the start of the day.
+            Construct a simple filter expression for the eventDate field based on user requests.
+            Context:
+            	1.	Metadata:
+            	•	eventDate is in YYYY-MM-DD format.
+            	2.	Rules:
+            	•	If filtering by eventDate, return expressions like:
+            	•	eventDate == "YYYY-MM-DD"
+            	•	eventDate >= "YYYY-MM-DD" && eventDate < "YYYY-MM-DD"
+            	•	For a specific date without time, use a range:
+            	•	User asks: “What happened on 11/14/2024?” →
+            eventDate >= "2024-11-14" && eventDate < "2024-11-15"
+            	•	Use SQL-style operators && and ||, and enclose dates in double quotes.
+            	•	If no filtering is needed, return: NO_INDEX.
+
+            Tasks:
+            	1.	Analyze Request:
+            	•	Determine if eventDate filtering is required.
+            	2.	Construct Filter:
+            	•	Use specified formats and operators.
+            	3.	Return Result:
+            	•	Exact filter string or NO_INDEX.
+
+            Examples:
+            	•	User: “What happened on 11/14/2024?” →
+            eventDate >= "2024-11-14" && eventDate < "2024-11-15"
+            	•	User: “Show events after 11/01/2024.” →
+            eventDate >= "2024-11-01"
+            	•	User: “Retrieve all events.” →
+            NO_INDEX
+            return only the index found or NO_INDEX, without additional information or personal opinions.
+            """;
+
+    private record CachedFilter(Optional<Filter.Expression> filter, long expiresAtNanos) {}
+
+    private final ChatClient chatClient;
+    private final RagMetrics ragMetrics;
+    private final TemporalExpressionRecognizer recognizer = new TemporalExpressionRecognizer();
+    private final Duration cacheTtl;
+    private final Map<String, CachedFilter> cache;
+
+    public EventDateFilterService(
+            ChatClient.Builder builder,
+            RagMetrics ragMetrics,
+            @Value("${aidemo.date-filter.cache-ttl:10m}") Duration cacheTtl,
+            @Value("${aidemo.date-filter.cache-entries:1000}") int cacheEntries) {
+        this.chatClient = builder.build();
+        this.ragMetrics = ragMetrics;
+        this.cacheTtl = cacheTtl;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedFilter> eldest) {
+                return size() > cacheEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the {@code eventDate} filter implied by {@code message}, empty when the question is
+     * not restricted to a period.
+     */
+    public Optional<Filter.Expression> filterFor(String message) {
+        LocalDate today = LocalDate.now();
+        Recognition recognition = recognizer.recognize(message, today);
+        if (recognition.outcome() == Outcome.NONE) {
+            return Optional.empty();
+        }
+        if (recognition.outcome() == Outcome.RANGE) {
+            return parse(TemporalExpressionRecognizer.toFilterExpression(recognition));
+        }
+
+        // relative wording depends on the current day, which is therefore part of the key
+        String key = today + "|" + normalize(message);
+        long now = System.nanoTime();
+        synchronized (cache) {
+            CachedFilter cached = cache.get(key);
+            if (cached != null && now - cached.expiresAtNanos() < 0) {
+                return cached.filter();
+            }
+        }
+        Optional<Filter.Expression> filter = askModel(message, today);
+        synchronized (cache) {
+            cache.put(key, new CachedFilter(filter, now + cacheTtl.toNanos()));
+        }
+        return filter;
+    }
+
+    private Optional<Filter.Expression> askModel(String message, LocalDate today) {
+        Message indexCreationMessage = new SystemPromptTemplate(LLM_PROMPT).createMessage(Map.of("today", today.toString()));
+        String indexRule = RagMetrics.content(ragMetrics.chatCall("date-filter-model",
+                () -> chatClient.prompt(new Prompt(List.of(indexCreationMessage, new UserMessage(message)))).call().chatResponse()));
+        if (indexRule.isBlank() || indexRule.contains("NO_INDEX")) {
+            return Optional.empty();
+        }
+        return parse(indexRule.strip().replace("`", ""));
+    }
+
+    /**
+     * Parses a filter and checks that it only compares {@code eventDate} against dates.
+     */
+    private static Optional<Filter.Expression> parse(String expression) {
+        try {
+            Filter.Expression filter = new FilterExpressionTextParser().parse(expression);
+            if (isDateFilter(filter)) {
+                return Optional.of(filter);
+            }
+        } catch (RuntimeException e) {
+            // malformed expression, reported below
+        }
+        log.warn("Ignoring invalid eventDate filter: {}", expression);
+        return Optional.empty();
+    }
+
+    private static boolean isDateFilter(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group) {
+            return isDateFilter(group.content());
+        }
+        if (!(operand instanceof Filter.Expression expression)) {
+            return false;
+        }
+        return switch (expression.type()) {
+            case AND, OR -> isDateFilter(expression.left()) && isDateFilter(expression.right());
+            case EQ, NE, GT, GTE, LT, LTE -> expression.left() instanceof Filter.Key key
+                    && key.key().equals("eventDate")
+                    && expression.right() instanceof Filter.Value value
+                    && value.value() instanceof String date
+                    && DATE_VALUE.matcher(date).matches();
+            default -> false;
+        };
+    }
+
+    private static String normalize(String message) {
+        return String.join(" ", message.toLowerCase(Locale.ROOT).strip().split("\\s+"));
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.aidemo.service.rag;
+
+import com.example.aidemo.service.lexical.LexicalIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Retrieves the documents a question is answered from, combining vector and BM25 search.
+ * <p>
+ * Both searches run in parallel under the same {@code eventDate} filter, each returning its best
+ * {@code vector-top-k} / {@code lexical-top-k} documents, and are merged by reciprocal rank
+ * fusion: a document scores {@code 1 / (rrf-k + rank)} in each list it appears in, so documents
+ * ranked well by both come first, and exact identifier matches that embeddings miss still make
+ * it in. The best {@code top-k} are returned, most relevant first.
+ */
+@Service
+public class HybridRetriever {
+    private static final Logger log = LoggerFactory.getLogger(HybridRetriever.class);
+
+    private record Fused(Document document, double score) {}
+
+    private final VectorStore vectorStore;
+    private final LexicalIndex lexicalIndex;
+    private final RagMetrics ragMetrics;
+    private final boolean lexical;
+    private final int vectorTopK;
+    private final int lexicalTopK;
+    private final int topK;
+    private final int rrfK;
+
+    public HybridRetriever(
+            VectorStore vectorStore,
+            LexicalIndex lexicalIndex,
+            RagMetrics ragMetrics,
+            @Value("${aidemo.retrieval.lexical.enabled:true}") boolean lexical,
+            @Value("${aidemo.retrieval.vector-top-k:200}") int vectorTopK,
+            @Value("${aidemo.retrieval.lexical-top-k:200}") int lexicalTopK,
+            @Value("${aidemo.retrieval.top-k:60}") int topK,
+            @Value("${aidemo.retrieval.rrf-k:60}") int rrfK) {
+        this.vectorStore = vectorStore;
+        this.lexicalIndex = lexicalIndex;
+        this.ragMetrics = ragMetrics;
+        this.lexical = lexical;
+        this.vectorTopK = vectorTopK;
+        this.lexicalTopK = lexicalTopK;
+        this.topK = topK;
+        this.rrfK = rrfK;
+    }
+
+    /**
+     * Searches the documents related to {@code question}, within the period of
+     * {@code dateFilter} when there is one.
+     */
+    public List<Document> retrieve(String question, Optional<Filter.Expression> dateFilter) {
+        Mono<List<Document>> vectorSearch = Mono.fromCallable(() -> ragMetrics.stage("vector-search", () -> vectorSearch(question, dateFilter)))
+                .subscribeOn(Schedulers.boundedElastic());
+        if (!lexical) {
+            List<Document> documents = vectorSearch.block();
+            ragMetrics.retrieved("vector", documents.size());
+            return documents.size() > topK ? documents.subList(0, topK) : documents;
+        }
+        Mono<List<Document>> lexicalSearch = Mono.fromCallable(() -> ragMetrics.stage("lexical-search", () -> lexicalIndex.search(question, lexicalTopK, dateFilter)))
+                .subscribeOn(Schedulers.boundedElastic());
+        var results = Mono.zip(vectorSearch, lexicalSearch).block();
+        List<Document> fused = fuse(results.getT1(), results.getT2());
+        ragMetrics.retrieved("vector", results.getT1().size());
+        ragMetrics.retrieved("lexical", results.getT2().size());
+        ragMetrics.retrieved("fused", fused.size());
+        log.debug("Fused {} vector and {} lexical results into {}", results.getT1().size(), results.getT2().size(), fused.size());
+        return fused;
+    }
+
+    /**
+     * Date-filtered searches accept less similar documents.
+     */
+    private List<Document> vectorSearch(String question, Optional<Filter.Expression> dateFilter) {
+        SearchRequest request = SearchRequest.query(question).withTopK(vectorTopK);
+        if (dateFilter.isPresent()) {
+            request = request.withFilterExpression(dateFilter.get()).withSimilarityThreshold(0.5);
+        } else {
+            request = request.withSimilarityThreshold(0.6);
+        }
+        return vectorStore.similaritySearch(request);
+    }
+
+    private List<Document> fuse(List<Document> vectorResults, List<Document> lexicalResults) {
+        Map<String, Fused> fused = new LinkedHashMap<>();
+        for (List<Document> ranking : List.of(vectorResults, lexicalResults)) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Document document = ranking.get(rank);
+                double score = 1.0 / (rrfK + rank + 1);
+                // the vector result is kept, it carries the distance
+                fused.merge(document.getId(), new Fused(document, score),
+                        (existing, added) -> new Fused(existing.document(), existing.score() + added.score()));
+            }
+        }
+        List<Fused> ranked = new ArrayList<>(fused.values());
+        ranked.sort(Comparator.comparingDouble(Fused::score).reversed());
+        return ranked.stream().limit(topK).map(Fused::document).toList();
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.aidemo.service.rag;
+
+import com.example.aidemo.service.text.TokenCounter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.chat.prompt.SystemPromptTemplate;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Answers a question from many documents with a map-reduce over the chat model.
+ * <p>
+ * Map: the documents, most relevant first, are packed into prompt-sized groups by the
+ * {@link ContextPacker} and each group is asked for a partial answer, {@code map-concurrency}
+ * calls at a time. Groups without anything relevant answer {@code NO_ANSWER} and are dropped;
+ * once {@code max-partial-answers} relevant answers are in, no further group is sent. Reduce: partial answers are merged in a tree, each merge prompt
+ * holding at most {@code reduce-token-budget} tokens of answers, until a single answer remains.
+ * Wall-clock time thus grows with the number of groups divided by the concurrency and with the
+ * logarithm of the number of partial answers.
+ * <p>
+ * Model calls are streamed and collected, so cancelling the answer, or taking the last partial
+ * answer needed, closes the in-flight requests and the model server stops generating.
+ */
+@Service
+public class MapReduceAnswerer {
+    private static final Logger log = LoggerFactory.getLogger(MapReduceAnswerer.class);
+    private static final String NO_ANSWER = "NO_ANSWER";
+    private static final String MAP_PROMPT = """
+            You're assisting to respond to user query summarizing information from the provided from the DOCUMENTS section to provide
+            accurate answers but act as if you knew this information innately.
+            DOCUMENTS:
+            {documents}
+
+            respond directly to the answer without giving personal opinions or additional information, skip irrelevant information.
+            Please answer directly to the question leaving out stuff that can be similar but arent the same.
+            If none of the DOCUMENTS is relevant to the question, respond only with NO_ANSWER.
+            """;
+    private static final String REDUCE_PROMPT = """
+            The following are partial answers to the same question, each written from a different set of documents.
+            Merge them into a single answer going directly to the point and do not include any introductory phrases like “Here is the summary” or similar.
+            ensure all important details are captured in a seamless flow, without repeating what several partial answers say.
+            PARTIAL ANSWERS:
+            {answers}
+            """;
+
+    private final ChatClient chatClient;
+    private final TokenCounter tokenCounter;
+    private final RagMetrics ragMetrics;
+    private final ContextPacker contextPacker;
+    private final int mapConcurrency;
+    private final int maxPartialAnswers;
+    private final int reduceTokenBudget;
+
+    public MapReduceAnswerer(
+            ChatClient.Builder builder,
+            TokenCounter tokenCounter,
+            RagMetrics ragMetrics,
+            ContextPacker contextPacker,
+            @Value("${aidemo.answer.map-concurrency:4}") int mapConcurrency,
+            @Value("${aidemo.answer.max-partial-answers:16}") int maxPartialAnswers,
+            @Value("${aidemo.answer.reduce-token-budget:3000}") int reduceTokenBudget) {
+        this.chatClient = builder.build();
+        this.tokenCounter = tokenCounter;
+        this.ragMetrics = ragMetrics;
+        this.contextPacker = contextPacker;
+        this.mapConcurrency = mapConcurrency;
+        this.maxPartialAnswers = maxPartialAnswers;
+        this.reduceTokenBudget = reduceTokenBudget;
+    }
+
+    /**
+     * Answers {@code question} from {@code documents}.
+     */
+    public Mono<String> answer(String question, List<Document> documents) {
+        return map(question, documents).flatMap(partialAnswers -> {
+            log.info("{} relevant partial answers from {} documents", partialAnswers.size(), documents.size());
+            if (partialAnswers.isEmpty()) {
+                return Mono.just("No relevant information found.");
+            }
+            return reduce(question, partialAnswers);
+        });
+    }
+
+    private Mono<List<String>> map(String question, List<Document> documents) {
+        List<List<Document>> groups = contextPacker.pack(MAP_PROMPT, question, documents);
+        // in relevance order, so the first relevant answers come from the best documents
+        return Flux.fromIterable(groups)
+                .flatMapSequential(group -> mapGroup(question, group), mapConcurrency)
+                .filter(answer -> !answer.isBlank() && !answer.contains(NO_ANSWER))
+                .take(maxPartialAnswers)
+                .collectList();
+    }
+
+    private Mono<String> mapGroup(String question, List<Document> group) {
+        String documents = group.stream().map(Document::getContent).collect(Collectors.joining(System.lineSeparator()));
+        var systemMessage = new SystemPromptTemplate(MAP_PROMPT).createMessage(Map.of("documents", documents));
+        return generate("map", new Prompt(List.of(systemMessage, new UserMessage(question))));
+    }
+
+    /**
+     * Merges partial answers level by level. Each level packs consecutive answers into groups
+     * that fit the token budget and merges the groups in parallel; an answer too large for the
+     * budget on its own is truncated.
+     */
+    private Mono<String> reduce(String question, List<String> answers) {
+        return Flux.fromIterable(pack(answers))
+                .flatMapSequential(group -> reduceGroup(question, group), mapConcurrency)
+                .collectList()
+                .flatMap(level -> level.size() > 1 ? reduce(question, level) : Mono.just(level.get(0)));
+    }
+
+    private List<List<String>> pack(List<String> answers) {
+        List<List<String>> groups = new ArrayList<>();
+        List<String> group = new ArrayList<>();
+        int groupTokens = 0;
+        for (String answer : answers) {
+            int tokens = tokenCounter.count(answer);
+            if (tokens > reduceTokenBudget) {
+                answer = tokenCounter.truncate(answer, reduceTokenBudget);
+                tokens = reduceTokenBudget;
+            }
+            if (groupTokens + tokens > reduceTokenBudget && !group.isEmpty()) {
+                groups.add(group);
+                group = new ArrayList<>();
+                groupTokens = 0;
+            }
+            group.add(answer);
+            groupTokens += tokens;
+        }
+        groups.add(group);
+        // a level that cannot be shrunk by packing is halved so that the reduction terminates
+        if (groups.size() == answers.size() && answers.size() > 1) {
+            groups.clear();
+            for (int i = 0; i < answers.size(); i += 2) {
+                groups.add(answers.subList(i, Math.min(i + 2, answers.size())).stream()
+                        .map(answer -> tokenCounter.truncate(answer, reduceTokenBudget / 2))
+                        .toList());
+            }
+        }
+        return groups;
+    }
+
+    private Mono<String> reduceGroup(String question, List<String> group) {
+        String answers = String.join(System.lineSeparator() + "---" + System.lineSeparator(), group);
+        var systemMessage = new SystemPromptTemplate(REDUCE_PROMPT).createMessage(Map.of("answers", answers));
+        return generate("reduce", new Prompt(List.of(systemMessage, new UserMessage(question))));
+    }
+
+    private Mono<String> generate(String stage, Prompt prompt) {
+        return ragMetrics.chatStream(stage, chatClient.prompt(prompt).stream().chatResponse())
+                .map(RagMetrics::content)
+                .collect(Collectors.joining())
+                .map(String::strip);
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.aidemo.service.rag;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Latency, token and retrieval metrics of the question answering pipeline.
+ * <p>
+ * Every stage of a question (date filter, retrieval, map, reduce...) runs in an observation named
+ * {@code aidemo.rag.stage}, which is both a timer tagged with the stage and a tracing span, so a
+ * slow answer can be broken down per stage from Prometheus or from its trace. Chat model calls
+ * additionally record {@code aidemo.llm.tokens} in and out, as reported by the model, and the
+ * generation speed in {@code aidemo.llm.tokens.per.second}; streamed calls also record the time
+ * to their first token. Spring AI observes the same calls under its own {@code gen_ai.client.*}
+ * names; these add the pipeline stage as a tag.
+ */
+@Component
+public class RagMetrics {
+    private static final String STAGE = "stage";
+
+    private final MeterRegistry meterRegistry;
+    private final ObservationRegistry observationRegistry;
+
+    public RagMetrics(MeterRegistry meterRegistry, ObservationRegistry observationRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.observationRegistry = observationRegistry;
+    }
+
+    /**
+     * Runs {@code work} as the pipeline stage {@code stage}.
+     */
+    public <T> T stage(String stage, Supplier<T> work) {
+        return Observation.createNotStarted("aidemo.rag.stage", observationRegistry)
+                .contextualName("rag " + stage)
+                .lowCardinalityKeyValue(STAGE, stage)
+                .observe(work);
+    }
+
+    /**
+     * Runs a chat model call of the stage {@code stage} and records its token usage.
+     */
+    public ChatResponse chatCall(String stage, Supplier<ChatResponse> call) {
+        long start = System.nanoTime();
+        ChatResponse response = stage(stage, call);
+        Usage usage = response == null || response.getMetadata() == null ? null : response.getMetadata().getUsage();
+        recordUsage(stage, usage, Duration.ofNanos(System.nanoTime() - start));
+        return response;
+    }
+
+    /**
+     * Runs the reactive {@code work} as the pipeline stage {@code stage}, from subscription to
+     * termination or cancellation.
+     */
+    public <T> Mono<T> stage(String stage, Mono<T> work) {
+        return stage(stage, work.flux()).singleOrEmpty();
+    }
+
+    /**
+     * The stage is a child of the observation in the subscriber context and is put there for
+     * {@code work}, so the stages and model calls it runs become its children in turn.
+     */
+    public <T> Flux<T> stage(String stage, Flux<T> work) {
+        return Flux.deferContextual(context -> {
+            Observation observation = Observation.createNotStarted("aidemo.rag.stage", observationRegistry)
+                    .contextualName("rag " + stage)
+                    .lowCardinalityKeyValue(STAGE, stage)
+                    .parentObservation(context.getOrDefault(ObservationThreadLocalAccessor.KEY, null))
+                    .start();
+            return work.doOnError(observation::error)
+                    .doFinally(signal -> observation.stop())
+                    .contextWrite(ctx -> ctx.put(ObservationThreadLocalAccessor.KEY, observation));
+        });
+    }
+
+    /**
+     * Observes a streamed chat model call of the stage {@code stage}: the whole stream as the
+     * stage, the time to its first token in {@code aidemo.llm.first.token}, and the token usage
+     * the model reports with its last response.
+     */
+    public Flux<ChatResponse> chatStream(String stage, Flux<ChatResponse> responses) {
+        Timer firstToken = Timer.builder("aidemo.llm.first.token")
+                .description("Time until a streamed chat model call returned its first token")
+                .tag(STAGE, stage)
+                .register(meterRegistry);
+        return stage(stage, Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean first = new AtomicBoolean(true);
+            AtomicReference<Usage> usage = new AtomicReference<>();
+            return responses
+                    .doOnNext(response -> {
+                        if (first.compareAndSet(true, false)) {
+                            firstToken.record(Duration.ofNanos(System.nanoTime() - start));
+                        }
+                        if (response.getMetadata() != null && response.getMetadata().getUsage() != null) {
+                            usage.set(response.getMetadata().getUsage());
+                        }
+                    })
+                    .doOnComplete(() -> recordUsage(stage, usage.get(), Duration.ofNanos(System.nanoTime() - start)));
+        }));
+    }
+
+    /**
+     * The content of a chat response, empty when the model returned none.
+     */
+    public static String content(ChatResponse response) {
+        if (response == null || response.getResult() == null || response.getResult().getOutput() == null) {
+            return "";
+        }
+        String content = response.getResult().getOutput().getContent();
+        return content == null ? "" : content;
+    }
+
+    public void retrieved(String source, int count) {
+        DistributionSummary.builder("aidemo.rag.retrieved.documents")
+                .description("Documents returned by a search")
+                .tag("source", source)
+                .register(meterRegistry)
+                .record(count);
+    }
+
+    /**
+     * Records, in {@code aidemo.sse.first.event}, the time from subscription to the first event of
+     * a streamed answer.
+     */
+    public <T> Flux<T> timeToFirstEvent(String endpoint, Flux<T> events) {
+        Timer timer = Timer.builder("aidemo.sse.first.event")
+                .description("Time until the first event of a streamed answer")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean first = new AtomicBoolean(true);
+            return events.doOnNext(event -> {
+                if (first.compareAndSet(true, false)) {
+                    timer.record(Duration.ofNanos(System.nanoTime() - start));
+                }
+            });
+        });
+    }
+
+    private void recordUsage(String stage, Usage usage, Duration elapsed) {
+        if (usage != null) {
+            long in = usage.getPromptTokens() == null ? 0 : usage.getPromptTokens();
+            long out = usage.getGenerationTokens() == null ? 0 : usage.getGenerationTokens();
+            tokens(stage, "input").record(in);
+            tokens(stage, "output").record(out);
+            if (out > 0 && !elapsed.isZero()) {
+                DistributionSummary.builder("aidemo.llm.tokens.per.second")
+                        .description("Output tokens per second of a chat model call, prompt processing included")
+                        .tag(STAGE, stage)
+                        .register(meterRegistry)
+                        .record(out * 1e9 / elapsed.toNanos());
+            }
+        }
+    }
+
+    private DistributionSummary tokens(String stage, String type) {
+        return DistributionSummary.builder("aidemo.llm.tokens")
+                .description("Tokens of a chat model call")
+                .baseUnit("tokens")
+                .tag(STAGE, stage)
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,270 @@
+package com.example.aidemo.service.rag;
+
+import com.example.aidemo.controller.AnswerDTO;
+import com.example.aidemo.controller.RelatedDocumentDTO;
+import com.example.aidemo.service.model.ModelRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.chat.prompt.SystemPromptTemplate;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Answers questions from the eLog: date filter, retrieval, packing into prompts, generation and,
+ * for single answers, the reduction of partial answers.
+ * <p>
+ * Every endpoint runs through here as one lazy reactive chain. Model calls are streamed, so the
+ * chain only asks the model server for what the client consumes: cancelling the subscription,
+ * which happens when the client disconnects, closes the in-flight model requests and the server
+ * stops generating. The blocking steps (date filter, question embedding, retrieval) run on the
+ * bounded elastic scheduler. Each request has {@code timeout} to finish; a stream cut short ends
+ * with a done message saying so, a single answer fails with a {@link TimeoutException}.
+ */
+@Service
+public class RagPipeline {
+    private static final Logger log = LoggerFactory.getLogger(RagPipeline.class);
+    private static final String ANSWER_PROMPT = """
+            You're assisting to respond to user query summarizing information from the provided from the DOCUMENTS section to provide
+            accurate answers but act as if you knew this information innately.
+            DOCUMENTS:
+            {documents}
+
+            respond directly to the answer without giving personal opinions or additional information, skip irrelevant information and don't specify
+            that for some entry in  DOCUMENTS there wasn't no answer. Please answer directly tyo the question leaving out stuff that can be similar
+            but arent the same. Do not include any introductory phrases like “Here is the summary” or similar.
+            """;
+    private static final String CLEANUP_PROMPT = """
+            Create a summary going directly to the summarization and  do not include any introductory phrases like “Here is the summary” or similar.
+            ensure all important details are captured in a seamless flow
+            """;
+
+    /**
+     * The question's date filter and embedding, which together key the answer cache. The
+     * embedding is cached by the embedding model, so the similarity search does not compute it
+     * again.
+     */
+    private record ResolvedQuestion(Optional<Filter.Expression> dateFilter, float[] embedding) {}
+
+    private final ChatClient chatClient;
+    private final EventDateFilterService eventDateFilterService;
+    private final EmbeddingModel embeddingModel;
+    private final HybridRetriever hybridRetriever;
+    private final Reranker reranker;
+    private final ContextPacker contextPacker;
+    private final MapReduceAnswerer mapReduceAnswerer;
+    private final AnswerCache answerCache;
+    private final RagMetrics ragMetrics;
+    private final boolean streamCleanup;
+    private final Duration timeout;
+
+    public RagPipeline(
+            ChatClient.Builder builder,
+            EventDateFilterService eventDateFilterService,
+            EmbeddingModel embeddingModel,
+            HybridRetriever hybridRetriever,
+            Reranker reranker,
+            ContextPacker contextPacker,
+            MapReduceAnswerer mapReduceAnswerer,
+            AnswerCache answerCache,
+            RagMetrics ragMetrics,
+            @Value("${aidemo.answer.stream-cleanup:false}") boolean streamCleanup,
+            @Value("${aidemo.answer.timeout:5m}") Duration timeout) {
+        this.chatClient = builder.build();
+        this.eventDateFilterService = eventDateFilterService;
+        this.embeddingModel = embeddingModel;
+        this.hybridRetriever = hybridRetriever;
+        this.reranker = reranker;
+        this.contextPacker = contextPacker;
+        this.mapReduceAnswerer = mapReduceAnswerer;
+        this.answerCache = answerCache;
+        this.ragMetrics = ragMetrics;
+        this.streamCleanup = streamCleanup;
+        this.timeout = timeout;
+    }
+
+    /**
+     * A single answer merged from all the documents related to {@code message}.
+     */
+    public Mono<AnswerDTO> answer(String endpoint, String message) {
+        return resolve(message)
+                .flatMap(question -> {
+                    Optional<List<AnswerDTO>> cached = answerCache.get(endpoint, question.embedding(), question.dateFilter());
+                    if (cached.isPresent()) {
+                        return Mono.just(cached.get().get(0));
+                    }
+                    return retrieve(message, question)
+                            .flatMap(documents -> {
+                                // answer from groups of documents in parallel and merge the partial answers
+                                log.info("Creating response from {} documents", documents.size());
+                                return ragMetrics.stage("answer", mapReduceAnswerer.answer(message, documents))
+                                        .map(content -> new AnswerDTO(true, content, LocalDateTime.now(), relatedDocuments(documents)));
+                            })
+                            .doOnNext(answer -> answerCache.put(endpoint, question.embedding(), question.dateFilter(), List.of(answer)));
+                })
+                .timeout(timeout);
+    }
+
+    /**
+     * Streams the answer as the model generates it. The first message lists the related
+     * documents, then the tokens of one answer per prompt-sized group of documents follow, and a
+     * final empty message with {@code done} ends the stream. A cached answer of a similar enough
+     * question is replayed instead.
+     */
+    public Flux<AnswerDTO> stream(String endpoint, String message) {
+        Flux<AnswerDTO> answer = resolve(message)
+                .flatMapMany(question -> {
+                    Optional<List<AnswerDTO>> cached = answerCache.get(endpoint, question.embedding(), question.dateFilter());
+                    if (cached.isPresent()) {
+                        return Flux.fromIterable(cached.get());
+                    }
+
+                    Flux<AnswerDTO> answers = retrieve(message, question).flatMapMany(allDocuments -> {
+                        List<List<Document>> documentChunks = chunkDocuments(message, allDocuments);
+
+                        // the documents the answer is built from, before any generation starts
+                        AnswerDTO related = new AnswerDTO(false, "", LocalDateTime.now(), relatedDocuments(allDocuments));
+
+                        // one group at a time, tokens are only requested from the model as the client takes them
+                        Flux<AnswerDTO> chunksFlux = Flux.fromIterable(documentChunks)
+                                .index()
+                                .concatMap(chunk -> {
+                                    Flux<String> tokens = streamChunkAnswer(message, chunk.getT2());
+                                    // answers of consecutive groups are separated by a blank line
+                                    return chunk.getT1() == 0 ? tokens : Flux.just(System.lineSeparator() + System.lineSeparator()).concatWith(tokens);
+                                })
+                                .map(token -> new AnswerDTO(false, token, LocalDateTime.now(), Collections.emptyList()));
+
+                        Flux<AnswerDTO> finalMessage = Flux.defer(() -> Flux.just(new AnswerDTO(true, "", LocalDateTime.now(), Collections.emptyList())));
+                        return Flux.just(related).concatWith(chunksFlux).concatWith(finalMessage);
+                    });
+
+                    // only a stream that ran to its end is cached
+                    List<AnswerDTO> sent = Collections.synchronizedList(new ArrayList<>());
+                    return answers
+                            .doOnNext(sent::add)
+                            .doOnComplete(() -> answerCache.put(endpoint, question.embedding(), question.dateFilter(), sent));
+                });
+        return ragMetrics.timeToFirstEvent(endpoint, withDeadline(endpoint, answer));
+    }
+
+    /**
+     * Groups the retrieved documents into prompt-sized chunks, most relevant first.
+     */
+    List<List<Document>> chunkDocuments(String message, List<Document> documents) {
+        return contextPacker.pack(ANSWER_PROMPT, message, documents);
+    }
+
+    Prompt createPrompt(String message, List<Document> context) {
+        String collect = context.stream().map(Document::getContent).collect(Collectors.joining(System.lineSeparator()));
+        Message createdMessage = new SystemPromptTemplate(ANSWER_PROMPT).createMessage(Map.of("documents", collect));
+        UserMessage userMessage = new UserMessage(message);
+        return new Prompt(List.of(createdMessage, userMessage));
+    }
+
+    /**
+     * The date filter model call is a blocking one, made for the request of the subscriber.
+     */
+    private Mono<ResolvedQuestion> resolve(String message) {
+        return Mono.deferContextual(context -> Mono.fromCallable(() -> ModelRequest.current(context).run(() -> new ResolvedQuestion(
+                                ragMetrics.stage("date-filter", () -> eventDateFilterService.filterFor(message)),
+                                ragMetrics.stage("embed-question", () -> embeddingModel.embed(message)))))
+                        .subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    /**
+     * The retrieved documents, reranked down to the distinct ones worth answering from.
+     */
+    private Mono<List<Document>> retrieve(String message, ResolvedQuestion question) {
+        return Mono.fromCallable(() -> {
+                    List<Document> retrieved = ragMetrics.stage("retrieve", () -> hybridRetriever.retrieve(message, question.dateFilter()));
+                    List<Document> reranked = ragMetrics.stage("rerank", () -> reranker.rerank(message, question.embedding(), retrieved));
+                    log.debug("Reranked {} retrieved documents down to {}", retrieved.size(), reranked.size());
+                    return reranked;
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Streams the tokens of the answer from one group of documents. The prompt already asks for
+     * a direct answer; with {@code stream-cleanup} the answer is generated as a whole first and
+     * only the tokens of its clean-up pass are streamed, which delays the first token by one
+     * generation.
+     */
+    private Flux<String> streamChunkAnswer(String message, List<Document> chunk) {
+        Flux<ChatResponse> answer = ragMetrics.chatStream("chunk-answer",
+                chatClient.prompt(createPrompt(message, chunk)).stream().chatResponse());
+        if (!streamCleanup) {
+            return tokens(answer);
+        }
+        return answer.map(RagMetrics::content)
+                .collect(Collectors.joining())
+                .flatMapMany(draft -> tokens(ragMetrics.chatStream("summarize", chatClient.prompt(new Prompt(List.of(
+                        new SystemPromptTemplate(CLEANUP_PROMPT).createMessage(),
+                        new UserMessage(draft)))
+                ).stream().chatResponse())));
+    }
+
+    /**
+     * Ends {@code answer} once {@code timeout} has passed, cancelling whatever is still running,
+     * with a done message telling the client the answer is incomplete.
+     */
+    private Flux<AnswerDTO> withDeadline(String endpoint, Flux<AnswerDTO> answer) {
+        return Flux.defer(() -> {
+            AtomicBoolean expired = new AtomicBoolean();
+            return answer
+                    .takeUntilOther(Mono.delay(timeout).doOnNext(tick -> expired.set(true)))
+                    .concatWith(Flux.defer(() -> {
+                        if (!expired.get()) {
+                            return Flux.empty();
+                        }
+                        log.warn("{} answer cancelled after {}", endpoint, timeout);
+                        return Flux.just(new AnswerDTO(true, "The answer took too long and was cut short.", LocalDateTime.now(), Collections.emptyList()));
+                    }));
+        });
+    }
+
+    private static Flux<String> tokens(Flux<ChatResponse> responses) {
+        return responses.map(RagMetrics::content).filter(token -> !token.isEmpty());
+    }
+
+    /**
+     * One entry per eLog entry or file among {@code documents}, in retrieval order, carrying the
+     * metadata of its best chunk.
+     */
+    private static List<RelatedDocumentDTO> relatedDocuments(List<Document> documents) {
+        Map<String, RelatedDocumentDTO> related = new LinkedHashMap<>();
+        for (Document document : documents) {
+            Map<String, Object> metadata = document.getMetadata();
+            boolean elog = metadata.containsKey("mongoDbId");
+            related.computeIfAbsent(Reranker.source(document), key -> {
+                Map<String, String> values = new LinkedHashMap<>();
+                metadata.forEach((name, value) -> values.put(name, String.valueOf(value)));
+                return new RelatedDocumentDTO(elog ? "elog" : "file", values);
+            });
+        }
+        return List.copyOf(related.values());
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.aidemo.service.rag;
+
+import com.example.aidemo.service.lexical.Tokenizer;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shrinks the retrieved documents to the few, distinct ones worth a model call.
+ * <p>
+ * Chunks of the same eLog entry or file are first collapsed to its best
+ * {@code max-chunks-per-entry}. Each remaining document is then scored against the question: the
+ * cosine similarity of their embeddings, blended with {@code lexical-weight} of a BM25 score of
+ * the question terms computed over the candidates alone. Documents are picked by maximal marginal
+ * relevance, {@code mmr-lambda} of the score minus the rest of the similarity to the closest
+ * document already picked, so repetitive shift notes do not crowd out the others; one at least
+ * {@code duplicate-similarity} to a picked document is dropped. Picking stops at
+ * {@code max-documents}, or once at least {@code min-documents} are picked and the scores left
+ * are more than {@code max-score-drop} below the best one.
+ * <p>
+ * Document embeddings come from the embedding cache, which holds those of every ingested chunk;
+ * only the ones it misses are computed, in a single call.
+ */
+@Component
+public class Reranker {
+    private static final double BM25_K1 = 1.2;
+    private static final double BM25_B = 0.75;
+
+    private final EmbeddingModel embeddingModel;
+    private final RagMetrics ragMetrics;
+    private final boolean enabled;
+    private final int maxChunksPerEntry;
+    private final double lexicalWeight;
+    private final double mmrLambda;
+    private final double duplicateSimilarity;
+    private final double maxScoreDrop;
+    private final int minDocuments;
+    private final int maxDocuments;
+
+    public Reranker(
+            EmbeddingModel embeddingModel,
+            RagMetrics ragMetrics,
+            @Value("${aidemo.rerank.enabled:true}") boolean enabled,
+            @Value("${aidemo.rerank.max-chunks-per-entry:2}") int maxChunksPerEntry,
+            @Value("${aidemo.rerank.lexical-weight:0.3}") double lexicalWeight,
+            @Value("${aidemo.rerank.mmr-lambda:0.7}") double mmrLambda,
+            @Value("${aidemo.rerank.duplicate-similarity:0.95}") double duplicateSimilarity,
+            @Value("${aidemo.rerank.max-score-drop:0.15}") double maxScoreDrop,
+            @Value("${aidemo.rerank.min-documents:4}") int minDocuments,
+            @Value("${aidemo.rerank.max-documents:24}") int maxDocuments) {
+        this.embeddingModel = embeddingModel;
+        this.ragMetrics = ragMetrics;
+        this.enabled = enabled;
+        this.maxChunksPerEntry = Math.max(1, maxChunksPerEntry);
+        this.lexicalWeight = lexicalWeight;
+        this.mmrLambda = mmrLambda;
+        this.duplicateSimilarity = duplicateSimilarity;
+        this.maxScoreDrop = maxScoreDrop;
+        this.minDocuments = minDocuments;
+        this.maxDocuments = maxDocuments;
+    }
+
+    /**
+     * The documents of {@code documents}, ranked by relevance to {@code question}, worth
+     * answering from, most relevant first.
+     */
+    public List<Document> rerank(String question, float[] questionEmbedding, List<Document> documents) {
+        if (!enabled || documents.isEmpty()) {
+            return documents;
+        }
+        List<Document> candidates = collapse(documents);
+        int count = candidates.size();
+        List<float[]> embeddings = embeddingModel.embed(candidates.stream().map(Document::getContent).toList());
+        float[] query = normalized(questionEmbedding);
+        float[][] vectors = new float[count][];
+        double[] scores = new double[count];
+        double[] lexical = lexicalWeight > 0 ? lexicalScores(question, candidates) : new double[count];
+        double best = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            vectors[i] = normalized(embeddings.get(i));
+            scores[i] = (1 - lexicalWeight) * dot(query, vectors[i]) + lexicalWeight * lexical[i];
+            best = Math.max(best, scores[i]);
+        }
+
+        List<Document> picked = new ArrayList<>();
+        boolean[] done = new boolean[count];
+        double[] closest = new double[count];
+        while (picked.size() < maxDocuments) {
+            int next = -1;
+            double nextScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                if (done[i]) {
+                    continue;
+                }
+                if (closest[i] >= duplicateSimilarity || picked.size() >= minDocuments && scores[i] < best - maxScoreDrop) {
+                    done[i] = true;
+                    continue;
+                }
+                double marginal = mmrLambda * scores[i] - (1 - mmrLambda) * closest[i];
+                if (marginal > nextScore) {
+                    next = i;
+                    nextScore = marginal;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            done[next] = true;
+            picked.add(candidates.get(next));
+            for (int i = 0; i < count; i++) {
+                if (!done[i]) {
+                    closest[i] = Math.max(closest[i], dot(vectors[next], vectors[i]));
+                }
+            }
+        }
+        ragMetrics.retrieved("collapsed", count);
+        ragMetrics.retrieved("reranked", picked.size());
+        return picked;
+    }
+
+    /**
+     * The eLog entry or file a chunk belongs to.
+     */
+    static String source(Document document) {
+        Map<String, Object> metadata = document.getMetadata();
+        Object source = metadata.containsKey("mongoDbId") ? metadata.get("mongoDbId") : metadata.get("file_name");
+        return source == null ? document.getId() : String.valueOf(source);
+    }
+
+    private List<Document> collapse(List<Document> documents) {
+        Map<String, Integer> chunks = new HashMap<>();
+        List<Document> collapsed = new ArrayList<>();
+        for (Document document : documents) {
+            if (chunks.merge(source(document), 1, Integer::sum) <= maxChunksPerEntry) {
+                collapsed.add(document);
+            }
+        }
+        return collapsed;
+    }
+
+    /**
+     * BM25 of the question terms in each candidate, with term statistics of the candidates, as a
+     * fraction of the best candidate's.
+     */
+    private static double[] lexicalScores(String question, List<Document> candidates) {
+        Set<String> queryTerms = new LinkedHashSet<>(Tokenizer.terms(question));
+        double[] scores = new double[candidates.size()];
+        if (queryTerms.isEmpty()) {
+            return scores;
+        }
+        List<Map<String, Integer>> frequencies = new ArrayList<>(candidates.size());
+        int[] lengths = new int[candidates.size()];
+        Map<String, Integer> documentFrequencies = new HashMap<>();
+        long totalLength = 0;
+        for (int i = 0; i < candidates.size(); i++) {
+            List<String> terms = Tokenizer.terms(candidates.get(i).getContent());
+            Map<String, Integer> frequency = new HashMap<>();
+            for (String term : terms) {
+                if (queryTerms.contains(term)) {
+                    frequency.merge(term, 1, Integer::sum);
+                }
+            }
+            for (String term : frequency.keySet()) {
+                documentFrequencies.merge(term, 1, Integer::sum);
+            }
+            frequencies.add(frequency);
+            lengths[i] = terms.size();
+            totalLength += terms.size();
+        }
+        double averageLength = Math.max(1.0, (double) totalLength / candidates.size());
+        double max = 0;
+        for (int i = 0; i < candidates.size(); i++) {
+            double score = 0;
+            for (Map.Entry<String, Integer> term : frequencies.get(i).entrySet()) {
+                int df = documentFrequencies.get(term.getKey());
+                double idf = Math.log(1 + (candidates.size() - df + 0.5) / (df + 0.5));
+                int tf = term.getValue();
+                score += idf * tf * (BM25_K1 + 1) / (tf + BM25_K1 * (1 - BM25_B + BM25_B * lengths[i] / averageLength));
+            }
+            scores[i] = score;
+            max = Math.max(max, score);
+        }
+        if (max > 0) {
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] /= max;
+            }
+        }
+        return scores;
+    }
+
+    private static float[] normalized(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float[] normalized = new float[vector.length];
+        float scale = norm == 0 ? 0 : (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * scale;
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+}
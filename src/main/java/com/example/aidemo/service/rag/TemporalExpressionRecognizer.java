@@ -0,0 +1,276 @@
+package com.example.aidemo.service.rag;
+
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local recognizer for the date expressions users put in their questions: explicit dates
+ * ({@code 2024-11-14}, {@code 11/14/2024}, {@code Jan 3, 2022}), months and years, relative days
+ * and periods ({@code yesterday}, {@code last week}, {@code past 3 days}), open ranges
+ * ({@code since}, {@code before}, {@code after}) and closed ranges ({@code between ... and ...},
+ * {@code from ... to ...}).
+ * <p>
+ * A question with no temporal wording at all needs no date filter. A question with temporal
+ * wording that is not understood here, or with more dates than a single range, is reported as
+ * ambiguous and left to the model.
+ */
+class TemporalExpressionRecognizer {
+
+    enum Outcome { RANGE, NONE, AMBIGUOUS }
+
+    /**
+     * @param from  first day of the range, {@code null} when open towards the past
+     * @param until day after the range, {@code null} when open towards the future
+     */
+    record Recognition(Outcome outcome, LocalDate from, LocalDate until) {
+        static final Recognition NONE = new Recognition(Outcome.NONE, null, null);
+        static final Recognition AMBIGUOUS = new Recognition(Outcome.AMBIGUOUS, null, null);
+    }
+
+    /**
+     * A date expression found in the text, covering the days {@code [from, until)}.
+     *
+     * @param yearInferred true when the text gave no year and the latest past one was taken
+     * @param rangeEnd     true for a bare month or year after "and" or "to", only a date when it
+     *                     closes a range opened by another mention
+     */
+    private record Mention(int start, int end, LocalDate from, LocalDate until, boolean yearInferred, boolean rangeEnd) {
+        Mention plusYears(long years) {
+            return new Mention(start, end, from.plusYears(years), until.plusYears(years), yearInferred, rangeEnd);
+        }
+    }
+
+    private static final String MONTH = "(jan(?:uary)?|feb(?:ruary)?|mar(?:ch)?|apr(?:il)?|may|june?|july?|aug(?:ust)?|sep(?:t(?:ember)?)?|oct(?:ober)?|nov(?:ember)?|dec(?:ember)?)";
+    private static final String ORDINAL = "(?:st|nd|rd|th)?";
+    private static final String PREPOSITION = "(?:in|during|since|before|after|until|till|from|through|between)";
+    private static final String RANGE_END = "(and|to)";
+
+    private static final Pattern ISO_DATE = Pattern.compile("\\b(\\d{4})[-/.](\\d{1,2})[-/.](\\d{1,2})\\b");
+    private static final Pattern US_DATE = Pattern.compile("\\b(\\d{1,2})/(\\d{1,2})/(\\d{4}|\\d{2})\\b");
+    private static final Pattern MONTH_DAY_YEAR = Pattern.compile("\\b" + MONTH + "\\.? (\\d{1,2})" + ORDINAL + ",? (\\d{4})\\b");
+    private static final Pattern DAY_MONTH_YEAR = Pattern.compile("\\b(\\d{1,2})" + ORDINAL + " (?:of )?" + MONTH + "\\.?,? (\\d{4})\\b");
+    private static final Pattern MONTH_DAY = Pattern.compile("\\b" + MONTH + "\\.? (\\d{1,2})" + ORDINAL + "\\b(?!:)");
+    private static final Pattern MONTH_YEAR = Pattern.compile("\\b" + MONTH + "\\.?,? (\\d{4})\\b");
+    // a bare month or year is only taken as a date after a preposition, "may" is also a verb and
+    // "ramp to 2000 A" is no year, so after "and" or "to" it must be the second end of a range
+    private static final Pattern MONTH_ONLY = Pattern.compile("\\b(?:" + PREPOSITION + "|" + RANGE_END + ") " + MONTH + "\\b");
+    private static final Pattern YEAR_ONLY = Pattern.compile("\\b(?:" + PREPOSITION + "|" + RANGE_END + ") ((?:19|20)\\d{2})\\b");
+    private static final Pattern RELATIVE = Pattern.compile(
+            "\\b(today|yesterday|this week|last week|this month|last month|this year|last year|(?:last|past) (\\d{1,3}) (day|week|month)s?)\\b");
+
+    private static final Pattern OPEN_START = Pattern.compile("\\b(since|after|from|starting)\\s*$");
+    private static final Pattern OPEN_END = Pattern.compile("\\b(before|until|till|prior to|up to)\\s*$");
+    private static final Pattern RANGE_START = Pattern.compile("\\b(between|from)\\s*$");
+    private static final Pattern RANGE_SEPARATOR = Pattern.compile("^\\s*(and|to|until|till|through|-)\\s*$");
+
+    private static final Set<String> TEMPORAL_WORDS = Set.of(
+            "ago", "recent", "recently", "lately", "earlier", "previous", "past", "last", "next", "since", "before",
+            "after", "until", "during", "week", "weeks", "month", "months", "year", "years", "day", "days",
+            "weekend", "tonight", "tomorrow", "morning", "evening", "night", "shift", "date", "quarter",
+            "monday", "tuesday", "wednesday", "thursday", "friday", "saturday", "sunday",
+            "january", "february", "march", "april", "june", "july", "august", "september", "october", "november", "december");
+
+    Recognition recognize(String text, LocalDate today) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        List<Mention> mentions = new ArrayList<>();
+        try {
+            findDates(lower, today, mentions);
+            findRelative(lower, today, mentions);
+        } catch (DateTimeException e) {
+            // something that looks like a date but is not one, like 02/30/2024
+            return Recognition.AMBIGUOUS;
+        }
+        mentions.sort(Comparator.comparingInt(Mention::start));
+
+        if (mentions.isEmpty()) {
+            return hasTemporalWording(lower) ? Recognition.AMBIGUOUS : Recognition.NONE;
+        }
+        if (mentions.get(0).rangeEnd() || (mentions.size() != 2 && mentions.stream().anyMatch(Mention::rangeEnd))) {
+            // "the valve closed and may fail": an "and" or "to" that does not continue a range
+            return Recognition.AMBIGUOUS;
+        }
+        if (mentions.size() == 1) {
+            Mention mention = mentions.get(0);
+            String before = lower.substring(0, mention.start());
+            Matcher openStart = OPEN_START.matcher(before);
+            if (openStart.find()) {
+                return range(openStart.group(1).equals("after") ? mention.until() : mention.from(), null);
+            }
+            Matcher openEnd = OPEN_END.matcher(before);
+            if (openEnd.find()) {
+                return range(null, openEnd.group(1).equals("before") || openEnd.group(1).equals("prior to") ? mention.from() : mention.until());
+            }
+            return range(mention.from(), mention.until());
+        }
+        if (mentions.size() == 2) {
+            Mention first = mentions.get(0);
+            Mention second = mentions.get(1);
+            String between = lower.substring(first.end(), second.start());
+            boolean introduced = RANGE_START.matcher(lower.substring(0, first.start())).find();
+            if (RANGE_SEPARATOR.matcher(between).find() && (introduced || !between.trim().equals("and"))) {
+                // "between jan 3 and jan 5, 2022": the year given for one end applies to the other
+                if (first.yearInferred() && !second.yearInferred()) {
+                    first = first.plusYears(second.from().getYear() - first.from().getYear());
+                    first = first.from().isAfter(second.from()) ? first.plusYears(-1) : first;
+                } else if (second.yearInferred() && !first.yearInferred()) {
+                    second = second.plusYears(first.from().getYear() - second.from().getYear());
+                    second = second.from().isBefore(first.from()) ? second.plusYears(1) : second;
+                }
+                return range(first.from(), second.until());
+            }
+        }
+        return Recognition.AMBIGUOUS;
+    }
+
+    /**
+     * Formats a recognized range as a filter on the {@code eventDate} metadata, which holds
+     * ISO-8601 timestamps that compare correctly as strings against plain dates.
+     */
+    static String toFilterExpression(Recognition recognition) {
+        List<String> conditions = new ArrayList<>(2);
+        if (recognition.from() != null) {
+            conditions.add("eventDate >= \"" + recognition.from() + "\"");
+        }
+        if (recognition.until() != null) {
+            conditions.add("eventDate < \"" + recognition.until() + "\"");
+        }
+        return String.join(" && ", conditions);
+    }
+
+    private static Recognition range(LocalDate from, LocalDate until) {
+        if (from != null && until != null && !from.isBefore(until)) {
+            return Recognition.AMBIGUOUS;
+        }
+        return new Recognition(Outcome.RANGE, from, until);
+    }
+
+    private static void findDates(String text, LocalDate today, List<Mention> mentions) {
+        Matcher m = ISO_DATE.matcher(text);
+        while (m.find()) {
+            addDay(mentions, m, LocalDate.of(parse(m, 1), parse(m, 2), parse(m, 3)));
+        }
+        m = US_DATE.matcher(text);
+        while (m.find()) {
+            int year = parse(m, 3);
+            addDay(mentions, m, LocalDate.of(year < 100 ? 2000 + year : year, parse(m, 1), parse(m, 2)));
+        }
+        m = MONTH_DAY_YEAR.matcher(text);
+        while (m.find()) {
+            addDay(mentions, m, LocalDate.of(parse(m, 3), month(m.group(1)), parse(m, 2)));
+        }
+        m = DAY_MONTH_YEAR.matcher(text);
+        while (m.find()) {
+            addDay(mentions, m, LocalDate.of(parse(m, 3), month(m.group(2)), parse(m, 1)));
+        }
+        m = MONTH_YEAR.matcher(text);
+        while (m.find()) {
+            LocalDate first = LocalDate.of(parse(m, 2), month(m.group(1)), 1);
+            add(mentions, m.start(), m.end(), first, first.plusMonths(1));
+        }
+        m = MONTH_DAY.matcher(text);
+        while (m.find()) {
+            LocalDate day = LocalDate.of(today.getYear(), month(m.group(1)), parse(m, 2));
+            day = day.isAfter(today) ? day.minusYears(1) : day;
+            add(mentions, m.start(), m.end(), day, day.plusDays(1), true, false);
+        }
+        m = MONTH_ONLY.matcher(text);
+        while (m.find()) {
+            LocalDate first = LocalDate.of(today.getYear(), month(m.group(2)), 1);
+            first = first.isAfter(today) ? first.minusYears(1) : first;
+            add(mentions, m.start(2), m.end(), first, first.plusMonths(1), true, m.group(1) != null);
+        }
+        m = YEAR_ONLY.matcher(text);
+        while (m.find()) {
+            LocalDate first = LocalDate.of(parse(m, 2), 1, 1);
+            add(mentions, m.start(2), m.end(), first, first.plusYears(1), false, m.group(1) != null);
+        }
+    }
+
+    private static void findRelative(String text, LocalDate today, List<Mention> mentions) {
+        Matcher m = RELATIVE.matcher(text);
+        while (m.find()) {
+            LocalDate monday = today.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            LocalDate firstOfMonth = today.withDayOfMonth(1);
+            LocalDate firstOfYear = today.withDayOfYear(1);
+            switch (m.group(1)) {
+                case "today" -> add(mentions, m.start(), m.end(), today, today.plusDays(1));
+                case "yesterday" -> add(mentions, m.start(), m.end(), today.minusDays(1), today);
+                case "this week" -> add(mentions, m.start(), m.end(), monday, today.plusDays(1));
+                case "last week" -> add(mentions, m.start(), m.end(), monday.minusWeeks(1), monday);
+                case "this month" -> add(mentions, m.start(), m.end(), firstOfMonth, today.plusDays(1));
+                case "last month" -> add(mentions, m.start(), m.end(), firstOfMonth.minusMonths(1), firstOfMonth);
+                case "this year" -> add(mentions, m.start(), m.end(), firstOfYear, today.plusDays(1));
+                case "last year" -> add(mentions, m.start(), m.end(), firstOfYear.minusYears(1), firstOfYear);
+                default -> {
+                    int count = parse(m, 2);
+                    LocalDate from = switch (m.group(3)) {
+                        case "day" -> today.minusDays(count - 1L);
+                        case "week" -> today.minusWeeks(count);
+                        default -> today.minusMonths(count);
+                    };
+                    add(mentions, m.start(), m.end(), from, today.plusDays(1));
+                }
+            }
+        }
+    }
+
+    private static boolean hasTemporalWording(String text) {
+        for (String word : text.split("[^a-z]+")) {
+            if (TEMPORAL_WORDS.contains(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addDay(List<Mention> mentions, Matcher m, LocalDate day) {
+        add(mentions, m.start(), m.end(), day, day.plusDays(1));
+    }
+
+    private static void add(List<Mention> mentions, int start, int end, LocalDate from, LocalDate until) {
+        add(mentions, start, end, from, until, false, false);
+    }
+
+    /**
+     * Adds a mention unless it overlaps one found by a more specific pattern before.
+     */
+    private static void add(List<Mention> mentions, int start, int end, LocalDate from, LocalDate until,
+                            boolean yearInferred, boolean rangeEnd) {
+        for (Mention mention : mentions) {
+            if (start < mention.end() && mention.start() < end) {
+                return;
+            }
+        }
+        mentions.add(new Mention(start, end, from, until, yearInferred, rangeEnd));
+    }
+
+    private static int parse(Matcher m, int group) {
+        return Integer.parseInt(m.group(group));
+    }
+
+    private static int month(String name) {
+        return switch (name.substring(0, 3)) {
+            case "jan" -> 1;
+            case "feb" -> 2;
+            case "mar" -> 3;
+            case "apr" -> 4;
+            case "may" -> 5;
+            case "jun" -> 6;
+            case "jul" -> 7;
+            case "aug" -> 8;
+            case "sep" -> 9;
+            case "oct" -> 10;
+            case "nov" -> 11;
+            default -> 12;
+        };
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.aidemo.service.text;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits text into chunks of at most {@code max-tokens} tokens for embedding.
+ * <p>
+ * The text is scanned once, without regular expressions, into segments: sentences (ended by
+ * {@code .}, {@code !} or {@code ?} followed by whitespace, or by a line break) with
+ * {@code snap-to-sentences}, words otherwise, and words within a sentence that alone is over
+ * the limit. Segments are packed greedily, and every chunk is a substring of the text, so a
+ * chunk costs one string. Consecutive chunks share their boundary segments, up to
+ * {@code overlap-tokens} tokens, so a statement cut by a chunk boundary is whole in one of the
+ * two.
+ * <p>
+ * Tokens are counted per word, as the {@link TokenCounter} counts the word after a space, and
+ * the counts are remembered by a hash of the word: the vocabulary of the eLog is small, so
+ * nearly every word is counted from the table instead of running the BPE merges again. The sum
+ * is within a few percent of counting the whole text, whitespace not being counted.
+ * <p>
+ * mxbai-embed-large reads at most 512 tokens of its WordPiece vocabulary and drops the rest; the
+ * same text is up to about a third longer in WordPiece than in the cl100k tokens counted here,
+ * which is what the default limit leaves room for.
+ */
+@Component
+public class TextChunker {
+    /**
+     * Word counts remembered by a thread before the table is cleared.
+     */
+    private static final int MAX_WORDS = 1 << 15;
+
+    /**
+     * Scratch of the calls of a thread: the segment starts and token counts of the chunk being
+     * packed, and the token counts of the words seen, by hash.
+     */
+    private static final class Segments {
+        private int[] starts = new int[64];
+        private int[] tokens = new int[64];
+        private int size;
+        private final long[] wordHashes = new long[MAX_WORDS * 2];
+        private final int[] wordTokens = new int[MAX_WORDS * 2];
+        private int words;
+
+        void add(int start, int count) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                tokens = Arrays.copyOf(tokens, size * 2);
+            }
+            starts[size] = start;
+            tokens[size] = count;
+            size++;
+        }
+
+        /**
+         * Keeps the segments from {@code first} on.
+         */
+        void dropBefore(int first) {
+            System.arraycopy(starts, first, starts, 0, size - first);
+            System.arraycopy(tokens, first, tokens, 0, size - first);
+            size -= first;
+        }
+    }
+
+    private final TokenCounter tokenCounter;
+    private final int maxTokens;
+    private final int overlapTokens;
+    private final boolean snapToSentences;
+    private final ThreadLocal<Segments> segments = ThreadLocal.withInitial(Segments::new);
+
+    public TextChunker(
+            TokenCounter tokenCounter,
+            @Value("${aidemo.chunking.max-tokens:350}") int maxTokens,
+            @Value("${aidemo.chunking.overlap-tokens:40}") int overlapTokens,
+            @Value("${aidemo.chunking.snap-to-sentences:true}") boolean snapToSentences) {
+        this.tokenCounter = tokenCounter;
+        this.maxTokens = maxTokens;
+        this.overlapTokens = overlapTokens;
+        this.snapToSentences = snapToSentences;
+    }
+
+    public int maxTokens() {
+        return maxTokens;
+    }
+
+    /**
+     * Counts the tokens of {@code text} the way chunks are sized.
+     */
+    public int count(String text) {
+        return text == null ? 0 : count(text, 0, text.length(), segments.get());
+    }
+
+    public List<String> split(String text) {
+        return split(text, maxTokens);
+    }
+
+    /**
+     * Splits {@code text} into chunks of at most {@code limit} tokens, none when it is blank.
+     */
+    public List<String> split(String text, int limit) {
+        List<String> chunks = new ArrayList<>();
+        if (text == null) {
+            return chunks;
+        }
+        Segments chunk = segments.get();
+        chunk.size = 0;
+        // a segment is counted at most twice, when a sentence turns out to be over the limit
+        int length = text.length();
+        int position = skipWhitespace(text, 0);
+        int chunkTokens = 0;
+        // end of a sentence over the limit, split into words up to there
+        int longSentenceEnd = -1;
+        while (position < length) {
+            int end;
+            int tokens;
+            if (snapToSentences && position >= longSentenceEnd) {
+                end = sentenceEnd(text, position);
+                tokens = count(text, position, end, chunk);
+                if (tokens > limit) {
+                    longSentenceEnd = end;
+                    end = wordEnd(text, position);
+                    tokens = count(text, position, end, chunk);
+                }
+            } else {
+                end = wordEnd(text, position);
+                tokens = count(text, position, end, chunk);
+            }
+            if (tokens > limit) {
+                // a single word over the limit, cut where the tokens run out
+                end = position + Math.max(1, Math.min(end - position, tokenCounter.truncate(text.substring(position, end), limit).length()));
+                tokens = limit;
+            }
+
+            if (chunk.size > 0 && chunkTokens + tokens > limit) {
+                chunks.add(text.substring(chunk.starts[0], trimmedEnd(text, chunk.starts[0], position)));
+                // the next chunk starts with the last segments that fit in the overlap next to this one
+                int first = chunk.size;
+                int kept = 0;
+                while (first > 1 && kept + chunk.tokens[first - 1] <= Math.min(overlapTokens, limit - tokens)) {
+                    first--;
+                    kept += chunk.tokens[first];
+                }
+                chunk.dropBefore(first);
+                chunkTokens = kept;
+            }
+            chunk.add(position, tokens);
+            chunkTokens += tokens;
+            position = end;
+        }
+        if (chunk.size > 0) {
+            chunks.add(text.substring(chunk.starts[0], trimmedEnd(text, chunk.starts[0], length)));
+        }
+        return chunks;
+    }
+
+    /**
+     * Sums the token counts of the words between {@code start} and {@code end}.
+     */
+    private int count(String text, int start, int end, Segments scratch) {
+        int tokens = 0;
+        int i = start;
+        while (i < end) {
+            while (i < end && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            if (i == end) {
+                break;
+            }
+            int wordStart = i;
+            long hash = 1125899906842597L;
+            while (i < end && !Character.isWhitespace(text.charAt(i))) {
+                hash = 31 * hash + text.charAt(i);
+                i++;
+            }
+            tokens += wordTokens(text, wordStart, i, hash == 0 ? 1 : hash, scratch);
+        }
+        return tokens;
+    }
+
+    private int wordTokens(String text, int start, int end, long hash, Segments scratch) {
+        long[] hashes = scratch.wordHashes;
+        int mask = hashes.length - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (hashes[slot] != 0) {
+            if (hashes[slot] == hash) {
+                return scratch.wordTokens[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (scratch.words == MAX_WORDS) {
+            Arrays.fill(hashes, 0);
+            scratch.words = 0;
+            slot = (int) (hash ^ (hash >>> 32)) & mask;
+        }
+        int tokens = tokenCounter.count(" " + text.substring(start, end));
+        hashes[slot] = hash;
+        scratch.wordTokens[slot] = tokens;
+        scratch.words++;
+        return tokens;
+    }
+
+    /**
+     * The end of the sentence starting at {@code start}, after the whitespace that follows it.
+     */
+    private static int sentenceEnd(String text, int start) {
+        int length = text.length();
+        for (int i = start; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || ((c == '.' || c == '!' || c == '?') && (i + 1 == length || Character.isWhitespace(text.charAt(i + 1))))) {
+                return skipWhitespace(text, i + 1);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * The end of the word starting at {@code start}, after the whitespace that follows it.
+     */
+    private static int wordEnd(String text, int start) {
+        int i = start;
+        while (i < text.length() && !Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return skipWhitespace(text, i);
+    }
+
+    private static int skipWhitespace(String text, int from) {
+        int i = from;
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int trimmedEnd(String text, int start, int end) {
+        int i = end;
+        while (i > start && Character.isWhitespace(text.charAt(i - 1))) {
+            i--;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.aidemo.service.text;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingResult;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts tokens with the cl100k BPE vocabulary.
+ * <p>
+ * It is not the exact tokenizer of the Ollama models, but like theirs it is a byte-level BPE
+ * with a large vocabulary, so counts land close enough to size prompts and chunks against the
+ * context limits, which is all it is used for. Encoding instances are thread-safe.
+ */
+@Component
+public class TokenCounter {
+    private final Encoding encoding = Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+
+    public int count(String text) {
+        return text == null || text.isEmpty() ? 0 : encoding.countTokens(text);
+    }
+
+    /**
+     * Returns the longest prefix of {@code text} that fits in {@code maxTokens} tokens.
+     */
+    public String truncate(String text, int maxTokens) {
+        EncodingResult result = encoding.encode(text, maxTokens);
+        return result.isTruncated() ? encoding.decode(result.getTokens()) : text;
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.aidemo.service.vectorstore;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Ids, metadata and content of the stored documents, by slot.
+ * <p>
+ * Documents are appended to {@code documents.log} as {@code [length, type, slot, body]} records:
+ * a put carries the id, the metadata as JSON and the content, and replaces any earlier slot of
+ * the same id; a delete carries nothing. At startup the log is replayed to rebuild the id, the
+ * metadata and the live flag of every slot, which is what filters need; content is skipped and
+ * read back from the file only for the documents a search returns. A record cut short by a crash
+ * is dropped.
+ * <p>
+ * Not thread-safe: the index is kept in plain collections, so the owner must hold a lock that
+ * excludes readers while writing, typically a read-write lock. Under the read side of it reads
+ * may run concurrently, content is read back with positional reads that do not move the channel.
+ */
+public class DocumentLog implements AutoCloseable {
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES + 1 + Integer.BYTES;
+    private static final TypeReference<Map<String, Object>> METADATA = new TypeReference<>() {};
+
+    private record Entry(String id, Map<String, Object> metadata, long contentOffset, int contentLength) {}
+
+    private final ObjectMapper objectMapper;
+    private final Path file;
+    private final FileChannel channel;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Integer> slotsById = new HashMap<>();
+    private final BitSet live = new BitSet();
+    private long end;
+
+    public DocumentLog(Path file, ObjectMapper objectMapper) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+        try {
+            this.channel = FileChannel.open(file, CREATE, READ, WRITE);
+            replay();
+            channel.truncate(end);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open " + file, e);
+        }
+    }
+
+    /**
+     * Number of slots a document was written to, live or not.
+     */
+    public int slots() {
+        return entries.size();
+    }
+
+    public int liveCount() {
+        return live.cardinality();
+    }
+
+    public boolean isLive(int slot) {
+        return live.get(slot);
+    }
+
+    public BitSet live() {
+        return (BitSet) live.clone();
+    }
+
+    public Integer slotOf(String id) {
+        return slotsById.get(id);
+    }
+
+    public String id(int slot) {
+        return entries.get(slot).id();
+    }
+
+    public Map<String, Object> metadata(int slot) {
+        return entries.get(slot).metadata();
+    }
+
+    public String content(int slot) {
+        Entry entry = entries.get(slot);
+        ByteBuffer buffer = ByteBuffer.allocate(entry.contentLength());
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, entry.contentOffset() + buffer.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read document " + entry.id() + " from " + file, e);
+        }
+        return new String(buffer.array(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Records {@code id} at {@code slot}, which must be the next slot, superseding its previous slot.
+     */
+    public void put(int slot, String id, Map<String, Object> metadata, String content) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        byte[] metadataBytes = toJson(metadata);
+        byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 3 * Integer.BYTES + idBytes.length + metadataBytes.length + contentBytes.length;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + bodyLength)
+                .putInt(bodyLength).put(PUT).putInt(slot)
+                .putInt(idBytes.length).put(idBytes)
+                .putInt(metadataBytes.length).put(metadataBytes)
+                .putInt(contentBytes.length).put(contentBytes)
+                .flip();
+        long contentOffset = end + record.limit() - contentBytes.length;
+        append(record);
+        index(slot, new Entry(id, metadata, contentOffset, contentBytes.length));
+    }
+
+    /**
+     * Marks the slot of {@code id} as deleted, returns false when there is none.
+     */
+    public boolean delete(String id) {
+        Integer slot = slotsById.remove(id);
+        if (slot == null) {
+            return false;
+        }
+        append(ByteBuffer.allocate(RECORD_HEADER_BYTES).putInt(0).put(DELETE).putInt(slot).flip());
+        live.clear(slot);
+        return true;
+    }
+
+    /**
+     * Deletes every record.
+     */
+    public void clear() {
+        try {
+            channel.truncate(0);
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot truncate " + file, e);
+        }
+        entries.clear();
+        slotsById.clear();
+        live.clear();
+        end = 0;
+    }
+
+    public void force() {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot sync " + file, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close " + file, e);
+        }
+    }
+
+    private void replay() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0)), 1 << 16));
+        long position = 0;
+        long size = channel.size();
+        while (position + RECORD_HEADER_BYTES <= size) {
+            int bodyLength = in.readInt();
+            byte type = in.readByte();
+            int slot = in.readInt();
+            if (bodyLength < 0 || position + RECORD_HEADER_BYTES + bodyLength > size) {
+                break;
+            }
+            long bodyStart = position + RECORD_HEADER_BYTES;
+            if (type == PUT) {
+                String id = new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+                Map<String, Object> metadata = objectMapper.readValue(in.readNBytes(in.readInt()), METADATA);
+                int contentLength = in.readInt();
+                long contentOffset = bodyStart + bodyLength - contentLength;
+                in.skipNBytes(contentLength);
+                index(slot, new Entry(id, metadata, contentOffset, contentLength));
+            } else if (type == DELETE) {
+                in.skipNBytes(bodyLength);
+                if (slot < entries.size() && entries.get(slot) != null && live.get(slot)) {
+                    slotsById.remove(entries.get(slot).id());
+                    live.clear(slot);
+                }
+            } else {
+                break;
+            }
+            position = bodyStart + bodyLength;
+        }
+        end = position;
+        channel.position(end);
+    }
+
+    private void index(int slot, Entry entry) {
+        while (entries.size() <= slot) {
+            entries.add(null);
+        }
+        entries.set(slot, entry);
+        Integer previous = slotsById.put(entry.id(), slot);
+        if (previous != null) {
+            live.clear(previous);
+        }
+        live.set(slot);
+    }
+
+    private void append(ByteBuffer record) {
+        try {
+            while (record.hasRemaining()) {
+                end += channel.write(record, end);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot append to " + file, e);
+        }
+    }
+
+    private byte[] toJson(Map<String, Object> metadata) {
+        try {
+            return objectMapper.writeValueAsBytes(metadata);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot serialize metadata", e);
+        }
+    }
+}
@@ -0,0 +1,500 @@
+package com.example.aidemo.service.vectorstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * In-process {@link VectorStore}, an alternative to pgvector for deployments without a database.
+ * <p>
+ * Vectors live off heap in memory-mapped {@code vectors-*.bin} segments, documents in the
+ * {@link DocumentLog} and the HNSW index in the mapped {@link HnswGraph}, all under one
+ * directory; on startup the files are mapped as they are and only vectors written after the last
+ * graph save are indexed again. Scores are inner products computed with the Vector API, reported
+ * like pgvector does as a {@code distance} metadata of {@code 1 - score}, and a search keeps the
+ * documents scoring above the similarity threshold. With cosine distance vectors are normalized
+ * on write, which makes both metrics the same.
+ * <p>
+ * Filters are evaluated on the metadata kept in memory. When fewer than {@code brute-force-limit}
+ * documents match (a narrow {@code eventDate} range, one {@code mongoDbId}) they are all scored,
+ * which is exact and cheaper than walking the graph; otherwise the graph is searched and only
+ * matching documents are collected. Searches run in parallel, writes are serialized.
+ * <p>
+ * With a {@link Quantization} other than {@code NONE} every vector is also kept as a compact code
+ * in a subdirectory named after it, which holds the graph built on those codes. Graph and brute
+ * force searches then score the codes, which are a half to a 32nd of the floats to read, and
+ * the {@code rescore-factor} times {@code topK} best candidates are scored again with their
+ * full-precision vectors, so only those are paged in. Codes missing when the store is opened,
+ * after the quantization was changed, are computed from the vectors.
+ * <p>
+ * Writes append slots and deletes only mark them dead, so replaced and deleted documents keep
+ * their vector, code, graph node and log record. Once the dead slots outnumber the live ones by
+ * {@code compact-ratio}, {@link #compact()} copies the live documents into a new directory, which
+ * rebuilds the graph, and swaps it in.
+ */
+public class EmbeddedVectorStore implements VectorStore, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(EmbeddedVectorStore.class);
+    private static final int MAGIC = 0x56454353;
+    private static final int RECORDS_PER_SEGMENT = 16384;
+    private static final String DISTANCE = "distance";
+    // below this many dead slots compacting is not worth a rebuild of the graph
+    private static final int MIN_DEAD_SLOTS = 1024;
+    private static final int COMPACT_BATCH_SIZE = 1024;
+
+    private final EmbeddingModel embeddingModel;
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final int dimensions;
+    private final boolean normalize;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final int bruteForceLimit;
+    private final Quantization quantization;
+    private final int rescoreFactor;
+    private final double compactRatio;
+    // replaced by compact, which holds the write lock
+    private MappedRecords vectors;
+    private final List<FloatBuffer> vectorViews = new ArrayList<>();
+    private DocumentLog documents;
+    private QuantizedVectors codes;
+    private HnswGraph.Vectors indexed;
+    private HnswGraph graph;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public EmbeddedVectorStore(
+            EmbeddingModel embeddingModel,
+            ObjectMapper objectMapper,
+            Path directory,
+            int dimensions,
+            boolean normalize,
+            int m,
+            int efConstruction,
+            int efSearch,
+            int bruteForceLimit,
+            Quantization quantization,
+            int rescoreFactor,
+            double compactRatio) {
+        this.embeddingModel = embeddingModel;
+        this.objectMapper = objectMapper;
+        this.directory = directory;
+        this.dimensions = dimensions;
+        this.normalize = normalize;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.bruteForceLimit = bruteForceLimit;
+        this.quantization = quantization;
+        this.rescoreFactor = Math.max(1, rescoreFactor);
+        this.compactRatio = compactRatio;
+        recoverCompaction(directory);
+        open();
+    }
+
+    private void open() {
+        this.vectors = new MappedRecords(directory, "vectors", MAGIC, dimensions * Float.BYTES, RECORDS_PER_SEGMENT);
+        this.documents = new DocumentLog(directory.resolve("documents.log"), objectMapper);
+        // a vector is written before its document, so only slots with both are kept
+        vectors.truncate(documents.slots());
+        for (int slot = vectors.size(); slot < documents.slots(); slot++) {
+            if (documents.isLive(slot)) {
+                log.warn("Dropping document {} whose vector was lost", documents.id(slot));
+                documents.delete(documents.id(slot));
+            }
+        }
+        mapViews();
+        Path indexDirectory = directory;
+        HnswGraph.Vectors fullPrecision = new HnswGraph.Vectors() {
+            @Override
+            public int dimensions() {
+                return dimensions;
+            }
+
+            @Override
+            public void read(int node, float[] into) {
+                readVector(node, into);
+            }
+
+            @Override
+            public HnswGraph.Scorer scorer(float[] query) {
+                float[] vector = new float[dimensions];
+                return node -> {
+                    readVector(node, vector);
+                    return VectorMath.dot(query, vector);
+                };
+            }
+        };
+        if (quantization == Quantization.NONE) {
+            this.codes = null;
+            this.indexed = fullPrecision;
+        } else {
+            indexDirectory = directory.resolve(quantization.name().toLowerCase(Locale.ROOT));
+            this.codes = new QuantizedVectors(indexDirectory, quantization, dimensions, RECORDS_PER_SEGMENT);
+            codes.truncate(vectors.size());
+            if (codes.size() < vectors.size()) {
+                log.info("Encoding {} vectors as {} in {}", vectors.size() - codes.size(), quantization, indexDirectory);
+                float[] vector = new float[dimensions];
+                for (int slot = codes.size(); slot < vectors.size(); slot++) {
+                    readVector(slot, vector);
+                    codes.append(vector);
+                }
+                codes.force();
+            }
+            this.indexed = codes;
+        }
+        this.graph = new HnswGraph(indexDirectory, indexed, vectors.size(), m, efConstruction, RECORDS_PER_SEGMENT);
+        if (graph.size() < vectors.size()) {
+            log.info("Indexing {} vectors missing from the graph in {}", vectors.size() - graph.size(), indexDirectory);
+            for (int slot = graph.size(); slot < vectors.size(); slot++) {
+                graph.insert(slot);
+            }
+            graph.save();
+        }
+        log.info("Embedded vector store {} opened with {} documents", directory, documents.liveCount());
+    }
+
+    @Override
+    public void add(List<Document> documentList) {
+        List<float[]> embeddings = embeddingModel.embed(documentList.stream().map(Document::getContent).toList());
+        for (int i = 0; i < documentList.size(); i++) {
+            documentList.get(i).setEmbedding(embeddings.get(i));
+        }
+        write(documentList);
+    }
+
+    /**
+     * Stores documents that already carry their embedding, replacing documents with the same id.
+     */
+    public void write(List<Document> documentList) {
+        for (Document document : documentList) {
+            if (document.getEmbedding() == null || document.getEmbedding().length != dimensions) {
+                throw new IllegalArgumentException("Document " + document.getId() + " needs an embedding of " + dimensions + " dimensions");
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            for (Document document : documentList) {
+                int slot = vectors.append();
+                mapViews();
+                float[] embedding = normalize ? normalized(document.getEmbedding()) : document.getEmbedding();
+                vectorViews.get(slot / RECORDS_PER_SEGMENT).put(vectors.offset(slot) / Float.BYTES, embedding);
+                if (codes != null) {
+                    codes.append(embedding);
+                }
+                documents.put(slot, document.getId(), document.getMetadata(), document.getContent());
+                graph.insert(slot);
+            }
+            vectors.force();
+            if (codes != null) {
+                codes.force();
+            }
+            documents.force();
+            graph.save();
+            compactIfWasteful();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Boolean> delete(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            boolean deleted = false;
+            for (String id : idList) {
+                deleted |= documents.delete(id);
+            }
+            documents.force();
+            compactIfWasteful();
+            return Optional.of(deleted);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        float[] query = embeddingModel.embed(request.getQuery());
+        if (normalize) {
+            query = normalized(query);
+        }
+        int topK = request.getTopK();
+        lock.readLock().lock();
+        try {
+            BitSet candidates = documents.live();
+            if (request.getFilterExpression() != null) {
+                Filter.Expression filter = request.getFilterExpression();
+                for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+                    if (!MetadataFilter.matches(filter, documents.metadata(slot))) {
+                        candidates.clear(slot);
+                    }
+                }
+            }
+            int candidateCount = codes == null ? topK : topK * rescoreFactor;
+            List<HnswGraph.Scored> found = candidates.cardinality() <= bruteForceLimit
+                    ? scoreAll(query, candidates, candidateCount)
+                    : graph.search(query, candidateCount, efSearch, candidates::get);
+            if (codes != null) {
+                found = rescore(query, found, topK);
+            }
+
+            List<Document> results = new ArrayList<>(found.size());
+            for (HnswGraph.Scored scored : found) {
+                if (scored.score() < request.getSimilarityThreshold()) {
+                    break;
+                }
+                Map<String, Object> metadata = new HashMap<>(documents.metadata(scored.node()));
+                metadata.put(DISTANCE, 1 - scored.score());
+                results.add(new Document(documents.id(scored.node()), documents.content(scored.node()), metadata));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.liveCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Hands the live documents to {@code action}, without their embedding, in batches of up to
+     * {@code batchSize}. Each batch is read under the read lock, {@code action} runs outside it.
+     */
+    public void scan(int batchSize, Consumer<List<Document>> action) {
+        for (int from = 0; ; from += batchSize) {
+            List<Document> batch = new ArrayList<>(batchSize);
+            lock.readLock().lock();
+            try {
+                if (from >= documents.slots()) {
+                    return;
+                }
+                int until = Math.min(documents.slots(), from + batchSize);
+                for (int slot = from; slot < until; slot++) {
+                    if (documents.isLive(slot)) {
+                        batch.add(new Document(documents.id(slot), documents.content(slot), new HashMap<>(documents.metadata(slot))));
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (!batch.isEmpty()) {
+                action.accept(batch);
+            }
+        }
+    }
+
+    /**
+     * Copies the live documents and their vectors into a new directory, indexing them in a new
+     * graph, and replaces the store files with it. Searches and writes wait until it is done.
+     * Returns the number of dead slots dropped.
+     */
+    public int compact() {
+        lock.writeLock().lock();
+        try {
+            int dead = documents.slots() - documents.liveCount();
+            if (dead == 0) {
+                return 0;
+            }
+            log.info("Compacting {}: copying {} documents, dropping {} dead slots", directory, documents.liveCount(), dead);
+            Path compacted = sibling(directory, ".compacting");
+            deleteRecursively(compacted);
+            // vectors are copied as they are stored, already normalized
+            try (EmbeddedVectorStore copy = new EmbeddedVectorStore(embeddingModel, objectMapper, compacted, dimensions,
+                    false, m, efConstruction, efSearch, bruteForceLimit, quantization, rescoreFactor, 0)) {
+                List<Document> batch = new ArrayList<>(COMPACT_BATCH_SIZE);
+                BitSet live = documents.live();
+                for (int slot = live.nextSetBit(0); slot >= 0; slot = live.nextSetBit(slot + 1)) {
+                    float[] vector = new float[dimensions];
+                    readVector(slot, vector);
+                    Document document = new Document(documents.id(slot), documents.content(slot), documents.metadata(slot));
+                    document.setEmbedding(vector);
+                    batch.add(document);
+                    if (batch.size() == COMPACT_BATCH_SIZE) {
+                        copy.write(batch);
+                        batch.clear();
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    copy.write(batch);
+                }
+            }
+            closeFiles();
+            Path replaced = sibling(directory, ".replaced");
+            Files.move(directory, replaced);
+            Files.move(compacted, directory);
+            deleteRecursively(replaced);
+            vectorViews.clear();
+            open();
+            return dead;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot compact " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Full-precision vectors of up to {@code limit} live documents, spread over the store.
+     */
+    public List<float[]> sample(int limit) {
+        lock.readLock().lock();
+        try {
+            BitSet live = documents.live();
+            int count = live.cardinality();
+            int step = Math.max(1, count / Math.max(1, limit));
+            List<float[]> sample = new ArrayList<>(Math.min(count, limit));
+            int index = 0;
+            for (int slot = live.nextSetBit(0); slot >= 0 && sample.size() < limit; slot = live.nextSetBit(slot + 1)) {
+                if (index++ % step == 0) {
+                    float[] vector = new float[dimensions];
+                    readVector(slot, vector);
+                    sample.add(vector);
+                }
+            }
+            return sample;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            closeFiles();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void closeFiles() {
+        graph.close();
+        if (codes != null) {
+            codes.close();
+        }
+        vectors.close();
+        documents.close();
+    }
+
+    private void compactIfWasteful() {
+        int dead = documents.slots() - documents.liveCount();
+        if (compactRatio > 0 && dead >= MIN_DEAD_SLOTS && dead > compactRatio * documents.liveCount()) {
+            compact();
+        }
+    }
+
+    /**
+     * Finishes or drops a compaction a crash interrupted: the new directory is only complete once
+     * the old one was moved away.
+     */
+    private static void recoverCompaction(Path directory) {
+        Path compacted = sibling(directory, ".compacting");
+        Path replaced = sibling(directory, ".replaced");
+        try {
+            if (Files.exists(replaced)) {
+                if (!Files.exists(directory)) {
+                    Files.move(Files.exists(compacted) ? compacted : replaced, directory);
+                }
+                deleteRecursively(replaced);
+            }
+            deleteRecursively(compacted);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot recover the compaction of " + directory, e);
+        }
+    }
+
+    private static Path sibling(Path directory, String suffix) {
+        return directory.resolveSibling(directory.getFileName() + suffix);
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private List<HnswGraph.Scored> scoreAll(float[] query, BitSet candidates, int topK) {
+        PriorityQueue<HnswGraph.Scored> best = new PriorityQueue<>(HnswGraph.Scored.WORST_FIRST);
+        HnswGraph.Scorer scorer = indexed.scorer(query);
+        for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+            float score = scorer.score(slot);
+            if (best.size() < topK) {
+                best.add(new HnswGraph.Scored(slot, score));
+            } else if (score > best.peek().score()) {
+                best.poll();
+                best.add(new HnswGraph.Scored(slot, score));
+            }
+        }
+        List<HnswGraph.Scored> sorted = new ArrayList<>(best);
+        sorted.sort(HnswGraph.Scored.BEST_FIRST);
+        return sorted;
+    }
+
+    /**
+     * The {@code topK} best of the candidates found on the codes, by their full-precision score.
+     */
+    private List<HnswGraph.Scored> rescore(float[] query, List<HnswGraph.Scored> candidates, int topK) {
+        float[] vector = new float[dimensions];
+        List<HnswGraph.Scored> rescored = new ArrayList<>(candidates.size());
+        for (HnswGraph.Scored candidate : candidates) {
+            readVector(candidate.node(), vector);
+            rescored.add(new HnswGraph.Scored(candidate.node(), VectorMath.dot(query, vector)));
+        }
+        rescored.sort(HnswGraph.Scored.BEST_FIRST);
+        return rescored.size() > topK ? rescored.subList(0, topK) : rescored;
+    }
+
+    private void readVector(int slot, float[] into) {
+        vectorViews.get(slot / RECORDS_PER_SEGMENT).get(vectors.offset(slot) / Float.BYTES, into);
+    }
+
+    private void mapViews() {
+        while (vectorViews.size() < vectors.segmentCount()) {
+            vectorViews.add(vectors.segment(vectorViews.size()).asFloatBuffer());
+        }
+    }
+
+    private static float[] normalized(float[] vector) {
+        double norm = Math.sqrt(VectorMath.dot(vector, vector));
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = norm == 0 ? 0 : (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.aidemo.service.vectorstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Replaces pgvector with the {@link EmbeddedVectorStore} when {@code aidemo.vectorstore.type} is
+ * {@code embedded}. The {@code embedded} profile sets it and also leaves out the datasource and
+ * pgvector auto-configuration, so no database is needed. Dimensions and distance type are taken
+ * from the pgvector settings so both stores index the same way.
+ */
+@Configuration
+@ConditionalOnProperty(name = "aidemo.vectorstore.type", havingValue = "embedded")
+public class EmbeddedVectorStoreConfiguration {
+
+    @Bean
+    @Primary
+    public EmbeddedVectorStore embeddedVectorStore(
+            EmbeddingModel embeddingModel,
+            ObjectMapper objectMapper,
+            @Value("${aidemo.ingest.state-dir:.aidemo}") String stateDirectory,
+            @Value("${spring.ai.vectorstore.pgvector.dimensions:1024}") int dimensions,
+            @Value("${spring.ai.vectorstore.pgvector.distance-type:negative_inner_product}") String distanceType,
+            @Value("${aidemo.vectorstore.embedded.m:16}") int m,
+            @Value("${aidemo.vectorstore.embedded.ef-construction:100}") int efConstruction,
+            @Value("${aidemo.vectorstore.embedded.ef-search:100}") int efSearch,
+            @Value("${aidemo.vectorstore.embedded.brute-force-limit:10000}") int bruteForceLimit,
+            @Value("${aidemo.vectorstore.embedded.compact-ratio:1.0}") double compactRatio,
+            @Value("${aidemo.vectorstore.quantization.mode:none}") String quantization,
+            @Value("${aidemo.vectorstore.quantization.rescore-factor:4}") int rescoreFactor) {
+        boolean normalize = switch (distanceType.toUpperCase(Locale.ROOT)) {
+            case "NEGATIVE_INNER_PRODUCT" -> false;
+            case "COSINE_DISTANCE" -> true;
+            default -> throw new IllegalStateException("The embedded vector store does not support distance type " + distanceType);
+        };
+        return new EmbeddedVectorStore(embeddingModel, objectMapper, Path.of(stateDirectory, "vectors"),
+                dimensions, normalize, m, efConstruction, efSearch, bruteForceLimit,
+                Quantization.valueOf(quantization.toUpperCase(Locale.ROOT)), rescoreFactor, compactRatio);
+    }
+
+    @Bean
+    public EmbeddedVectorWriter embeddedVectorWriter(EmbeddedVectorStore embeddedVectorStore) {
+        return new EmbeddedVectorWriter(embeddedVectorStore);
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.aidemo.service.vectorstore;
+
+import com.example.aidemo.service.ingest.VectorWriter;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Ingestion writes into the {@link EmbeddedVectorStore}.
+ */
+public class EmbeddedVectorWriter implements VectorWriter {
+    private final EmbeddedVectorStore vectorStore;
+
+    public EmbeddedVectorWriter(EmbeddedVectorStore vectorStore) {
+        this.vectorStore = vectorStore;
+    }
+
+    @Override
+    public void write(List<Document> documents) {
+        vectorStore.write(documents);
+    }
+
+    @Override
+    public void delete(List<String> ids) {
+        vectorStore.delete(ids);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return vectorStore.size() == 0;
+    }
+
+    @Override
+    public void scan(int batchSize, Consumer<List<Document>> action) {
+        vectorStore.scan(batchSize, action);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.aidemo.service.vectorstore;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+
+/**
+ * Period of {@code eventDate} values a filter expression can match, {@code [from, until]} as ISO
+ * strings, either end {@code null} when unbounded. Conservative: bounds are taken as inclusive, a
+ * date-only {@code until} covers its whole day, and anything not understood widens the period.
+ */
+public record EventDateBounds(String from, String until) {
+    public static final EventDateBounds ALL = new EventDateBounds(null, null);
+
+    private static final String EVENT_DATE = "eventDate";
+
+    public static EventDateBounds of(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group) {
+            return of(group.content());
+        }
+        if (!(operand instanceof Filter.Expression expression)) {
+            return ALL;
+        }
+        if (expression.type() == Filter.ExpressionType.AND || expression.type() == Filter.ExpressionType.OR) {
+            EventDateBounds left = of(expression.left());
+            EventDateBounds right = of(expression.right());
+            return expression.type() == Filter.ExpressionType.AND
+                    ? new EventDateBounds(max(left.from(), right.from()), min(left.until(), right.until()))
+                    : new EventDateBounds(left.from() == null || right.from() == null ? null : min(left.from(), right.from()),
+                    left.until() == null || right.until() == null ? null : max(left.until(), right.until()));
+        }
+        if (!(expression.left() instanceof Filter.Key key) || !key.key().equals(EVENT_DATE)
+                || !(expression.right() instanceof Filter.Value value) || !(value.value() instanceof String date)) {
+            return ALL;
+        }
+        return switch (expression.type()) {
+            case EQ -> new EventDateBounds(date, date);
+            case GT, GTE -> new EventDateBounds(date, null);
+            case LT, LTE -> new EventDateBounds(null, date);
+            default -> ALL;
+        };
+    }
+
+    /**
+     * Whether values between {@code first} and {@code last} can fall in this period.
+     */
+    public boolean overlaps(String first, String last) {
+        return (from == null || last.compareTo(from) >= 0) && (until == null || first.compareTo(until + "\uffff") <= 0);
+    }
+
+    /**
+     * The start of the period as an instant, a date meaning the start of its day in UTC.
+     */
+    public Optional<Instant> fromInstant() {
+        return Optional.ofNullable(from).flatMap(value -> instant(value, false));
+    }
+
+    /**
+     * The end of the period as an instant, a date meaning the end of its day in UTC.
+     */
+    public Optional<Instant> untilInstant() {
+        return Optional.ofNullable(until).flatMap(value -> instant(value, true));
+    }
+
+    /**
+     * Parses an {@code eventDate} value, a date meaning the start or, with {@code endOfDay}, the
+     * end of its day in UTC.
+     */
+    static Optional<Instant> instant(String value, boolean endOfDay) {
+        try {
+            if (value.length() == 10) {
+                LocalDate date = LocalDate.parse(value);
+                return Optional.of((endOfDay ? date.plusDays(1) : date).atStartOfDay(ZoneOffset.UTC).toInstant());
+            }
+            return Optional.of(Instant.parse(value));
+        } catch (DateTimeParseException e) {
+            // not a date, the period stays open on that side
+            return Optional.empty();
+        }
+    }
+
+    private static String min(String a, String b) {
+        return a == null ? b : b == null ? a : a.compareTo(b) <= 0 ? a : b;
+    }
+
+    private static String max(String a, String b) {
+        return a == null ? b : b == null ? a : a.compareTo(b) >= 0 ? a : b;
+    }
+}
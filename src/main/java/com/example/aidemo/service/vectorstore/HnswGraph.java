@@ -0,0 +1,391 @@
+package com.example.aidemo.service.vectorstore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.IntPredicate;
+
+/**
+ * Hierarchical navigable small world graph over inner-product similarity, or the similarity the
+ * {@link Vectors} of a quantized store compute.
+ * <p>
+ * Node ids are the slots of the vectors they index. Layer 0, which holds every node with up to
+ * {@code 2 * m} neighbours, is a {@link MappedRecords} file of {@code [count, neighbour...]}
+ * records; the sparse upper layers (about one node in {@code m}) are kept on heap and written
+ * with the entry point to {@code graph.meta} by {@link #save()}. Nodes added after the last save
+ * are dropped on open and must be inserted again by the owner. Not thread-safe: searches may run
+ * concurrently with each other, not with {@link #insert}.
+ */
+class HnswGraph implements AutoCloseable {
+    private static final int MAGIC = 0x484e5357;
+    private static final int MAX_LEVEL = 16;
+
+    /**
+     * Source of the indexed vectors, which may be quantized.
+     */
+    interface Vectors {
+        int dimensions();
+
+        void read(int node, float[] into);
+
+        /**
+         * Similarity of {@code query} to the nodes, for one thread.
+         */
+        Scorer scorer(float[] query);
+    }
+
+    interface Scorer {
+        float score(int node);
+    }
+
+    record Scored(int node, float score) {
+        static final Comparator<Scored> BEST_FIRST = Comparator.comparingDouble(Scored::score).reversed();
+        static final Comparator<Scored> WORST_FIRST = Comparator.comparingDouble(Scored::score);
+    }
+
+    private final Vectors vectors;
+    private final int m;
+    private final int m0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Path metaFile;
+    private final MappedRecords layer0;
+    private final List<IntBuffer> layer0Views = new ArrayList<>();
+    private final Map<Integer, int[][]> upperLayers = new HashMap<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    /**
+     * Opens the graph in {@code directory}; a saved graph with more than {@code maxNodes} nodes,
+     * more than there are vectors, is dropped and has to be rebuilt.
+     */
+    HnswGraph(Path directory, Vectors vectors, int maxNodes, int m, int efConstruction, int nodesPerSegment) {
+        this.vectors = vectors;
+        this.m = m;
+        this.m0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.metaFile = directory.resolve("graph.meta");
+        this.layer0 = new MappedRecords(directory, "graph", MAGIC, (1 + m0) * Integer.BYTES, nodesPerSegment);
+        int savedNodes = load(maxNodes);
+        layer0.truncate(savedNodes);
+        mapViews();
+    }
+
+    int size() {
+        return layer0.size();
+    }
+
+    /**
+     * Links node {@code node}, which must be the next id, into the graph.
+     */
+    void insert(int node) {
+        if (node != layer0.size()) {
+            throw new IllegalArgumentException("Expected node " + layer0.size() + " but got " + node);
+        }
+        layer0.append();
+        mapViews();
+        int level = level(node);
+        if (level > 0) {
+            upperLayers.put(node, new int[level][m + 1]);
+        }
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+        float[] query = new float[vectors.dimensions()];
+        vectors.read(node, query);
+        Scorer scorer = vectors.scorer(query);
+
+        Scored entry = new Scored(entryPoint, scorer.score(entryPoint));
+        for (int l = maxLevel; l > level; l--) {
+            entry = greedy(scorer, entry, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Scored> candidates = searchLayer(scorer, List.of(entry), efConstruction, l, n -> n != node);
+            for (Scored neighbour : selectNeighbours(candidates, maxConnections(l))) {
+                link(node, neighbour.node(), l);
+                link(neighbour.node(), node, l);
+            }
+            if (!candidates.isEmpty()) {
+                entry = candidates.get(0);
+            }
+        }
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+    }
+
+    /**
+     * Returns up to {@code k} accepted nodes most similar to {@code query}, best first, exploring
+     * {@code ef} candidates at least.
+     */
+    List<Scored> search(float[] query, int k, int ef, IntPredicate accept) {
+        if (entryPoint < 0) {
+            return List.of();
+        }
+        Scorer scorer = vectors.scorer(query);
+        Scored entry = new Scored(entryPoint, scorer.score(entryPoint));
+        for (int l = maxLevel; l > 0; l--) {
+            entry = greedy(scorer, entry, l);
+        }
+        List<Scored> found = searchLayer(scorer, List.of(entry), Math.max(ef, k), 0, accept);
+        return found.size() > k ? found.subList(0, k) : found;
+    }
+
+    /**
+     * Persists the upper layers and the entry point; layer 0 is forced to disk first so that the
+     * metadata never describes nodes that are not there.
+     */
+    void save() {
+        layer0.force();
+        Path tmp = metaFile.resolveSibling(metaFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(m);
+            out.writeInt(layer0.size());
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            out.writeInt(upperLayers.size());
+            for (Map.Entry<Integer, int[][]> node : upperLayers.entrySet()) {
+                out.writeInt(node.getKey());
+                out.writeInt(node.getValue().length);
+                for (int[] neighbours : node.getValue()) {
+                    for (int value : neighbours) {
+                        out.writeInt(value);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write " + tmp, e);
+        }
+        try {
+            Files.move(tmp, metaFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot replace " + metaFile, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        save();
+    }
+
+    private int load(int maxNodes) {
+        if (!Files.exists(metaFile)) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(metaFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != m) {
+                return 0;
+            }
+            int nodes = in.readInt();
+            if (nodes > layer0.size() || nodes > maxNodes) {
+                return 0;
+            }
+            entryPoint = in.readInt();
+            maxLevel = in.readInt();
+            int upperCount = in.readInt();
+            for (int i = 0; i < upperCount; i++) {
+                int node = in.readInt();
+                int[][] levels = new int[in.readInt()][m + 1];
+                for (int[] neighbours : levels) {
+                    for (int j = 0; j < neighbours.length; j++) {
+                        neighbours[j] = in.readInt();
+                    }
+                }
+                upperLayers.put(node, levels);
+            }
+            return nodes;
+        } catch (IOException e) {
+            // unreadable metadata, the graph is rebuilt
+            entryPoint = -1;
+            maxLevel = -1;
+            upperLayers.clear();
+            return 0;
+        }
+    }
+
+    private Scored greedy(Scorer scorer, Scored entry, int level) {
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbours = neighbours(entry.node(), level);
+            for (int i = 1; i <= neighbours[0]; i++) {
+                float score = scorer.score(neighbours[i]);
+                if (score > entry.score()) {
+                    entry = new Scored(neighbours[i], score);
+                    improved = true;
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Beam search of one layer. Every reachable node is traversed, but only accepted nodes are
+     * kept as results, so a filter narrows the results without disconnecting the graph.
+     */
+    private List<Scored> searchLayer(Scorer scorer, List<Scored> entries, int ef, int level, IntPredicate accept) {
+        BitSet visited = new BitSet(layer0.size());
+        PriorityQueue<Scored> candidates = new PriorityQueue<>(Scored.BEST_FIRST);
+        PriorityQueue<Scored> results = new PriorityQueue<>(Scored.WORST_FIRST);
+        for (Scored entry : entries) {
+            visited.set(entry.node());
+            candidates.add(entry);
+            if (accept.test(entry.node())) {
+                results.add(entry);
+            }
+        }
+        while (!candidates.isEmpty()) {
+            Scored current = candidates.poll();
+            if (results.size() >= ef && current.score() < results.peek().score()) {
+                break;
+            }
+            int[] neighbours = neighbours(current.node(), level);
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (neighbour >= layer0.size() || visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                Scored scored = new Scored(neighbour, scorer.score(neighbour));
+                if (results.size() < ef || scored.score() > results.peek().score()) {
+                    candidates.add(scored);
+                    if (accept.test(neighbour)) {
+                        results.add(scored);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+        List<Scored> sorted = new ArrayList<>(results);
+        sorted.sort(Scored.BEST_FIRST);
+        return sorted;
+    }
+
+    /**
+     * Neighbour selection heuristic of the HNSW paper: a candidate is taken only if it is closer
+     * to the new node than to every neighbour already taken, which keeps links spread across
+     * clusters; the remaining room is then filled with the closest candidates left out.
+     */
+    private List<Scored> selectNeighbours(List<Scored> candidates, int max) {
+        List<Scored> selected = new ArrayList<>(max);
+        List<Scored> skipped = new ArrayList<>();
+        float[] candidateVector = new float[vectors.dimensions()];
+        for (Scored candidate : candidates) {
+            if (selected.size() == max) {
+                break;
+            }
+            vectors.read(candidate.node(), candidateVector);
+            Scorer candidateScorer = vectors.scorer(candidateVector);
+            boolean diverse = true;
+            for (Scored taken : selected) {
+                if (candidateScorer.score(taken.node()) > candidate.score()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            (diverse ? selected : skipped).add(candidate);
+        }
+        for (int i = 0; i < skipped.size() && selected.size() < max; i++) {
+            selected.add(skipped.get(i));
+        }
+        return selected;
+    }
+
+    private void link(int from, int to, int level) {
+        int[] neighbours = neighbours(from, level);
+        int count = neighbours[0];
+        for (int i = 1; i <= count; i++) {
+            if (neighbours[i] == to) {
+                return;
+            }
+        }
+        int max = maxConnections(level);
+        if (count < max) {
+            neighbours[count + 1] = to;
+            neighbours[0] = count + 1;
+        } else {
+            float[] fromVector = new float[vectors.dimensions()];
+            vectors.read(from, fromVector);
+            Scorer fromScorer = vectors.scorer(fromVector);
+            List<Scored> candidates = new ArrayList<>(count + 1);
+            for (int i = 1; i <= count; i++) {
+                candidates.add(new Scored(neighbours[i], fromScorer.score(neighbours[i])));
+            }
+            candidates.add(new Scored(to, fromScorer.score(to)));
+            candidates.sort(Scored.BEST_FIRST);
+            List<Scored> kept = selectNeighbours(candidates, max);
+            neighbours[0] = kept.size();
+            for (int i = 0; i < kept.size(); i++) {
+                neighbours[i + 1] = kept.get(i).node();
+            }
+        }
+        storeNeighbours(from, level, neighbours);
+    }
+
+    /**
+     * Neighbours of {@code node} as {@code [count, ids...]}; a copy for layer 0, which
+     * {@link #storeNeighbours} writes back.
+     */
+    private int[] neighbours(int node, int level) {
+        if (level > 0) {
+            return upperLayers.get(node)[level - 1];
+        }
+        int[] neighbours = new int[1 + m0];
+        layer0View(node).get(layer0.offset(node) / Integer.BYTES, neighbours);
+        return neighbours;
+    }
+
+    private void storeNeighbours(int node, int level, int[] neighbours) {
+        if (level == 0) {
+            layer0View(node).put(layer0.offset(node) / Integer.BYTES, neighbours);
+        }
+    }
+
+    private IntBuffer layer0View(int node) {
+        return layer0Views.get(node / layer0.recordsPerSegment());
+    }
+
+    private void mapViews() {
+        while (layer0Views.size() < layer0.segmentCount()) {
+            layer0Views.add(layer0.segment(layer0Views.size()).asIntBuffer());
+        }
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? m0 : m;
+    }
+
+    /**
+     * Level drawn from the exponential distribution of the paper, derived from the node id so a
+     * rebuilt graph gets the same layers.
+     */
+    private int level(int node) {
+        long z = (node + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        double uniform = ((z >>> 11) + 1) * 0x1.0p-53;
+        return Math.min(MAX_LEVEL, (int) (-Math.log(uniform) * levelMultiplier));
+    }
+}
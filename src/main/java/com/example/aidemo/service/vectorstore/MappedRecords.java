@@ -0,0 +1,154 @@
+package com.example.aidemo.service.vectorstore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Append-only array of fixed-size records stored in memory-mapped segment files
+ * {@code <prefix>-00000.bin, <prefix>-00001.bin, ...}.
+ * <p>
+ * Each segment starts with a 64 bytes header {@code [magic, record bytes, records per segment,
+ * records used]} followed by its records, little-endian. Existing segments are mapped as they
+ * are when opened, so their content is paged in on demand instead of being read up front.
+ * Not thread-safe, the owner serializes appends against reads.
+ */
+class MappedRecords implements AutoCloseable {
+    static final int HEADER_BYTES = 64;
+    private static final int USED_OFFSET = 12;
+
+    private final Path directory;
+    private final String prefix;
+    private final int magic;
+    private final int recordBytes;
+    private final int recordsPerSegment;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private int size;
+
+    MappedRecords(Path directory, String prefix, int magic, int recordBytes, int recordsPerSegment) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.magic = magic;
+        this.recordBytes = recordBytes;
+        this.recordsPerSegment = recordsPerSegment;
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> list = Files.list(directory)) {
+                files = list.filter(p -> p.getFileName().toString().startsWith(prefix + "-")).sorted().toList();
+            }
+            for (Path file : files) {
+                MappedByteBuffer segment = map(file);
+                if (segment.getInt(0) != magic || segment.getInt(4) != recordBytes || segment.getInt(8) != recordsPerSegment) {
+                    throw new IllegalStateException(file + " was written with another layout, remove " + directory + " to rebuild it");
+                }
+                segments.add(segment);
+                size += segment.getInt(USED_OFFSET);
+                if (segment.getInt(USED_OFFSET) < recordsPerSegment) {
+                    // only the last segment can be partially used
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open " + directory, e);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int recordsPerSegment() {
+        return recordsPerSegment;
+    }
+
+    /**
+     * Mapped buffer of segment {@code index}, little-endian, addressed from the file start.
+     */
+    MappedByteBuffer segment(int index) {
+        return segments.get(index);
+    }
+
+    int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Byte offset of {@code record} in its segment.
+     */
+    int offset(int record) {
+        return HEADER_BYTES + (record % recordsPerSegment) * recordBytes;
+    }
+
+    /**
+     * Adds a zeroed record and returns its index.
+     */
+    int append() {
+        int segmentIndex = size / recordsPerSegment;
+        if (segmentIndex == segments.size()) {
+            segments.add(createSegment(segmentIndex));
+        }
+        MappedByteBuffer segment = segments.get(segmentIndex);
+        int used = size % recordsPerSegment;
+        // a record dropped by truncate may have left data behind
+        for (int i = offset(used), end = i + recordBytes; i < end; i++) {
+            segment.put(i, (byte) 0);
+        }
+        segment.putInt(USED_OFFSET, used + 1);
+        return size++;
+    }
+
+    /**
+     * Forgets every record from {@code newSize} on, used to drop records a crash left behind.
+     */
+    void truncate(int newSize) {
+        if (newSize >= size) {
+            return;
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            int used = Math.max(0, Math.min(recordsPerSegment, newSize - i * recordsPerSegment));
+            segments.get(i).putInt(USED_OFFSET, used);
+        }
+        size = newSize;
+    }
+
+    void force() {
+        segments.forEach(MappedByteBuffer::force);
+    }
+
+    @Override
+    public void close() {
+        force();
+    }
+
+    private MappedByteBuffer createSegment(int index) {
+        try {
+            MappedByteBuffer segment = map(directory.resolve("%s-%05d.bin".formatted(prefix, index)));
+            segment.putInt(4, recordBytes);
+            segment.putInt(8, recordsPerSegment);
+            segment.putInt(USED_OFFSET, 0);
+            segment.putInt(0, magic);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create segment in " + directory, e);
+        }
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE)) {
+            long size = HEADER_BYTES + (long) recordsPerSegment * recordBytes;
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            return segment;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.aidemo.service.vectorstore;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates a portable {@link Filter.Expression} against the metadata of a document, with the
+ * semantic the pgvector store gives it through its JSONPath translation: numbers compare
+ * numerically, anything else by its string form (so ISO dates compare by time), and a
+ * comparison with a missing key is false.
+ */
+public final class MetadataFilter {
+
+    private MetadataFilter() {
+    }
+
+    public static boolean matches(Filter.Operand operand, Map<String, Object> metadata) {
+        if (operand instanceof Filter.Group group) {
+            return matches(group.content(), metadata);
+        }
+        if (!(operand instanceof Filter.Expression expression)) {
+            throw new IllegalArgumentException("Not a filter expression: " + operand);
+        }
+        return switch (expression.type()) {
+            case AND -> matches(expression.left(), metadata) && matches(expression.right(), metadata);
+            case OR -> matches(expression.left(), metadata) || matches(expression.right(), metadata);
+            case NOT -> !matches(expression.left(), metadata);
+            case IN, NIN -> {
+                Object actual = metadata.get(key(expression));
+                boolean contained = actual != null && values(expression).stream().anyMatch(value -> compare(actual, value) == 0);
+                yield expression.type() == Filter.ExpressionType.IN ? contained : actual != null && !contained;
+            }
+            default -> {
+                Object actual = metadata.get(key(expression));
+                if (actual == null) {
+                    yield false;
+                }
+                int comparison = compare(actual, ((Filter.Value) expression.right()).value());
+                yield switch (expression.type()) {
+                    case EQ -> comparison == 0;
+                    case NE -> comparison != 0;
+                    case GT -> comparison > 0;
+                    case GTE -> comparison >= 0;
+                    case LT -> comparison < 0;
+                    case LTE -> comparison <= 0;
+                    default -> throw new IllegalArgumentException("Unsupported filter operator " + expression.type());
+                };
+            }
+        };
+    }
+
+    private static String key(Filter.Expression expression) {
+        String key = ((Filter.Key) expression.left()).key();
+        // the text parser keeps the quotes of quoted identifiers
+        if (key.length() > 1 && (key.startsWith("\"") || key.startsWith("'")) && key.endsWith(key.substring(0, 1))) {
+            return key.substring(1, key.length() - 1);
+        }
+        return key;
+    }
+
+    private static Collection<?> values(Filter.Expression expression) {
+        Object value = ((Filter.Value) expression.right()).value();
+        return value instanceof Collection<?> values ? values : List.of(value);
+    }
+
+    /**
+     * Compares two metadata values, anything but two numbers by its string form.
+     */
+    private static int compare(Object actual, Object expected) {
+        if (actual instanceof Number a && expected instanceof Number b) {
+            return Double.compare(a.doubleValue(), b.doubleValue());
+        }
+        return actual.toString().compareTo(expected.toString());
+    }
+}
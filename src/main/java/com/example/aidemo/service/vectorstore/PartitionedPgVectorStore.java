@@ -0,0 +1,521 @@
+package com.example.aidemo.service.vectorstore;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.PgVectorFilterExpressionConverter;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * pgvector store partitioned by event time, one shard per day or month.
+ * <p>
+ * Documents go to a table range-partitioned on an {@code event_at timestamptz} column filled
+ * from the {@code eventDate} metadata. The {@code _undated} partition takes every row before
+ * 1970: documents without a date, or with one that is not valid or outside years 1 to 9999, are
+ * stored at {@code -infinity}, and the rare pre-1970 dates keep their time there rather than
+ * getting a shard that would overlap it. Each shard carries its own HNSW index, and shards are created as documents for
+ * their period arrive. A search turns the {@code eventDate} bounds of its filter into a range on
+ * {@code event_at}, so Postgres prunes every shard outside of it before any vector work and the
+ * cost of a date-filtered question does not grow with the history; the filter itself is still
+ * applied to the metadata for exact semantics. Old shards can be merged into monthly ones with
+ * {@link #compact} or dropped whole with {@link #dropBefore}.
+ * <p>
+ * With {@code FP16} or {@code BINARY} {@link Quantization} the HNSW index is built on
+ * {@code embedding::halfvec} or {@code binary_quantize(embedding)::bit} instead of the vectors,
+ * a half or a 32nd of their size; a search takes the {@code rescore-factor} times {@code topK}
+ * nearest rows by that expression from the index and orders them by the full-precision distance.
+ * The table keeps the full vectors either way, an index of another mode is left in place and can
+ * be dropped by hand.
+ */
+public class PartitionedPgVectorStore implements VectorStore {
+    private static final Logger log = LoggerFactory.getLogger(PartitionedPgVectorStore.class);
+    private static final String EVENT_DATE = "eventDate";
+    private static final String DISTANCE = "distance";
+    private static final int MAX_EF_SEARCH = 1000;
+    private static final TypeReference<Map<String, Object>> METADATA = new TypeReference<>() {};
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+    // the undated partition covers everything before, dated shards start here
+    private static final LocalDate FIRST_DATED_DAY = LocalDate.of(1970, 1, 1);
+    // timestamptz and the four digit years of the shard names
+    private static final Instant MIN_EVENT_TIME = LocalDate.of(1, 1, 1).atStartOfDay(ZoneOffset.UTC).toInstant();
+    private static final Instant MAX_EVENT_TIME = LocalDate.of(10000, 1, 1).atStartOfDay(ZoneOffset.UTC).toInstant();
+
+    public enum Granularity { DAY, MONTH }
+
+    /**
+     * A shard, covering {@code [from, until)}; both are {@code null} for the undated one.
+     */
+    public record Partition(String name, LocalDate from, LocalDate until, long estimatedRows) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EmbeddingModel embeddingModel;
+    private final ObjectMapper objectMapper;
+    private final String schema;
+    private final String table;
+    private final Granularity granularity;
+    private final boolean cosine;
+    private final String iterativeScan;
+    private final int dimensions;
+    private final Quantization quantization;
+    private final int rescoreFactor;
+    private final Pattern partitionName;
+    private final PgVectorFilterExpressionConverter filterConverter = new PgVectorFilterExpressionConverter();
+    // dated shards by start day
+    private final TreeMap<LocalDate, Partition> partitions = new TreeMap<>();
+
+    public PartitionedPgVectorStore(
+            JdbcTemplate jdbcTemplate,
+            EmbeddingModel embeddingModel,
+            ObjectMapper objectMapper,
+            String schema,
+            String table,
+            int dimensions,
+            boolean cosine,
+            Granularity granularity,
+            String iterativeScan,
+            Quantization quantization,
+            int rescoreFactor,
+            boolean initializeSchema) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.embeddingModel = embeddingModel;
+        this.objectMapper = objectMapper;
+        this.schema = schema;
+        this.table = table;
+        this.granularity = granularity;
+        this.cosine = cosine;
+        this.iterativeScan = iterativeScan;
+        this.dimensions = dimensions;
+        this.quantization = quantization;
+        this.rescoreFactor = Math.max(1, rescoreFactor);
+        this.partitionName = Pattern.compile(Pattern.quote(table) + "_(d\\d{8}|m\\d{6})");
+        if (initializeSchema) {
+            initializeSchema(dimensions);
+        }
+        loadPartitions();
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        List<float[]> embeddings = embeddingModel.embed(documents.stream().map(Document::getContent).toList());
+        for (int i = 0; i < documents.size(); i++) {
+            documents.get(i).setEmbedding(embeddings.get(i));
+        }
+        write(documents);
+    }
+
+    /**
+     * Inserts or replaces documents that already carry their embedding.
+     */
+    public void write(List<Document> documents) {
+        List<Instant> eventTimes = documents.stream().map(PartitionedPgVectorStore::eventTime).toList();
+        ensurePartitions(eventTimes);
+        String sql = "INSERT INTO " + qualified(table) + " (id, event_at, content, metadata, embedding) "
+                + "VALUES (?, COALESCE(?, '-infinity'::timestamptz), ?, ?::jsonb, ?) "
+                + "ON CONFLICT (id, event_at) DO UPDATE SET content = EXCLUDED.content, metadata = EXCLUDED.metadata, embedding = EXCLUDED.embedding";
+        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Document document = documents.get(i);
+                Instant eventTime = eventTimes.get(i);
+                ps.setObject(1, UUID.fromString(document.getId()));
+                ps.setObject(2, eventTime == null ? null : eventTime.atOffset(ZoneOffset.UTC), Types.TIMESTAMP_WITH_TIMEZONE);
+                ps.setString(3, document.getContent());
+                ps.setString(4, toJson(document));
+                ps.setObject(5, new PGvector(document.getEmbedding()));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return documents.size();
+            }
+        });
+    }
+
+    @Override
+    public Optional<Boolean> delete(List<String> ids) {
+        int[] counts = jdbcTemplate.batchUpdate("DELETE FROM " + qualified(table) + " WHERE id = ?", new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setObject(1, UUID.fromString(ids.get(i)));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return ids.size();
+            }
+        });
+        return Optional.of(counts != null && Arrays.stream(counts).anyMatch(count -> count != 0));
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        float[] query = embeddingModel.embed(request.getQuery());
+        Filter.Expression filter = request.getFilterExpression();
+        EventDateBounds bounds = filter == null ? EventDateBounds.ALL : EventDateBounds.of(filter);
+        Optional<Instant> from = bounds.fromInstant();
+        Optional<Instant> until = bounds.untilInstant();
+        String jsonPath = filter == null ? null : filterConverter.convertExpression(filter);
+
+        boolean quantized = quantization != Quantization.NONE;
+        int candidateCount = quantized ? request.getTopK() * rescoreFactor : request.getTopK();
+        StringBuilder sql = new StringBuilder("SELECT id, content, metadata, embedding ")
+                .append(cosine ? "<=>" : "<#>").append(" ? AS distance FROM ");
+        if (quantized) {
+            sql.append("(SELECT id, content, metadata, embedding FROM ");
+        }
+        sql.append(qualified(table)).append(" WHERE true");
+        from.ifPresent(instant -> sql.append(" AND event_at >= ?"));
+        until.ifPresent(instant -> sql.append(" AND event_at <= ?"));
+        if (jsonPath != null) {
+            sql.append(" AND metadata @@ ?::jsonpath");
+        }
+        if (quantized) {
+            // the index scan on the quantized expression, rescored by the outer query
+            sql.append(" ORDER BY ").append(quantizedDistance()).append(" LIMIT ?) candidates");
+        }
+        sql.append(" ORDER BY distance LIMIT ?");
+
+        double maxDistance = 1 - request.getSimilarityThreshold();
+        List<Document> documents = jdbcTemplate.execute((ConnectionCallback<List<Document>>) connection ->
+                inTransaction(connection, () -> {
+                    try (Statement statement = connection.createStatement()) {
+                        // an HNSW scan returns at most ef_search rows
+                        statement.execute("SET LOCAL hnsw.ef_search = " + Math.min(MAX_EF_SEARCH, Math.max(40, candidateCount)));
+                        if (jsonPath != null && !iterativeScan.isBlank()) {
+                            statement.execute("SET LOCAL hnsw.iterative_scan = " + iterativeScan);
+                        }
+                    }
+                    try (PreparedStatement ps = connection.prepareStatement(sql.toString())) {
+                        int parameter = 1;
+                        ps.setObject(parameter++, new PGvector(query));
+                        if (from.isPresent()) {
+                            ps.setObject(parameter++, from.get().atOffset(ZoneOffset.UTC));
+                        }
+                        if (until.isPresent()) {
+                            ps.setObject(parameter++, until.get().atOffset(ZoneOffset.UTC));
+                        }
+                        if (jsonPath != null) {
+                            ps.setString(parameter++, jsonPath);
+                        }
+                        if (quantized) {
+                            ps.setObject(parameter++, new PGvector(query));
+                            ps.setInt(parameter++, candidateCount);
+                        }
+                        ps.setInt(parameter, request.getTopK());
+                        List<Document> found = new ArrayList<>();
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                // negative inner product is reported like the cosine distance, 1 - similarity
+                                double distance = cosine ? rs.getDouble("distance") : 1 + rs.getDouble("distance");
+                                if (distance <= maxDistance) {
+                                    found.add(toDocument(rs, distance));
+                                }
+                            }
+                        }
+                        return found;
+                    }
+                }));
+        // iterative scans may return rows slightly out of order
+        documents.sort(Comparator.comparingDouble(document -> ((Number) document.getMetadata().get(DISTANCE)).doubleValue()));
+        return documents;
+    }
+
+    public boolean isEmpty() {
+        return !jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " + qualified(table) + ")", Boolean.class);
+    }
+
+    /**
+     * Hands every stored document to {@code action}, without its embedding, in batches of up to
+     * {@code batchSize}, paging through the table in id order.
+     */
+    public void scan(int batchSize, Consumer<List<Document>> action) {
+        String select = "SELECT id, content, metadata::text AS metadata FROM " + qualified(table);
+        RowMapper<Document> toDocument = (rs, n) -> toDocument(rs);
+        List<Document> batch = jdbcTemplate.query(select + " ORDER BY id LIMIT ?", toDocument, batchSize);
+        while (!batch.isEmpty()) {
+            action.accept(batch);
+            if (batch.size() < batchSize) {
+                return;
+            }
+            UUID last = UUID.fromString(batch.get(batch.size() - 1).getId());
+            batch = jdbcTemplate.query(select + " WHERE id > ? ORDER BY id LIMIT ?", toDocument, last, batchSize);
+        }
+    }
+
+    /**
+     * The shards, oldest first, the undated one last.
+     */
+    public List<Partition> partitions() {
+        return jdbcTemplate.query(partitionQuery(), (rs, n) -> parsePartition(rs.getString(1), Math.max(0, rs.getLong(2))))
+                .stream()
+                .sorted(Comparator.comparing(Partition::from, Comparator.nullsLast(Comparator.naturalOrder())))
+                .toList();
+    }
+
+    /**
+     * Drops every dated shard that ends on or before {@code before}, returns their names.
+     */
+    public synchronized List<String> dropBefore(LocalDate before) {
+        List<String> dropped = new ArrayList<>();
+        for (Partition partition : List.copyOf(partitions.headMap(before).values())) {
+            if (!partition.until().isAfter(before)) {
+                jdbcTemplate.execute("DROP TABLE " + qualified(partition.name()));
+                partitions.remove(partition.from());
+                dropped.add(partition.name());
+            }
+        }
+        log.info("Dropped partitions {}", dropped);
+        return dropped;
+    }
+
+    /**
+     * Merges the daily shards of every month that ends on or before {@code before} into one
+     * monthly shard, returns the names of the new shards. Each month is merged in a transaction:
+     * the rows are copied into a new table, the daily shards dropped and the table attached,
+     * which builds its indexes in bulk. The daily shards are locked against writes first, so no
+     * row reaches them between the copy and the drop; writes into that month wait for the merge
+     * to commit, searches go on.
+     */
+    public synchronized List<String> compact(LocalDate before) {
+        Map<YearMonth, List<Partition>> months = new TreeMap<>();
+        for (Partition partition : partitions.values()) {
+            YearMonth month = YearMonth.from(partition.from());
+            boolean daily = partition.name().equals(name(partition.from(), Granularity.DAY));
+            if (daily && !month.plusMonths(1).atDay(1).isAfter(before)) {
+                months.computeIfAbsent(month, m -> new ArrayList<>()).add(partition);
+            }
+        }
+        List<String> compacted = new ArrayList<>();
+        months.forEach((month, days) -> {
+            LocalDate from = month.atDay(1);
+            LocalDate until = month.plusMonths(1).atDay(1);
+            String monthly = name(from, Granularity.MONTH);
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> inTransaction(connection, () -> {
+                try (Statement statement = connection.createStatement()) {
+                    // rows written to a day after it was copied would be lost with its table, searches still read it
+                    for (Partition day : days) {
+                        statement.execute("LOCK TABLE " + qualified(day.name()) + " IN EXCLUSIVE MODE");
+                    }
+                    statement.execute("CREATE TABLE " + qualified(monthly) + " (LIKE " + qualified(table) + " INCLUDING DEFAULTS)");
+                    for (Partition day : days) {
+                        statement.execute("INSERT INTO " + qualified(monthly) + " SELECT * FROM " + qualified(day.name()));
+                        statement.execute("DROP TABLE " + qualified(day.name()));
+                    }
+                    statement.execute("ALTER TABLE " + qualified(table) + " ATTACH PARTITION " + qualified(monthly) + bounds(from, until));
+                }
+                return null;
+            }));
+            days.forEach(day -> partitions.remove(day.from()));
+            partitions.put(from, new Partition(monthly, from, until, 0));
+            compacted.add(monthly);
+        });
+        log.info("Compacted daily partitions into {}", compacted);
+        return compacted;
+    }
+
+    private void initializeSchema(int dimensions) {
+        jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS vector");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + qualified(table) + " ("
+                + "id uuid NOT NULL, event_at timestamptz NOT NULL, content text, metadata jsonb, embedding vector(" + dimensions + "), "
+                + "PRIMARY KEY (id, event_at)) PARTITION BY RANGE (event_at)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + table + indexSuffix() + " ON " + qualified(table)
+                + " USING hnsw (" + indexedExpression() + ")");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + qualified(table + "_undated") + " PARTITION OF " + qualified(table)
+                + " FOR VALUES FROM (MINVALUE) TO ('" + FIRST_DATED_DAY + "T00:00:00Z')");
+    }
+
+    private String indexSuffix() {
+        return switch (quantization) {
+            case NONE -> "_embedding_idx";
+            case FP16 -> "_embedding_fp16_idx";
+            case BINARY -> "_embedding_binary_idx";
+            case INT8 -> throw new IllegalStateException("pgvector has no int8 vector type");
+        };
+    }
+
+    private String indexedExpression() {
+        return switch (quantization) {
+            case NONE -> "embedding " + (cosine ? "vector_cosine_ops" : "vector_ip_ops");
+            case FP16 -> "(embedding::halfvec(" + dimensions + ")) " + (cosine ? "halfvec_cosine_ops" : "halfvec_ip_ops");
+            case BINARY -> "(binary_quantize(embedding)::bit(" + dimensions + ")) bit_hamming_ops";
+            case INT8 -> throw new IllegalStateException("pgvector has no int8 vector type");
+        };
+    }
+
+    /**
+     * Distance to the query parameter on the indexed expression, as the index orders it.
+     */
+    private String quantizedDistance() {
+        return switch (quantization) {
+            case FP16 -> "embedding::halfvec(" + dimensions + ") " + (cosine ? "<=>" : "<#>") + " ?::halfvec(" + dimensions + ")";
+            case BINARY -> "binary_quantize(embedding)::bit(" + dimensions + ") <~> binary_quantize(?)";
+            case NONE, INT8 -> throw new IllegalStateException("No quantized distance for " + quantization);
+        };
+    }
+
+    private void loadPartitions() {
+        for (Partition partition : jdbcTemplate.query(partitionQuery(), (rs, n) -> parsePartition(rs.getString(1), 0))) {
+            if (partition.from() != null) {
+                partitions.put(partition.from(), partition);
+            }
+        }
+        log.info("{} has {} dated partitions", qualified(table), partitions.size());
+    }
+
+    private synchronized void ensurePartitions(List<Instant> eventTimes) {
+        TreeSet<LocalDate> days = new TreeSet<>();
+        for (Instant eventTime : eventTimes) {
+            if (isDated(eventTime)) {
+                days.add(LocalDate.ofInstant(eventTime, ZoneOffset.UTC));
+            }
+        }
+        for (LocalDate day : days) {
+            Map.Entry<LocalDate, Partition> covering = partitions.floorEntry(day);
+            if (covering != null && day.isBefore(covering.getValue().until())) {
+                continue;
+            }
+            LocalDate from = granularity == Granularity.DAY ? day : day.withDayOfMonth(1);
+            LocalDate until = granularity == Granularity.DAY ? from.plusDays(1) : from.plusMonths(1);
+            String name = name(from, granularity);
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + qualified(name) + " PARTITION OF " + qualified(table) + bounds(from, until));
+            partitions.put(from, new Partition(name, from, until, 0));
+            log.debug("Created partition {}", name);
+        }
+    }
+
+    private String partitionQuery() {
+        return "SELECT c.relname, c.reltuples::bigint FROM pg_inherits i "
+                + "JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent "
+                + "JOIN pg_namespace n ON n.oid = p.relnamespace "
+                + "WHERE p.relname = '" + table + "' AND n.nspname = '" + schema + "'";
+    }
+
+    private Partition parsePartition(String name, long estimatedRows) {
+        Matcher matcher = partitionName.matcher(name);
+        if (!matcher.matches()) {
+            return new Partition(name, null, null, estimatedRows);
+        }
+        String suffix = matcher.group(1);
+        LocalDate from = suffix.startsWith("d")
+                ? LocalDate.parse(suffix.substring(1), DAY)
+                : YearMonth.parse(suffix.substring(1), MONTH).atDay(1);
+        return new Partition(name, from, suffix.startsWith("d") ? from.plusDays(1) : from.plusMonths(1), estimatedRows);
+    }
+
+    private String name(LocalDate from, Granularity granularity) {
+        return table + (granularity == Granularity.DAY ? "_d" + from.format(DAY) : "_m" + from.format(MONTH));
+    }
+
+    private static String bounds(LocalDate from, LocalDate until) {
+        return " FOR VALUES FROM ('" + from + "T00:00:00Z') TO ('" + until + "T00:00:00Z')";
+    }
+
+    private String qualified(String name) {
+        return schema + "." + name;
+    }
+
+    /**
+     * The {@code event_at} of a document, {@code null} for {@code -infinity} when it has no valid
+     * {@code eventDate} within years 1 to 9999.
+     */
+    static Instant eventTime(Document document) {
+        if (!(document.getMetadata().get(EVENT_DATE) instanceof String eventDate)) {
+            return null;
+        }
+        Instant eventTime = EventDateBounds.instant(eventDate, false).orElse(null);
+        if (eventTime == null || eventTime.isBefore(MIN_EVENT_TIME) || !eventTime.isBefore(MAX_EVENT_TIME)) {
+            log.warn("Document {} has an invalid eventDate {}, storing it as undated", document.getId(), eventDate);
+            return null;
+        }
+        return eventTime;
+    }
+
+    /**
+     * Whether a row at {@code eventTime} goes to a dated shard rather than the undated partition.
+     */
+    static boolean isDated(Instant eventTime) {
+        return eventTime != null && !LocalDate.ofInstant(eventTime, ZoneOffset.UTC).isBefore(FIRST_DATED_DAY);
+    }
+
+    private Document toDocument(ResultSet rs, double distance) throws SQLException {
+        Map<String, Object> metadata = metadata(rs);
+        metadata.put(DISTANCE, distance);
+        return new Document(rs.getString("id"), rs.getString("content"), metadata);
+    }
+
+    private Document toDocument(ResultSet rs) throws SQLException {
+        return new Document(rs.getString("id"), rs.getString("content"), metadata(rs));
+    }
+
+    private Map<String, Object> metadata(ResultSet rs) throws SQLException {
+        try {
+            return new HashMap<>(objectMapper.readValue(rs.getString("metadata"), METADATA));
+        } catch (JsonProcessingException e) {
+            throw new SQLException("Invalid metadata of document " + rs.getString("id"), e);
+        }
+    }
+
+    private String toJson(Document document) {
+        try {
+            return objectMapper.writeValueAsString(document.getMetadata());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize metadata of document " + document.getId(), e);
+        }
+    }
+
+    private interface SqlWork<T> {
+        T run() throws SQLException;
+    }
+
+    private static <T> T inTransaction(Connection connection, SqlWork<T> work) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            T result = work.run();
+            connection.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.aidemo.service.vectorstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Locale;
+
+/**
+ * Replaces the pgvector store with the {@link PartitionedPgVectorStore} when
+ * {@code aidemo.vectorstore.type} is {@code partitioned}. The {@code partitioned} profile sets it
+ * and leaves out the pgvector auto-configuration, the datasource is still used. Dimensions and
+ * distance type are taken from the pgvector settings.
+ */
+@Configuration
+@ConditionalOnProperty(name = "aidemo.vectorstore.type", havingValue = "partitioned")
+public class PartitionedPgVectorStoreConfiguration {
+
+    @Bean
+    @Primary
+    public PartitionedPgVectorStore partitionedPgVectorStore(
+            JdbcTemplate jdbcTemplate,
+            EmbeddingModel embeddingModel,
+            ObjectMapper objectMapper,
+            @Value("${spring.ai.vectorstore.pgvector.dimensions:1024}") int dimensions,
+            @Value("${spring.ai.vectorstore.pgvector.distance-type:negative_inner_product}") String distanceType,
+            @Value("${spring.ai.vectorstore.pgvector.initialize-schema:true}") boolean initializeSchema,
+            @Value("${aidemo.vectorstore.partitioned.schema:public}") String schema,
+            @Value("${aidemo.vectorstore.partitioned.table:elog_vectors}") String table,
+            @Value("${aidemo.vectorstore.partitioned.granularity:day}") String granularity,
+            @Value("${aidemo.vectorstore.partitioned.iterative-scan:relaxed_order}") String iterativeScan,
+            @Value("${aidemo.vectorstore.quantization.mode:none}") String quantization,
+            @Value("${aidemo.vectorstore.quantization.rescore-factor:4}") int rescoreFactor) {
+        boolean cosine = switch (distanceType.toUpperCase(Locale.ROOT)) {
+            case "NEGATIVE_INNER_PRODUCT" -> false;
+            case "COSINE_DISTANCE" -> true;
+            default -> throw new IllegalStateException("The partitioned vector store does not support distance type " + distanceType);
+        };
+        Quantization mode = Quantization.valueOf(quantization.toUpperCase(Locale.ROOT));
+        if (mode == Quantization.INT8) {
+            throw new IllegalStateException("pgvector has no int8 vector type, use fp16 or binary quantization with the partitioned vector store");
+        }
+        return new PartitionedPgVectorStore(jdbcTemplate, embeddingModel, objectMapper, schema, table, dimensions, cosine,
+                PartitionedPgVectorStore.Granularity.valueOf(granularity.toUpperCase(Locale.ROOT)), iterativeScan,
+                mode, rescoreFactor, initializeSchema);
+    }
+
+    @Bean
+    public PartitionedPgVectorWriter partitionedPgVectorWriter(PartitionedPgVectorStore partitionedPgVectorStore) {
+        return new PartitionedPgVectorWriter(partitionedPgVectorStore);
+    }
+}
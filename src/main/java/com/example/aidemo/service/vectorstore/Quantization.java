@@ -0,0 +1,160 @@
+package com.example.aidemo.service.vectorstore;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encodings of embeddings, from the full-precision floats to a sign bit per component.
+ * <p>
+ * {@code FP16} keeps each component as a half-precision float, {@code INT8} as a byte scaled by
+ * the largest magnitude of its vector, which is stored in front as a float, and {@code BINARY} as
+ * the bit {@code component > 0}, padded to whole longs, scored by Hamming distance as
+ * {@code 1 - 2 * differing bits / dimensions}. Codes are little-endian and read from a buffer at
+ * a given offset. Only {@code NONE} gives exact scores, the others rank candidates that are then
+ * rescored with their full-precision vectors.
+ */
+public enum Quantization {
+    NONE, FP16, INT8, BINARY;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Similarity of a prepared query to encoded vectors, with scratch space for one thread.
+     */
+    interface Scorer {
+        float score(ByteBuffer codes, int offset);
+    }
+
+    int codeBytes(int dimensions) {
+        return switch (this) {
+            case NONE -> dimensions * Float.BYTES;
+            case FP16 -> dimensions * Short.BYTES;
+            case INT8 -> Float.BYTES + dimensions;
+            case BINARY -> words(dimensions) * Long.BYTES;
+        };
+    }
+
+    void encode(float[] vector, ByteBuffer target, int offset) {
+        switch (this) {
+            case NONE -> {
+                for (int i = 0; i < vector.length; i++) {
+                    target.putFloat(offset + i * Float.BYTES, vector[i]);
+                }
+            }
+            case FP16 -> {
+                for (int i = 0; i < vector.length; i++) {
+                    target.putShort(offset + i * Short.BYTES, Float.floatToFloat16(vector[i]));
+                }
+            }
+            case INT8 -> {
+                float max = 0;
+                for (float value : vector) {
+                    max = Math.max(max, Math.abs(value));
+                }
+                float scale = max == 0 ? 0 : max / 127;
+                target.putFloat(offset, scale);
+                for (int i = 0; i < vector.length; i++) {
+                    target.put(offset + Float.BYTES + i, (byte) (scale == 0 ? 0 : Math.round(vector[i] / scale)));
+                }
+            }
+            case BINARY -> {
+                long[] bits = bits(vector);
+                for (int w = 0; w < bits.length; w++) {
+                    target.putLong(offset + w * Long.BYTES, bits[w]);
+                }
+            }
+        }
+    }
+
+    /**
+     * The vector a code stands for; binary codes decode to {@code ±1 / sqrt(dimensions)}.
+     */
+    void decode(ByteBuffer source, int offset, float[] into) {
+        switch (this) {
+            case NONE -> {
+                for (int i = 0; i < into.length; i++) {
+                    into[i] = source.getFloat(offset + i * Float.BYTES);
+                }
+            }
+            case FP16 -> {
+                for (int i = 0; i < into.length; i++) {
+                    into[i] = Float.float16ToFloat(source.getShort(offset + i * Short.BYTES));
+                }
+            }
+            case INT8 -> {
+                float scale = source.getFloat(offset);
+                for (int i = 0; i < into.length; i++) {
+                    into[i] = scale * source.get(offset + Float.BYTES + i);
+                }
+            }
+            case BINARY -> {
+                float unit = (float) (1 / Math.sqrt(into.length));
+                long word = 0;
+                for (int i = 0; i < into.length; i++) {
+                    if ((i & 63) == 0) {
+                        word = source.getLong(offset + (i >>> 6) * Long.BYTES);
+                    }
+                    into[i] = (word >>> (i & 63) & 1) != 0 ? unit : -unit;
+                }
+            }
+        }
+    }
+
+    Scorer scorer(float[] query) {
+        int dimensions = query.length;
+        byte[] scratch = new byte[codeBytes(dimensions)];
+        return switch (this) {
+            case NONE -> {
+                float[] vector = new float[dimensions];
+                yield (codes, offset) -> {
+                    codes.get(offset, scratch);
+                    ByteBuffer.wrap(scratch).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+                    return VectorMath.dot(query, vector);
+                };
+            }
+            case FP16 -> {
+                short[] components = new short[dimensions];
+                yield (codes, offset) -> {
+                    // codes are only read with absolute positions, a view of the whole buffer starts at 0
+                    codes.asShortBuffer().get(offset / Short.BYTES, components);
+                    return VectorMath.dotHalf(query, components);
+                };
+            }
+            case INT8 -> {
+                byte[] components = new byte[dimensions];
+                yield (codes, offset) -> {
+                    float scale = codes.getFloat(offset);
+                    codes.get(offset + Float.BYTES, components);
+                    return scale * VectorMath.dot(query, components);
+                };
+            }
+            case BINARY -> {
+                long[] queryBits = bits(query);
+                yield (codes, offset) -> {
+                    codes.get(offset, scratch);
+                    int differing = 0;
+                    for (int w = 0; w < queryBits.length; w++) {
+                        differing += Long.bitCount((long) LONGS.get(scratch, w * Long.BYTES) ^ queryBits[w]);
+                    }
+                    return 1 - 2f * differing / dimensions;
+                };
+            }
+        };
+    }
+
+    private static long[] bits(float[] vector) {
+        long[] bits = new long[words(vector.length)];
+        for (int i = 0; i < vector.length; i++) {
+            if (vector[i] > 0) {
+                bits[i >>> 6] |= 1L << (i & 63);
+            }
+        }
+        return bits;
+    }
+
+    private static int words(int dimensions) {
+        return (dimensions + 63) / 64;
+    }
+}
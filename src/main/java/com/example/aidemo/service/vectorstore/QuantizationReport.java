@@ -0,0 +1,34 @@
+package com.example.aidemo.service.vectorstore;
+
+import java.util.List;
+
+/**
+ * Recall and size of each {@link Quantization} on a sample of the stored vectors.
+ * <p>
+ * Each of {@code queries} sampled vectors is searched among the other sampled ones, exactly and
+ * on their codes. {@code recall} is the share of the exact {@code topK} found by the codes alone,
+ * {@code rescoredRecall} the share found once the {@code rescoreFactor} times {@code topK} best
+ * candidates by code are ordered by their full-precision score, which is what the stores return.
+ * Both search by brute force, so they measure the loss of the encoding, not of the HNSW graph.
+ * {@code storedBytes} is the size of the codes of every stored vector, what searches read; the
+ * full-precision vectors are kept besides them for rescoring.
+ */
+public record QuantizationReport(
+        String vectorStore,
+        long storedVectors,
+        int sampledVectors,
+        int queries,
+        int topK,
+        int rescoreFactor,
+        double elapsedSeconds,
+        List<ModeReport> modes
+) {
+    public record ModeReport(
+            String quantization,
+            int bytesPerVector,
+            long storedBytes,
+            double compression,
+            double recall,
+            double rescoredRecall
+    ) {}
+}
@@ -0,0 +1,151 @@
+package com.example.aidemo.service.vectorstore;
+
+import com.pgvector.PGvector;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Measures the {@link QuantizationReport} of the configured vector store, on vectors sampled from
+ * the embedded store or from the pgvector table, plain or partitioned.
+ */
+@Component
+public class QuantizationReporter {
+    private final ObjectProvider<EmbeddedVectorStore> embeddedVectorStore;
+    private final ObjectProvider<JdbcTemplate> jdbcTemplate;
+    private final String type;
+    private final String table;
+    private final boolean cosine;
+    private final int rescoreFactor;
+
+    public QuantizationReporter(
+            ObjectProvider<EmbeddedVectorStore> embeddedVectorStore,
+            ObjectProvider<JdbcTemplate> jdbcTemplate,
+            @Value("${aidemo.vectorstore.type:pgvector}") String type,
+            @Value("${spring.ai.vectorstore.pgvector.schema-name:public}") String schema,
+            @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String table,
+            @Value("${aidemo.vectorstore.partitioned.schema:public}") String partitionedSchema,
+            @Value("${aidemo.vectorstore.partitioned.table:elog_vectors}") String partitionedTable,
+            @Value("${spring.ai.vectorstore.pgvector.distance-type:negative_inner_product}") String distanceType,
+            @Value("${aidemo.vectorstore.quantization.rescore-factor:4}") int rescoreFactor) {
+        this.embeddedVectorStore = embeddedVectorStore;
+        this.jdbcTemplate = jdbcTemplate;
+        this.type = type;
+        this.table = "partitioned".equals(type) ? partitionedSchema + "." + partitionedTable : schema + "." + table;
+        this.cosine = "COSINE_DISTANCE".equals(distanceType.toUpperCase(Locale.ROOT));
+        this.rescoreFactor = Math.max(1, rescoreFactor);
+    }
+
+    /**
+     * Samples up to {@code sample} vectors and searches {@code queries} of them for their
+     * {@code topK} nearest neighbours with every quantization.
+     */
+    public QuantizationReport measure(int sample, int queries, int topK) {
+        long start = System.nanoTime();
+        long stored;
+        List<float[]> vectors;
+        EmbeddedVectorStore embedded = embeddedVectorStore.getIfAvailable();
+        if (embedded != null) {
+            stored = embedded.size();
+            vectors = embedded.sample(sample);
+        } else {
+            JdbcTemplate jdbc = jdbcTemplate.getObject();
+            stored = jdbc.queryForObject("SELECT count(*) FROM " + table, Long.class);
+            vectors = jdbc.query("SELECT embedding::text FROM " + table + " ORDER BY random() LIMIT ?",
+                    (rs, n) -> new PGvector(rs.getString(1)).toArray(), sample);
+        }
+        if (cosine) {
+            vectors.replaceAll(QuantizationReporter::normalized);
+        }
+        int count = vectors.size();
+        int queryCount = Math.min(queries, count);
+        int[] queryIndexes = new int[queryCount];
+        List<Set<Integer>> exact = new ArrayList<>(queryCount);
+        for (int q = 0; q < queryCount; q++) {
+            int index = (int) ((long) q * count / queryCount);
+            float[] query = vectors.get(index);
+            queryIndexes[q] = index;
+            exact.add(new HashSet<>(best(count, index, topK, i -> VectorMath.dot(query, vectors.get(i)))));
+        }
+
+        List<QuantizationReport.ModeReport> modes = new ArrayList<>();
+        int dimensions = count == 0 ? 0 : vectors.get(0).length;
+        for (Quantization quantization : Quantization.values()) {
+            int codeBytes = quantization.codeBytes(dimensions);
+            ByteBuffer codes = ByteBuffer.allocate(Math.max(1, count * codeBytes)).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < count; i++) {
+                quantization.encode(vectors.get(i), codes, i * codeBytes);
+            }
+            double found = 0;
+            double rescoredFound = 0;
+            for (int q = 0; q < queryCount; q++) {
+                float[] query = vectors.get(queryIndexes[q]);
+                Quantization.Scorer scorer = quantization.scorer(query);
+                List<Integer> candidates = best(count, queryIndexes[q], topK * rescoreFactor, i -> scorer.score(codes, i * codeBytes));
+                List<Integer> rescored = best(candidates, topK, i -> VectorMath.dot(query, vectors.get(i)));
+                Set<Integer> truth = exact.get(q);
+                found += candidates.subList(0, Math.min(topK, candidates.size())).stream().filter(truth::contains).count()
+                        / (double) Math.max(1, truth.size());
+                rescoredFound += rescored.stream().filter(truth::contains).count() / (double) Math.max(1, truth.size());
+            }
+            modes.add(new QuantizationReport.ModeReport(
+                    quantization.name().toLowerCase(Locale.ROOT),
+                    codeBytes,
+                    stored * codeBytes,
+                    codeBytes == 0 ? 0 : (double) Quantization.NONE.codeBytes(dimensions) / codeBytes,
+                    queryCount == 0 ? 0 : found / queryCount,
+                    queryCount == 0 ? 0 : rescoredFound / queryCount));
+        }
+        return new QuantizationReport(type, stored, count, queryCount, topK, rescoreFactor,
+                (System.nanoTime() - start) / 1e9, modes);
+    }
+
+    /**
+     * Indexes of the {@code k} best scored of {@code 0..count}, without {@code excluded}, best first.
+     */
+    private static List<Integer> best(int count, int excluded, int k, IntToDoubleFunction score) {
+        List<Integer> indexes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (i != excluded) {
+                indexes.add(i);
+            }
+        }
+        return best(indexes, k, score);
+    }
+
+    private static List<Integer> best(List<Integer> indexes, int k, IntToDoubleFunction score) {
+        PriorityQueue<HnswGraph.Scored> best = new PriorityQueue<>(HnswGraph.Scored.WORST_FIRST);
+        for (int index : indexes) {
+            float value = (float) score.applyAsDouble(index);
+            if (best.size() < k) {
+                best.add(new HnswGraph.Scored(index, value));
+            } else if (value > best.peek().score()) {
+                best.poll();
+                best.add(new HnswGraph.Scored(index, value));
+            }
+        }
+        List<HnswGraph.Scored> sorted = new ArrayList<>(best);
+        sorted.sort(HnswGraph.Scored.BEST_FIRST);
+        return sorted.stream().map(HnswGraph.Scored::node).toList();
+    }
+
+    private static float[] normalized(float[] vector) {
+        double norm = Math.sqrt(VectorMath.dot(vector, vector));
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = norm == 0 ? 0 : (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+}
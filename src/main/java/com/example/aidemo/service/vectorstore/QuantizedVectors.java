@@ -0,0 +1,67 @@
+package com.example.aidemo.service.vectorstore;
+
+import java.nio.file.Path;
+
+/**
+ * Quantized copy of the vectors of the embedded store, one {@link Quantization} code per slot
+ * in memory-mapped {@code codes-*.bin} segments, which the HNSW graph is built on and searched
+ * with. Not thread-safe, the owner serializes appends against reads.
+ */
+class QuantizedVectors implements HnswGraph.Vectors, AutoCloseable {
+    private static final int MAGIC = 0x51564543;
+
+    private final Quantization quantization;
+    private final int dimensions;
+    private final MappedRecords codes;
+
+    QuantizedVectors(Path directory, Quantization quantization, int dimensions, int recordsPerSegment) {
+        this.quantization = quantization;
+        this.dimensions = dimensions;
+        this.codes = new MappedRecords(directory, "codes", MAGIC, quantization.codeBytes(dimensions), recordsPerSegment);
+    }
+
+    Quantization quantization() {
+        return quantization;
+    }
+
+    int size() {
+        return codes.size();
+    }
+
+    /**
+     * Encodes the vector of the next slot.
+     */
+    void append(float[] vector) {
+        int slot = codes.append();
+        quantization.encode(vector, codes.segment(slot / codes.recordsPerSegment()), codes.offset(slot));
+    }
+
+    void truncate(int size) {
+        codes.truncate(size);
+    }
+
+    void force() {
+        codes.force();
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public void read(int node, float[] into) {
+        quantization.decode(codes.segment(node / codes.recordsPerSegment()), codes.offset(node), into);
+    }
+
+    @Override
+    public HnswGraph.Scorer scorer(float[] query) {
+        Quantization.Scorer scorer = quantization.scorer(query);
+        return node -> scorer.score(codes.segment(node / codes.recordsPerSegment()), codes.offset(node));
+    }
+
+    @Override
+    public void close() {
+        codes.close();
+    }
+}
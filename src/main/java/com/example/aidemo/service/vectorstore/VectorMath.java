@@ -0,0 +1,150 @@
+package com.example.aidemo.service.vectorstore;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inner product of embeddings, and of an embedding with half-precision or int8 components, with
+ * the JDK Vector API.
+ * <p>
+ * The API is an incubator module, the JVM has to be started with
+ * {@code --add-modules jdk.incubator.vector}; without it a scalar loop is used instead.
+ */
+final class VectorMath {
+    private static final Logger log = LoggerFactory.getLogger(VectorMath.class);
+    private static final boolean SIMD = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    // every half-precision value as a float, a lookup is cheaper than converting
+    private static final float[] HALF_FLOATS = new float[1 << 16];
+
+    static {
+        for (int i = 0; i < HALF_FLOATS.length; i++) {
+            HALF_FLOATS[i] = Float.float16ToFloat((short) i);
+        }
+        if (!SIMD) {
+            log.warn("jdk.incubator.vector is not available, vector scoring falls back to scalar code");
+        }
+    }
+
+    private VectorMath() {
+    }
+
+    static float dot(float[] a, float[] b) {
+        return SIMD ? Simd.dot(a, b) : scalarDot(a, b, 0, 0f);
+    }
+
+    static float dot(float[] a, byte[] b) {
+        return SIMD ? Simd.dot(a, b) : scalarDot(a, b, 0, 0f);
+    }
+
+    /**
+     * Inner product with {@code b} holding half-precision floats.
+     */
+    static float dotHalf(float[] a, short[] b) {
+        return SIMD ? Simd.dotHalf(a, b) : scalarDotHalf(a, b, 0, 0f);
+    }
+
+    static float scalarDot(float[] a, float[] b, int from, float sum) {
+        for (int i = from; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    static float scalarDot(float[] a, byte[] b, int from, float sum) {
+        for (int i = from; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    static float scalarDotHalf(float[] a, short[] b, int from, float sum) {
+        for (int i = from; i < a.length; i++) {
+            sum += a[i] * HALF_FLOATS[b[i] & 0xffff];
+        }
+        return sum;
+    }
+
+    /**
+     * Only loaded when the module is present.
+     */
+    private static final class Simd {
+        private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+        // eight bytes widen to eight floats, a shape every platform with the API supports
+        private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_64;
+        private static final VectorSpecies<Float> WIDENED = FloatVector.SPECIES_256;
+        private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_128;
+        private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_256;
+
+        static float dot(float[] a, float[] b) {
+            int lanes = SPECIES.length();
+            // four independent accumulators keep the FMA units busy instead of waiting on one sum
+            FloatVector sum0 = FloatVector.zero(SPECIES);
+            FloatVector sum1 = sum0;
+            FloatVector sum2 = sum0;
+            FloatVector sum3 = sum0;
+            int i = 0;
+            for (int bound = a.length - a.length % (4 * lanes); i < bound; i += 4 * lanes) {
+                sum0 = FloatVector.fromArray(SPECIES, a, i).fma(FloatVector.fromArray(SPECIES, b, i), sum0);
+                sum1 = FloatVector.fromArray(SPECIES, a, i + lanes).fma(FloatVector.fromArray(SPECIES, b, i + lanes), sum1);
+                sum2 = FloatVector.fromArray(SPECIES, a, i + 2 * lanes).fma(FloatVector.fromArray(SPECIES, b, i + 2 * lanes), sum2);
+                sum3 = FloatVector.fromArray(SPECIES, a, i + 3 * lanes).fma(FloatVector.fromArray(SPECIES, b, i + 3 * lanes), sum3);
+            }
+            for (int bound = SPECIES.loopBound(a.length); i < bound; i += lanes) {
+                sum0 = FloatVector.fromArray(SPECIES, a, i).fma(FloatVector.fromArray(SPECIES, b, i), sum0);
+            }
+            float sum = sum0.add(sum1).add(sum2.add(sum3)).reduceLanes(VectorOperators.ADD);
+            return scalarDot(a, b, i, sum);
+        }
+
+        static float dot(float[] a, byte[] b) {
+            int lanes = WIDENED.length();
+            FloatVector sum0 = FloatVector.zero(WIDENED);
+            FloatVector sum1 = sum0;
+            int i = 0;
+            for (int bound = a.length - a.length % (2 * lanes); i < bound; i += 2 * lanes) {
+                sum0 = FloatVector.fromArray(WIDENED, a, i).fma(widened(b, i), sum0);
+                sum1 = FloatVector.fromArray(WIDENED, a, i + lanes).fma(widened(b, i + lanes), sum1);
+            }
+            float sum = sum0.add(sum1).reduceLanes(VectorOperators.ADD);
+            return scalarDot(a, b, i, sum);
+        }
+
+        private static FloatVector widened(byte[] b, int from) {
+            return (FloatVector) ByteVector.fromArray(BYTES, b, from).convertShape(VectorOperators.B2F, WIDENED, 0);
+        }
+
+        static float dotHalf(float[] a, short[] b) {
+            int lanes = WIDENED.length();
+            FloatVector sum0 = FloatVector.zero(WIDENED);
+            FloatVector sum1 = sum0;
+            int i = 0;
+            for (int bound = a.length - a.length % (2 * lanes); i < bound; i += 2 * lanes) {
+                sum0 = FloatVector.fromArray(WIDENED, a, i).fma(halfToFloat(b, i), sum0);
+                sum1 = FloatVector.fromArray(WIDENED, a, i + lanes).fma(halfToFloat(b, i + lanes), sum1);
+            }
+            float sum = sum0.add(sum1).reduceLanes(VectorOperators.ADD);
+            return scalarDotHalf(a, b, i, sum);
+        }
+
+        /**
+         * Moves sign, exponent and mantissa of eight halves to their float positions and rebiases
+         * the exponent, which is exact for normal values; subnormals and zero are their mantissa
+         * times 2^-24, also exact. No embedding component is infinite.
+         */
+        private static FloatVector halfToFloat(short[] b, int from) {
+            IntVector half = (IntVector) ShortVector.fromArray(SHORTS, b, from).convertShape(VectorOperators.S2I, INTS, 0);
+            IntVector magnitude = half.and(0x7fff);
+            IntVector subnormal = ((FloatVector) magnitude.convert(VectorOperators.I2F, 0)).mul(0x1p-24f).reinterpretAsInts();
+            IntVector bits = magnitude.lanewise(VectorOperators.LSHL, 13).add(0x38000000)
+                    .blend(subnormal, magnitude.compare(VectorOperators.LT, 0x0400))
+                    .or(half.and(0x8000).lanewise(VectorOperators.LSHL, 16));
+            return bits.reinterpretAsFloats();
+        }
+    }
+}
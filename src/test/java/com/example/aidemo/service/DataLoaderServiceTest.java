@@ -0,0 +1,168 @@
+package com.example.aidemo.service;
+
+import com.example.aidemo.service.ingest.ChunkRegistry;
+import com.example.aidemo.service.ingest.IngestionManifest;
+import com.example.aidemo.service.ingest.IngestionPipeline;
+import com.example.aidemo.service.ingest.VectorWriter;
+import com.example.aidemo.service.lexical.LexicalIndex;
+import com.example.aidemo.service.text.TextChunker;
+import com.example.aidemo.service.text.TokenCounter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Loads an eLog export through the ingestion pipeline into an in-memory store, as a reload does
+ * after the export was edited.
+ */
+class DataLoaderServiceTest {
+    private static final EmbeddingModel EMBEDDING_MODEL = new EmbeddingModel() {
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                embeddings.add(new Embedding(new float[]{text.length(), 1}, embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return new float[]{document.getContent().length(), 1};
+        }
+    };
+
+    @TempDir
+    Path stateDir;
+    @TempDir
+    Path dataDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Document> stored = new TreeMap<>();
+    private ChunkRegistry chunkRegistry;
+    private LexicalIndex lexicalIndex;
+    private IngestionPipeline pipeline;
+    private DataLoaderService loader;
+
+    @BeforeEach
+    void setUp() {
+        VectorWriter writer = new VectorWriter() {
+            @Override
+            public void write(List<Document> documents) {
+                documents.forEach(document -> stored.put(document.getId(), document));
+            }
+
+            @Override
+            public void delete(List<String> ids) {
+                ids.forEach(stored::remove);
+            }
+
+            @Override
+            public boolean isEmpty() {
+                return stored.isEmpty();
+            }
+        };
+        chunkRegistry = new ChunkRegistry(stateDir.toString(), "pgvector");
+        lexicalIndex = new LexicalIndex(objectMapper, stateDir.toString(), "pgvector", 20000);
+        pipeline = new IngestionPipeline(EMBEDDING_MODEL, writer, chunkRegistry, lexicalIndex,
+                new IngestionManifest(stateDir.toString(), "pgvector"), event -> {}, new SimpleMeterRegistry(), 16, 16, 1, 8);
+        loader = new DataLoaderService();
+        ReflectionTestUtils.setField(loader, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(loader, "chunkRegistry", chunkRegistry);
+        ReflectionTestUtils.setField(loader, "ingestionPipeline", pipeline);
+        ReflectionTestUtils.setField(loader, "textChunker", new TextChunker(new TokenCounter(), 60, 0, true));
+    }
+
+    @AfterEach
+    void tearDown() {
+        lexicalIndex.close();
+        chunkRegistry.close();
+    }
+
+    @Test
+    void aShorterEntryDropsItsLeftoverChunks() throws IOException {
+        String longText = "The klystron in sector 19 tripped on a vacuum fault during the night shift. ".repeat(20);
+        Path export = export(longText, "Magnet PS-7 was reset.");
+
+        load(export);
+        List<String> chunksBefore = chunksOf("entry-1");
+        assertThat(chunksBefore).hasSizeGreaterThan(2);
+        assertThat(chunksOf("entry-2")).hasSize(1);
+
+        export("The klystron tripped twice.", "Magnet PS-7 was reset.");
+        load(export);
+
+        assertThat(chunksOf("entry-1")).hasSize(1);
+        assertThat(chunksOf("entry-2")).hasSize(1);
+        assertThat(stored).hasSize(2);
+        assertThat(chunkRegistry.size()).isEqualTo(2);
+        assertThat(chunkRegistry.storedAfter("entry-1", 1)).isEmpty();
+        assertThat(lexicalIndex.search("klystron twice", 10, Optional.empty()))
+                .extracting(Document::getId)
+                .containsExactlyElementsOf(chunksOf("entry-1"));
+    }
+
+    @Test
+    void anEntryEditedToFewerChunksAfterARestartDropsThemToo() throws IOException {
+        String longText = "Beam losses in the undulator hall rose after the orbit feedback was disabled. ".repeat(20);
+        Path export = export(longText, "Shift summary.");
+        load(export);
+        int before = chunksOf("entry-1").size();
+        tearDown();
+        setUp();
+
+        export(longText.substring(0, longText.length() / 2), "Shift summary.");
+        load(export);
+
+        assertThat(chunksOf("entry-1")).hasSizeBetween(1, before - 1);
+        assertThat(stored).hasSize(chunksOf("entry-1").size() + 1);
+        assertThat(chunkRegistry.size()).isEqualTo(stored.size());
+    }
+
+    private void load(Path export) {
+        pipeline.run(List.of(export), (file, sink) -> {
+            try (InputStream in = Files.newInputStream(file)) {
+                loader.parseJson(file, in, sink);
+            }
+        }, Integer.MAX_VALUE);
+    }
+
+    private List<String> chunksOf(String entryId) {
+        return stored.values().stream()
+                .filter(document -> entryId.equals(document.getMetadata().get("mongoDbId")))
+                .map(Document::getId)
+                .toList();
+    }
+
+    private Path export(String firstText, String secondText) throws IOException {
+        List<Map<String, Object>> entries = List.of(
+                Map.of("_id", Map.of("$oid", "entry-1"), "title", "Klystron trip", "text", firstText,
+                        "eventAt", Map.of("$date", "2022-01-03T00:06:30.000Z")),
+                Map.of("_id", Map.of("$oid", "entry-2"), "title", "Magnet reset", "text", secondText,
+                        "eventAt", Map.of("$date", "2022-01-03T01:00:00.000Z")));
+        Path export = dataDir.resolve("elogs.entry.2022-01-03.json");
+        objectMapper.writeValue(export.toFile(), entries);
+        return export;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.aidemo.service.classify;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JsonRepairTest {
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource(delimiter = '|', textBlock = """
+            # already valid
+            {"title":"Beam dump","tags":["INFO"]}                 | {"title":"Beam dump","tags":["INFO"]}
+            [{"entry":1},{"entry":2}]                             | [{"entry":1},{"entry":2}]
+            # fences and prose around the document
+            ```json {"title":"A","tags":["INFO"]} ```             | {"title":"A","tags":["INFO"]}
+            Here is the JSON: [{"entry":1}] Hope it helps!        | [{"entry":1}]
+            Sure. {"a":1} and another {"b":2}                     | {"a":1}
+            # typographic quotes, only when there are no straight ones
+            {“title”: “Beam dump”, “tags”: [“INFO”]}              | {"title": "Beam dump", "tags": ["INFO"]}
+            {"title": "the “golden” orbit"}                       | {"title": "the “golden” orbit"}
+            # brackets and escaped quotes inside strings
+            {"title": "sector [3] {old}"}                         | {"title": "sector [3] {old}"}
+            {"title": "say \\"hi\\" }"}                           | {"title": "say \\"hi\\" }"}
+            # trailing commas
+            {"a":1,}                                              | {"a":1}
+            [1, 2, ]                                              | [1, 2]
+            # truncated by the output limit
+            [{"entry":1,"title":"Beam                             | [{"entry":1,"title":"Beam"}]
+            [{"entry":1,"tags":["INFO",                           | [{"entry":1,"tags":["INFO"]}]
+            {"a":{"b":[1                                          | {"a":{"b":[1]}}
+            # stray closers end the document
+            {"a":1]}                                              | {"a":1}
+            [{"entry":1}}]                                        | [{"entry":1}]
+            # no document at all
+            no JSON here                                          | no JSON here
+            """)
+    void repairsAlmostJson(String output, String repaired) {
+        assertThat(JsonRepair.repair(output)).isEqualTo(repaired);
+    }
+
+    @Test
+    void stripsAMultiLineFence() {
+        String output = """
+                ```json
+                [
+                  {"entry": 1, "title": "Vacuum leak", "tags": ["ERROR"]},
+                ]
+                ```
+                """;
+
+        assertThat(JsonRepair.repair(output)).isEqualTo("""
+                [
+                  {"entry": 1, "title": "Vacuum leak", "tags": ["ERROR"]}]""");
+    }
+}
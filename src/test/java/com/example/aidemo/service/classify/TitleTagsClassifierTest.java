@@ -0,0 +1,135 @@
+package com.example.aidemo.service.classify;
+
+import com.example.aidemo.controller.ClassifiedEntryDTO;
+import com.example.aidemo.controller.TitleAndTagsDTO;
+import com.example.aidemo.service.classify.TitleTagsClassifier.PackResult;
+import com.example.aidemo.service.classify.TitleTagsClassifier.PreparedEntry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class TitleTagsClassifierTest {
+    private static final List<PreparedEntry> PACK = List.of(
+            new PreparedEntry("elog-1", "Beam dump at 10:42", 8),
+            new PreparedEntry("elog-2", "Vacuum leak in sector 3", 8),
+            new PreparedEntry("elog-3", "Shift summary", 4));
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private JsonNode json(String text) throws Exception {
+        return objectMapper.readTree(text);
+    }
+
+    private PackResult parse(String output, List<PreparedEntry> pack) {
+        return TitleTagsClassifier.parsePack(objectMapper, output, pack);
+    }
+
+    @Test
+    void validateKeepsTheKnownTagsOnce() throws Exception {
+        TitleAndTagsDTO titleAndTags = TitleTagsClassifier.validate(
+                json("{\"title\": \"  Beam dump \", \"tags\": [\"info\", \"INFO\", \"bogus\", \" error \"]}"));
+
+        assertThat(titleAndTags.title()).isEqualTo("Beam dump");
+        assertThat(titleAndTags.tags()).containsExactly("INFO", "ERROR");
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource(delimiter = '|', textBlock = """
+            ["INFO"]                                    | it is not a JSON object
+            {"tags": ["INFO"]}                          | the "title" is missing
+            {"title": "  ", "tags": ["INFO"]}           | the "title" is missing
+            {"title": "Beam dump"}                      | "tags" must list at least one of
+            {"title": "Beam dump", "tags": ["bogus"]}   | "tags" must list at least one of
+            {"title": "Beam dump", "tags": "INFO"}      | "tags" must list at least one of
+            """)
+    void validateRejects(String answer, String reason) {
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> TitleTagsClassifier.validate(json(answer)))
+                .withMessageStartingWith(reason);
+    }
+
+    @Test
+    void packObjectsAreMatchedByTheirNumber() {
+        PackResult result = parse("""
+                [{"entry": 3, "title": "Shift", "tags": ["INFO"]},
+                 {"entry": 1, "title": "Beam dump", "tags": ["ERROR"]},
+                 {"entry": 2, "title": "Vacuum leak", "tags": ["WARN"]}]
+                """, PACK);
+
+        assertThat(result.classified()).containsExactly(
+                new ClassifiedEntryDTO("elog-3", "Shift", List.of("INFO"), null),
+                new ClassifiedEntryDTO("elog-1", "Beam dump", List.of("ERROR"), null),
+                new ClassifiedEntryDTO("elog-2", "Vacuum leak", List.of("WARN"), null));
+        assertThat(result.invalid()).isEmpty();
+        assertThat(result.reason()).isEmpty();
+    }
+
+    @Test
+    void fencedAndTruncatedPacksKeepTheCompleteObjects() {
+        PackResult result = parse("""
+                Here you go:
+                ```json
+                [{"entry": 1, "title": "Beam dump", "tags": ["ERROR"]},
+                 {"entry": 2, "title": "Vacuum leak", "tags": ["WA""", PACK);
+
+        assertThat(result.classified()).extracting(ClassifiedEntryDTO::id).containsExactly("elog-1");
+        assertThat(result.invalid()).extracting(PreparedEntry::id).containsExactly("elog-2", "elog-3");
+        assertThat(result.reason()).startsWith("\"tags\" must list at least one of");
+    }
+
+    @Test
+    void objectsWithoutANumberAreRejected() {
+        PackResult result = parse("""
+                [{"title": "Beam dump", "tags": ["ERROR"]},
+                 {"entry": 7, "title": "Nowhere", "tags": ["INFO"]},
+                 {"entry": 2, "title": "Vacuum leak", "tags": ["WARN"]},
+                 {"entry": 3, "title": "Shift", "tags": ["INFO"]}]
+                """, PACK);
+
+        assertThat(result.classified()).extracting(ClassifiedEntryDTO::id).containsExactly("elog-2", "elog-3");
+        assertThat(result.invalid()).extracting(PreparedEntry::id).containsExactly("elog-1");
+        assertThat(result.reason()).isEqualTo("every object needs the \"entry\" number it answers");
+    }
+
+    @Test
+    void aSingleEntryNeedsNoNumber() {
+        PackResult result = parse("{“title”: “Beam dump”, “tags”: [“ERROR”]}", PACK.subList(0, 1));
+
+        assertThat(result.classified()).containsExactly(new ClassifiedEntryDTO("elog-1", "Beam dump", List.of("ERROR"), null));
+        assertThat(result.invalid()).isEmpty();
+    }
+
+    @Test
+    void theFirstAnswerOfAnEntryIsKept() {
+        PackResult result = parse("""
+                [{"entry": 1, "title": "Beam dump", "tags": ["ERROR"]},
+                 {"entry": 1, "title": "Again", "tags": ["INFO"]}]
+                """, PACK.subList(0, 1));
+
+        assertThat(result.classified()).extracting(ClassifiedEntryDTO::title).containsExactly("Beam dump");
+    }
+
+    @Test
+    void missingObjectsAreReported() {
+        PackResult result = parse("[{\"entry\": 2, \"title\": \"Vacuum leak\", \"tags\": [\"WARN\"]}]", PACK);
+
+        assertThat(result.invalid()).extracting(PreparedEntry::id).containsExactly("elog-1", "elog-3");
+        assertThat(result.reason()).isEqualTo("it has no object for 2 of the entries");
+    }
+
+    @Test
+    void outputWithoutJsonRetriesTheWholePack() {
+        PackResult result = parse("I cannot classify these entries.", PACK);
+
+        assertThat(result.classified()).isEmpty();
+        assertThat(result.invalid()).isEqualTo(PACK);
+        assertThat(result.reason()).isEqualTo("it is not a JSON array");
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.aidemo.service.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChunkKeyTest {
+
+    @Test
+    void sameChunkAndContentKeepTheirId() {
+        ChunkKey first = ChunkKey.of("elog-1", "0", "beam dump at 10:42");
+        ChunkKey second = ChunkKey.of("elog-1", "0", "beam dump at 10:42");
+
+        assertThat(second).isEqualTo(first);
+        assertThat(second.documentId()).isEqualTo(first.documentId());
+        // ids are persisted in the vector store, they must not change between releases
+        assertThat(first.documentId()).isEqualTo("f94364ad-9da4-338e-a231-600fbfa3bfd1");
+    }
+
+    @Test
+    void changedContentKeepsTheSlotButGetsANewId() {
+        ChunkKey original = ChunkKey.of("elog-1", "0", "beam dump at 10:42");
+        ChunkKey edited = ChunkKey.of("elog-1", "0", "beam dump at 10:43");
+
+        assertThat(edited.keyHash()).isEqualTo(original.keyHash());
+        assertThat(edited.contentHash()).isNotEqualTo(original.contentHash());
+        assertThat(edited.documentId()).isNotEqualTo(original.documentId());
+        assertThat(edited.documentId(original.contentHash())).isEqualTo(original.documentId());
+    }
+
+    @Test
+    void sourceAndChunkAreSeparated() {
+        ChunkKey a = ChunkKey.of("elog-1", "10", "text");
+        ChunkKey b = ChunkKey.of("elog-11", "0", "text");
+
+        assertThat(a.keyHash()).isNotEqualTo(b.keyHash());
+        assertThat(a.documentId()).isNotEqualTo(b.documentId());
+    }
+
+    @Test
+    void keyHashIsNeverZero() {
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(ChunkKey.of("elog-" + i, Integer.toString(i % 7), "").keyHash()).isNotZero();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.aidemo.service.ingest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChunkRegistryTest {
+    @TempDir
+    Path stateDir;
+
+    @Test
+    void committedChunksAreCurrent() {
+        ChunkKey key = ChunkKey.of("elog-1", "0", "first");
+        try (ChunkRegistry registry = open()) {
+            assertThat(registry.isCurrent(key)).isFalse();
+            assertThat(registry.supersededDocumentId(key)).isNull();
+
+            registry.commit(List.of(key));
+
+            assertThat(registry.isCurrent(key)).isTrue();
+            assertThat(registry.supersededDocumentId(key)).isNull();
+            assertThat(registry.size()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void changedContentSupersedesTheStoredId() {
+        ChunkKey original = ChunkKey.of("elog-1", "0", "first");
+        ChunkKey edited = ChunkKey.of("elog-1", "0", "second");
+        try (ChunkRegistry registry = open()) {
+            registry.commit(List.of(original));
+
+            assertThat(registry.isCurrent(edited)).isFalse();
+            assertThat(registry.supersededDocumentId(edited)).isEqualTo(original.documentId());
+        }
+    }
+
+    @Test
+    void removedChunksAreForgottenAlsoAfterReopen() {
+        List<ChunkKey> chunks = List.of(ChunkKey.of("elog-1", "1", "a"), ChunkKey.of("elog-1", "2", "b"),
+                ChunkKey.of("elog-1", "3", "c"), ChunkKey.of("elog-2", "1", "d"));
+        try (ChunkRegistry registry = open()) {
+            registry.commit(chunks);
+
+            List<ChunkKey> leftover = registry.storedAfter("elog-1", 1);
+
+            assertThat(leftover).containsExactly(chunks.get(1), chunks.get(2));
+            assertThat(leftover).extracting(ChunkKey::documentId)
+                    .containsExactly(chunks.get(1).documentId(), chunks.get(2).documentId());
+            registry.commit(List.of(), leftover);
+            assertThat(registry.storedAfter("elog-1", 1)).isEmpty();
+        }
+
+        try (ChunkRegistry registry = open()) {
+            assertThat(registry.size()).isEqualTo(2);
+            assertThat(registry.isCurrent(chunks.get(0))).isTrue();
+            assertThat(registry.isCurrent(chunks.get(1))).isFalse();
+            assertThat(registry.supersededDocumentId(chunks.get(2))).isNull();
+            assertThat(registry.storedAfter("elog-2", 0)).containsExactly(chunks.get(3));
+        }
+    }
+
+    @Test
+    void reopenReplaysTheLogWithLaterRecordsWinning() {
+        ChunkKey a = ChunkKey.of("elog-1", "0", "a");
+        ChunkKey b = ChunkKey.of("elog-2", "0", "b");
+        ChunkKey aEdited = ChunkKey.of("elog-1", "0", "a2");
+        try (ChunkRegistry registry = open()) {
+            registry.commit(List.of(a, b));
+            registry.commit(List.of(aEdited));
+        }
+
+        try (ChunkRegistry registry = open()) {
+            assertThat(registry.size()).isEqualTo(2);
+            assertThat(registry.isCurrent(aEdited)).isTrue();
+            assertThat(registry.isCurrent(a)).isFalse();
+            assertThat(registry.isCurrent(b)).isTrue();
+        }
+    }
+
+    @Test
+    void logIsCompactedOnceTwiceTheLiveChunks() throws IOException {
+        Path file = stateDir.resolve("chunks.bin");
+        List<ChunkKey> latest = new ArrayList<>();
+        try (ChunkRegistry registry = open()) {
+            for (int version = 0; version < 3; version++) {
+                latest.clear();
+                for (int chunk = 0; chunk < 100; chunk++) {
+                    latest.add(ChunkKey.of("elog-" + chunk, "0", "v" + version));
+                }
+                registry.commit(latest);
+            }
+        }
+        assertThat(Files.size(file)).isEqualTo(300L * 16);
+
+        try (ChunkRegistry registry = open()) {
+            assertThat(Files.size(file)).isEqualTo(100L * 16);
+            assertThat(latest).allMatch(registry::isCurrent);
+            registry.commit(List.of(ChunkKey.of("elog-new", "0", "v0")));
+        }
+
+        try (ChunkRegistry registry = open()) {
+            assertThat(registry.size()).isEqualTo(101);
+            assertThat(latest).allMatch(registry::isCurrent);
+            assertThat(Files.exists(stateDir.resolve("chunks.bin.tmp"))).isFalse();
+        }
+    }
+
+    @Test
+    void clearForgetsEveryChunk() {
+        ChunkKey key = ChunkKey.of("elog-1", "0", "first");
+        try (ChunkRegistry registry = open()) {
+            registry.commit(List.of(key));
+            registry.clear();
+
+            assertThat(registry.size()).isZero();
+            assertThat(registry.isCurrent(key)).isFalse();
+        }
+
+        try (ChunkRegistry registry = open()) {
+            assertThat(registry.size()).isZero();
+        }
+    }
+
+    @Test
+    void otherStoresKeepTheirOwnRegistry() {
+        ChunkKey key = ChunkKey.of("elog-1", "0", "first");
+        try (ChunkRegistry registry = open()) {
+            registry.commit(List.of(key));
+        }
+
+        try (ChunkRegistry registry = new ChunkRegistry(stateDir.toString(), "embedded")) {
+            assertThat(registry.isCurrent(key)).isFalse();
+        }
+        assertThat(stateDir.resolve("stores/embedded/chunks.bin")).exists();
+    }
+
+    private ChunkRegistry open() {
+        return new ChunkRegistry(stateDir.toString(), "pgvector");
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.aidemo.service.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LongHashTableTest {
+
+    @Test
+    void missingKeyReturnsDefault() {
+        LongHashTable table = new LongHashTable(0);
+
+        assertThat(table.get(42, -1)).isEqualTo(-1);
+        assertThat(table.size()).isZero();
+    }
+
+    @Test
+    void putOverwritesExistingKey() {
+        LongHashTable table = new LongHashTable(4);
+        table.put(7, 1);
+        table.put(7, 2);
+
+        assertThat(table.get(7, 0)).isEqualTo(2);
+        assertThat(table.size()).isEqualTo(1);
+    }
+
+    @Test
+    void collidingKeysProbeToNextSlots() {
+        LongHashTable table = new LongHashTable(8);
+        // all hash to slot 3 of the 16 slot table, the last one wraps around the end
+        long[] keys = {3, 3 + 16, 3 + 32, 3 + 48, 15, 15 + 16};
+        for (int i = 0; i < keys.length; i++) {
+            table.put(keys[i], i + 100);
+        }
+
+        for (int i = 0; i < keys.length; i++) {
+            assertThat(table.get(keys[i], 0)).isEqualTo(i + 100);
+        }
+        assertThat(table.get(3 + 64, 0)).isZero();
+        assertThat(table.size()).isEqualTo(keys.length);
+    }
+
+    @Test
+    void resizeKeepsEveryEntry() {
+        LongHashTable table = new LongHashTable(1);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 10_000; i++) {
+            long key = random.nextLong();
+            if (key == 0) {
+                continue;
+            }
+            table.put(key, i);
+            expected.put(key, (long) i);
+        }
+
+        assertThat(table.size()).isEqualTo(expected.size());
+        expected.forEach((key, value) -> assertThat(table.get(key, -1)).isEqualTo(value));
+    }
+
+    @Test
+    void removeKeepsTheKeysProbedPastIt() {
+        LongHashTable table = new LongHashTable(8);
+        // a run from slot 15 around the end into slot 0 and 1, with a key of slot 0 inside it
+        long[] keys = {15, 15 + 16, 16, 15 + 32};
+        for (long key : keys) {
+            table.put(key, key * 10);
+        }
+
+        table.remove(15);
+        table.remove(99);
+
+        assertThat(table.get(15, 0)).isZero();
+        assertThat(table.get(15 + 16, 0)).isEqualTo((15 + 16) * 10);
+        assertThat(table.get(16, 0)).isEqualTo(160);
+        assertThat(table.get(15 + 32, 0)).isEqualTo((15 + 32) * 10);
+        assertThat(table.size()).isEqualTo(3);
+    }
+
+    @Test
+    void removeMatchesAMapUnderChurn() {
+        LongHashTable table = new LongHashTable(1);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(2);
+        for (int i = 0; i < 50_000; i++) {
+            // few distinct keys so removals hit present keys and runs are long
+            long key = 1 + random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                table.remove(key);
+                expected.remove(key);
+            } else {
+                table.put(key, i);
+                expected.put(key, (long) i);
+            }
+        }
+
+        assertThat(table.size()).isEqualTo(expected.size());
+        for (long key = 1; key <= 2_000; key++) {
+            assertThat(table.get(key, -1)).isEqualTo(expected.getOrDefault(key, -1L));
+        }
+    }
+
+    @Test
+    void sortedPairsAreOrderedByKey() {
+        LongHashTable table = new LongHashTable(16);
+        TreeMap<Long, Long> expected = new TreeMap<>();
+        for (long key : new long[] {5, -3, 1L << 40, 17, Long.MIN_VALUE, 2}) {
+            table.put(key, key * 10);
+            expected.put(key, key * 10);
+        }
+
+        long[] pairs = table.toSortedPairs();
+
+        assertThat(pairs).hasSize(expected.size() * 2);
+        int i = 0;
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertThat(pairs[i++]).isEqualTo(entry.getKey());
+            assertThat(pairs[i++]).isEqualTo(entry.getValue());
+        }
+    }
+}
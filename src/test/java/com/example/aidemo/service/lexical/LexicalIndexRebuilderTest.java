@@ -0,0 +1,142 @@
+package com.example.aidemo.service.lexical;
+
+import com.example.aidemo.service.ingest.VectorWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LexicalIndexRebuilderTest {
+    @TempDir
+    Path stateDir;
+
+    /**
+     * A store holding {@code count} documents, handed out in batches like the real writers.
+     */
+    private static VectorWriter store(int count) {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            documents.add(new Document("doc-" + i, "entry " + i + " about magnet PS-" + i,
+                    new HashMap<>(Map.of("originId", "elog-" + i))));
+        }
+        return new VectorWriter() {
+            @Override
+            public void write(List<Document> written) {
+            }
+
+            @Override
+            public void delete(List<String> ids) {
+            }
+
+            @Override
+            public boolean isEmpty() {
+                return documents.isEmpty();
+            }
+
+            @Override
+            public void scan(int batchSize, Consumer<List<Document>> action) {
+                for (int from = 0; from < documents.size(); from += batchSize) {
+                    action.accept(documents.subList(from, Math.min(documents.size(), from + batchSize)));
+                }
+            }
+        };
+    }
+
+    private LexicalIndex index() {
+        return new LexicalIndex(new ObjectMapper(), stateDir.toString(), "embedded", 20000);
+    }
+
+    @Test
+    void rebuildIndexesEveryStoredDocument() {
+        try (LexicalIndex index = index()) {
+            LexicalIndexRebuilder rebuilder = new LexicalIndexRebuilder(index, store(2500), true);
+
+            assertThat(rebuilder.rebuild()).isEqualTo(2500);
+            assertThat(index.size()).isEqualTo(2500);
+            assertThat(index.search("PS-1234", 1, Optional.empty()))
+                    .extracting(Document::getId)
+                    .containsExactly("doc-1234");
+        }
+    }
+
+    @Test
+    void rebuildReplacesWhatWasIndexed() {
+        try (LexicalIndex index = index()) {
+            index.add(List.of(new Document("stale", "no longer stored", new HashMap<>())));
+            LexicalIndexRebuilder rebuilder = new LexicalIndexRebuilder(index, store(10), true);
+
+            rebuilder.rebuild();
+            rebuilder.rebuild();
+
+            assertThat(index.size()).isEqualTo(10);
+            assertThat(index.search("stored", 5, Optional.empty())).isEmpty();
+        }
+    }
+
+    @Test
+    void chunksALoadDeletesDuringTheRebuildStayOut() {
+        try (LexicalIndex index = index()) {
+            VectorWriter store = store(2500);
+            VectorWriter loading = new VectorWriter() {
+                @Override
+                public void write(List<Document> written) {
+                }
+
+                @Override
+                public void delete(List<String> ids) {
+                }
+
+                @Override
+                public boolean isEmpty() {
+                    return false;
+                }
+
+                @Override
+                public void scan(int batchSize, Consumer<List<Document>> action) {
+                    store.scan(batchSize, batch -> {
+                        // a load supersedes doc-1500 after the scan read it, and writes its new version
+                        if (batch.stream().anyMatch(document -> document.getId().equals("doc-1500"))) {
+                            index.delete(List.of("doc-1500"));
+                            index.add(List.of(new Document("doc-1500-v2", "entry 1500 about magnet PS-1500 again",
+                                    new HashMap<>(Map.of("originId", "elog-1500")))));
+                        }
+                        action.accept(batch);
+                    });
+                }
+            };
+
+            new LexicalIndexRebuilder(index, loading, true).rebuild();
+
+            assertThat(index.size()).isEqualTo(2500);
+            assertThat(index.search("PS-1500", 5, Optional.empty()))
+                    .extracting(Document::getId)
+                    .startsWith("doc-1500-v2")
+                    .doesNotContain("doc-1500");
+            // deletes after the rebuild are not remembered
+            index.delete(List.of("doc-7"));
+            index.add(List.of(new Document("doc-7", "entry 7 about magnet PS-7", new HashMap<>())));
+            assertThat(index.search("PS-7", 1, Optional.empty())).extracting(Document::getId).containsExactly("doc-7");
+        }
+    }
+
+    @Test
+    void startupLeavesAFilledIndexAlone() {
+        try (LexicalIndex index = index()) {
+            index.add(List.of(new Document("kept", "already indexed", new HashMap<>())));
+
+            new LexicalIndexRebuilder(index, store(10), true).rebuildIfEmpty();
+
+            assertThat(index.size()).isEqualTo(1);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.aidemo.service.lexical;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LexicalIndexTest {
+    @TempDir
+    Path stateDir;
+
+    private LexicalIndex index() {
+        return new LexicalIndex(new ObjectMapper(), stateDir.toString(), "embedded", 20000);
+    }
+
+    private static List<Document> chunks(int from, int until, String text) {
+        return IntStream.range(from, until)
+                .mapToObj(i -> new Document("doc-" + i, text + " in sector " + i, new HashMap<>(Map.of("originId", "elog-" + i))))
+                .toList();
+    }
+
+    private static List<String> ids(int from, int until) {
+        return IntStream.range(from, until).mapToObj(i -> "doc-" + i).toList();
+    }
+
+    @Test
+    void searchRanksTheChunksMatchingMoreTerms() {
+        try (LexicalIndex index = index()) {
+            index.add(chunks(0, 100, "magnet reset"));
+            index.add(List.of(new Document("trip", "klystron trip after a magnet reset", new HashMap<>())));
+
+            assertThat(index.search("klystron magnet", 3, Optional.empty()))
+                    .extracting(Document::getId)
+                    .startsWith("trip")
+                    .hasSize(3);
+            assertThat(index.search("elog-42", 1, Optional.empty()))
+                    .extracting(Document::getId)
+                    .containsExactly("doc-42");
+        }
+    }
+
+    @Test
+    void replacedChunksAreNotReturned() {
+        try (LexicalIndex index = index()) {
+            index.add(chunks(0, 10, "vacuum leak"));
+            index.add(chunks(0, 5, "beam dump"));
+
+            assertThat(index.search("vacuum", 10, Optional.empty()))
+                    .extracting(Document::getId)
+                    .containsExactlyInAnyOrderElementsOf(ids(5, 10));
+        }
+    }
+
+    @Test
+    void deletingMostChunksCompactsTheLog() throws Exception {
+        Path log = stateDir.resolve("stores/embedded/lexical/documents.log");
+        try (LexicalIndex index = index()) {
+            index.add(chunks(0, 1500, "vacuum leak"));
+            index.add(List.of(new Document("kept", "another vacuum reading", new HashMap<>())));
+            long written = Files.size(log);
+
+            index.delete(ids(0, 1200));
+
+            assertThat(index.size()).isEqualTo(301);
+            assertThat(Files.size(log)).isLessThan(written / 2);
+            // the deleted chunks no longer count in the frequency of "vacuum"
+            assertThat(index.search("vacuum", 1000, Optional.empty())).hasSize(301);
+            assertThat(index.search("sector 1250", 1, Optional.empty()))
+                    .extracting(Document::getId)
+                    .containsExactly("doc-1250");
+        }
+        try (LexicalIndex index = index()) {
+            assertThat(index.size()).isEqualTo(301);
+            assertThat(index.search("elog-1499", 1, Optional.empty()))
+                    .extracting(Document::getId)
+                    .containsExactly("doc-1499");
+            assertThat(index.search("elog-5", 10, Optional.empty()))
+                    .extracting(Document::getId)
+                    .doesNotContain("doc-5");
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.aidemo.service.rag;
+
+import com.example.aidemo.service.rag.TemporalExpressionRecognizer.Outcome;
+import com.example.aidemo.service.rag.TemporalExpressionRecognizer.Recognition;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TemporalExpressionRecognizerTest {
+    // a Thursday
+    private static final LocalDate TODAY = LocalDate.of(2024, 11, 14);
+
+    private final TemporalExpressionRecognizer recognizer = new TemporalExpressionRecognizer();
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource(delimiter = '|', textBlock = """
+            # explicit dates
+            what happened on 2024-11-12          | RANGE     | 2024-11-12 | 2024-11-13
+            errors on 2024/3/5                   | RANGE     | 2024-03-05 | 2024-03-06
+            faults on 11/12/2024                 | RANGE     | 2024-11-12 | 2024-11-13
+            faults on 11/12/24                   | RANGE     | 2024-11-12 | 2024-11-13
+            what failed on Jan 3, 2022           | RANGE     | 2022-01-03 | 2022-01-04
+            what failed on jan. 3rd 2022         | RANGE     | 2022-01-03 | 2022-01-04
+            what failed on the 3rd of january, 2022 | RANGE  | 2022-01-03 | 2022-01-04
+            # days and months without a year are the latest ones not after today
+            faults on nov 2                      | RANGE     | 2024-11-02 | 2024-11-03
+            faults on dec 2                      | RANGE     | 2023-12-02 | 2023-12-03
+            faults in march 2023                 | RANGE     | 2023-03-01 | 2023-04-01
+            faults in march                      | RANGE     | 2024-03-01 | 2024-04-01
+            faults in december                   | RANGE     | 2023-12-01 | 2024-01-01
+            beam losses in 2023                  | RANGE     | 2023-01-01 | 2024-01-01
+            # relative days and periods
+            vacuum alarms today                  | RANGE     | 2024-11-14 | 2024-11-15
+            vacuum alarms yesterday              | RANGE     | 2024-11-13 | 2024-11-14
+            vacuum alarms this week              | RANGE     | 2024-11-11 | 2024-11-15
+            vacuum alarms last week              | RANGE     | 2024-11-04 | 2024-11-11
+            vacuum alarms this month             | RANGE     | 2024-11-01 | 2024-11-15
+            vacuum alarms last month             | RANGE     | 2024-10-01 | 2024-11-01
+            vacuum alarms this year              | RANGE     | 2024-01-01 | 2024-11-15
+            vacuum alarms last year              | RANGE     | 2023-01-01 | 2024-01-01
+            vacuum alarms in the past 3 days     | RANGE     | 2024-11-12 | 2024-11-15
+            vacuum alarms in the last 2 weeks    | RANGE     | 2024-10-31 | 2024-11-15
+            vacuum alarms in the past 1 month    | RANGE     | 2024-10-14 | 2024-11-15
+            # open ranges
+            klystron trips since 2024-11-01      | RANGE     | 2024-11-01 |
+            klystron trips after 2024-11-01      | RANGE     | 2024-11-02 |
+            klystron trips from nov 1            | RANGE     | 2024-11-01 |
+            klystron trips before 2024-11-01     | RANGE     |            | 2024-11-01
+            klystron trips prior to 2024-11-01   | RANGE     |            | 2024-11-01
+            klystron trips until 2024-11-01      | RANGE     |            | 2024-11-02
+            klystron trips up to last week       | RANGE     |            | 2024-11-11
+            # closed ranges
+            between 2024-11-01 and 2024-11-03    | RANGE     | 2024-11-01 | 2024-11-04
+            from 2024-11-01 to 2024-11-03        | RANGE     | 2024-11-01 | 2024-11-04
+            2024-11-01 through 2024-11-03        | RANGE     | 2024-11-01 | 2024-11-04
+            between jan 3 and jan 5, 2022        | RANGE     | 2022-01-03 | 2022-01-06
+            between dec 28 and jan 3, 2022       | RANGE     | 2021-12-28 | 2022-01-04
+            between jan 3, 2022 and jan 5        | RANGE     | 2022-01-03 | 2022-01-06
+            between dec 28, 2021 and jan 3       | RANGE     | 2021-12-28 | 2022-01-04
+            between march and june 2022          | RANGE     | 2022-03-01 | 2022-07-01
+            between oct 30 and nov 2             | RANGE     | 2024-10-30 | 2024-11-03
+            between 2020 and 2022                | RANGE     | 2020-01-01 | 2023-01-01
+            from march to june                   | RANGE     | 2024-03-01 | 2024-07-01
+            since 2021 through 2022              | RANGE     | 2021-01-01 | 2023-01-01
+            # left to the model
+            2024-11-01 and 2024-11-03            | AMBIGUOUS |            |
+            from 2024-11-03 to 2024-11-01        | AMBIGUOUS |            |
+            on 2024-11-01, 2024-11-02 and 2024-11-03 | AMBIGUOUS |        |
+            what happened on 02/30/2024          | AMBIGUOUS |            |
+            recent beam dumps                    | AMBIGUOUS |            |
+            what happened two days ago           | AMBIGUOUS |            |
+            # bare months and years only after a preposition or as the end of a range
+            the valve closed and may fail        | AMBIGUOUS |            |
+            why did it trip after the ramp to 2000 A | AMBIGUOUS |        |
+            the ramp to 2000 A tripped the klystron | AMBIGUOUS |         |
+            2020 and 2022 runs                   | AMBIGUOUS |            |
+            # no temporal wording
+            what is the beam energy              | NONE      |            |
+            may we see the klystron logs         | NONE      |            |
+            a buffer of 2048 entries             | NONE      |            |
+            the end of may is near               | NONE      |            |
+            """)
+    void recognizes(String text, Outcome outcome, LocalDate from, LocalDate until) {
+        assertThat(recognizer.recognize(text, TODAY)).isEqualTo(new Recognition(outcome, from, until));
+    }
+
+    @Test
+    void formatsRangesAsEventDateFilters() {
+        Recognition closed = new Recognition(Outcome.RANGE, LocalDate.of(2024, 11, 1), LocalDate.of(2024, 11, 4));
+        Recognition open = new Recognition(Outcome.RANGE, null, LocalDate.of(2024, 11, 1));
+
+        assertThat(TemporalExpressionRecognizer.toFilterExpression(closed))
+                .isEqualTo("eventDate >= \"2024-11-01\" && eventDate < \"2024-11-04\"");
+        assertThat(TemporalExpressionRecognizer.toFilterExpression(open)).isEqualTo("eventDate < \"2024-11-01\"");
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.aidemo.service.vectorstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DocumentLogTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void putsAreReadBack() {
+        try (DocumentLog log = open()) {
+            log.put(0, "a", Map.of("eventDate", "2024-11-14T10:00:00"), "beam dump");
+            log.put(1, "b", Map.of(), "vacuum fault ü");
+
+            assertThat(log.slots()).isEqualTo(2);
+            assertThat(log.liveCount()).isEqualTo(2);
+            assertThat(log.slotOf("b")).isEqualTo(1);
+            assertThat(log.id(0)).isEqualTo("a");
+            assertThat(log.metadata(0)).containsEntry("eventDate", "2024-11-14T10:00:00");
+            assertThat(log.content(1)).isEqualTo("vacuum fault ü");
+        }
+    }
+
+    @Test
+    void putOfAnExistingIdSupersedesItsSlot() {
+        try (DocumentLog log = open()) {
+            log.put(0, "a", Map.of(), "first");
+            log.put(1, "a", Map.of(), "second");
+
+            assertThat(log.isLive(0)).isFalse();
+            assertThat(log.isLive(1)).isTrue();
+            assertThat(log.slotOf("a")).isEqualTo(1);
+            assertThat(log.liveCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void deleteClearsTheSlot() {
+        try (DocumentLog log = open()) {
+            log.put(0, "a", Map.of(), "first");
+
+            assertThat(log.delete("a")).isTrue();
+            assertThat(log.delete("a")).isFalse();
+            assertThat(log.isLive(0)).isFalse();
+            assertThat(log.slotOf("a")).isNull();
+        }
+    }
+
+    @Test
+    void reopenReplaysPutsAndDeletes() {
+        try (DocumentLog log = open()) {
+            log.put(0, "a", Map.of("n", 1), "first");
+            log.put(1, "b", Map.of("n", 2), "second");
+            log.put(2, "a", Map.of("n", 3), "third");
+            log.delete("b");
+        }
+
+        try (DocumentLog log = open()) {
+            assertThat(log.slots()).isEqualTo(3);
+            assertThat(log.live().stream().toArray()).containsExactly(2);
+            assertThat(log.slotOf("a")).isEqualTo(2);
+            assertThat(log.metadata(2)).containsEntry("n", 3);
+            assertThat(log.content(2)).isEqualTo("third");
+            // content is read back by offset, older slots stay readable
+            assertThat(log.content(1)).isEqualTo("second");
+        }
+    }
+
+    @Test
+    void recordCutShortByACrashIsDropped() throws IOException {
+        Path file = directory.resolve("documents.log");
+        try (DocumentLog log = open()) {
+            log.put(0, "a", Map.of(), "first");
+            log.put(1, "b", Map.of(), "second");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        long torn = Files.size(file);
+
+        try (DocumentLog log = open()) {
+            assertThat(log.slots()).isEqualTo(1);
+            assertThat(log.content(0)).isEqualTo("first");
+            assertThat(Files.size(file)).isLessThan(torn);
+
+            log.put(1, "c", Map.of(), "third");
+        }
+        try (DocumentLog log = open()) {
+            assertThat(log.slotOf("c")).isEqualTo(1);
+            assertThat(log.content(1)).isEqualTo("third");
+        }
+    }
+
+    @Test
+    void clearDeletesEveryRecord() {
+        try (DocumentLog log = open()) {
+            log.put(0, "a", Map.of(), "first");
+            log.clear();
+
+            assertThat(log.slots()).isZero();
+            assertThat(log.slotOf("a")).isNull();
+            log.put(0, "b", Map.of(), "second");
+        }
+        try (DocumentLog log = open()) {
+            assertThat(log.slots()).isEqualTo(1);
+            assertThat(log.id(0)).isEqualTo("b");
+        }
+    }
+
+    private DocumentLog open() {
+        return new DocumentLog(directory.resolve("documents.log"), objectMapper);
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.aidemo.service.vectorstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmbeddedVectorStoreTest {
+    private static final int DIMENSIONS = 8;
+
+    /**
+     * Embeds a text as a random vector seeded by it, so a stored text is the best match of itself.
+     */
+    private static final EmbeddingModel EMBEDDING_MODEL = new EmbeddingModel() {
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                embeddings.add(new Embedding(vector(text), embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return vector(document.getContent());
+        }
+    };
+
+    @TempDir
+    Path root;
+
+    private static float[] vector(String text) {
+        Random random = new Random(text.hashCode());
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private EmbeddedVectorStore open(Quantization quantization, double compactRatio) {
+        return new EmbeddedVectorStore(EMBEDDING_MODEL, new ObjectMapper(), root.resolve("vectors"), DIMENSIONS,
+                true, 8, 50, 50, 0, quantization, 4, compactRatio);
+    }
+
+    private static List<Document> documents(int from, int until, String version) {
+        return IntStream.range(from, until)
+                .mapToObj(i -> new Document("doc-" + i, "entry " + i + " " + version, new HashMap<>(Map.of("originId", "elog-" + i))))
+                .toList();
+    }
+
+    private static String bestMatch(EmbeddedVectorStore store, String text) {
+        List<Document> found = store.similaritySearch(SearchRequest.query(text).withTopK(1).withSimilarityThresholdAll());
+        return found.isEmpty() ? null : found.get(0).getId();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = Quantization.class, names = {"NONE", "INT8"})
+    void compactKeepsTheLiveDocuments(Quantization quantization) {
+        try (EmbeddedVectorStore store = open(quantization, 0)) {
+            store.add(documents(0, 50, "v1"));
+            store.add(documents(0, 20, "v2"));
+            store.delete(List.of("doc-40", "doc-41", "doc-42"));
+
+            assertThat(store.compact()).isEqualTo(23);
+            assertThat(store.compact()).isZero();
+
+            assertThat(store.size()).isEqualTo(47);
+            assertThat(bestMatch(store, "entry 7 v2")).isEqualTo("doc-7");
+            assertThat(bestMatch(store, "entry 30 v1")).isEqualTo("doc-30");
+            List<Document> scanned = new ArrayList<>();
+            store.scan(100, scanned::addAll);
+            assertThat(scanned).extracting(Document::getContent).contains("entry 7 v2", "entry 30 v1")
+                    .doesNotContain("entry 7 v1", "entry 40 v1");
+
+            store.add(documents(50, 51, "v1"));
+            assertThat(bestMatch(store, "entry 50 v1")).isEqualTo("doc-50");
+        }
+        try (EmbeddedVectorStore store = open(quantization, 0)) {
+            assertThat(store.size()).isEqualTo(48);
+            assertThat(store.compact()).isZero();
+            assertThat(bestMatch(store, "entry 19 v2")).isEqualTo("doc-19");
+        }
+        assertThat(root.resolve("vectors.compacting")).doesNotExist();
+        assertThat(root.resolve("vectors.replaced")).doesNotExist();
+    }
+
+    @Test
+    void deletingPastTheRatioCompacts() {
+        try (EmbeddedVectorStore store = open(Quantization.NONE, 1.0)) {
+            store.add(documents(0, 1600, "v1"));
+            store.delete(documents(0, 1000, "v1").stream().map(Document::getId).toList());
+            store.delete(documents(1000, 1100, "v1").stream().map(Document::getId).toList());
+            assertThat(store.compact()).isZero();
+
+            assertThat(store.size()).isEqualTo(500);
+            assertThat(bestMatch(store, "entry 1500 v1")).isEqualTo("doc-1500");
+        }
+    }
+
+    @Test
+    void aCompactionStoppedAfterMovingTheOldFilesIsFinishedOnOpen() throws Exception {
+        try (EmbeddedVectorStore store = open(Quantization.NONE, 0)) {
+            store.add(documents(0, 10, "v1"));
+        }
+        // the copy was complete and the old files moved away, the copy not yet in place
+        Files.move(root.resolve("vectors"), root.resolve("vectors.compacting"));
+        Files.createDirectories(root.resolve("vectors.replaced"));
+
+        try (EmbeddedVectorStore store = open(Quantization.NONE, 0)) {
+            assertThat(store.size()).isEqualTo(10);
+        }
+        assertThat(root.resolve("vectors.replaced")).doesNotExist();
+    }
+
+    @Test
+    void aCompactionStoppedWhileCopyingIsDropped() throws Exception {
+        try (EmbeddedVectorStore store = open(Quantization.NONE, 0)) {
+            store.add(documents(0, 10, "v1"));
+        }
+        Files.createDirectories(root.resolve("vectors.compacting"));
+
+        try (EmbeddedVectorStore store = open(Quantization.NONE, 0)) {
+            assertThat(store.size()).isEqualTo(10);
+        }
+        assertThat(root.resolve("vectors.compacting")).doesNotExist();
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.aidemo.service.vectorstore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HnswGraphTest {
+    private static final int DIMENSIONS = 32;
+    private static final int NODES = 2000;
+    private static final int K = 10;
+
+    @TempDir
+    Path directory;
+
+    private final float[][] points = clustered(NODES, new Random(3));
+    private final HnswGraph.Vectors vectors = new HnswGraph.Vectors() {
+        @Override
+        public int dimensions() {
+            return DIMENSIONS;
+        }
+
+        @Override
+        public void read(int node, float[] into) {
+            System.arraycopy(points[node], 0, into, 0, DIMENSIONS);
+        }
+
+        @Override
+        public HnswGraph.Scorer scorer(float[] query) {
+            return node -> VectorMath.dot(query, points[node]);
+        }
+    };
+
+    @Test
+    void searchFindsMostExactNeighbours() {
+        try (HnswGraph graph = build()) {
+            assertThat(recall(graph, n -> true)).isGreaterThanOrEqualTo(0.95);
+        }
+    }
+
+    @Test
+    void searchReturnsOnlyAcceptedNodesBestFirst() {
+        try (HnswGraph graph = build()) {
+            List<HnswGraph.Scored> found = graph.search(points[11], K, 50, n -> n % 3 == 0);
+
+            assertThat(found).hasSize(K);
+            assertThat(found).allMatch(scored -> scored.node() % 3 == 0);
+            assertThat(found).isSortedAccordingTo(HnswGraph.Scored.BEST_FIRST);
+        }
+    }
+
+    @Test
+    void savedGraphIsReopenedWithTheSameResults() {
+        List<List<HnswGraph.Scored>> before = new ArrayList<>();
+        try (HnswGraph graph = build()) {
+            graph.save();
+            for (int q = 0; q < 20; q++) {
+                before.add(graph.search(points[q * 37], K, 50, n -> true));
+            }
+        }
+
+        try (HnswGraph graph = new HnswGraph(directory, vectors, NODES, 8, 64, 512)) {
+            assertThat(graph.size()).isEqualTo(NODES);
+            for (int q = 0; q < 20; q++) {
+                assertThat(graph.search(points[q * 37], K, 50, n -> true)).isEqualTo(before.get(q));
+            }
+        }
+    }
+
+    @Test
+    void nodesInsertedAfterTheLastSaveAreDropped() {
+        // never closed, as when the application is killed
+        HnswGraph crashed = new HnswGraph(directory, vectors, NODES, 8, 64, 512);
+        for (int node = 0; node < 150; node++) {
+            crashed.insert(node);
+            if (node == 99) {
+                crashed.save();
+            }
+        }
+
+        try (HnswGraph graph = new HnswGraph(directory, vectors, NODES, 8, 64, 512)) {
+            assertThat(graph.size()).isEqualTo(100);
+            graph.insert(100);
+            assertThat(graph.search(points[100], 1, 10, n -> true).get(0).node()).isEqualTo(100);
+        }
+    }
+
+    @Test
+    void graphWithMoreNodesThanVectorsIsRebuilt() {
+        try (HnswGraph graph = new HnswGraph(directory, vectors, NODES, 8, 64, 512)) {
+            for (int node = 0; node < 150; node++) {
+                graph.insert(node);
+            }
+        }
+
+        try (HnswGraph graph = new HnswGraph(directory, vectors, 100, 8, 64, 512)) {
+            assertThat(graph.size()).isZero();
+            assertThat(graph.search(points[0], K, 50, n -> true)).isEmpty();
+        }
+    }
+
+    private HnswGraph build() {
+        HnswGraph graph = new HnswGraph(directory, vectors, NODES, 8, 64, 512);
+        for (int node = 0; node < NODES; node++) {
+            graph.insert(node);
+        }
+        return graph;
+    }
+
+    private double recall(HnswGraph graph, IntPredicate accept) {
+        Random random = new Random(5);
+        double found = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = points[random.nextInt(NODES)].clone();
+            query[0] += 0.01f;
+            Set<Integer> exact = exact(query);
+            found += graph.search(query, K, 50, accept).stream().filter(s -> exact.contains(s.node())).count();
+        }
+        return found / (queries * K);
+    }
+
+    private Set<Integer> exact(float[] query) {
+        List<HnswGraph.Scored> all = new ArrayList<>(NODES);
+        for (int node = 0; node < NODES; node++) {
+            all.add(new HnswGraph.Scored(node, VectorMath.dot(query, points[node])));
+        }
+        all.sort(HnswGraph.Scored.BEST_FIRST);
+        Set<Integer> best = new HashSet<>();
+        all.subList(0, K).forEach(scored -> best.add(scored.node()));
+        return best;
+    }
+
+    /**
+     * Unit vectors around a few centres, like embeddings of related texts.
+     */
+    private static float[][] clustered(int count, Random random) {
+        float[][] centres = new float[20][];
+        for (int c = 0; c < centres.length; c++) {
+            centres[c] = gaussian(random, 1);
+        }
+        float[][] points = new float[count][];
+        for (int i = 0; i < count; i++) {
+            float[] noise = gaussian(random, 0.4f);
+            float[] centre = centres[random.nextInt(centres.length)];
+            for (int d = 0; d < DIMENSIONS; d++) {
+                noise[d] += centre[d];
+            }
+            points[i] = normalized(noise);
+        }
+        return points;
+    }
+
+    private static float[] gaussian(Random random, float scale) {
+        float[] vector = new float[DIMENSIONS];
+        for (int d = 0; d < DIMENSIONS; d++) {
+            vector[d] = (float) random.nextGaussian() * scale;
+        }
+        return vector;
+    }
+
+    private static float[] normalized(float[] vector) {
+        float norm = (float) Math.sqrt(VectorMath.dot(vector, vector));
+        for (int d = 0; d < DIMENSIONS; d++) {
+            vector[d] /= norm;
+        }
+        return vector;
+    }
+}
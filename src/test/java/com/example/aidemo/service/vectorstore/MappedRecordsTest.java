@@ -0,0 +1,98 @@
+package com.example.aidemo.service.vectorstore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MappedRecordsTest {
+    private static final int MAGIC = 0x54455354;
+    private static final int RECORD_BYTES = 12;
+    private static final int RECORDS_PER_SEGMENT = 4;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendsSpanSegments() {
+        try (MappedRecords records = open()) {
+            for (int i = 0; i < 10; i++) {
+                assertThat(records.append()).isEqualTo(i);
+                write(records, i);
+            }
+
+            assertThat(records.size()).isEqualTo(10);
+            assertThat(records.segmentCount()).isEqualTo(3);
+            assertThat(records.offset(5)).isEqualTo(MappedRecords.HEADER_BYTES + RECORD_BYTES);
+            for (int i = 0; i < 10; i++) {
+                assertThat(read(records, i)).isEqualTo(i * 31L);
+            }
+        }
+        assertThat(directory.resolve("test-00002.bin")).exists();
+    }
+
+    @Test
+    void reopenKeepsSizeAndContent() {
+        try (MappedRecords records = open()) {
+            for (int i = 0; i < 6; i++) {
+                write(records, records.append());
+            }
+        }
+
+        try (MappedRecords records = open()) {
+            assertThat(records.size()).isEqualTo(6);
+            assertThat(records.segmentCount()).isEqualTo(2);
+            for (int i = 0; i < 6; i++) {
+                assertThat(read(records, i)).isEqualTo(i * 31L);
+            }
+            assertThat(records.append()).isEqualTo(6);
+        }
+    }
+
+    @Test
+    void truncateDropsRecordsAndAppendZeroesThem() {
+        try (MappedRecords records = open()) {
+            for (int i = 0; i < 7; i++) {
+                write(records, records.append());
+            }
+            records.truncate(3);
+            assertThat(records.size()).isEqualTo(3);
+
+            assertThat(records.append()).isEqualTo(3);
+            assertThat(read(records, 3)).isZero();
+        }
+
+        try (MappedRecords records = open()) {
+            assertThat(records.size()).isEqualTo(4);
+        }
+    }
+
+    @Test
+    void otherLayoutIsRejected() {
+        try (MappedRecords records = open()) {
+            records.append();
+        }
+
+        assertThatThrownBy(() -> new MappedRecords(directory, "test", MAGIC, RECORD_BYTES + 4, RECORDS_PER_SEGMENT))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("another layout");
+    }
+
+    private MappedRecords open() {
+        return new MappedRecords(directory, "test", MAGIC, RECORD_BYTES, RECORDS_PER_SEGMENT);
+    }
+
+    private static void write(MappedRecords records, int record) {
+        MappedByteBuffer segment = records.segment(record / records.recordsPerSegment());
+        segment.putLong(records.offset(record), record * 31L);
+        segment.putInt(records.offset(record) + Long.BYTES, record);
+    }
+
+    private static long read(MappedRecords records, int record) {
+        return records.segment(record / records.recordsPerSegment()).getLong(records.offset(record));
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.aidemo.service.vectorstore;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.ai.document.Document;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PartitionedPgVectorStoreTest {
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource(delimiter = '|', textBlock = """
+            # dated shards from 1970 on
+            2024-11-14                  | 2024-11-14T00:00:00Z | true
+            2024-11-14T08:30:00Z        | 2024-11-14T08:30:00Z | true
+            1970-01-01T00:00:00Z        | 1970-01-01T00:00:00Z | true
+            # before 1970 in the undated partition, which covers those times
+            1969-12-31T23:59:59Z        | 1969-12-31T23:59:59Z | false
+            0001-01-01                  | 0001-01-01T00:00:00Z | false
+            # stored at -infinity
+            not a date                  |                      | false
+            2024-02-30                  |                      | false
+            +10000-01-01T00:00:00Z      |                      | false
+            -0001-12-31T00:00:00Z       |                      | false
+            """)
+    void routesEventDates(String eventDate, Instant eventTime, boolean dated) {
+        Document document = new Document("doc", "content", new HashMap<>(Map.of("eventDate", eventDate)));
+
+        assertThat(PartitionedPgVectorStore.eventTime(document)).isEqualTo(eventTime);
+        assertThat(PartitionedPgVectorStore.isDated(PartitionedPgVectorStore.eventTime(document))).isEqualTo(dated);
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.aidemo.service.vectorstore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Codes are written to consecutive slots of one buffer, as the stores do, and slot 1 is read
+ * back, so each code is checked to stay within its own bytes.
+ */
+class QuantizationTest {
+    private static final int SLOTS = 3;
+
+    private final Random random = new Random(11);
+
+    @ParameterizedTest(name = "{0}, {1} dimensions")
+    @CsvSource(delimiter = '|', textBlock = """
+            NONE   | 1
+            NONE   | 384
+            FP16   | 1
+            FP16   | 100
+            FP16   | 384
+            INT8   | 1
+            INT8   | 100
+            INT8   | 384
+            BINARY | 1
+            BINARY | 100
+            BINARY | 384
+            """)
+    void decodesWhatWasEncoded(Quantization quantization, int dimensions) {
+        float[][] vectors = randomUnitVectors(SLOTS, dimensions);
+        ByteBuffer codes = encode(quantization, vectors);
+
+        float[] decoded = new float[dimensions];
+        quantization.decode(codes, quantization.codeBytes(dimensions), decoded);
+
+        float[] vector = vectors[1];
+        float max = 0;
+        for (float value : vector) {
+            max = Math.max(max, Math.abs(value));
+        }
+        for (int i = 0; i < dimensions; i++) {
+            switch (quantization) {
+                case NONE -> assertThat(decoded[i]).isEqualTo(vector[i]);
+                case FP16 -> assertThat(decoded[i]).isEqualTo(Float.float16ToFloat(Float.floatToFloat16(vector[i])));
+                // rounded to the nearest of 255 steps spanning [-max, max]
+                case INT8 -> assertThat(decoded[i]).isCloseTo(vector[i], within(max / 127 / 2 * 1.0001f));
+                case BINARY -> assertThat(decoded[i]).isEqualTo((float) ((vector[i] > 0 ? 1 : -1) / Math.sqrt(dimensions)));
+            }
+        }
+    }
+
+    @ParameterizedTest(name = "{0}, {1} dimensions")
+    @CsvSource(delimiter = '|', textBlock = """
+            NONE   | 384
+            FP16   | 100
+            FP16   | 384
+            INT8   | 100
+            INT8   | 384
+            """)
+    void scoresTheDecodedVector(Quantization quantization, int dimensions) {
+        float[][] vectors = randomUnitVectors(SLOTS, dimensions);
+        ByteBuffer codes = encode(quantization, vectors);
+        float[] query = randomUnitVectors(1, dimensions)[0];
+        float[] decoded = new float[dimensions];
+        quantization.decode(codes, quantization.codeBytes(dimensions), decoded);
+
+        float score = quantization.scorer(query).score(codes, quantization.codeBytes(dimensions));
+
+        assertThat(score).isCloseTo(VectorMath.dot(query, decoded), within(1e-5f));
+        // and stays near the exact score of unit vectors
+        float error = quantization == Quantization.INT8 ? 0.02f : quantization == Quantization.FP16 ? 1e-3f : 0;
+        assertThat(score).isCloseTo(VectorMath.dot(query, vectors[1]), within(error + 1e-6f));
+    }
+
+    @ParameterizedTest(name = "{0} dimensions")
+    @CsvSource({"1", "63", "64", "100", "384"})
+    void binaryScoresAreTheInnerProductOfTheSigns(int dimensions) {
+        float[][] vectors = randomUnitVectors(SLOTS, dimensions);
+        ByteBuffer codes = encode(Quantization.BINARY, vectors);
+        float[] query = randomUnitVectors(1, dimensions)[0];
+        int differing = 0;
+        for (int i = 0; i < dimensions; i++) {
+            if (query[i] > 0 != vectors[1][i] > 0) {
+                differing++;
+            }
+        }
+
+        float score = Quantization.BINARY.scorer(query).score(codes, Quantization.BINARY.codeBytes(dimensions));
+
+        assertThat(score).isEqualTo(1 - 2f * differing / dimensions);
+        float[] decodedQuery = new float[dimensions];
+        float[] decoded = new float[dimensions];
+        ByteBuffer queryCode = encode(Quantization.BINARY, new float[][]{query});
+        Quantization.BINARY.decode(queryCode, 0, decodedQuery);
+        Quantization.BINARY.decode(codes, Quantization.BINARY.codeBytes(dimensions), decoded);
+        assertThat(score).isCloseTo(VectorMath.dot(decodedQuery, decoded), within(1e-5f));
+    }
+
+    @Test
+    void int8KeepsAZeroVector() {
+        float[] zero = new float[16];
+        ByteBuffer codes = encode(Quantization.INT8, new float[][]{zero});
+        float[] decoded = new float[16];
+        Quantization.INT8.decode(codes, 0, decoded);
+
+        assertThat(decoded).containsOnly(0f);
+        assertThat(Quantization.INT8.scorer(randomUnitVectors(1, 16)[0]).score(codes, 0)).isZero();
+    }
+
+    @Test
+    void fp16KeepsComponentsBelowTheNormalRange() {
+        float[] vector = new float[16];
+        vector[2] = 3e-6f;
+        vector[9] = -4.5e-7f;
+        vector[15] = 1;
+        ByteBuffer codes = encode(Quantization.FP16, new float[][]{vector});
+        float[] query = new float[16];
+        query[2] = 1000;
+        query[9] = 1000;
+
+        float score = Quantization.FP16.scorer(query).score(codes, 0);
+
+        // both components are subnormal halves, which must not be flushed to zero
+        assertThat(score).isEqualTo(1000 * Float.float16ToFloat(Float.floatToFloat16(3e-6f))
+                + 1000 * Float.float16ToFloat(Float.floatToFloat16(-4.5e-7f)));
+        assertThat(score).isNotZero();
+    }
+
+    private static ByteBuffer encode(Quantization quantization, float[][] vectors) {
+        int codeBytes = quantization.codeBytes(vectors[0].length);
+        ByteBuffer codes = ByteBuffer.allocate(vectors.length * codeBytes).order(ByteOrder.LITTLE_ENDIAN);
+        for (int slot = 0; slot < vectors.length; slot++) {
+            quantization.encode(vectors[slot], codes, slot * codeBytes);
+        }
+        return codes;
+    }
+
+    private float[][] randomUnitVectors(int count, int dimensions) {
+        float[][] vectors = new float[count][dimensions];
+        for (float[] vector : vectors) {
+            double norm = 0;
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] = (float) random.nextGaussian();
+                norm += vector[i] * vector[i];
+            }
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] /= (float) Math.sqrt(norm);
+            }
+        }
+        return vectors;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.aidemo.service.vectorstore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * The tests run with {@code jdk.incubator.vector}, so the public entry points take the Vector API
+ * path and are checked against the scalar loops; lengths cover the vector loops and their tails.
+ */
+class VectorMathTest {
+    private final Random random = new Random(7);
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 8, 15, 16, 17, 31, 63, 64, 65, 127, 384, 1000, 1024})
+    void floatDotMatchesScalar(int length) {
+        float[] a = randomFloats(length);
+        float[] b = randomFloats(length);
+
+        assertThat(VectorMath.dot(a, b)).isCloseTo(VectorMath.scalarDot(a, b, 0, 0f), within(tolerance(length)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 8, 15, 16, 17, 31, 63, 64, 65, 127, 384, 1000, 1024})
+    void byteDotMatchesScalar(int length) {
+        float[] a = randomFloats(length);
+        byte[] b = new byte[length];
+        random.nextBytes(b);
+
+        assertThat(VectorMath.dot(a, b)).isCloseTo(VectorMath.scalarDot(a, b, 0, 0f), within(127 * tolerance(length)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 8, 15, 16, 17, 31, 63, 64, 65, 127, 384, 1000, 1024})
+    void halfDotMatchesScalar(int length) {
+        float[] a = randomFloats(length);
+        short[] b = new short[length];
+        for (int i = 0; i < length; i++) {
+            b[i] = Float.floatToFloat16(random.nextFloat() * 2 - 1);
+        }
+
+        assertThat(VectorMath.dotHalf(a, b)).isCloseTo(VectorMath.scalarDotHalf(a, b, 0, 0f), within(tolerance(length)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(floats = {0f, -0f, 1f, -1f, 0.5f, 6.1035156E-5f, -6.1035156E-5f, 65504f, 1.0E-3f, -0.333f})
+    void halfDotConvertsEveryNormalHalf(float value) {
+        float[] a = new float[16];
+        short[] b = new short[16];
+        a[3] = 1;
+        b[3] = Float.floatToFloat16(value);
+
+        assertThat(VectorMath.dotHalf(a, b)).isEqualTo(Float.float16ToFloat(b[3]));
+    }
+
+    @Test
+    void halfDotConvertsEverySubnormalHalf() {
+        float[] a = new float[16];
+        short[] b = new short[16];
+        a[5] = 1;
+        for (int half = 0; half < 0x0400; half++) {
+            for (int sign : new int[]{0, 0x8000}) {
+                b[5] = (short) (half | sign);
+
+                assertThat(VectorMath.dotHalf(a, b)).isEqualTo(Float.float16ToFloat(b[5]));
+            }
+        }
+    }
+
+    private float[] randomFloats(int length) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = random.nextFloat() * 2 - 1;
+        }
+        return values;
+    }
+
+    /**
+     * Summation order differs between the paths, the error grows with the number of terms.
+     */
+    private static float tolerance(int length) {
+        return 1e-6f * length + 1e-6f;
+    }
+}